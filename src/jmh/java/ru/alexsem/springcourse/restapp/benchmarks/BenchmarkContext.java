@@ -0,0 +1,55 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.alexsem.springcourse.restapp.RestAppApplication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Поднимает приложение без веб-сервера поверх встроенной H2 (профиль test),
+ * чтобы бенчмарки работали с настоящими бинами: сервисом, репозиторием, кэшем и валидатором.
+ */
+final class BenchmarkContext {
+    
+    private BenchmarkContext() {
+    }
+    
+    /**
+     * Свойства передаются как аргументы командной строки: свойства из properties() билдера
+     * имеют самый низкий приоритет и не перекрыли бы application.properties.
+     *
+     * @param properties дополнительные свойства вида key=value (перекрывают профиль test)
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--spring.jpa.properties.hibernate.generate_statistics=false",
+                "--logging.level.root=WARN"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(RestAppApplication.class)
+                .profiles("test")
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+    }
+    
+    /**
+     * Быстрое заполнение таблицы одним INSERT ... SELECT средствами H2.
+     * id берутся из того же диапазона, что и у последовательности, поэтому
+     * последовательность сдвигаем за последний id. Hibernate (pooled) считает значение
+     * последовательности верхней границей блока из allocationSize id, отсюда запас в 50.
+     */
+    static void seed(ConfigurableApplicationContext context, int rows) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("DELETE FROM person");
+        jdbcTemplate.update("INSERT INTO person (id, name, age, email, email_domain, created_at, updated_at, created_who, version) " +
+                            "SELECT \"X\", 'Person' || \"X\", MOD(\"X\", 100), 'person' || \"X\" || '@mail.ru', 'mail.ru', " +
+                            "CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 'Admin', 0 FROM SYSTEM_RANGE(1, ?)", rows);
+        jdbcTemplate.execute("ALTER SEQUENCE person_id_seq RESTART WITH " + (rows + 51));
+    }
+}
@@ -0,0 +1,233 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import ru.alexsem.springcourse.restapp.RestAppApplication;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Нагрузочное сравнение синхронного POST /people и асинхронного создания с групповым коммитом
+ * (Prefer: respond-async, PersonIngestQueue). Как и ThreadModeLoadTest, это отдельная программа:
+ *
+ * mvn -Pbenchmark test-compile exec:exec@ingest
+ *
+ * Приложение поднимается на H2, коммит каждой пишущей транзакции задерживается на commitMs -
+ * так ведёт себя fsync WAL в PostgreSQL, который групповой коммит и экономит.
+ * Клиенты в закрытом цикле создают людей с уникальными email. Для каждого режима печатается:
+ * req/s и задержки ответов, сколько ответов 429, и сколько людей в секунду реально сохранено
+ * (с учётом времени, пока писатель дописывает очередь после окончания нагрузки).
+ *
+ * Параметры (-D...): loadtest.clients (200), loadtest.commitMs (5), loadtest.warmupSeconds (5),
+ * loadtest.seconds (15), loadtest.modes (sync,queued,committed)
+ */
+public class IngestLoadTest {
+    
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 200);
+    private static final int COMMIT_MS = Integer.getInteger("loadtest.commitMs", 5);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmupSeconds", 5);
+    private static final int SECONDS = Integer.getInteger("loadtest.seconds", 15);
+    
+    private static final AtomicLong EMAILS = new AtomicLong();
+    
+    public static void main(String[] args) throws Exception {
+        System.out.printf("java %s, %d clients, commit latency %d ms%n",
+                System.getProperty("java.version"), CLIENTS, COMMIT_MS);
+        List<String> lines = new ArrayList<>();
+        for (String mode : System.getProperty("loadtest.modes", "sync,queued,committed").split(",")) {
+            lines.add(run(mode.trim()));
+        }
+        System.out.printf("%n%-9s %10s %9s %9s %9s %8s %8s %10s%n",
+                "mode", "req/s", "p50 ms", "p99 ms", "max ms", "429", "errors", "saved/s");
+        lines.forEach(System.out::println);
+    }
+    
+    private static String run(String mode) throws Exception {
+        boolean async = !mode.equals("sync");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(RestAppApplication.class, SlowCommit.class)
+                .profiles("test")
+                .run("--server.port=0",
+                     "--logging.level.root=WARN",
+                     "--spring.jpa.properties.hibernate.generate_statistics=false",
+                     "--people.ingest.enabled=" + async,
+                     "--people.ingest.ack=" + (async ? mode : "queued"),
+                     "--loadtest.commit-ms=" + COMMIT_MS);
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+    
+            load(client, port, async, WARMUP_SECONDS);
+            long before = count(jdbcTemplate);
+            long start = System.nanoTime();
+            Result result = load(client, port, async, SECONDS);
+            long expected = before + result.accepted();
+//            в режиме queued писатель дописывает очередь уже после последнего ответа
+            long drainDeadline = start + Duration.ofSeconds(SECONDS * 3L).toNanos();
+            while (count(jdbcTemplate) < expected && System.nanoTime() < drainDeadline) {
+                Thread.sleep(10);
+            }
+            double saved = (count(jdbcTemplate) - before) * 1e9 / (System.nanoTime() - start);
+            return result.line(mode, saved);
+        } finally {
+            context.close();
+        }
+    }
+    
+    private static long count(JdbcTemplate jdbcTemplate) {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM person", Long.class);
+        return count == null ? 0 : count;
+    }
+    
+    private static Result load(HttpClient client, int port, boolean async, int seconds) throws InterruptedException {
+        Result result = new Result();
+        long start = System.nanoTime();
+        long deadline = start + Duration.ofSeconds(seconds).toNanos();
+        CountDownLatch done = new CountDownLatch(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            next(client, port, async, deadline, result, done);
+        }
+        done.await();
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+    
+    private static void next(HttpClient client, int port, boolean async, long deadline, Result result,
+                             CountDownLatch done) {
+        if (System.nanoTime() > deadline) {
+            done.countDown();
+            return;
+        }
+        String body = "{\"name\":\"Load\",\"age\":30,\"email\":\"load" + EMAILS.incrementAndGet() + "@mail.ru\"}";
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/people"))
+                                                 .timeout(Duration.ofSeconds(30))
+                                                 .header("Content-Type", "application/json")
+                                                 .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (async) {
+            request.header("Prefer", "respond-async");
+        }
+        long start = System.nanoTime();
+        client.sendAsync(request.build(), HttpResponse.BodyHandlers.discarding())
+              .whenComplete((response, error) -> {
+                  result.record(System.nanoTime() - start, error == null ? response.statusCode() : 0);
+                  next(client, port, async, deadline, result, done);
+              });
+    }
+    
+    private static class Result {
+        private long elapsedNanos;
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    
+        void record(long nanos, int status) {
+            if (status >= 200 && status < 300) {
+                latencies.add(nanos);
+            } else if (status == 429) {
+                rejected.increment();
+            } else {
+                errors.increment();
+            }
+        }
+    
+        long accepted() {
+            return latencies.size();
+        }
+    
+        String line(String mode, double saved) {
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            return String.format("%-9s %10.0f %9.1f %9.1f %9.1f %8d %8d %10.0f", mode,
+                    sorted.size() * 1e9 / elapsedNanos, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    percentile(sorted, 1.0), rejected.sum(), errors.sum(), saved);
+        }
+    
+        private static double percentile(List<Long> sorted, double p) {
+            if (sorted.isEmpty()) {
+                return Double.NaN;
+            }
+            int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+            return sorted.get(Math.max(0, index)) / 1_000_000.0;
+        }
+    }
+    
+    /**
+     * Задержка коммита транзакций, которые что-то изменили (был не SELECT).
+     * Класс без @Configuration, чтобы component scan приложения его не подхватывал.
+     */
+    static class SlowCommit {
+    
+        @Bean
+        static SlowCommitPostProcessor slowCommitPostProcessor(@Value("${loadtest.commit-ms}") long commitMs) {
+            return new SlowCommitPostProcessor(commitMs);
+        }
+    }
+    
+    private static class SlowCommitPostProcessor implements BeanPostProcessor, PriorityOrdered {
+        private final long commitMs;
+    
+        SlowCommitPostProcessor(long commitMs) {
+            this.commitMs = commitMs;
+        }
+    
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource)) {
+                return bean;
+            }
+            return new DelegatingDataSource((DataSource) bean) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    return slowCommit(super.getConnection());
+                }
+            };
+        }
+    
+        private Connection slowCommit(Connection connection) {
+            boolean[] dirty = new boolean[1];
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.startsWith("prepare") && args != null && args[0] instanceof String
+                                && !((String) args[0]).trim().regionMatches(true, 0, "select", 0, 6)) {
+                            dirty[0] = true;
+                        } else if (name.equals("commit") && dirty[0]) {
+                            dirty[0] = false;
+                            Thread.sleep(commitMs);
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    
+        @Override
+        public int getOrder() {
+            return HIGHEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.alexsem.springcourse.restapp.controllers.PeopleController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Потоковая выгрузка GET /people/export для разного размера таблицы.
+ *
+ * exportNdjson - чистое время выгрузки.
+ * exportNdjsonLiveHeap - то же самое, но четыре раза за выгрузку делается System.gc()
+ * и замеряется живая куча. Через AuxCounters выводятся живая куча до начала выгрузки
+ * (liveHeapBeforeMb - в неё входят кэши H2) и прирост за время выгрузки (liveHeapGrowthMb).
+ * При потоковой выгрузке прирост не должен зависеть от числа строк.
+ * Счётчики типа EVENTS JMH суммирует по итерациям, значения одной итерации - в rawData json-отчёта.
+ * Пик занятой памяти без сборки для этого не подходит - в него входит ещё не собранный мусор.
+ *
+ * База H2 файловая, чтобы сами данные не лежали в куче. MAX_MEMORY_ROWS ограничивает
+ * буфер результата внутри H2 - так он ведёт себя как курсор на стороне сервера в PostgreSQL.
+ *
+ * 5 млн строк: -Djmh.args="PeopleExportBenchmark -p rows=10000,5000000"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+@State(Scope.Benchmark)
+public class PeopleExportBenchmark {
+    
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+    
+    private ConfigurableApplicationContext context;
+    private PeopleController peopleController;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start(
+                "spring.datasource.url=jdbc:h2:file:./target/benchmark-export-db;MODE=PostgreSQL;" +
+                "DATABASE_TO_LOWER=TRUE;DB_CLOSE_ON_EXIT=FALSE;MAX_MEMORY_ROWS=1000");
+        BenchmarkContext.seed(context, rows);
+        peopleController = context.getBean(PeopleController.class);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Heap {
+        public long liveHeapBeforeMb;
+        public long liveHeapGrowthMb;
+        
+        private long before;
+        private long max;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            before = liveHeap();
+            max = before;
+        }
+        
+        @TearDown(Level.Iteration)
+        public void record() {
+            liveHeapBeforeMb = before / (1024 * 1024);
+            liveHeapGrowthMb = Math.max(0, max - before) / (1024 * 1024);
+        }
+        
+        void sample() {
+            max = Math.max(max, liveHeap());
+        }
+        
+        private static long liveHeap() {
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+    
+    @Benchmark
+    public void exportNdjson() throws IOException {
+        StreamingResponseBody body = peopleController.exportPeople().getBody();
+        body.writeTo(OutputStream.nullOutputStream());
+    }
+    
+    @Benchmark
+    public void exportNdjsonLiveHeap(Heap heap) throws IOException {
+        StreamingResponseBody body = peopleController.exportPeople().getBody();
+        body.writeTo(new SamplingOutputStream(heap, Math.max(1, rows / 4)));
+    }
+    
+    /**
+     * Считает строки NDJSON и каждые sampleEvery строк замеряет живую кучу
+     */
+    private static class SamplingOutputStream extends OutputStream {
+        private final Heap heap;
+        private final int sampleEvery;
+        private int lines;
+        
+        SamplingOutputStream(Heap heap, int sampleEvery) {
+            this.heap = heap;
+            this.sampleEvery = sampleEvery;
+        }
+        
+        @Override
+        public void write(int b) {
+            if (b == '\n' && ++lines % sampleEvery == 0) {
+                heap.sample();
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции PeopleService целиком (транзакция, Hibernate, JDBC) поверх встроенной H2.
+ * Параметр cacheType позволяет сравнить findOne с кэшем и без него.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PeopleServiceBenchmark {
+    
+    private static final int ROWS = 100_000;
+    
+    @Param({"caffeine", "none"})
+    private String cacheType;
+    
+    private ConfigurableApplicationContext context;
+    private PeopleService peopleService;
+    
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start("spring.cache.type=" + cacheType);
+        BenchmarkContext.seed(context, ROWS);
+        peopleService = context.getBean(PeopleService.class);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+    
+    /**
+     * Горячий набор из 100 id - как в нашем реальном трафике
+     */
+    @Benchmark
+    public Person findOneHot() {
+        return peopleService.findOne(1 + ThreadLocalRandom.current().nextInt(100));
+    }
+    
+    @Benchmark
+    public List<Person> findPage() {
+        return peopleService.findPage(ThreadLocalRandom.current().nextInt(ROWS - 100), 100);
+    }
+    
+    @Benchmark
+    public Person save() {
+        Person person = new Person();
+        person.setName("Bench");
+        person.setAge(30);
+        person.setEmail("bench" + System.nanoTime() + "@mail.ru");
+        peopleService.save(person);
+        return person;
+    }
+    
+    @Benchmark
+    public void update() {
+        int id = 1 + ThreadLocalRandom.current().nextInt(ROWS);
+        peopleService.update(id, null, null, ThreadLocalRandom.current().nextInt(100), null);
+    }
+}
@@ -0,0 +1,109 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import ru.alexsem.springcourse.restapp.controllers.PeopleExceptionHandler;
+import ru.alexsem.springcourse.restapp.util.PeopleMetrics;
+import ru.alexsem.springcourse.restapp.util.PersonErrorResponse;
+import ru.alexsem.springcourse.restapp.util.PersonNotFoundException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ответ 404 на GET /people/{id} с несуществующим id, без запроса в БД:
+ * исключение бросается на глубине depth кадров (под Tomcat, фильтрами и прокси Spring
+ * их около сотни) и превращается в тело ответа.
+ *
+ * legacy - как было: RuntimeException со стеком, новый PersonErrorResponse, запись Jackson-ом.
+ * current - PersonNotFoundException без стека и готовое тело из PeopleExceptionHandler.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="PersonError -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonErrorBenchmark {
+    
+    @Param({"20", "150"})
+    private int depth;
+    
+    private PeopleExceptionHandler exceptionHandler;
+    private MappingJackson2HttpMessageConverter jacksonConverter;
+    private ByteArrayHttpMessageConverter bytesConverter;
+    
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        exceptionHandler = new PeopleExceptionHandler(new PeopleMetrics(new SimpleMeterRegistry()));
+        jacksonConverter = new MappingJackson2HttpMessageConverter(objectMapper);
+        bytesConverter = new ByteArrayHttpMessageConverter();
+    }
+    
+    @Benchmark
+    public void legacy() throws IOException {
+        try {
+            throwAt(depth, true);
+        } catch (LegacyNotFoundException e) {
+            PersonErrorResponse response = new PersonErrorResponse(
+                    "Person with this id was not found",
+                    System.currentTimeMillis()
+            );
+            jacksonConverter.write(response, MediaType.APPLICATION_JSON, new NullOutputMessage());
+        }
+    }
+    
+    @Benchmark
+    public void current() throws IOException {
+        try {
+            throwAt(depth, false);
+        } catch (PersonNotFoundException e) {
+            ResponseEntity<byte[]> response = exceptionHandler.handleException(e);
+            bytesConverter.write(response.getBody(), response.getHeaders().getContentType(), new NullOutputMessage());
+        }
+    }
+    
+    private static void throwAt(int depth, boolean legacy) {
+        if (depth > 0) {
+            throwAt(depth - 1, legacy);
+            return;
+        }
+        if (legacy) {
+            throw new LegacyNotFoundException();
+        }
+        throw new PersonNotFoundException();
+    }
+    
+    /**
+     * PersonNotFoundException до перехода на StacklessException
+     */
+    private static class LegacyNotFoundException extends RuntimeException {
+    
+    }
+    
+    private static class NullOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+    
+        @Override
+        public OutputStream getBody() {
+            return OutputStream.nullOutputStream();
+        }
+    
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.util.JsonFragments;
+import ru.alexsem.springcourse.restapp.util.JsonFragmentsHttpMessageConverter;
+import ru.alexsem.springcourse.restapp.util.PeopleMetrics;
+import ru.alexsem.springcourse.restapp.util.PersonJsonCache;
+import ru.alexsem.springcourse.restapp.util.PersonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Форматы ответа GET /people (страница из 100 человек из PersonJsonCache) и тела POST /people:
+ * json - готовые байты JSON, json-gzip - они же через gzip (как при server.compression).
+ * Размер страницы в байтах печатается при запуске каждого формата (строка "payload").
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="PersonFormat -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonFormatBenchmark {
+    
+    private static final int PAGE_SIZE = 100;
+    
+    @Param({"json", "json-gzip"})
+    private String format;
+    
+    private HttpMessageConverter<JsonFragments> pageConverter;
+    private MediaType mediaType;
+    private boolean gzip;
+    private ObjectMapper mapper;
+    
+    private JsonFragments page;
+    private byte[] personBody;
+    
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+        Timer timer = new PeopleMetrics(new SimpleMeterRegistry()).serialization();
+        PersonMapper personMapper = new PersonMapper();
+        PersonJsonCache personJsonCache = new PersonJsonCache(new CaffeineCacheManager(PeopleService.PEOPLE_JSON_CACHE),
+                jsonMapper, personMapper, new PeopleMetrics(new SimpleMeterRegistry()));
+        
+        List<Person> people = new ArrayList<>(PAGE_SIZE);
+        for (int i = 1; i <= PAGE_SIZE; i++) {
+            Person p = new Person();
+            p.setId(i);
+            p.setName("Person" + i);
+            p.setAge(i % 100);
+            p.setEmail("person" + i + "@mail.ru");
+            p.setCreatedAt(LocalDateTime.now());
+            p.setUpdatedAt(LocalDateTime.now());
+            p.setCreatedWho("Admin");
+            people.add(p);
+        }
+        page = JsonFragments.array(personJsonCache.json(people));
+        
+        pageConverter = new JsonFragmentsHttpMessageConverter(timer);
+        mediaType = MediaType.APPLICATION_JSON;
+        mapper = jsonMapper;
+        gzip = format.equals("json-gzip");
+        personBody = mapper.writeValueAsBytes(personMapper.toPersonDTO(people.get(0)));
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writePage(out);
+        System.out.printf("%npayload %s: page of %d people %d bytes, person %d bytes%n",
+                format, PAGE_SIZE, out.size(), personBody.length);
+    }
+    
+    @Benchmark
+    public void writePage() throws IOException {
+        writePage(OutputStream.nullOutputStream());
+    }
+    
+    @Benchmark
+    public PersonDTO readPerson() throws IOException {
+        return mapper.readValue(personBody, PersonDTO.class);
+    }
+    
+    private void writePage(OutputStream target) throws IOException {
+        if (!gzip) {
+            pageConverter.write(page, mediaType, new OutputMessage(target));
+            return;
+        }
+        GZIPOutputStream out = new GZIPOutputStream(target);
+        pageConverter.write(page, mediaType, new OutputMessage(out));
+        out.finish();
+    }
+    
+    private static class OutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final OutputStream body;
+    
+        OutputMessage(OutputStream body) {
+            this.body = body;
+        }
+    
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+    
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
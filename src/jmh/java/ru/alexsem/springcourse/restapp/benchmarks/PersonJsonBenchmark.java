@@ -0,0 +1,49 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор тела запроса POST /people в PersonDTO и обратная сериализация.
+ * ObjectMapper настроен так же, как в Spring Boot (Jackson2ObjectMapperBuilder).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonJsonBenchmark {
+    
+    private ObjectReader reader;
+    private ObjectWriter writer;
+    private byte[] json;
+    private PersonDTO personDTO;
+    
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        reader = objectMapper.readerFor(PersonDTO.class);
+        writer = objectMapper.writerFor(PersonDTO.class);
+        json = "{\"name\":\"Tom\",\"age\":25,\"email\":\"tom@mail.ru\"}".getBytes(StandardCharsets.UTF_8);
+        personDTO = reader.readValue(json);
+    }
+    
+    @Benchmark
+    public PersonDTO deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+    
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(personDTO);
+    }
+}
@@ -0,0 +1,92 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.util.PersonMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Сравнение старого пути конвертации (ModelMapper, как был в PeopleController)
+ * с ручным PersonMapper.
+ *
+ * Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args=PersonMapperBenchmark
+ * Для оценки аллокаций можно добавить профайлер: -Djmh.args="PersonMapperBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonMapperBenchmark {
+    
+    @Param({"1000"})
+    private int listSize;
+    
+    private ModelMapper modelMapper;
+    private PersonMapper personMapper;
+    
+    private PersonDTO personDTO;
+    private Person person;
+    private List<Person> people;
+    
+    @Setup
+    public void setup() {
+        modelMapper = new ModelMapper();
+        personMapper = new PersonMapper();
+        
+        personDTO = new PersonDTO();
+        personDTO.setName("Tom");
+        personDTO.setAge(25);
+        personDTO.setEmail("tom@mail.ru");
+        
+        people = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            Person p = new Person();
+            p.setId(i + 1);
+            p.setName("Person" + i);
+            p.setAge(i % 100);
+            p.setEmail("person" + i + "@mail.ru");
+            people.add(p);
+        }
+        person = people.get(0);
+    }
+    
+    @Benchmark
+    public Person modelMapperToPerson() {
+        return modelMapper.map(personDTO, Person.class);
+    }
+    
+    @Benchmark
+    public Person personMapperToPerson() {
+        return personMapper.toPerson(personDTO);
+    }
+    
+    @Benchmark
+    public PersonDTO modelMapperToPersonDTO() {
+        return modelMapper.map(person, PersonDTO.class);
+    }
+    
+    @Benchmark
+    public PersonDTO personMapperToPersonDTO() {
+        return personMapper.toPersonDTO(person);
+    }
+    
+    @Benchmark
+    public List<PersonDTO> modelMapperList() {
+        return people.stream()
+                     .map(p -> modelMapper.map(p, PersonDTO.class))
+                     .collect(Collectors.toList());
+    }
+    
+    @Benchmark
+    public List<PersonDTO> personMapperList() {
+        return personMapper.toPersonDTOList(people);
+    }
+}
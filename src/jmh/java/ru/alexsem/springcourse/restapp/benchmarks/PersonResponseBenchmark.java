@@ -0,0 +1,121 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.util.JsonFragments;
+import ru.alexsem.springcourse.restapp.util.JsonFragmentsHttpMessageConverter;
+import ru.alexsem.springcourse.restapp.util.PeopleMetrics;
+import ru.alexsem.springcourse.restapp.util.PersonJsonCache;
+import ru.alexsem.springcourse.restapp.util.PersonMapper;
+import ru.alexsem.springcourse.restapp.util.TimedJsonHttpMessageConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись тела ответа GET /people/{id} и GET /people (страница из 100 человек):
+ * прежний путь (PersonMapper + Jackson-конвертер) против готовых байт из PersonJsonCache
+ * (JsonFragmentsHttpMessageConverter). Тело пишется в поток, который всё выбрасывает,
+ * поэтому замеряется только сама запись.
+ *
+ * SampleTime даёт перцентили (p99), аллокации на операцию - с профилировщиком gc:
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="PersonResponse -prof gc"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonResponseBenchmark {
+    
+    private static final int PAGE_SIZE = 100;
+    
+    private PersonMapper personMapper;
+    private PersonJsonCache personJsonCache;
+    private TimedJsonHttpMessageConverter jacksonConverter;
+    private JsonFragmentsHttpMessageConverter fragmentsConverter;
+    
+    private Person person;
+    private List<Person> page;
+    
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        PeopleMetrics peopleMetrics = new PeopleMetrics(new SimpleMeterRegistry());
+        personMapper = new PersonMapper();
+        personJsonCache = new PersonJsonCache(new CaffeineCacheManager(PeopleService.PEOPLE_JSON_CACHE),
+                objectMapper, personMapper, peopleMetrics);
+        jacksonConverter = new TimedJsonHttpMessageConverter(objectMapper, peopleMetrics.serialization());
+        fragmentsConverter = new JsonFragmentsHttpMessageConverter(peopleMetrics.serialization());
+    
+        page = new ArrayList<>(PAGE_SIZE);
+        for (int i = 1; i <= PAGE_SIZE; i++) {
+            Person p = new Person();
+            p.setId(i);
+            p.setName("Person" + i);
+            p.setAge(i % 100);
+            p.setEmail("person" + i + "@mail.ru");
+            p.setCreatedAt(LocalDateTime.now());
+            p.setUpdatedAt(LocalDateTime.now());
+            p.setCreatedWho("Admin");
+            page.add(p);
+        }
+        person = page.get(0);
+//        кэш прогрет, как для горячих id в реальном трафике
+        personJsonCache.json(page);
+    }
+    
+    @Benchmark
+    public void personJackson() throws IOException {
+        jacksonConverter.write(personMapper.toPersonDTO(person), MediaType.APPLICATION_JSON, new NullOutputMessage());
+    }
+    
+    @Benchmark
+    public void personCached() throws IOException {
+        fragmentsConverter.write(JsonFragments.of(personJsonCache.json(person)), MediaType.APPLICATION_JSON,
+                new NullOutputMessage());
+    }
+    
+    @Benchmark
+    public void pageJackson() throws IOException {
+        List<PersonDTO> body = personMapper.toPersonDTOList(page);
+        jacksonConverter.write(body, MediaType.APPLICATION_JSON, new NullOutputMessage());
+    }
+    
+    @Benchmark
+    public void pageCached() throws IOException {
+        fragmentsConverter.write(JsonFragments.array(personJsonCache.json(page)), MediaType.APPLICATION_JSON,
+                new NullOutputMessage());
+    }
+    
+    /**
+     * Ответ, тело которого никуда не пишется. Заголовки создаются на каждый вызов, как у настоящего ответа
+     */
+    private static class NullOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+    
+        @Override
+        public OutputStream getBody() {
+            return OutputStream.nullOutputStream();
+        }
+    
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
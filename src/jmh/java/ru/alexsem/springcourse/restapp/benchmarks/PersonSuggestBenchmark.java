@@ -0,0 +1,131 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+import ru.alexsem.springcourse.restapp.services.PersonSuggestIndex;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * GET /people/suggest без HTTP: PersonSuggestIndex на people людях с именами
+ * "Имя Фамилия" из небольших словарей (много общих префиксов, как в жизни).
+ * Индекс загружается тем же путём, что и при старте приложения (streamAllSuggestFields),
+ * время загрузки и размер индекса печатаются в setup.
+ *
+ * suggest - top-10 по запросу query; update - подсказка сразу после изменения одного человека
+ * (delta пересобирается в потоке-писателе, в замер попадает только постановка в очередь).
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="PersonSuggest -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+@State(Scope.Benchmark)
+public class PersonSuggestBenchmark {
+    
+    private static final String[] FIRST_NAMES = {"Alexander", "Anna", "Andrey", "Boris", "Daria", "Dmitry",
+            "Elena", "Ivan", "Irina", "Maria", "Mikhail", "Natalia", "Olga", "Pavel", "Sergey", "Tatiana"};
+    private static final String[] LAST_NAMES = {"Ivanov", "Petrov", "Sidorov", "Smirnov", "Kuznetsov", "Popov",
+            "Vasiliev", "Sokolov", "Mikhailov", "Novikov", "Fedorov", "Morozov", "Volkov", "Alekseev"};
+    
+    @Param({"1000000", "3000000"})
+    private int people;
+    
+    @Param({"a", "ann", "ivan", "petrov", "sergey.smi"})
+    private String query;
+    
+    private PersonSuggestIndex index;
+    private Person changed;
+    
+    @Setup
+    public void setup() throws InterruptedException {
+        PeopleRepository repository = (PeopleRepository) Proxy.newProxyInstance(
+                PeopleRepository.class.getClassLoader(), new Class<?>[]{PeopleRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("streamAllSuggestFields")) {
+                        return rows(people);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        index = new PersonSuggestIndex(repository, new NoTransactionManager(), true, 1000, 50000);
+    
+        System.gc();
+        long usedBefore = usedMemory();
+        long start = System.nanoTime();
+        index.warmUp();
+        while (!index.isReady()) {
+            Thread.sleep(10);
+        }
+        long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.gc();
+        System.out.printf("%nindex: %d people loaded in %d ms, ~%d bytes per person%n", index.size(), loadMillis,
+                (usedMemory() - usedBefore) / people);
+    
+        changed = new Person();
+        changed.setId(people / 2);
+        changed.setName("Anna Updated");
+        changed.setEmail("anna.updated@mail.ru");
+    }
+    
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        index.destroy();
+    }
+    
+    @Benchmark
+    public List<PersonSuggestIndex.Suggestion> suggest() {
+        return index.suggest(query, 10);
+    }
+    
+    @Benchmark
+    public List<PersonSuggestIndex.Suggestion> update() {
+        index.putAll(List.of(changed));
+        return index.suggest(query, 10);
+    }
+    
+    private static Stream<Object[]> rows(int count) {
+        Random random = new Random(42);
+        return IntStream.rangeClosed(1, count).mapToObj(id -> {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String email = first.toLowerCase() + "." + last.toLowerCase() + id + "@mail.ru";
+            return new Object[]{id, first + " " + last, email};
+        });
+    }
+    
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    /**
+     * Загрузке индекса нужна только обёртка TransactionTemplate вокруг курсора
+     */
+    private static class NoTransactionManager implements PlatformTransactionManager {
+    
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+    
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+    
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
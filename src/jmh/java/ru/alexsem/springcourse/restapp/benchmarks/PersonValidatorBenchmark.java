@@ -0,0 +1,78 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.services.EmailIndex;
+import ru.alexsem.springcourse.restapp.util.PersonValidator;
+
+import javax.validation.Validator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Валидация POST /people: аннотации PersonDTO (Hibernate Validator) и PersonValidator.
+ * newEmail - частый случай, когда EmailIndex отвечает "точно нет" без запроса в БД,
+ * takenEmail - email уже есть, идёт exists-запрос в H2.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonValidatorBenchmark {
+    
+    private ConfigurableApplicationContext context;
+    private PersonValidator personValidator;
+    private Validator beanValidator;
+    
+    private PersonDTO newEmail;
+    private PersonDTO takenEmail;
+    
+    @Setup
+    public void setup() throws InterruptedException {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seed(context, 10_000);
+        personValidator = context.getBean(PersonValidator.class);
+        beanValidator = context.getBean(Validator.class);
+        
+        newEmail = person("Tom", "new-tom@mail.ru");
+        takenEmail = person("Tom", "person42@mail.ru");
+//        Таблица заполнена мимо PeopleService, поэтому перезагружаем EmailIndex
+//        и даём ему закончить загрузку в фоне
+        context.getBean(EmailIndex.class).warmUp();
+        Thread.sleep(2000);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public Errors newEmail() {
+        return validate(newEmail);
+    }
+    
+    @Benchmark
+    public Errors takenEmail() {
+        return validate(takenEmail);
+    }
+    
+    private Errors validate(PersonDTO personDTO) {
+        Errors errors = new BeanPropertyBindingResult(personDTO, "personDTO");
+        beanValidator.validate(personDTO);
+        personValidator.validate(personDTO, errors);
+        return errors;
+    }
+    
+    private static PersonDTO person(String name, String email) {
+        PersonDTO personDTO = new PersonDTO();
+        personDTO.setName(name);
+        personDTO.setAge(25);
+        personDTO.setEmail(email);
+        return personDTO;
+    }
+}
@@ -0,0 +1,295 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import ru.alexsem.springcourse.restapp.RestAppApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Время старта приложения в разных режимах (см профиль fast-startup в pom.xml). Отдельная программа:
+ *
+ * mvn -Pbenchmark test-compile exec:exec@startup
+ *
+ * Каждый запуск - новая JVM с приложением на H2 в файле (профиль test), в БД заранее есть один человек.
+ * Замеряется время от запуска процесса до первого ответа 200 на GET /people/1 и RSS процесса
+ * в этот момент (VmRSS из /proc, поэтому только Linux). Режимы:
+ * - default - обычный старт;
+ * - lazy - профиль Spring fast-startup: ленивые бины, отложенная сборка JPA, урезанная автоконфигурация;
+ * - appcds - обычный старт с архивом AppCDS;
+ * - fast - fast-startup вместе с архивом AppCDS.
+ * Архив для режима записывается обучающим запуском (people.startup.exit-after-ready) перед замерами.
+ * AppCDS не берёт классы из каталогов, поэтому target/classes собирается в jar,
+ * classpath во всех режимах одинаковый: этот jar и jar зависимостей.
+ *
+ * Параметры (-D...): startup.runs (3), startup.modes (default,lazy,appcds,fast),
+ * startup.jvmArgs (-Xmx512m)
+ */
+public class StartupTimeTest {
+    
+    private static final int RUNS = Integer.getInteger("startup.runs", 3);
+    private static final String JVM_ARGS = System.getProperty("startup.jvmArgs", "-Xmx512m");
+    private static final Duration TIMEOUT = Duration.ofMinutes(3);
+    private static final Path DIR = Paths.get("target", "startup");
+    
+    public static void main(String[] args) throws Exception {
+        Files.createDirectories(DIR);
+        String classpath = classpath();
+        createDatabase(classpath);
+    
+        Map<String, Mode> modes = new LinkedHashMap<>();
+        for (String name : System.getProperty("startup.modes", "default,lazy,appcds,fast").split(",")) {
+            Mode mode = Mode.of(name.trim());
+            if (mode.archive != null) {
+                train(mode, classpath);
+            }
+            modes.put(mode.name, mode);
+        }
+        System.out.printf("java %s, %d cpu, %d runs per mode%n", System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(), RUNS);
+//        режимы чередуются, чтобы фоновая нагрузка машины размазывалась по всем одинаково
+        for (int run = 0; run < RUNS; run++) {
+            for (Mode mode : modes.values()) {
+                mode.record(measure(mode, classpath));
+            }
+        }
+        System.out.printf("%n%-8s %12s %12s %12s %10s%n", "mode", "first GET ms", "min ms", "max ms", "RSS MB");
+        modes.values().forEach(mode -> System.out.println(mode.line()));
+    }
+    
+    private static Sample measure(Mode mode, String classpath) throws Exception {
+        int port = freePort();
+        List<String> command = command(mode.profiles, classpath, port, "none");
+        if (mode.archive != null) {
+            command.add(1, "-XX:SharedArchiveFile=" + mode.archive);
+        }
+        long start = System.nanoTime();
+        Process process = start(command, mode.name);
+        try {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/people/1"))
+                                             .timeout(Duration.ofSeconds(30))
+                                             .build();
+            long deadline = start + TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode.name + " exited with " + process.exitValue()
+                            + ", see " + log(mode.name));
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return new Sample(System.nanoTime() - start, rssKb(process.pid()));
+                    }
+                } catch (ConnectException e) {
+//                    Tomcat ещё не слушает порт
+                }
+                Thread.sleep(5);
+            }
+            throw new IllegalStateException(mode.name + " did not answer in " + TIMEOUT + ", see " + log(mode.name));
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+    
+    /**
+     * Обучающий запуск: приложение стартует, выходит само, а JVM записывает загруженные классы в архив
+     */
+    private static void train(Mode mode, String classpath) throws Exception {
+        List<String> command = command(mode.profiles, classpath, freePort(), "none");
+        command.add(1, "-XX:ArchiveClassesAtExit=" + mode.archive);
+//        классы, которые CDS не архивирует (старый байткод, сгенерированные прокси), - тысячи предупреждений
+        command.add(2, "-Xlog:cds=off");
+        Files.deleteIfExists(mode.archive);
+        long start = System.nanoTime();
+        runToExit(command, mode.name + "-training");
+        if (!Files.exists(mode.archive)) {
+            throw new IllegalStateException("No archive after training run, see " + log(mode.name + "-training"));
+        }
+        System.out.printf("%s: archive %s (%d MB) written in %d ms%n", mode.name, mode.archive,
+                Files.size(mode.archive) >> 20, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    
+    /**
+     * База H2 в файле, схему создаёт Hibernate один раз, а замеряемые запуски находят её готовой,
+     * как приложение с PostgreSQL после миграций
+     */
+    private static void createDatabase(String classpath) throws Exception {
+        Files.deleteIfExists(DIR.resolve("people.mv.db"));
+        Path seed = DIR.resolve("seed.sql");
+        Files.writeString(seed, "INSERT INTO person (id, name, age, email, email_domain, created_at, updated_at, "
+                + "created_who, version) VALUES (1, 'Startup', 30, 'startup@mail.ru', 'mail.ru', "
+                + "CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 'ADMIN', 0);\n");
+        List<String> command = command("test", classpath, freePort(), "create");
+        command.addAll(List.of("--spring.sql.init.mode=always",
+                "--spring.sql.init.data-locations=file:" + seed.toAbsolutePath(),
+                "--spring.jpa.defer-datasource-initialization=true"));
+        runToExit(command, "database");
+    }
+    
+    /**
+     * Запуск с people.startup.exit-after-ready: приложение выходит само, как только стартовало
+     */
+    private static void runToExit(List<String> command, String name) throws Exception {
+        command.add("--people.startup.exit-after-ready=true");
+        Process process = start(command, name);
+        if (!process.waitFor(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            throw new IllegalStateException(name + " run did not finish in " + TIMEOUT);
+        }
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException(name + " run failed, see " + log(name));
+        }
+    }
+    
+    private static List<String> command(String profiles, String classpath, int port, String ddlAuto) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(JVM_ARGS.trim().split("\\s+")));
+        command.addAll(List.of("-cp", classpath, RestAppApplication.class.getName(),
+                "--spring.profiles.active=" + profiles,
+                "--server.port=" + port,
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:file:" + DIR.resolve("people").toAbsolutePath()
+                        + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+                "--spring.jpa.hibernate.ddl-auto=" + ddlAuto));
+        return command;
+    }
+    
+    private static Process start(List<String> command, String name) throws IOException {
+        return new ProcessBuilder(command).redirectErrorStream(true)
+                                          .redirectOutput(log(name).toFile())
+                                          .start();
+    }
+    
+    private static Path log(String name) {
+        return DIR.resolve(name + ".log");
+    }
+    
+    /**
+     * Jar из target/classes (плюс application-test.properties из target/test-classes)
+     * и все jar зависимостей из classpath этой программы
+     */
+    private static String classpath() throws IOException {
+        List<String> entries = Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator));
+        Path classes = Paths.get("target", "classes");
+        Path testProperties = Paths.get("target", "test-classes", "application-test.properties");
+        Path jar = DIR.resolve("app.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> files = Files.walk(classes)) {
+//            записи каталогов нужны сканированию компонентов (classpath*:ru/alexsem/...)
+            for (Path file : files.filter(file -> !file.equals(classes)).collect(Collectors.toList())) {
+                String name = classes.relativize(file).toString().replace(File.separatorChar, '/');
+                if (Files.isDirectory(file)) {
+                    out.putNextEntry(new JarEntry(name + "/"));
+                    out.closeEntry();
+                } else {
+                    add(out, name, file);
+                }
+            }
+            add(out, testProperties.getFileName().toString(), testProperties);
+        }
+        List<String> classpath = new ArrayList<>();
+        classpath.add(jar.toAbsolutePath().toString());
+        entries.stream().filter(entry -> entry.endsWith(".jar")).forEach(classpath::add);
+        return String.join(File.pathSeparator, classpath);
+    }
+    
+    private static void add(JarOutputStream out, String name, Path file) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        Files.copy(file, out);
+        out.closeEntry();
+    }
+    
+    private static long rssKb(long pid) throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc", String.valueOf(pid), "status"), StandardCharsets.UTF_8)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        }
+        return -1;
+    }
+    
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+    
+    private static class Sample {
+        private final long nanos;
+        private final long rssKb;
+    
+        Sample(long nanos, long rssKb) {
+            this.nanos = nanos;
+            this.rssKb = rssKb;
+        }
+    }
+    
+    private static class Mode {
+        private final String name;
+        private final String profiles;
+        private final Path archive;
+        private final List<Sample> samples = new ArrayList<>();
+    
+        Mode(String name, String profiles, boolean appCds) {
+            this.name = name;
+            this.profiles = profiles;
+            this.archive = appCds ? DIR.resolve(name + ".jsa").toAbsolutePath() : null;
+        }
+    
+        static Mode of(String name) {
+            switch (name) {
+                case "default":
+                    return new Mode(name, "test", false);
+                case "lazy":
+                    return new Mode(name, "test,fast-startup", false);
+                case "appcds":
+                    return new Mode(name, "test", true);
+                case "fast":
+                    return new Mode(name, "test,fast-startup", true);
+                default:
+                    throw new IllegalArgumentException("Unknown mode " + name);
+            }
+        }
+    
+        void record(Sample sample) {
+            samples.add(sample);
+        }
+    
+        String line() {
+            List<Long> millis = samples.stream()
+                                       .map(sample -> TimeUnit.NANOSECONDS.toMillis(sample.nanos))
+                                       .sorted()
+                                       .collect(Collectors.toList());
+            List<Long> rss = samples.stream().map(sample -> sample.rssKb).sorted().collect(Collectors.toList());
+            return String.format("%-8s %12d %12d %12d %10d", name, median(millis), millis.get(0),
+                    Collections.max(millis), median(rss) >> 10);
+        }
+    
+        private static long median(List<Long> sorted) {
+            return sorted.get(sorted.size() / 2);
+        }
+    }
+}
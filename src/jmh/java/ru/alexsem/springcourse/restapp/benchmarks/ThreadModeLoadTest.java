@@ -0,0 +1,204 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import ru.alexsem.springcourse.restapp.RestAppApplication;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Нагрузочное сравнение режимов обработки запросов: пул потоков Tomcat и виртуальные потоки
+ * (people.threads.virtual). Это не JMH-бенчмарк, а отдельная программа:
+ *
+ * mvn -Pbenchmark test-compile exec:exec@thread-modes -Dbenchmark.java=/path/to/jdk-21/bin/java
+ *
+ * Приложение поднимается на H2, к каждому соединению с БД добавляется задержка
+ * (медленная БД). Клиенты в закрытом цикле шлют запросы двух видов:
+ * - hot: GET /people/{id} - ответ из кэша, БД не нужна;
+ * - db: GET /people?after=... - каждый запрос держит соединение slowDbMs миллисекунд.
+ * С пулом потоков медленные запросы занимают все потоки Tomcat, и быстрые ждут вместе с ними.
+ * На виртуальных потоках ждут только запросы к БД (в ограничителе перед пулом соединений).
+ *
+ * Параметры (-D...): loadtest.clients (400), loadtest.dbShare в процентах (20),
+ * loadtest.slowDbMs (200), loadtest.warmupSeconds (5), loadtest.seconds (15), loadtest.modes (platform,virtual)
+ */
+public class ThreadModeLoadTest {
+    
+    private static final int ROWS = 10_000;
+    private static final int HOT_IDS = 100;
+    
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 400);
+    private static final int DB_SHARE = Integer.getInteger("loadtest.dbShare", 20);
+    private static final int SLOW_DB_MS = Integer.getInteger("loadtest.slowDbMs", 200);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmupSeconds", 5);
+    private static final int SECONDS = Integer.getInteger("loadtest.seconds", 15);
+    
+    public static void main(String[] args) throws Exception {
+        System.out.printf("java %s, %d clients, %d%% db requests, db latency %d ms%n",
+                System.getProperty("java.version"), CLIENTS, DB_SHARE, SLOW_DB_MS);
+        List<String> lines = new ArrayList<>();
+        for (String mode : System.getProperty("loadtest.modes", "platform,virtual").split(",")) {
+            lines.addAll(run(mode.trim()));
+        }
+        System.out.printf("%n%-9s %-4s %10s %9s %9s %9s %8s%n", "mode", "type", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+        lines.forEach(System.out::println);
+    }
+    
+    private static List<String> run(String mode) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(RestAppApplication.class, SlowDatabase.class)
+                .profiles("test")
+                .run("--server.port=0",
+                     "--logging.level.root=WARN",
+                     "--spring.jpa.properties.hibernate.generate_statistics=false",
+                     "--people.threads.virtual=" + mode.equals("virtual"),
+                     "--loadtest.slow-db-ms=" + SLOW_DB_MS);
+        try {
+            BenchmarkContext.seed(context, ROWS);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    
+            load(client, port, WARMUP_SECONDS);
+            Result[] results = load(client, port, SECONDS);
+            return List.of(results[0].line(mode, "hot"), results[1].line(mode, "db"));
+        } finally {
+            context.close();
+        }
+    }
+    
+    /**
+     * Каждый клиент отправляет следующий запрос сразу после ответа на предыдущий.
+     * Запросы асинхронные, поэтому клиенту не нужен поток на каждого пользователя
+     */
+    private static Result[] load(HttpClient client, int port, int seconds) throws InterruptedException {
+        Result hot = new Result();
+        Result db = new Result();
+        long start = System.nanoTime();
+        long deadline = start + Duration.ofSeconds(seconds).toNanos();
+        CountDownLatch done = new CountDownLatch(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            next(client, port, deadline, hot, db, done);
+        }
+        done.await();
+//        Последние запросы завершаются уже после deadline, поэтому делим на реальное время
+        long elapsed = System.nanoTime() - start;
+        hot.elapsedNanos = elapsed;
+        db.elapsedNanos = elapsed;
+        return new Result[]{hot, db};
+    }
+    
+    private static void next(HttpClient client, int port, long deadline, Result hot, Result db, CountDownLatch done) {
+        if (System.nanoTime() > deadline) {
+            done.countDown();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean toDb = random.nextInt(100) < DB_SHARE;
+        String path = toDb
+                ? "/people?limit=10&after=" + random.nextInt(ROWS)
+                : "/people/" + (1 + random.nextInt(HOT_IDS));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                                         .timeout(Duration.ofSeconds(30))
+                                         .build();
+        long start = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+              .whenComplete((response, error) -> {
+                  (toDb ? db : hot).record(System.nanoTime() - start, error == null && response.statusCode() == 200);
+                  next(client, port, deadline, hot, db, done);
+              });
+    }
+    
+    private static class Result {
+        private long elapsedNanos;
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        private final LongAdder errors = new LongAdder();
+    
+        void record(long nanos, boolean ok) {
+            if (ok) {
+                latencies.add(nanos);
+            } else {
+                errors.increment();
+            }
+        }
+    
+        String line(String mode, String type) {
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            return String.format("%-9s %-4s %10.0f %9.1f %9.1f %9.1f %8d", mode, type,
+                    sorted.size() * 1e9 / elapsedNanos, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    percentile(sorted, 1.0), errors.sum());
+        }
+    
+        private static double percentile(List<Long> sorted, double p) {
+            if (sorted.isEmpty()) {
+                return Double.NaN;
+            }
+            int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+            return sorted.get(Math.max(0, index)) / 1_000_000.0;
+        }
+    }
+    
+    /**
+     * Медленная БД: каждое соединение выдаётся с задержкой, уже будучи взятым из пула Hikari,
+     * то есть держит соединение (и поток, если он платформенный) как долгий запрос.
+     * PriorityOrdered - чтобы обёртка оказалась внутри ограничителя ConcurrencyLimitedDataSource.
+     * Класс без @Configuration, чтобы component scan приложения его не подхватывал.
+     */
+    static class SlowDatabase {
+    
+        @Bean
+        static SlowDataSourcePostProcessor slowDataSourcePostProcessor(@Value("${loadtest.slow-db-ms}") long delayMs) {
+            return new SlowDataSourcePostProcessor(delayMs);
+        }
+    }
+    
+    private static class SlowDataSourcePostProcessor implements BeanPostProcessor, PriorityOrdered {
+        private final long delayMs;
+    
+        SlowDataSourcePostProcessor(long delayMs) {
+            this.delayMs = delayMs;
+        }
+    
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource)) {
+                return bean;
+            }
+            return new DelegatingDataSource((DataSource) bean) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    Connection connection = super.getConnection();
+                    try {
+                        Thread.sleep(delayMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return connection;
+                }
+            };
+        }
+    
+        @Override
+        public int getOrder() {
+            return HIGHEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,594 @@
+package ru.alexsem.springcourse.restapp.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.alexsem.springcourse.restapp.RestAppApplication;
+import ru.alexsem.springcourse.restapp.services.EmailIndex;
+import ru.alexsem.springcourse.restapp.services.PeopleStats;
+import ru.alexsem.springcourse.restapp.services.PersonSuggestIndex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Воспроизводимая нагрузка на PeopleController смесью запросов, похожей на боевую. Отдельная программа:
+ *
+ * mvn -Pbenchmark test-compile exec:exec@workloads -Dloadtest.args="-Xmx3g -Dloadtest.people=2000000"
+ *
+ * Приложение поднимается во встроенной H2 в режиме PostgreSQL (профиль test), до открытия трафика
+ * в person заливается loadtest.people людей одним INSERT ... SELECT. С -Dloadtest.url=jdbc:postgresql://...
+ * то же самое идёт на настоящем PostgreSQL: схему создаёт Flyway, таблица перезаливается через generate_series.
+ * Замеры начинаются, когда фоновые индексы (EmailIndex, PersonSuggestIndex, PeopleStats) загрузили всю таблицу.
+ *
+ * Нагрузки (loadtest.workloads):
+ * - read - GET /people/{id}, id с распределением Ципфа (loadtest.skew): немного горячих людей и длинный хвост;
+ * - signup - всплески регистраций: в каждом блоке из period запросов первые burst - POST /people, остальные - чтение;
+ * - list - GET /people?after=...: страницы со случайного места таблицы;
+ * - mixed - чтение, списки, создание, PATCH и DELETE вперемешку.
+ * Запрос с номером i - чистая функция от нагрузки, loadtest.seed и i, поэтому при тех же параметрах
+ * приложение получает те же запросы. DELETE удаляет людей только из последних 10% id, чтение и PATCH
+ * идут в первые 90% - удаления не превращают чтение в 404.
+ * -Dloadtest.record=каталог записывает первые loadtest.recordCount запросов каждой нагрузки в файл
+ * (строка: "МЕТОД путь [json]"), а -Dloadtest.replay=файл гоняет по кругу запросы из такого файла -
+ * например, собранного из access-логов.
+ *
+ * По умолчанию loadtest.clients клиентов работают в закрытом цикле (следующий запрос после ответа
+ * на предыдущий). Задержка там считается от реальной отправки, и у неё есть ограничение (coordinated omission):
+ * пока сервер тормозит, клиенты ждут и не шлют новых запросов, так что время, которое запросы простояли бы
+ * в очереди, в перцентили не попадает, а хвост выглядит лучше, чем увидят пользователи. С -Dloadtest.rate=N
+ * нагрузка открытая: запрос i отправляется в момент start + i / N секунд, независимо от ответов, и задержка
+ * считается от этого запланированного момента - отставание самой отправки тоже входит в неё.
+ *
+ * Задержки копятся в HdrHistogram по каждому эндпоинту (путь с {id} вместо числа). Кроме таблицы в консоли
+ * результат пишется в loadtest.output (JSON): режим (loop, от чего считается задержка), req/s, перцентили,
+ * статусы и сжатая гистограмма в base64 (Histogram.decodeFromCompressedByteBuffer) - для сравнения прогонов в CI.
+ *
+ * Параметры (-D...): loadtest.people (1000000), loadtest.clients (64), loadtest.rate (0 - закрытый цикл),
+ * loadtest.warmupSeconds (10), loadtest.seconds (30), loadtest.workloads (read,signup,list,mixed),
+ * loadtest.seed (42), loadtest.skew (0.99), loadtest.pageSize (100), loadtest.burst (200), loadtest.period (1000),
+ * loadtest.mix (для нагрузки custom, например read:80,create:10,patch:10),
+ * loadtest.url, loadtest.username, loadtest.password, loadtest.output (target/loadtest-result.json),
+ * loadtest.record, loadtest.recordCount (100000), loadtest.replay
+ */
+public class WorkloadLoadTest {
+    
+    private static final int PEOPLE = Integer.getInteger("loadtest.people", 1_000_000);
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 64);
+    private static final int RATE = Integer.getInteger("loadtest.rate", 0);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmupSeconds", 10);
+    private static final int SECONDS = Integer.getInteger("loadtest.seconds", 30);
+    private static final long SEED = Long.getLong("loadtest.seed", 42);
+    private static final double SKEW = Double.parseDouble(System.getProperty("loadtest.skew", "0.99"));
+    private static final int PAGE_SIZE = Integer.getInteger("loadtest.pageSize", 100);
+    private static final int BURST = Integer.getInteger("loadtest.burst", 200);
+    private static final int PERIOD = Integer.getInteger("loadtest.period", 1000);
+    private static final String URL = System.getProperty("loadtest.url");
+    private static final Path OUTPUT = Paths.get(System.getProperty("loadtest.output", "target/loadtest-result.json"));
+    private static final String RECORD = System.getProperty("loadtest.record");
+    private static final int RECORD_COUNT = Integer.getInteger("loadtest.recordCount", 100_000);
+    private static final String REPLAY = System.getProperty("loadtest.replay");
+    private static final Duration INDEX_TIMEOUT = Duration.ofMinutes(10);
+    
+    /**
+     * Чтение и PATCH - по первым 90% id, DELETE - по остальным
+     */
+    private static final int HOT_RANGE = Math.max(1, PEOPLE - PEOPLE / 10);
+    
+    public static void main(String[] args) throws Exception {
+        System.out.printf("java %s, %s, %d people, %s, seed %d%n", System.getProperty("java.version"),
+                URL == null ? "H2" : URL, PEOPLE, RATE > 0 ? "open loop at " + RATE + " req/s" : CLIENTS + " clients",
+                SEED);
+        List<RequestSource> sources = new ArrayList<>();
+        if (REPLAY != null) {
+            sources.add(Replay.load(Paths.get(REPLAY)));
+        } else {
+            for (String name : System.getProperty("loadtest.workloads", "read,signup,list,mixed").split(",")) {
+                sources.add(Workload.of(name.trim()));
+            }
+        }
+        if (RECORD != null) {
+            for (RequestSource source : sources) {
+                record(source, Paths.get(RECORD).resolve(source.name() + ".txt"));
+            }
+        }
+    
+        ConfigurableApplicationContext context = start();
+        try {
+            awaitIndexes(context);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            List<Result> results = new ArrayList<>();
+            for (RequestSource source : sources) {
+                AtomicLong sequence = new AtomicLong();
+                load(client, port, source, sequence, WARMUP_SECONDS);
+                Result result = load(client, port, source, sequence, SECONDS);
+                results.add(result);
+                result.print();
+            }
+            write(results);
+        } finally {
+            context.close();
+        }
+    }
+    
+    /**
+     * Люди заливаются по ApplicationStartedEvent: схема уже создана, а фоновые загрузчики
+     * (EmailIndex, PersonSuggestIndex, PeopleStats) стартуют только после ApplicationReadyEvent
+     * и сразу видят всю таблицу, как после рестарта в бою
+     */
+    private static ConfigurableApplicationContext start() {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--spring.jpa.properties.hibernate.generate_statistics=false",
+                "--people.rate-limit.enabled=false",
+                "--people.load-shedding.enabled=false",
+                "--people.email-index.expected-insertions=" + Math.max(1_000_000, 2L * PEOPLE)));
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(RestAppApplication.class)
+                .listeners((ApplicationListener<ApplicationStartedEvent>) event -> seed(event.getApplicationContext()));
+        if (URL == null) {
+            builder.profiles("test");
+        } else {
+            args.add("--spring.datasource.url=" + URL);
+            args.add("--spring.datasource.username=" + System.getProperty("loadtest.username", "postgres"));
+            args.add("--spring.datasource.password=" + System.getProperty("loadtest.password", "postgres"));
+        }
+        return builder.run(args.toArray(new String[0]));
+    }
+    
+    private static void seed(ConfigurableApplicationContext context) {
+        long start = System.nanoTime();
+        if (URL == null) {
+            BenchmarkContext.seed(context, PEOPLE);
+        } else {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            jdbcTemplate.execute("TRUNCATE person");
+            jdbcTemplate.update("INSERT INTO person (id, name, age, email, email_domain, created_at, updated_at, created_who, version) " +
+                                "SELECT x, 'Person' || x, x % 100, 'person' || x || '@mail.ru', 'mail.ru', " +
+                                "now(), now(), 'Admin', 0 FROM generate_series(1, ?) AS x", PEOPLE);
+            jdbcTemplate.execute("SELECT setval('person_id_seq', " + (PEOPLE + 50) + ")");
+            jdbcTemplate.execute("ANALYZE person");
+        }
+        System.out.printf("seeded %d people in %d ms%n", PEOPLE,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    
+    /**
+     * Пока индексы загружаются, они делят с запросами процессор и БД - замеры были бы не воспроизводимы
+     */
+    private static void awaitIndexes(ConfigurableApplicationContext context) throws InterruptedException {
+        long start = System.nanoTime();
+        List<BooleanSupplier> indexes = List.of(context.getBean(EmailIndex.class)::isReady,
+                context.getBean(PersonSuggestIndex.class)::isReady, context.getBean(PeopleStats.class)::isReady);
+        long deadline = start + INDEX_TIMEOUT.toNanos();
+        while (!indexes.stream().allMatch(BooleanSupplier::getAsBoolean)) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Background indexes were not loaded in " + INDEX_TIMEOUT);
+            }
+            Thread.sleep(100);
+        }
+        System.out.printf("indexes loaded in %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    
+    private static Result load(HttpClient client, int port, RequestSource source, AtomicLong sequence, int seconds)
+            throws InterruptedException {
+        if (RATE > 0) {
+            return loadAtRate(client, port, source, sequence, seconds);
+        }
+        Result result = new Result(source.name());
+        long start = System.nanoTime();
+        long deadline = start + Duration.ofSeconds(seconds).toNanos();
+        CountDownLatch done = new CountDownLatch(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            next(client, port, source, sequence, deadline, result, done);
+        }
+        done.await();
+//        последние запросы завершаются уже после deadline, поэтому делим на реальное время
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+    
+    /**
+     * Открытая нагрузка: запросы уходят по расписанию, не дожидаясь ответов на предыдущие
+     */
+    private static Result loadAtRate(HttpClient client, int port, RequestSource source, AtomicLong sequence,
+                                     int seconds) throws InterruptedException {
+        Result result = new Result(source.name());
+        int count = Math.toIntExact((long) RATE * seconds);
+        CountDownLatch done = new CountDownLatch(count);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long intended = start + i * 1_000_000_000L / RATE;
+            long delay = intended - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            send(client, port, source.request(sequence.getAndIncrement()), intended, result, done::countDown);
+        }
+        done.await();
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+    
+    private static void next(HttpClient client, int port, RequestSource source, AtomicLong sequence, long deadline,
+                             Result result, CountDownLatch done) {
+        if (System.nanoTime() > deadline) {
+            done.countDown();
+            return;
+        }
+        send(client, port, source.request(sequence.getAndIncrement()), System.nanoTime(), result,
+                () -> next(client, port, source, sequence, deadline, result, done));
+    }
+    
+    /**
+     * @param start момент, от которого считается задержка: реальная отправка или запланированная
+     */
+    private static void send(HttpClient client, int port, Request request, long start, Result result,
+                             Runnable then) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + port + request.path))
+                                                 .timeout(Duration.ofSeconds(30));
+        if (request.body == null) {
+            builder.method(request.method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            builder.header("Content-Type", "application/json")
+                   .method(request.method, HttpRequest.BodyPublishers.ofString(request.body));
+        }
+        client.sendAsync(builder.build(), HttpResponse.BodyHandlers.discarding())
+              .whenComplete((response, error) -> {
+                  int status = error == null ? response.statusCode() : 0;
+                  result.record(request.endpoint(), System.nanoTime() - start, status);
+                  then.run();
+              });
+    }
+    
+    private static void record(RequestSource source, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < RECORD_COUNT; i++) {
+                writer.write(source.request(i).line());
+                writer.newLine();
+            }
+        }
+        System.out.printf("%s: %d requests recorded to %s%n", source.name(), RECORD_COUNT, file);
+    }
+    
+    private static void write(List<Result> results) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("timestamp", Instant.now().toString());
+        json.put("java", System.getProperty("java.version"));
+        json.put("database", URL == null ? "h2" : URL);
+        json.put("people", PEOPLE);
+        if (RATE > 0) {
+            json.put("loop", "open");
+            json.put("rate", RATE);
+            json.put("latencyFrom", "intended send time");
+        } else {
+            json.put("loop", "closed");
+            json.put("clients", CLIENTS);
+            json.put("latencyFrom", "actual send time, excludes queueing behind slow responses (coordinated omission)");
+        }
+        json.put("seconds", SECONDS);
+        json.put("seed", SEED);
+        json.put("skew", SKEW);
+        List<Object> workloads = new ArrayList<>();
+        for (Result result : results) {
+            workloads.add(result.json());
+        }
+        json.put("workloads", workloads);
+        if (OUTPUT.getParent() != null) {
+            Files.createDirectories(OUTPUT.getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(OUTPUT.toFile(), json);
+        System.out.printf("%nresults written to %s%n", OUTPUT);
+    }
+    
+    private static final class Request {
+        private final String method;
+        private final String path;
+        private final String body;
+    
+        Request(String method, String path, String body) {
+            this.method = method;
+            this.path = path;
+            this.body = body;
+        }
+    
+        /**
+         * Эндпоинт для гистограммы: числа в пути заменяются на {id}, параметры отбрасываются
+         */
+        String endpoint() {
+            int query = path.indexOf('?');
+            return method + " " + (query < 0 ? path : path.substring(0, query)).replaceAll("/\\d+", "/{id}");
+        }
+    
+        String line() {
+            return body == null ? method + " " + path : method + " " + path + " " + body;
+        }
+    
+        static Request parse(String line) {
+            String[] parts = line.trim().split(" ", 3);
+            return new Request(parts[0], parts[1], parts.length > 2 ? parts[2] : null);
+        }
+    }
+    
+    private interface RequestSource {
+    
+        String name();
+    
+        Request request(long index);
+    }
+    
+    private enum Operation {
+        READ, LIST, CREATE, PATCH, DELETE
+    }
+    
+    /**
+     * Нагрузка - веса операций (в порядке Operation) и, для signup, всплески создания
+     */
+    private static final class Workload implements RequestSource {
+        private final String name;
+        private final int[] weights;
+        private final int total;
+        private final int burst;
+    
+        private Workload(String name, int[] weights, int burst) {
+            this.name = name;
+            this.weights = weights;
+            this.total = Arrays.stream(weights).sum();
+            this.burst = burst;
+            if (total <= 0) {
+                throw new IllegalArgumentException("Workload " + name + " has no operations");
+            }
+        }
+    
+        static Workload of(String name) {
+            switch (name) {
+                case "read":
+                    return new Workload(name, new int[]{100, 0, 0, 0, 0}, 0);
+                case "signup":
+                    return new Workload(name, new int[]{100, 0, 0, 0, 0}, BURST);
+                case "list":
+                    return new Workload(name, new int[]{0, 100, 0, 0, 0}, 0);
+                case "mixed":
+                    return new Workload(name, new int[]{70, 5, 10, 10, 5}, 0);
+                case "custom":
+                    return custom(System.getProperty("loadtest.mix", "read:100"));
+                default:
+                    throw new IllegalArgumentException("Unknown workload " + name);
+            }
+        }
+    
+        private static Workload custom(String mix) {
+            int[] weights = new int[Operation.values().length];
+            for (String part : mix.split(",")) {
+                String[] pair = part.trim().split(":");
+                weights[Operation.valueOf(pair[0].toUpperCase()).ordinal()] = Integer.parseInt(pair[1]);
+            }
+            return new Workload("custom", weights, 0);
+        }
+    
+        @Override
+        public String name() {
+            return name;
+        }
+    
+        @Override
+        public Request request(long index) {
+            long random = mix(SEED ^ mix(index + name.hashCode()));
+            long parameter = mix(random);
+            switch (operation(index, random)) {
+                case READ:
+                    return new Request("GET", "/people/" + skewedId(parameter), null);
+                case LIST:
+                    return new Request("GET", "/people?after=" + Math.floorMod(parameter, PEOPLE)
+                            + "&limit=" + PAGE_SIZE, null);
+                case CREATE:
+                    return new Request("POST", "/people", "{\"name\":\"Signup\",\"age\":"
+                            + (18 + Math.floorMod(parameter, 60)) + ",\"email\":\"" + name + "-" + index + "@load.test\"}");
+                case PATCH:
+                    return new Request("PATCH", "/people/" + skewedId(parameter),
+                            "{\"age\":" + Math.floorMod(parameter >>> 32, 100) + "}");
+                default:
+                    long tail = Math.max(1, PEOPLE - HOT_RANGE);
+                    return new Request("DELETE", "/people/" + (HOT_RANGE + 1 + index % tail), null);
+            }
+        }
+    
+        private Operation operation(long index, long random) {
+            if (burst > 0 && index % PERIOD < burst) {
+                return Operation.CREATE;
+            }
+            int point = (int) Math.floorMod(random, (long) total);
+            for (Operation operation : Operation.values()) {
+                point -= weights[operation.ordinal()];
+                if (point < 0) {
+                    return operation;
+                }
+            }
+            throw new IllegalStateException();
+        }
+    
+        /**
+         * Ранг по закону Ципфа (обратная функция непрерывного степенного распределения на [1, HOT_RANGE]),
+         * ранги раскидываются по id умножением на простое число по модулю - горячие люди не подряд
+         */
+        private static int skewedId(long random) {
+            double u = (random >>> 11) * 0x1.0p-53;
+            double rank;
+            if (Math.abs(1 - SKEW) < 1e-9) {
+                rank = Math.exp(u * Math.log(HOT_RANGE + 1.0));
+            } else {
+                double a = 1 - SKEW;
+                rank = Math.pow((Math.pow(HOT_RANGE + 1.0, a) - 1) * u + 1, 1 / a);
+            }
+            long position = Math.min(HOT_RANGE, Math.max(1, (long) rank)) - 1;
+            return (int) (1 + position * 1_000_003L % HOT_RANGE);
+        }
+    
+        /**
+         * Финальное перемешивание SplitMix64
+         */
+        private static long mix(long value) {
+            long z = value + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+    
+    private static final class Replay implements RequestSource {
+        private final String name;
+        private final List<Request> requests;
+    
+        private Replay(String name, List<Request> requests) {
+            this.name = name;
+            this.requests = requests;
+        }
+    
+        static Replay load(Path file) throws IOException {
+            List<Request> requests = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    requests.add(Request.parse(line));
+                }
+            }
+            if (requests.isEmpty()) {
+                throw new IllegalArgumentException("No requests in " + file);
+            }
+            String name = file.getFileName().toString().replaceFirst("\\.txt$", "");
+            return new Replay(name, requests);
+        }
+    
+        @Override
+        public String name() {
+            return name;
+        }
+    
+        @Override
+        public Request request(long index) {
+            return requests.get((int) (index % requests.size()));
+        }
+    }
+    
+    private static final class Result {
+        private final String workload;
+        private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+        private long elapsedNanos;
+    
+        Result(String workload) {
+            this.workload = workload;
+        }
+    
+        void record(String endpoint, long nanos, int status) {
+            endpoints.computeIfAbsent(endpoint, key -> new Endpoint()).record(nanos, status);
+        }
+    
+        void print() {
+            System.out.printf("%n%-8s %-22s %9s %9s %9s %9s %9s %9s %8s %8s%n", workload, "endpoint", "req/s",
+                    "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "non-2xx", "errors");
+            new TreeMap<>(endpoints).forEach((name, endpoint) -> {
+                Histogram histogram = endpoint.histogram;
+                System.out.printf("%-8s %-22s %9.0f %9.2f %9.2f %9.2f %9.2f %9.2f %8d %8d%n", "", name,
+                        histogram.getTotalCount() * 1e9 / elapsedNanos, millis(histogram, 50), millis(histogram, 90),
+                        millis(histogram, 99), millis(histogram, 99.9), histogram.getMaxValue() / 1000.0,
+                        endpoint.non2xx(), endpoint.errors.sum());
+            });
+        }
+    
+        Map<String, Object> json() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("workload", workload);
+            json.put("elapsedSeconds", elapsedNanos / 1e9);
+            long total = endpoints.values().stream().mapToLong(endpoint -> endpoint.histogram.getTotalCount()).sum();
+            json.put("throughput", total * 1e9 / elapsedNanos);
+            Map<String, Object> byEndpoint = new LinkedHashMap<>();
+            new TreeMap<>(endpoints).forEach((name, endpoint) -> byEndpoint.put(name, endpoint.json(elapsedNanos)));
+            json.put("endpoints", byEndpoint);
+            return json;
+        }
+    
+        private static double millis(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+    
+    /**
+     * Задержки в микросекундах, все ответы (и 4xx/5xx тоже) - ответ с ошибкой стоит серверу времени так же
+     */
+    private static final class Endpoint {
+        private final Histogram histogram = new ConcurrentHistogram(3);
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder errors = new LongAdder();
+    
+        void record(long nanos, int status) {
+            if (status == 0) {
+                errors.increment();
+                return;
+            }
+            histogram.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+    
+        long non2xx() {
+            return statuses.entrySet().stream()
+                           .filter(entry -> entry.getKey() < 200 || entry.getKey() >= 300)
+                           .mapToLong(entry -> entry.getValue().sum())
+                           .sum();
+        }
+    
+        Map<String, Object> json(long elapsedNanos) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("count", histogram.getTotalCount());
+            json.put("throughput", histogram.getTotalCount() * 1e9 / elapsedNanos);
+            Map<String, Object> latency = new LinkedHashMap<>();
+            for (double percentile : new double[]{50, 90, 99, 99.9}) {
+                latency.put("p" + (percentile % 1 == 0 ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                        histogram.getValueAtPercentile(percentile) / 1000.0);
+            }
+            latency.put("max", histogram.getMaxValue() / 1000.0);
+            latency.put("mean", histogram.getMean() / 1000.0);
+            json.put("latencyMs", latency);
+            Map<String, Long> byStatus = new TreeMap<>();
+            statuses.forEach((status, count) -> byStatus.put(String.valueOf(status), count.sum()));
+            json.put("statuses", byStatus);
+            json.put("errors", errors.sum());
+            ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+            int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+            json.put("histogram", Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length)));
+            return json;
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package ru.alexsem.springcourse.restapp;
 
-import org.modelmapper.ModelMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import ru.alexsem.springcourse.restapp.util.JsonFragmentsHttpMessageConverter;
+import ru.alexsem.springcourse.restapp.util.PeopleMetrics;
+import ru.alexsem.springcourse.restapp.util.TimedJsonHttpMessageConverter;
 
 /**
  * By default @Autowired searches by type.
@@ -24,13 +29,31 @@ import org.springframework.context.annotation.Bean;
 //@Configuration
 //@ComponentScan("ru.alexsem.springcourse")
 //итд
+//Кэширование оборачивает транзакцию снаружи: попадание в кэш не открывает транзакцию,
+//а @CacheEvict срабатывает уже после коммита (иначе параллельное чтение могло бы
+//положить в кэш старые данные между вытеснением и коммитом)
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
 public class RestAppApplication {
     
     public static void main(String[] args) {
         SpringApplication.run(RestAppApplication.class, args);
     }
+    
+    /**
+     * Заменяет стандартный Jackson-конвертер: сериализация ответов в JSON
+     * замеряется в метрике people.stage (stage=serialization)
+     */
+    @Bean
+    public TimedJsonHttpMessageConverter timedJsonHttpMessageConverter(ObjectMapper objectMapper,
+                                                                       PeopleMetrics peopleMetrics) {
+        return new TimedJsonHttpMessageConverter(objectMapper, peopleMetrics.serialization());
+    }
+    
+    /**
+     * Отдаёт готовый JSON из PersonJsonCache (JsonFragments) без Jackson
+     */
     @Bean
-    public ModelMapper modelMapper() {
-        return new ModelMapper();
+    public JsonFragmentsHttpMessageConverter jsonFragmentsHttpMessageConverter(PeopleMetrics peopleMetrics) {
+        return new JsonFragmentsHttpMessageConverter(peopleMetrics.serialization());
     }
 }
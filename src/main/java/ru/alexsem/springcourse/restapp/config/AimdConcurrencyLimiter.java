@@ -0,0 +1,80 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Адаптивный предел одновременных запросов (AIMD - additive increase, multiplicative decrease,
+ * как окно перегрузки в TCP).
+ *
+ * Запрос, выполнявшийся дольше latency-threshold или завершившийся ошибкой 5xx, означает
+ * перегрузку: предел умножается на BACKOFF. Иначе предел растёт на 1 / limit, то есть
+ * примерно на единицу за каждые limit успешных запросов. Пока хотя бы половина предела
+ * не занята, предел не растёт - без нагрузки он ничего не говорит о пропускной способности.
+ * Запросы сверх предела сразу получают отказ, а не ждут в очереди.
+ */
+class AimdConcurrencyLimiter {
+    
+    private static final double BACKOFF = 0.9;
+    
+    private final double minLimit;
+    private final double maxLimit;
+    private final long latencyThresholdNanos;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+//    double в виде битов long, чтобы обновлять его compareAndSet
+    private final AtomicLong limitBits;
+    
+    AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+    }
+    
+    /**
+     * @return false - предел достигнут, запрос нужно отклонить
+     */
+    boolean tryAcquire() {
+        int limit = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * @param latencyNanos сколько выполнялся запрос
+     * @param failed       ответ 5xx
+     */
+    void release(long latencyNanos, boolean failed) {
+        int current = inFlight.getAndDecrement();
+        boolean overloaded = failed || latencyNanos > latencyThresholdNanos;
+        long bits;
+        double next;
+        do {
+            bits = limitBits.get();
+            double limit = Double.longBitsToDouble(bits);
+            if (overloaded) {
+                next = Math.max(minLimit, limit * BACKOFF);
+            } else if (current * 2 >= limit) {
+                next = Math.min(maxLimit, limit + 1 / limit);
+            } else {
+                return;
+            }
+        } while (!limitBits.compareAndSet(bits, Double.doubleToLongBits(next)));
+    }
+    
+    int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+    
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
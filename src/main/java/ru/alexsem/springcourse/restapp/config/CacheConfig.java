@@ -0,0 +1,40 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+
+/**
+ * CaffeineCacheManager вместо автоконфигурации Spring Boot: те же настройки
+ * (spring.cache.cache-names, spring.cache.caffeine.spec), но кэши - CoalescingCaffeineCache.
+ *
+ * При spring.cache.type=none бин не создаётся, и Boot подключает NoOpCacheManager как раньше.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "spring.cache.type", havingValue = "caffeine")
+public class CacheConfig {
+    
+    @Bean
+    public CaffeineCacheManager cacheManager(@Value("${spring.cache.caffeine.spec:}") String spec,
+                                             @Value("${spring.cache.cache-names:}") List<String> cacheNames) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+            @Override
+            protected Cache adaptCaffeineCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+                return new CoalescingCaffeineCache(name, cache, isAllowNullValues());
+            }
+        };
+        if (StringUtils.hasText(spec)) {
+            cacheManager.setCacheSpecification(spec);
+        }
+        if (!cacheNames.isEmpty()) {
+            cacheManager.setCacheNames(cacheNames);
+        }
+        return cacheManager;
+    }
+}
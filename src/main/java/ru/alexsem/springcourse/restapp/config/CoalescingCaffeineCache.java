@@ -0,0 +1,96 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * CaffeineCache, у которого @Cacheable(sync = true) загружает значение вне блокировок.
+ *
+ * Обычный CaffeineCache вызывает загрузку внутри ConcurrentHashMap.compute, то есть в synchronized.
+ * Виртуальный поток в synchronized закрепляется за потоком-носителем и не отпускает его,
+ * пока идёт запрос в БД (а до этого - ожидание соединения в ConcurrencyLimitedDataSource).
+ * Когда таких загрузок больше, чем потоков-носителей (по числу ядер), встаёт всё приложение.
+ *
+ * Здесь одновременные загрузки одного ключа по-прежнему объединяются: первый поток загружает,
+ * остальные ждут его CompletableFuture (ожидание без synchronized).
+ * Если во время загрузки ключ вытеснили (@CacheEvict после коммита), загруженное значение
+ * могло устареть - оно возвращается вызывающему, но в кэш не кладётся.
+ * Проверка и запись в кэш идут одним compute (publish), иначе evict между ними
+ * ничего бы не удалил, и устаревшее значение пролежало бы в кэше весь TTL.
+ */
+public class CoalescingCaffeineCache extends CaffeineCache {
+    
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    
+    public CoalescingCaffeineCache(String name, Cache<Object, Object> cache, boolean allowNullValues) {
+        super(name, cache, allowNullValues);
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            try {
+                return (T) fromStoreValue(inFlight.join());
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try {
+            T value = valueLoader.call();
+            publish(key, future, value);
+            future.complete(toStoreValue(value));
+            return value;
+        } catch (Throwable e) {
+            loading.remove(key, future);
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+    
+    /**
+     * Положить загруженное значение, только если загрузку не отменил evict.
+     * evict сначала убирает ключ из loading, потом из кэша - и ждёт, пока закончится этот compute:
+     * либо evict успел раньше и значение не кладётся, либо он удалит уже положенное
+     */
+    void publish(Object key, CompletableFuture<Object> future, Object value) {
+        Object storeValue = toStoreValue(value);
+        getNativeCache().asMap().compute(key, (k, current) -> loading.remove(key, future) ? storeValue : current);
+    }
+    
+    @Override
+    public void evict(Object key) {
+        loading.remove(key);
+        super.evict(key);
+    }
+    
+    @Override
+    public boolean evictIfPresent(Object key) {
+        loading.remove(key);
+        return super.evictIfPresent(key);
+    }
+    
+    @Override
+    public void clear() {
+        loading.clear();
+        super.clear();
+    }
+    
+    @Override
+    public boolean invalidate() {
+        loading.clear();
+        return super.invalidate();
+    }
+}
@@ -0,0 +1,24 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
+import org.springframework.boot.sql.init.AbstractScriptDatabaseInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Бины, которые создаются при старте и при spring.main.lazy-initialization=true (профиль fast-startup).
+ *
+ * Миграции Flyway и SQL-скрипты spring.sql.init никто не запрашивает явно: ленивыми они выполнились бы
+ * только вместе с первым обращением к EntityManagerFactory, а с spring.jpa.defer-datasource-initialization
+ * скрипты не выполнились бы вовсе. Ошибка миграции должна остановить старт, а не первый запрос.
+ */
+@Configuration(proxyBeanMethods = false)
+public class LazyInitializationConfig {
+    
+    @Bean
+    public static LazyInitializationExcludeFilter databaseInitializersEager() {
+        return LazyInitializationExcludeFilter.forBeanTypes(FlywayMigrationInitializer.class,
+                AbstractScriptDatabaseInitializer.class);
+    }
+}
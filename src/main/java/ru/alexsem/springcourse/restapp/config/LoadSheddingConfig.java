@@ -0,0 +1,55 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Rate limit и load shedding перед PeopleController (см LoadSheddingFilter).
+ *
+ * Настройки по умолчанию заданы в LoadSheddingFilter.Endpoint, каждую можно переопределить:
+ * people.rate-limit.{endpoint}.rate и .burst, people.load-shedding.{endpoint}.max-concurrency
+ * и .latency-threshold, где endpoint - read, write, list, search, suggest, export, batch,
+ * changes.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("!reactive")
+public class LoadSheddingConfig {
+    
+    @Bean
+    public FilterRegistrationBean<LoadSheddingFilter> loadSheddingFilter(
+            Environment environment, MeterRegistry registry,
+            @Value("${people.rate-limit.enabled:true}") boolean rateLimitEnabled,
+            @Value("${people.load-shedding.enabled:true}") boolean loadSheddingEnabled,
+            @Value("${people.rate-limit.client-header:}") String clientHeader,
+            @Value("${people.rate-limit.idle-timeout:10m}") Duration idleTimeout) {
+        Map<LoadSheddingFilter.Endpoint, LoadSheddingFilter.Limits> limits =
+                new EnumMap<>(LoadSheddingFilter.Endpoint.class);
+        for (LoadSheddingFilter.Endpoint endpoint : LoadSheddingFilter.Endpoint.values()) {
+            String rateLimit = "people.rate-limit." + endpoint.key();
+            String loadShedding = "people.load-shedding." + endpoint.key();
+            limits.put(endpoint, new LoadSheddingFilter.Limits(
+                    environment.getProperty(rateLimit + ".rate", Double.class, endpoint.rate),
+                    environment.getProperty(rateLimit + ".burst", Integer.class, endpoint.burst),
+                    environment.getProperty(loadShedding + ".max-concurrency", Integer.class, endpoint.maxConcurrency),
+                    environment.getProperty(loadShedding + ".latency-threshold", Duration.class,
+                            Duration.ofMillis(endpoint.latencyThresholdMillis))));
+        }
+    
+        FilterRegistrationBean<LoadSheddingFilter> registration = new FilterRegistrationBean<>(new LoadSheddingFilter(
+                rateLimitEnabled, loadSheddingEnabled, clientHeader, idleTimeout, limits, registry));
+        registration.addUrlPatterns("/people", "/people/*");
+//        раньше остальных фильтров приложения: отказ не должен стоить ничего, кроме записи ответа
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
@@ -0,0 +1,299 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.alexsem.springcourse.restapp.util.ErrorBody;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Защита PeopleController от перегрузки. Фильтр стоит перед DispatcherServlet,
+ * поэтому отклонённый запрос не доходит ни до БД, ни до Jackson, ни до маппинга.
+ *
+ * 1) Rate limit (429 Too Many Requests): у каждого клиента своё ведро токенов (TokenBucket)
+ * на каждую группу эндпоинтов (Endpoint). Клиент, который заваливает GET /people,
+ * не мешает ни другим клиентам, ни своим же GET /people/{id}. Клиент - адрес запроса
+ * или значение заголовка people.rate-limit.client-header. Вёдра неактивных клиентов
+ * удаляются из кэша через idle-timeout.
+ *
+ * 2) Load shedding (503 Service Unavailable): для дорогих эндпоинтов (LIST, SEARCH,
+ * BATCH, IMPORT, EXPORT) число одновременных запросов от всех клиентов ограничено
+ * AimdConcurrencyLimiter. Предел сам уменьшается, когда ответы становятся медленнее
+ * latency-threshold, и растёт обратно, когда БД справляется. Отклонённому так запросу
+ * токен из ведра возвращается: клиент не платит за запрос, который не выполнялся.
+ *
+ * Тело отказа - готовый ErrorBody, без Jackson.
+ *
+ * Метрики: people.requests.rejected (теги reason, endpoint), people.concurrency.limit
+ * и people.concurrency.in-flight (тег endpoint).
+ */
+public class LoadSheddingFilter extends OncePerRequestFilter {
+    
+    private static final ErrorBody TOO_MANY_REQUESTS = ErrorBody.of("Too many requests, slow down");
+    private static final ErrorBody OVERLOADED = ErrorBody.of("Service is overloaded, try again later");
+    
+    /**
+     * Группы эндпоинтов и настройки по умолчанию: запросов в секунду и размер ведра
+     * на одного клиента, предел одновременных запросов (0 - без предела) и порог задержки
+     * для его уменьшения (0 - предел постоянный)
+     */
+    public enum Endpoint {
+        READ(200, 400, 0, 0),
+        WRITE(50, 100, 0, 0),
+        LIST(5, 10, 20, 500),
+        SEARCH(20, 40, 20, 500),
+//        подсказки запрашиваются на каждое нажатие клавиши, но отвечает индекс в памяти
+        SUGGEST(50, 100, 0, 0),
+        EXPORT(0.2, 1, 2, 0),
+        BATCH(5, 10, 8, 5000),
+//        импорт файла может идти минутами - постоянный предел, а не по задержке
+        IMPORT(0.1, 1, 2, 0),
+        CHANGES(20, 40, 0, 0);
+    
+        final double rate;
+        final int burst;
+        final int maxConcurrency;
+        final long latencyThresholdMillis;
+    
+        Endpoint(double rate, int burst, int maxConcurrency, long latencyThresholdMillis) {
+            this.rate = rate;
+            this.burst = burst;
+            this.maxConcurrency = maxConcurrency;
+            this.latencyThresholdMillis = latencyThresholdMillis;
+        }
+    
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    
+        /**
+         * @param method
+         * @param path   путь без context path
+         * @return null - запрос не к /people, не ограничивается
+         */
+        static Endpoint of(String method, String path) {
+            if (!path.startsWith("/people")) {
+                return null;
+            }
+            String rest = path.substring("/people".length());
+            boolean read = "GET".equals(method) || "HEAD".equals(method);
+            if (rest.isEmpty() || rest.equals("/")) {
+                return read ? LIST : WRITE;
+            }
+            if (rest.charAt(0) != '/') {
+                return null;
+            }
+            if (rest.startsWith("/batch")) {
+                return BATCH;
+            }
+            if (rest.startsWith("/import")) {
+                return IMPORT;
+            }
+            if (rest.startsWith("/export")) {
+                return EXPORT;
+            }
+            if (rest.startsWith("/search")) {
+                return SEARCH;
+            }
+            if (rest.startsWith("/suggest")) {
+                return SUGGEST;
+            }
+            if (rest.startsWith("/changes")) {
+                return CHANGES;
+            }
+            return read ? READ : WRITE;
+        }
+    }
+    
+    /**
+     * Настройки одной группы эндпоинтов
+     */
+    public static class Limits {
+        private final double rate;
+        private final int burst;
+        private final int maxConcurrency;
+        private final Duration latencyThreshold;
+    
+        public Limits(double rate, int burst, int maxConcurrency, Duration latencyThreshold) {
+            this.rate = rate;
+            this.burst = burst;
+            this.maxConcurrency = maxConcurrency;
+            this.latencyThreshold = latencyThreshold;
+        }
+    }
+    
+    private final boolean rateLimitEnabled;
+    private final String clientHeader;
+    private final Map<Endpoint, Limits> limits;
+    private final Cache<String, TokenBucket> buckets;
+    private final Map<Endpoint, AimdConcurrencyLimiter> limiters = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Counter> rateLimited = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Counter> shed = new EnumMap<>(Endpoint.class);
+    
+    /**
+     * @param rateLimitEnabled    включить 429 по ведру токенов
+     * @param loadSheddingEnabled включить 503 по пределу одновременных запросов
+     * @param clientHeader        заголовок с id клиента (пусто - адрес запроса)
+     * @param idleTimeout         через сколько удалять ведро клиента без запросов
+     * @param limits              настройки всех групп эндпоинтов
+     * @param registry
+     */
+    public LoadSheddingFilter(boolean rateLimitEnabled, boolean loadSheddingEnabled, String clientHeader,
+                              Duration idleTimeout, Map<Endpoint, Limits> limits, MeterRegistry registry) {
+        this.rateLimitEnabled = rateLimitEnabled;
+        this.clientHeader = clientHeader;
+        this.limits = new EnumMap<>(limits);
+        this.buckets = Caffeine.newBuilder().expireAfterAccess(idleTimeout).build();
+        for (Endpoint endpoint : Endpoint.values()) {
+            Limits endpointLimits = limits.get(endpoint);
+            if (loadSheddingEnabled && endpointLimits.maxConcurrency > 0) {
+                long threshold = endpointLimits.latencyThreshold.isZero()
+                                 ? Long.MAX_VALUE : endpointLimits.latencyThreshold.toNanos();
+                AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(endpointLimits.maxConcurrency, 1,
+                        endpointLimits.maxConcurrency, threshold);
+                limiters.put(endpoint, limiter);
+                Gauge.builder("people.concurrency.limit", limiter, AimdConcurrencyLimiter::getLimit)
+                     .description("Current adaptive limit of concurrent requests")
+                     .tag("endpoint", endpoint.key())
+                     .register(registry);
+                Gauge.builder("people.concurrency.in-flight", limiter, AimdConcurrencyLimiter::getInFlight)
+                     .description("Requests being processed under the concurrency limit")
+                     .tag("endpoint", endpoint.key())
+                     .register(registry);
+            }
+            rateLimited.put(endpoint, rejectedCounter(registry, "rate_limit", endpoint));
+            shed.put(endpoint, rejectedCounter(registry, "concurrency", endpoint));
+        }
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Endpoint endpoint = Endpoint.of(request.getMethod(),
+                request.getRequestURI().substring(request.getContextPath().length()));
+        if (endpoint == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+    
+        long now = System.nanoTime();
+        TokenBucket bucket = null;
+        if (rateLimitEnabled) {
+            Limits endpointLimits = limits.get(endpoint);
+            bucket = buckets.get(client(request) + ' ' + endpoint.key(),
+                    key -> new TokenBucket(endpointLimits.rate, endpointLimits.burst, now));
+            long waitNanos = bucket.tryAcquire(1, now);
+            if (waitNanos > 0) {
+                rateLimited.get(endpoint).increment();
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1,
+                        TOO_MANY_REQUESTS);
+                return;
+            }
+        }
+    
+        AimdConcurrencyLimiter limiter = limiters.get(endpoint);
+        if (limiter == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!limiter.tryAcquire()) {
+//            запрос не выполнялся - клиент не должен платить за него токеном
+            if (bucket != null) {
+                bucket.refund(1, now);
+            }
+            shed.get(endpoint).increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, OVERLOADED);
+            return;
+        }
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+//                выгрузка и long-poll заканчиваются позже, уже в другом потоке
+                request.getAsyncContext().addListener(new ReleaseOnComplete(limiter, now, response));
+            } else {
+                limiter.release(System.nanoTime() - now, failed || response.getStatus() >= 500);
+            }
+        }
+    }
+    
+    private String client(HttpServletRequest request) {
+        if (!clientHeader.isEmpty()) {
+            String client = request.getHeader(clientHeader);
+            if (client != null) {
+                return client;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+    
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds,
+                               ErrorBody errorBody) throws IOException {
+        byte[] body = errorBody.render(System.currentTimeMillis());
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+    
+    private static Counter rejectedCounter(MeterRegistry registry, String reason, Endpoint endpoint) {
+        return Counter.builder("people.requests.rejected")
+                      .description("Requests rejected before reaching the controller")
+                      .tag("reason", reason)
+                      .tag("endpoint", endpoint.key())
+                      .register(registry);
+    }
+    
+    /**
+     * onComplete вызывается и после ошибки, и после таймаута, поэтому освобождаем только здесь
+     */
+    private static class ReleaseOnComplete implements AsyncListener {
+        private final AimdConcurrencyLimiter limiter;
+        private final long start;
+        private final HttpServletResponse response;
+    
+        ReleaseOnComplete(AimdConcurrencyLimiter limiter, long start, HttpServletResponse response) {
+            this.limiter = limiter;
+            this.start = start;
+            this.response = response;
+        }
+    
+        @Override
+        public void onComplete(AsyncEvent event) {
+            limiter.release(System.nanoTime() - start, response.getStatus() >= 500);
+        }
+    
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+    
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+    
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
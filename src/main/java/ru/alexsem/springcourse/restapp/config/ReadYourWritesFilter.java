@@ -0,0 +1,69 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Read-your-writes для клиента при чтении с реплик.
+ *
+ * Когда запрос что-то записал, в ответ ставится cookie people-last-write со временем записи.
+ * Пока с этого момента не прошло maxLag (дольше доступная реплика отставать не может),
+ * запросы с этой cookie читают из основной БД. Внутри самого запроса чтения после записи
+ * тоже идут в основную БД (см ReplicaRoutingDataSource.Session).
+ *
+ * Cookie ставится сразу после коммита - ответ к этому моменту ещё не отправлен.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    
+    public static final String COOKIE = "people-last-write";
+    
+    private final long maxLagMillis;
+    
+    public ReadYourWritesFilter(Duration maxLag) {
+        this.maxLagMillis = maxLag.toMillis();
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ReplicaRoutingDataSource.bind(new ReplicaRoutingDataSource.Session(wroteRecently(request),
+                () -> response.addCookie(lastWriteCookie(request))));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.unbind();
+        }
+    }
+    
+    private boolean wroteRecently(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return false;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return System.currentTimeMillis() - Long.parseLong(cookie.getValue()) < maxLagMillis;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private Cookie lastWriteCookie(HttpServletRequest request) {
+        Cookie cookie = new Cookie(COOKIE, Long.toString(System.currentTimeMillis()));
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setMaxAge((int) Math.max(1, (maxLagMillis + 999) / 1000));
+        cookie.setHttpOnly(true);
+        return cookie;
+    }
+}
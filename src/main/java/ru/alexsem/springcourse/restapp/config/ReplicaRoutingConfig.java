@@ -0,0 +1,136 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение с реплик PostgreSQL (включается, если задан people.replicas.urls).
+ *
+ * Вместо DataSource из автоконфигурации создаётся ReplicaRoutingDataSource:
+ * основной пул Hikari из spring.datasource.* и по пулу на каждую реплику
+ * с теми же настройками spring.datasource.hikari.*. Транзакции readOnly
+ * (PeopleService и методы чтения Spring Data репозиториев) читают с реплик,
+ * остальное идёт в основную БД. Клиент, который только что писал, читает
+ * из основной БД (ReadYourWritesFilter).
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("!reactive")
+@ConditionalOnProperty(name = "people.replicas.urls")
+public class ReplicaRoutingConfig {
+    
+    /**
+     * Отставание реплики PostgreSQL в миллисекундах. Если всё полученное WAL уже применено,
+     * отставания нет (иначе на простаивающей основной БД время последней транзакции
+     * выглядело бы как растущее отставание). На основной БД (не реплике) - тоже 0
+     */
+    public static final String POSTGRES_LAG_QUERY = "SELECT CASE"
+            + " WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+            + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 END";
+    
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+                                 @Value("${people.replicas.urls}") String[] urls,
+                                 @Value("${people.replicas.username:}") String username,
+                                 @Value("${people.replicas.password:}") String password,
+                                 @Value("${people.replicas.max-lag:2s}") Duration maxLag,
+                                 @Value("${people.replicas.lag-query:}") String lagQuery,
+                                 @Value("${people.replicas.check-interval:1s}") Duration checkInterval) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        if (primary.getPoolName() == null) {
+            primary.setPoolName("primary");
+        }
+        List<HikariDataSource> replicas = new ArrayList<>(urls.length);
+        for (int i = 0; i < urls.length; i++) {
+            HikariConfig config = new HikariConfig();
+            primary.copyStateTo(config);
+            config.setPoolName("replica-" + (i + 1));
+            config.setJdbcUrl(urls[i].trim());
+            if (!username.isEmpty()) {
+                config.setUsername(username);
+                config.setPassword(password);
+            }
+            config.setReadOnly(true);
+//            недоступная при старте реплика не мешает запуску, её проверит ReplicaRoutingDataSource
+            config.setInitializationFailTimeout(-1);
+            replicas.add(new HikariDataSource(config));
+        }
+    
+        return new RoutingDataSourceProxy(new ReplicaRoutingDataSource(primary, replicas, maxLag,
+                lagQuery.isEmpty() ? POSTGRES_LAG_QUERY : lagQuery, checkInterval));
+    }
+    
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(@Value("${people.replicas.max-lag:2s}") Duration maxLag) {
+        return new ReadYourWritesFilter(maxLag);
+    }
+    
+    @Bean
+    public MeterBinder replicaRoutingMetrics(DataSource dataSource) throws SQLException {
+        ReplicaRoutingDataSource routing = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        return registry -> {
+//            пулы не бины, поэтому метрики Hikari подключаем сами (как это делает Spring Boot для бина DataSource)
+            MicrometerMetricsTrackerFactory hikariMetrics = new MicrometerMetricsTrackerFactory(registry);
+            routing.getPrimaryPool().setMetricsTrackerFactory(hikariMetrics);
+            for (HikariDataSource pool : routing.getReplicaPools()) {
+                pool.setMetricsTrackerFactory(hikariMetrics);
+                Gauge.builder("people.replica.lag", routing, r -> r.getLagMillis(pool))
+                     .description("Replication lag of the replica in milliseconds, -1 if it is unavailable")
+                     .tag("replica", pool.getPoolName())
+                     .register(registry);
+                Gauge.builder("people.replica.available", routing, r -> r.isAvailable(pool) ? 1 : 0)
+                     .description("Whether the replica is used for read-only transactions")
+                     .tag("replica", pool.getPoolName())
+                     .register(registry);
+            }
+            FunctionCounter.builder("people.datasource.connections", routing, ReplicaRoutingDataSource::getPrimaryConnections)
+                           .description("Connections obtained through the routing DataSource")
+                           .tag("target", "primary")
+                           .register(registry);
+            FunctionCounter.builder("people.datasource.connections", routing, ReplicaRoutingDataSource::getReplicaConnections)
+                           .description("Connections obtained through the routing DataSource")
+                           .tag("target", "replica")
+                           .register(registry);
+        };
+    }
+    
+    /**
+     * Соединение берётся у ReplicaRoutingDataSource только при первом запросе в транзакции,
+     * когда признак readOnly уже выставлен. close() закрывает все пулы при остановке приложения
+     */
+    static class RoutingDataSourceProxy extends LazyConnectionDataSourceProxy implements Closeable {
+    
+        private final ReplicaRoutingDataSource routing;
+    
+        RoutingDataSourceProxy(ReplicaRoutingDataSource routing) {
+            super(routing);
+            this.routing = routing;
+        }
+    
+        @Override
+        public void close() {
+            routing.close();
+        }
+    }
+}
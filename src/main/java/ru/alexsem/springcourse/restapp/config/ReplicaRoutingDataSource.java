@@ -0,0 +1,264 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Основная БД для записи и реплики для чтения.
+ *
+ * Соединение для транзакции @Transactional(readOnly = true) берётся из пула одной из реплик,
+ * всё остальное (запись, работа без транзакции, миграции) идёт в основную БД.
+ * Решение принимается в getConnection(), поэтому перед этим DataSource должен стоять
+ * LazyConnectionDataSourceProxy: он берёт соединение при первом запросе, когда
+ * транзакция уже начата и признак readOnly известен.
+ *
+ * Реплика выбирается наименее загруженная (активные соединения + ожидающие в пуле),
+ * при равной загрузке - по кругу. Реплики, отставшие больше чем на maxLag или недоступные,
+ * пропускаются; если подходящих нет, читаем из основной БД.
+ * Отставание проверяется в фоне запросом lagQuery каждые checkInterval.
+ *
+ * Read-your-writes: в потоке может быть привязан Session (см ReadYourWritesFilter).
+ * После коммита пишущей транзакции сессия помечается, и дальше её чтения тоже идут
+ * в основную БД - реплика могла ещё не получить только что записанное.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    
+    private static final ThreadLocal<Session> SESSION = new ThreadLocal<>();
+    
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final String lagQuery;
+    private final ScheduledExecutorService lagChecker;
+    
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder replicaConnections = new LongAdder();
+    
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, Duration maxLag,
+                                    String lagQuery, Duration checkInterval) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas.size());
+        for (HikariDataSource replica : replicas) {
+            this.replicas.add(new Replica(replica));
+        }
+        this.maxLagMillis = maxLag.toMillis();
+        this.lagQuery = lagQuery;
+        this.lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+//        пока первая проверка не прошла, реплики считаются недоступными
+        lagChecker.scheduleWithFixedDelay(this::checkReplicas, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Привязать сессию к текущему потоку (на время обработки запроса)
+     */
+    public static void bind(Session session) {
+        SESSION.set(session);
+    }
+    
+    public static void unbind() {
+        SESSION.remove();
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        Session session = SESSION.get();
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+            && (session == null || !session.primaryOnly)) {
+            Replica replica = choose();
+            if (replica != null) {
+                try {
+                    Connection connection = replica.pool.getConnection();
+                    replicaConnections.increment();
+                    return connection;
+                } catch (SQLException e) {
+                    markUnavailable(replica, e);
+                }
+            }
+        } else if (session != null && TransactionSynchronizationManager.isSynchronizationActive()
+                   && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    session.written();
+                }
+            });
+        }
+        primaryConnections.increment();
+        return primary.getConnection();
+    }
+    
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Routing DataSource uses the credentials of its pools");
+    }
+    
+    /**
+     * Проверка отставания всех реплик. Вызывается по расписанию, в тестах - напрямую
+     */
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(lagQuery)) {
+                resultSet.next();
+                long lag = (long) resultSet.getDouble(1);
+                replica.lagMillis = lag;
+                boolean available = lag <= maxLagMillis;
+                if (available != replica.available) {
+                    logger.info("Replica {} is {} (lag {} ms)", replica.pool.getPoolName(),
+                            available ? "back in rotation" : "lagging behind", lag);
+                }
+                replica.available = available;
+            } catch (SQLException | RuntimeException e) {
+                markUnavailable(replica, e);
+            }
+        }
+    }
+    
+    public HikariDataSource getPrimaryPool() {
+        return primary;
+    }
+    
+    /**
+     * Пулы реплик в порядке people.replicas.urls (для метрик)
+     */
+    public List<HikariDataSource> getReplicaPools() {
+        List<HikariDataSource> pools = new ArrayList<>(replicas.size());
+        replicas.forEach(replica -> pools.add(replica.pool));
+        return pools;
+    }
+    
+    /**
+     * Последнее измеренное отставание реплики в миллисекундах, -1 - реплика недоступна
+     */
+    public long getLagMillis(HikariDataSource pool) {
+        return replica(pool).lagMillis;
+    }
+    
+    public boolean isAvailable(HikariDataSource pool) {
+        return replica(pool).available;
+    }
+    
+    public long getPrimaryConnections() {
+        return primaryConnections.sum();
+    }
+    
+    public long getReplicaConnections() {
+        return replicaConnections.sum();
+    }
+    
+    @Override
+    public void close() {
+        lagChecker.shutdownNow();
+        replicas.forEach(replica -> replica.pool.close());
+        primary.close();
+    }
+    
+    /**
+     * Наименее загруженная из доступных реплик; обход начинается каждый раз со следующей,
+     * поэтому при равной загрузке реплики чередуются
+     */
+    private Replica choose() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        Replica best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.available) {
+                continue;
+            }
+            int load = replica.load();
+            if (load < bestLoad) {
+                best = replica;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+    
+    private void markUnavailable(Replica replica, Exception e) {
+        if (replica.available) {
+            logger.warn("Replica {} is unavailable, reading from primary: {}", replica.pool.getPoolName(), e.toString());
+        }
+        replica.available = false;
+        replica.lagMillis = -1;
+    }
+    
+    private Replica replica(HikariDataSource pool) {
+        for (Replica replica : replicas) {
+            if (replica.pool == pool) {
+                return replica;
+            }
+        }
+        throw new IllegalArgumentException("Unknown replica pool " + pool.getPoolName());
+    }
+    
+    private static final class Replica {
+        private final HikariDataSource pool;
+        private volatile boolean available;
+        private volatile long lagMillis = -1;
+    
+        Replica(HikariDataSource pool) {
+            this.pool = pool;
+        }
+    
+        int load() {
+            HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+            return bean == null ? 0 : bean.getActiveConnections() + bean.getThreadsAwaitingConnection();
+        }
+    }
+    
+    /**
+     * Состояние read-your-writes одного запроса
+     */
+    public static final class Session {
+        private volatile boolean primaryOnly;
+        private volatile boolean written;
+        private final Runnable onFirstWrite;
+    
+        /**
+         * @param primaryOnly  клиент недавно писал - читать только из основной БД
+         * @param onFirstWrite вызывается после первого коммита записи в этой сессии
+         */
+        public Session(boolean primaryOnly, Runnable onFirstWrite) {
+            this.primaryOnly = primaryOnly;
+            this.onFirstWrite = onFirstWrite;
+        }
+    
+        void written() {
+            primaryOnly = true;
+            if (!written) {
+                written = true;
+                onFirstWrite.run();
+            }
+        }
+    }
+}
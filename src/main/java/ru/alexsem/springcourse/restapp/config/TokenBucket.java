@@ -0,0 +1,73 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket без блокировок в форме GCRA (generic cell rate algorithm).
+ *
+ * Вместо числа токенов и времени последнего пополнения хранится одно число -
+ * "теоретическое время прихода" (tat): момент, к которому ведро снова станет полным.
+ * Каждый запрос сдвигает tat на cost / rate, запрос пропускается, если tat при этом
+ * не уходит в будущее дальше, чем на burst / rate. Всё состояние - один AtomicLong,
+ * обновляется одним compareAndSet, без отдельного потока пополнения.
+ */
+class TokenBucket {
+    
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong tat;
+    
+    /**
+     * @param rate  токенов в секунду
+     * @param burst размер ведра (столько запросов подряд пропускается без пауз)
+     * @param now   System.nanoTime()
+     */
+    TokenBucket(double rate, int burst, long now) {
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / rate));
+        this.toleranceNanos = intervalNanos * burst;
+        this.tat = new AtomicLong(now);
+    }
+    
+    /**
+     * @param cost сколько токенов берёт запрос
+     * @param now  System.nanoTime()
+     * @return 0 - токены взяты, иначе через сколько наносекунд их будет достаточно
+     */
+    long tryAcquire(int cost, long now) {
+        while (true) {
+            long current = tat.get();
+//            сравнение через разность - nanoTime может быть отрицательным
+            long next = (current - now > 0 ? current : now) + intervalNanos * cost;
+            long ahead = next - now;
+            if (ahead > toleranceNanos) {
+                return ahead - toleranceNanos;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+    
+    /**
+     * Вернуть токены запроса, который взял их, но не был выполнен (отклонён load shedding).
+     * Ведро не наполняется больше burst: tat не уходит раньше now
+     *
+     * @param cost сколько токенов брал запрос
+     * @param now  System.nanoTime()
+     */
+    void refund(int cost, long now) {
+        while (true) {
+            long current = tat.get();
+            if (current - now <= 0) {
+                return;
+            }
+            long next = current - intervalNanos * cost;
+            if (next - now < 0) {
+                next = now;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Обучающий запуск для архива AppCDS (people.startup.exit-after-ready=true, см профиль fast-startup в pom.xml):
+ * приложение полностью стартует и сразу завершается. JVM, запущенная с -XX:ArchiveClassesAtExit,
+ * при выходе записывает в архив все загруженные за старт классы, и следующие запуски
+ * с -XX:SharedArchiveFile берут их из архива вместо разбора и проверки jar.
+ *
+ * Слушатель выполняется последним, чтобы фоновые загрузчики (EmailIndex, PersonSuggestIndex...)
+ * успели стартовать и их классы тоже попали в архив.
+ */
+@Component
+@ConditionalOnProperty(name = "people.startup.exit-after-ready", havingValue = "true")
+public class TrainingRunExit {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TrainingRunExit.class);
+    
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void exit(ApplicationReadyEvent event) {
+        logger.info("Training run finished, exiting");
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
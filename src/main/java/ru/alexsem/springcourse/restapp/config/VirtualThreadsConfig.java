@@ -0,0 +1,103 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Режим обработки запросов на виртуальных потоках (people.threads.virtual=true).
+ *
+ * Tomcat выполняет каждый запрос в новом виртуальном потоке вместо пула из server.tomcat.threads.max
+ * платформенных потоков. Вызовы PeopleService и репозиториев идут в том же потоке, поэтому
+ * ожидание ответа от БД больше не занимает поток ОС.
+ * Выгрузка /people/export (StreamingResponseBody) тоже пишется в виртуальном потоке.
+ *
+ * Приложение собирается под Java 17, поэтому Executors.newVirtualThreadPerTaskExecutor()
+ * вызывается через рефлексию: режим работает при запуске на Java 21+, на более старой
+ * Java приложение не стартует с понятной ошибкой.
+ *
+ * Вместе с режимом включается ConcurrencyLimitedDataSource: число одновременных обращений
+ * к БД ограничено размером пула, а очередь к нему - по длине и времени ожидания.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "people.threads.virtual", havingValue = "true")
+public class VirtualThreadsConfig {
+    
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("people.threads.virtual=true requires Java 21 or newer, running on "
+                    + System.getProperty("java.version"), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create virtual thread executor", e);
+        }
+    }
+    
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+    
+    @Bean
+    public WebMvcConfigurer virtualThreadAsyncSupport(ExecutorService virtualThreadExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+            }
+        };
+    }
+    
+    /**
+     * Оборачивает DataSource (Hikari) в ConcurrencyLimitedDataSource.
+     * Метод статический, чтобы BeanPostProcessor создавался раньше остальных бинов
+     */
+    @Bean
+    public static BeanPostProcessor concurrencyLimitedDataSourcePostProcessor(
+            @Value("${people.jdbc.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+            @Value("${people.jdbc.max-waiting:1000}") int maxWaiting,
+            @Value("${people.jdbc.acquire-timeout:2s}") Duration acquireTimeout) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof ConcurrencyLimitedDataSource)) {
+                    return new ConcurrencyLimitedDataSource((DataSource) bean, maxConcurrency, maxWaiting, acquireTimeout);
+                }
+                return bean;
+            }
+        };
+    }
+    
+    @Bean
+    public MeterBinder concurrencyLimitedDataSourceMetrics(DataSource dataSource) throws SQLException {
+        ConcurrencyLimitedDataSource limiter = dataSource.unwrap(ConcurrencyLimitedDataSource.class);
+        return registry -> {
+            Gauge.builder("people.jdbc.limiter.active", limiter, ConcurrencyLimitedDataSource::getActive)
+                 .description("Connections currently handed out through the JDBC concurrency limiter")
+                 .register(registry);
+            Gauge.builder("people.jdbc.limiter.waiting", limiter, ConcurrencyLimitedDataSource::getWaiting)
+                 .description("Requests waiting for a permit of the JDBC concurrency limiter")
+                 .register(registry);
+            FunctionCounter.builder("people.jdbc.limiter.rejected", limiter, ConcurrencyLimitedDataSource::getRejected)
+                           .description("Requests rejected by the JDBC concurrency limiter")
+                           .register(registry);
+        };
+    }
+}
@@ -0,0 +1,218 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.alexsem.springcourse.restapp.dto.PersonChangesDTO;
+import ru.alexsem.springcourse.restapp.models.PersonChange;
+import ru.alexsem.springcourse.restapp.services.PersonChangeFeed;
+import ru.alexsem.springcourse.restapp.services.PersonChangeLog;
+import ru.alexsem.springcourse.restapp.util.ChangesExpiredException;
+import ru.alexsem.springcourse.restapp.util.PersonMapper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Поток изменений людей (события из PersonChangeLog), чтобы другие сервисы
+ * могли поддерживать свою копию данных без периодического перечитывания GET /people.
+ *
+ * Клиент хранит seq последнего обработанного события и передаёт его в since:
+ * 1) GET /people/changes?since=... - long-poll. Если новых событий нет, запрос ждёт
+ * до wait секунд и отвечает сразу, как только они появятся.
+ * 2) GET /people/changes с Accept: text/event-stream - SSE, события приходят по мере появления.
+ * id события - seq, поэтому браузер при переподключении сам пришлёт Last-Event-ID.
+ *
+ * Если клиент отстал дольше срока хранения событий, отвечаем 410 Gone (PeopleExceptionHandler) -
+ * нужно заново загрузить людей через GET /people и читать изменения с since=0.
+ *
+ * В SSE события пишутся в ответ не в потоке PersonChangeFeed (он один на всех подписчиков),
+ * а в пуле sse-sender: send блокируется, пока клиент не прочитает данные, и один медленный
+ * клиент задержал бы всех. У каждого клиента своя очередь; если в ней больше sse-max-pending
+ * событий, клиент отключается и переподключается с Last-Event-ID.
+ */
+@RestController
+@RequestMapping("/people/changes")
+@Profile("!reactive")
+public class PeopleChangesController implements DisposableBean {
+    
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_WAIT_SECONDS = 60;
+    
+    private final PersonChangeLog changeLog;
+    private final PersonChangeFeed changeFeed;
+    private final PersonMapper personMapper;
+    
+    private final ExecutorService sseSender = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sse-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    @Value("${people.changes.sse-timeout:30m}")
+    private Duration sseTimeout;
+    
+    @Value("${people.changes.sse-max-pending:10000}")
+    private int sseMaxPending;
+    
+    @Autowired
+    public PeopleChangesController(PersonChangeLog changeLog, PersonChangeFeed changeFeed, PersonMapper personMapper) {
+        this.changeLog = changeLog;
+        this.changeFeed = changeFeed;
+        this.personMapper = personMapper;
+    }
+    
+    @Override
+    public void destroy() {
+        sseSender.shutdownNow();
+    }
+    
+    /**
+     * Long-poll. Есть события после since - отвечаем сразу, иначе ждём не дольше wait секунд.
+     * Пока запрос ждёт, поток Tomcat свободен (DeferredResult), в БД ходит только PersonChangeFeed
+     *
+     * @param since seq последнего полученного события (0 - с начала)
+     * @param limit не больше стольких событий в ответе (не больше MAX_LIMIT)
+     * @param wait  сколько секунд ждать новых событий (0 - не ждать, не больше MAX_WAIT_SECONDS)
+     * @return
+     */
+    @GetMapping
+    public DeferredResult<PersonChangesDTO> getChanges(@RequestParam(defaultValue = "0") long since,
+                                                       @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit,
+                                                       @RequestParam(defaultValue = "30") int wait) {
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        int waitSeconds = Math.max(0, Math.min(wait, MAX_WAIT_SECONDS));
+        DeferredResult<PersonChangesDTO> result = new DeferredResult<>(waitSeconds * 1000L,
+                () -> personMapper.toPersonChangesDTO(List.of(), since));
+    
+        List<PersonChange> changes = changeLog.read(since, size);
+        if (!changes.isEmpty() || waitSeconds == 0) {
+            result.setResult(personMapper.toPersonChangesDTO(changes, since));
+            return result;
+        }
+        PersonChangeFeed.Subscription subscription = changeFeed.subscribe(since, size,
+                new PersonChangeFeed.Subscriber() {
+                    @Override
+                    public boolean deliver(List<PersonChange> delivered) {
+                        result.setResult(personMapper.toPersonChangesDTO(delivered, since));
+                        return false;
+                    }
+    
+                    @Override
+                    public void expired(ChangesExpiredException exception) {
+                        result.setErrorResult(exception);
+                    }
+                });
+        result.onCompletion(() -> changeFeed.unsubscribe(subscription));
+        return result;
+    }
+    
+    /**
+     * SSE: событие name=тип изменения, id=seq, data=PersonChangeDTO.
+     * Соединение закрывается через people.changes.sse-timeout, клиент переподключается
+     * с Last-Event-ID и продолжает с того же места
+     *
+     * @param since       seq последнего полученного события
+     * @param lastEventId заголовок Last-Event-ID при переподключении (важнее since)
+     * @return
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(defaultValue = "0") long since,
+                                    @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+        long from = lastEventId != null ? lastEventId : since;
+//        410 отдаём сразу, пока ответ ещё не начат
+        changeLog.read(from, 1);
+    
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        PersonChangeFeed.Subscription subscription = changeFeed.subscribe(from, MAX_LIMIT, new SseSubscriber(emitter));
+        emitter.onCompletion(() -> changeFeed.unsubscribe(subscription));
+        emitter.onTimeout(() -> changeFeed.unsubscribe(subscription));
+        emitter.onError(e -> changeFeed.unsubscribe(subscription));
+        return emitter;
+    }
+    
+    /**
+     * Подписчик SSE: deliver (поток PersonChangeFeed) только ставит события в очередь,
+     * пишет их в emitter по одному потоку sse-sender на клиента. Методы emitter-а
+     * синхронизированы и ждут идущий send, поэтому из потока PersonChangeFeed их не вызываем
+     */
+    private final class SseSubscriber implements PersonChangeFeed.Subscriber {
+    
+        private final SseEmitter emitter;
+        private final Queue<PersonChange> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+    
+        SseSubscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    
+        @Override
+        public boolean deliver(List<PersonChange> changes) {
+            if (closed) {
+                return false;
+            }
+            if (pendingCount.addAndGet(changes.size()) > sseMaxPending) {
+//                клиент не успевает читать - отключаем, он продолжит с Last-Event-ID
+                close(() -> emitter.completeWithError(new IOException("SSE client is too slow")));
+                return false;
+            }
+            pending.addAll(changes);
+            if (sending.compareAndSet(false, true)) {
+                sseSender.execute(this::send);
+            }
+            return true;
+        }
+    
+        @Override
+        public void expired(ChangesExpiredException exception) {
+            close(emitter::complete);
+        }
+    
+        private void send() {
+            try {
+                PersonChange change;
+                while (!closed && (change = pending.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    emitter.send(SseEmitter.event()
+                                           .id(Long.toString(change.getSeq()))
+                                           .name(change.getType().name())
+                                           .data(personMapper.toPersonChangeDTO(change), MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+//                клиент отключился или emitter уже завершён
+                closed = true;
+                emitter.completeWithError(e);
+            } finally {
+                sending.set(false);
+            }
+//            события, пришедшие после последнего poll, но до sending = false
+            if (!closed && !pending.isEmpty() && sending.compareAndSet(false, true)) {
+                sseSender.execute(this::send);
+            }
+        }
+    
+        private void close(Runnable completion) {
+            closed = true;
+            sseSender.execute(completion);
+        }
+    }
+}
@@ -1,25 +1,65 @@
 package ru.alexsem.springcourse.restapp.controllers;
 
-import org.modelmapper.ModelMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
+import ru.alexsem.springcourse.restapp.dto.BatchResultDTO;
+import ru.alexsem.springcourse.restapp.dto.FieldErrorDTO;
+import ru.alexsem.springcourse.restapp.dto.ImportResultDTO;
+import ru.alexsem.springcourse.restapp.dto.IngestStatusDTO;
+import ru.alexsem.springcourse.restapp.dto.PeopleStatsDTO;
 import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonPatchDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonSearchDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonSuggestionDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonUpdateDTO;
 import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PersonSearch;
 import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.services.PeopleStats;
+import ru.alexsem.springcourse.restapp.services.PersonIngestQueue;
+import ru.alexsem.springcourse.restapp.services.PersonSuggestIndex;
+import ru.alexsem.springcourse.restapp.util.ETags;
+import ru.alexsem.springcourse.restapp.util.JsonFragments;
+import ru.alexsem.springcourse.restapp.util.PeopleMetrics;
 import ru.alexsem.springcourse.restapp.util.PersonErrorResponse;
+import ru.alexsem.springcourse.restapp.util.PersonImportReader;
+import ru.alexsem.springcourse.restapp.util.PersonImporter;
+import ru.alexsem.springcourse.restapp.util.PersonJsonCache;
+import ru.alexsem.springcourse.restapp.util.PersonMapper;
 import ru.alexsem.springcourse.restapp.util.PersonNotCreatedException;
-import ru.alexsem.springcourse.restapp.util.PersonNotFoundException;
 import ru.alexsem.springcourse.restapp.util.PersonValidator;
+import ru.alexsem.springcourse.restapp.util.StatsUnavailableException;
+import ru.alexsem.springcourse.restapp.util.SuggestionsUnavailableException;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * Rest API Layer
@@ -48,21 +88,51 @@ import java.util.stream.Collectors;
 @RestController // @Controller + @ResponseBody над каждым методом (каждый метод возвр данные
 //а не название представления)
 @RequestMapping("/people")
+@Profile("!reactive") // в профиле reactive запросы обслуживает ReactivePeopleController
 public class PeopleController {
     
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+    
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    
 //    Logger logger = LoggerFactory.getLogger(PeopleController.class);
     
     private final PeopleService peopleService;
     
-//    Создаём Bean в конфиг файле и внедряем с помощью Spring:
-    private final ModelMapper modelMapper;
+    private final PersonMapper personMapper;
     private final PersonValidator personValidator;
+    private final ObjectMapper objectMapper;
+    private final PeopleMetrics peopleMetrics;
+    private final PersonJsonCache personJsonCache;
+    private final PersonIngestQueue personIngestQueue;
+    private final PersonSuggestIndex personSuggestIndex;
+    private final PeopleStats peopleStats;
+    private final PersonImporter personImporter;
+    
+    @Value("${people.batch.max-size:10000}")
+    private int maxBatchSize;
+    
+    @Value("${people.suggest.max-results:50}")
+    private int maxSuggestions;
     
     @Autowired
-    public PeopleController(PeopleService peopleService, ModelMapper modelMapper, PersonValidator personValidator) {
+    public PeopleController(PeopleService peopleService, PersonMapper personMapper, PersonValidator personValidator,
+                            ObjectMapper objectMapper, PeopleMetrics peopleMetrics, PersonJsonCache personJsonCache,
+                            PersonIngestQueue personIngestQueue, PersonSuggestIndex personSuggestIndex,
+                            PeopleStats peopleStats, PersonImporter personImporter) {
         this.peopleService = peopleService;
-        this.modelMapper = modelMapper;
+        this.personMapper = personMapper;
         this.personValidator = personValidator;
+        this.objectMapper = objectMapper;
+        this.peopleMetrics = peopleMetrics;
+        this.personJsonCache = personJsonCache;
+        this.personIngestQueue = personIngestQueue;
+        this.personSuggestIndex = personSuggestIndex;
+        this.peopleStats = peopleStats;
+        this.personImporter = personImporter;
     }
     
     /**
@@ -75,28 +145,184 @@ public class PeopleController {
      * данный объект будет сконвертирован Jackson в Json и
      * отправлен клиенту по сети
      *
-     * @param
+     * Вся таблица больше не загружается в память: отдаём страницу
+     * (keyset-пагинация по id). Если страница полная, в заголовке Link
+     * передаём ссылку на следующую страницу (rel="next").
+     *
+     * JSON каждого человека берётся из PersonJsonCache, и страница собирается
+     * из готовых фрагментов (JsonFragments) - Jackson на горячих данных не вызывается.
+     *
+     * У страницы есть ETag (см ETags). Если клиент прислал If-None-Match, сначала
+     * выбираются только пары (id, version): при совпадении отвечаем 304 без тела,
+     * не загружая сущности и ничего не сериализуя.
+     *
+     * @param after id последнего человека с предыдущей страницы
+     * @param limit размер страницы (не больше MAX_PAGE_SIZE)
      * @return
      */
     @GetMapping()
-    public List<PersonDTO> getPeople() {
+    public ResponseEntity<JsonFragments> getPeople(@RequestParam(value = "after", defaultValue = "0") int after,
+                                                   @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                                                   @RequestHeader HttpHeaders headers) {
 //        logger.error("Error happened");
-        return peopleService.findAll().stream()
-                .map(this::convertToPersonDTO)
-                .collect(Collectors.toList()); // Jackson конвертирует эти объекты в JSON
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<String> ifNoneMatch = headers.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            List<Object[]> versions = peopleService.findPageVersions(after, pageSize);
+            String eTag = ETags.ofPageVersions(versions);
+            if (ETags.matches(ifNoneMatch, eTag)) {
+                Integer lastId = versions.size() == pageSize ? (Integer) versions.get(versions.size() - 1)[0] : null;
+                return pageResponse(HttpStatus.NOT_MODIFIED, eTag, lastId, pageSize).build();
+            }
+        }
+        
+        List<Person> page = peopleService.findPage(after, pageSize);
+        JsonFragments body = JsonFragments.array(personJsonCache.json(page));
+        Integer lastId = page.size() == pageSize ? page.get(page.size() - 1).getId() : null;
+        return pageResponse(HttpStatus.OK, ETags.ofPage(page), lastId, pageSize).body(body);
+    }
+    
+    /**
+     * Выгрузка всей таблицы без ограничения по размеру в формате NDJSON
+     * (один JSON-объект на строку).
+     *
+     * Строки читаются из БД через курсор и сразу пишутся в ответ,
+     * поэтому потребление памяти не зависит от размера таблицы.
+     *
+     * Формат выбирается по Accept, поэтому в ответе Vary: Accept - иначе кэш
+     * отдал бы NDJSON клиенту, который просил JSON-массив.
+     */
+    @GetMapping(value = "/export", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPeople() {
+        return ResponseEntity.ok()
+                             .varyBy(HttpHeaders.ACCEPT)
+                             .contentType(APPLICATION_NDJSON)
+                             .body(out -> writePeople(out, false));
+    }
+    
+    /**
+     * То же самое, но в виде обычного JSON-массива (Accept: application/json)
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPeopleAsArray() {
+        return ResponseEntity.ok()
+                             .varyBy(HttpHeaders.ACCEPT)
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .body(out -> writePeople(out, true));
+    }
+    
+    /**
+     * Поиск людей: префикс имени, диапазон возраста, домен email, диапазон created_at.
+     * Сортировка по id, name, age или createdAt (asc/desc), пагинация keyset-курсором:
+     * если страница полная, в заголовке Link передаётся ссылка на следующую (rel="next")
+     * с теми же параметрами и новым cursor. Каждый фильтр и сортировка идут по индексу.
+     *
+     * @param searchDTO параметры из строки запроса
+     * @param bindingResult
+     * @return
+     */
+    @GetMapping("/search")
+    public ResponseEntity<JsonFragments> search(@Valid PersonSearchDTO searchDTO, BindingResult bindingResult,
+                                                HttpServletRequest request) {
+        if (bindingResult.hasErrors()) {
+            throw new PersonNotCreatedException(fieldErrors(bindingResult));
+        }
+        PersonSearch search;
+        try {
+            search = personMapper.toPersonSearch(searchDTO);
+        } catch (IllegalArgumentException e) {
+            throw new PersonNotCreatedException(List.of(new FieldErrorDTO("cursor", e.getMessage())));
+        }
+        List<Person> found = peopleService.search(search);
+        
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (found.size() == search.getLimit()) {
+            String next = UriComponentsBuilder.fromPath(request.getRequestURI())
+                                              .query(request.getQueryString())
+                                              .replaceQueryParam("cursor", search.cursorAfter(found.get(found.size() - 1)))
+                                              .build()
+                                              .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(JsonFragments.array(personJsonCache.json(found)));
+    }
+    
+    /**
+     * Подсказки для поля ввода: люди, у которых с q начинается любое слово имени или email.
+     * Отвечает PersonSuggestIndex из памяти, без транзакции и запроса в БД.
+     * Пока индекс загружается после старта - 503 (обрабатывает PeopleExceptionHandler).
+     *
+     * @param query начало имени или email, регистр не важен
+     * @param limit сколько подсказок вернуть (не больше people.suggest.max-results)
+     * @return
+     */
+    @GetMapping("/suggest")
+    public List<PersonSuggestionDTO> suggest(@RequestParam("q") String query,
+                                             @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        if (!personSuggestIndex.isReady()) {
+            throw new SuggestionsUnavailableException();
+        }
+        List<PersonSuggestIndex.Suggestion> suggestions =
+                personSuggestIndex.suggest(query, Math.max(1, Math.min(limit, maxSuggestions)));
+        List<PersonSuggestionDTO> result = new ArrayList<>(suggestions.size());
+        suggestions.forEach(suggestion -> result.add(new PersonSuggestionDTO(suggestion)));
+        return result;
+    }
+    
+    /**
+     * Статистика для дашбордов: число людей, гистограмма возрастов, самые большие домены email
+     * и сколько людей создано по дням. Считается из счётчиков PeopleStats, которые обновляются
+     * при каждом изменении, - ни запроса в БД, ни обхода людей.
+     * Пока счётчики считаются после старта - 503 (обрабатывает PeopleExceptionHandler).
+     *
+     * @param days    за сколько последних дней вернуть createdPerDay (1..366)
+     * @param domains сколько доменов вернуть (1..1000)
+     * @return
+     */
+    @GetMapping("/stats")
+    public PeopleStatsDTO stats(@RequestParam(value = "days", defaultValue = "30") int days,
+                                @RequestParam(value = "domains", defaultValue = "20") int domains) {
+        if (!peopleStats.isReady()) {
+            throw new StatsUnavailableException();
+        }
+        return new PeopleStatsDTO(peopleStats.snapshot(Math.max(1, Math.min(days, 366)),
+                Math.max(1, Math.min(domains, 1000))));
     }
     
     /**
      * Отправляем клиенту PersonDTO по id.
      * В методе findOne может выбрасываться искл PersonNotFoundException,
-     * если id не найден.
+     * если id не найден (ответ 404 формирует PeopleExceptionHandler).
+     *
+     * Условный GET: в ответе ETag (версия строки) и Last-Modified (updatedAt).
+     * Тело - готовый JSON из PersonJsonCache, он пишется в ответ без повторной сериализации.
+     * Если ETag из If-None-Match актуален, отвечаем 304 без тела - для проверки
+     * нужна только версия (из кэша или одной колонкой из БД), сущность не загружается.
+     * If-Modified-Since учитывается, только когда If-None-Match нет.
      *
      * @param id
      * @return
      */
     @GetMapping("/{id}")
-    public PersonDTO getPerson(@PathVariable("id") int id) {
-        return convertToPersonDTO(peopleService.findOne(id)); // Jackson конвертирует в JSON
+    public ResponseEntity<JsonFragments> getPerson(@PathVariable("id") int id, @RequestHeader HttpHeaders headers) {
+        List<String> ifNoneMatch = headers.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            String eTag = ETags.of(peopleService.findVersion(id));
+            if (ETags.matches(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+        }
+        
+        Person person = peopleService.findOne(id);
+        long lastModified = lastModified(person);
+        if (ifNoneMatch.isEmpty() && lastModified >= 0 && headers.getIfModifiedSince() >= lastModified) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ETags.of(person)).lastModified(lastModified).build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(ETags.of(person));
+        if (lastModified >= 0) {
+            response.lastModified(lastModified);
+        }
+        return response.body(JsonFragments.of(personJsonCache.json(person)));
     }
     
     /**
@@ -118,16 +344,11 @@ public class PeopleController {
     @PostMapping
     public ResponseEntity<HttpStatus> create(@RequestBody @Valid PersonDTO personDTO,
                                              BindingResult bindingResult) {
-        personValidator.validate(personDTO,bindingResult);
+        peopleMetrics.validation().record(() -> personValidator.validate(personDTO, bindingResult));
         if (bindingResult.hasErrors()) {
-            StringBuilder errorMSG = new StringBuilder();
-            List<FieldError> errors = bindingResult.getFieldErrors();
-            errors.forEach(fieldError -> errorMSG.append(fieldError.getField())
-                                                 .append(" - ").append(fieldError.getDefaultMessage())
-                                                 .append(";"));
 //            В пакете util создаём новое исключение
-            throw new PersonNotCreatedException(errorMSG.toString());
-//            Ниже создаём метод для обработки данного исключения
+            throw new PersonNotCreatedException(fieldErrors(bindingResult));
+//            Обрабатывается в PeopleExceptionHandler
         }
 //        конвертируем DTO в модель и сохраняем в БД
         peopleService.save(convertToPerson(personDTO));
@@ -136,29 +357,111 @@ public class PeopleController {
     }
     
     /**
-     * Нужна ли валидация?
-     * @param id
+     * Асинхронное создание: клиент прислал Prefer: respond-async (RFC 7240).
+     * Валидация та же, что в create, а сохраняет человека PersonIngestQueue пачками.
+     *
+     * Маппинг только по имени заголовка: в Prefer может быть список предпочтений
+     * (Prefer: respond-async, wait=5), а headers = "Prefer=respond-async" сравнивает значение целиком.
+     * Поэтому respond-async ищем сами (respondAsync); без него - обычный create.
+     *
+     * people.ingest.ack=queued - сразу 202 с id заявки, Location - её статус (GET /people/ingest/{id}).
+     * people.ingest.ack=committed - ответ после коммита пачки: 201, Location - сам человек.
+     * Очередь заполнена - 429. Если people.ingest.enabled=false, предпочтение
+     * игнорируется и запрос обрабатывается как обычный create.
+     *
      * @param personDTO
      * @param bindingResult
+     * @param prefer        значения заголовков Prefer
+     * @return
+     */
+    @PostMapping(headers = "Prefer")
+    public DeferredResult<ResponseEntity<?>> createAsync(@RequestBody @Valid PersonDTO personDTO,
+                                                         BindingResult bindingResult,
+                                                         @RequestHeader("Prefer") List<String> prefer) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        if (!personIngestQueue.isEnabled() || !respondAsync(prefer)) {
+            result.setResult(create(personDTO, bindingResult));
+            return result;
+        }
+        peopleMetrics.validation().record(() -> personValidator.validate(personDTO, bindingResult));
+        if (bindingResult.hasErrors()) {
+            throw new PersonNotCreatedException(fieldErrors(bindingResult));
+        }
+        PersonIngestQueue.Ticket ticket = personIngestQueue.submit(convertToPerson(personDTO));
+        if (personIngestQueue.getAck() == PersonIngestQueue.Ack.QUEUED) {
+            result.setResult(ResponseEntity.accepted()
+                                           .location(URI.create("/people/ingest/" + ticket.getId()))
+                                           .body(new IngestStatusDTO(ticket)));
+            return result;
+        }
+        ticket.getDone().thenAccept(done -> {
+            if (done.getStatus() == PersonIngestQueue.Ticket.Status.CREATED) {
+                result.setResult(ResponseEntity.created(URI.create("/people/" + done.getPersonId()))
+                                               .body(new IngestStatusDTO(done)));
+            } else {
+                result.setErrorResult(new PersonNotCreatedException(done.getError()));
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Есть ли respond-async среди предпочтений. Каждое - имя[=значение][; параметры],
+     * через запятую; имена без учёта регистра (RFC 7240)
+     */
+    private static boolean respondAsync(List<String> prefer) {
+        for (String header : prefer) {
+            for (String preference : header.split(",")) {
+                String name = preference.split("[;=]", 2)[0].trim();
+                if (name.equalsIgnoreCase("respond-async")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Статус асинхронного создания (см createAsync)
+     *
+     * @param id id заявки из ответа 202
+     * @return 404, если заявки нет или её статус уже удалён (people.ingest.status-ttl)
+     */
+    @GetMapping("/ingest/{id}")
+    public ResponseEntity<?> ingestStatus(@PathVariable("id") String id) {
+        PersonIngestQueue.Ticket ticket = personIngestQueue.find(id);
+        if (ticket == null) {
+            return new ResponseEntity<>(new PersonErrorResponse("Ingest request was not found or has expired",
+                    System.currentTimeMillis()), HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok(new IngestStatusDTO(ticket));
+    }
+    
+    /**
+     * Частичное обновление: в теле можно передать только те поля, которые меняются.
+     * Валидация нужна - переданные поля проверяются по тем же правилам, что и при создании.
+     *
+     * С заголовком If-Match (ETag из GET) человек обновляется, только если его с тех пор
+     * никто не менял, иначе 412 - так два клиента не затрут изменения друг друга.
+     * @param id
+     * @param personPatchDTO
+     * @param bindingResult
      * @return ResponseEntity<HttpStatus> - http-ответ, который может включать тело (опционально,
      *      как в случае обработки Exception ниже) и статус 200, 404 итд.
      */
     @PatchMapping("/{id}")
     public ResponseEntity<HttpStatus> update(@PathVariable("id") int id,
-                                             @RequestBody @Valid PersonDTO personDTO,
-                                             BindingResult bindingResult ) {
-        personValidator.validate(personDTO,bindingResult);
+                                             @RequestBody @Valid PersonPatchDTO personPatchDTO,
+                                             BindingResult bindingResult,
+                                             @RequestHeader HttpHeaders headers) {
+        peopleMetrics.validation().record(() -> personValidator.validateUpdate(id, personPatchDTO, bindingResult));
         if (bindingResult.hasErrors()) {
-            StringBuilder errorMSG = new StringBuilder();
-            List<FieldError> errors = bindingResult.getFieldErrors();
-            errors.forEach(fieldError -> errorMSG.append(fieldError.getField())
-                                                 .append(" - ").append(fieldError.getDefaultMessage())
-                                                 .append(";"));
 //            В пакете util создаём новое исключение
-            throw new PersonNotCreatedException(errorMSG.toString());
-//            Ниже создаём метод для обработки данного исключения
+            throw new PersonNotCreatedException(fieldErrors(bindingResult));
+//            Обрабатывается в PeopleExceptionHandler
         }
-            peopleService.update(id, convertToPerson(personDTO));
+        peopleService.update(id, ETags.expectedVersion(headers.getIfMatch()),
+                personPatchDTO.getName(), personPatchDTO.getAge(), personPatchDTO.getEmail());
         //        Отправляем HTTP ответ клиенту с пустым телом и статусом 200
         return ResponseEntity.ok(HttpStatus.OK);
     }
@@ -166,73 +469,218 @@ public class PeopleController {
     /**
      * ResponseEntity<HttpStatus> - http-ответ, который может включать тело (опционально,
      * как в случае обработки Exception ниже) и статус 200, 404 итд.
+     * If-Match - как в update: удаляем, только если версия не изменилась, иначе 412
      * @param id
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<HttpStatus> delete(@PathVariable("id") int id) {
-        peopleService.delete(id);
+    public ResponseEntity<HttpStatus> delete(@PathVariable("id") int id, @RequestHeader HttpHeaders headers) {
+        peopleService.delete(id, ETags.expectedVersion(headers.getIfMatch()));
         //        Отправляем HTTP ответ клиенту с пустым телом и статусом 200
         return ResponseEntity.ok(HttpStatus.OK);
     }
     
     /**
-     * Метод ловит исключение из PeopleService (метод findOne())
-     * и возвращает объект в виде json
+     * Пакетное создание. Все элементы валидируются вместе (уникальность email -
+     * одним запросом на пачку), корректные сохраняются JDBC batch-ами.
+     * Невалидные элементы не сохраняются и возвращаются со статусом REJECTED и ошибками.
+     *
+     * @param people
+     * @return результат по каждому элементу в порядке запроса
+     */
+    @PostMapping("/batch")
+    public BatchResultDTO createBatch(@RequestBody List<PersonDTO> people) {
+        checkBatchSize(people.size());
+        List<List<String>> errors = peopleMetrics.validation().record(() -> personValidator.validateBatch(people));
+        
+        List<Person> valid = new ArrayList<>(people.size());
+        Person[] converted = new Person[people.size()];
+        for (int i = 0; i < people.size(); i++) {
+            if (errors.get(i).isEmpty()) {
+                converted[i] = convertToPerson(people.get(i));
+                valid.add(converted[i]);
+            }
+        }
+        peopleService.saveAll(valid);
+        
+        BatchResultDTO result = new BatchResultDTO(people.size());
+        for (int i = 0; i < people.size(); i++) {
+            if (converted[i] != null) {
+                result.add(converted[i].getId(), BatchResultDTO.Status.CREATED, Collections.emptyList());
+            } else {
+                result.add(null, BatchResultDTO.Status.REJECTED, errors.get(i));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Пакетное обновление: каждый элемент содержит id и новые значения полей
+     *
+     * @param people
+     * @return результат по каждому элементу (UPDATED, NOT_FOUND или REJECTED)
+     */
+    @PatchMapping("/batch")
+    public BatchResultDTO updateBatch(@RequestBody List<PersonUpdateDTO> people) {
+        checkBatchSize(people.size());
+        List<List<String>> errors = peopleMetrics.validation().record(() -> personValidator.validateBatch(people));
+        
+        List<Person> valid = new ArrayList<>(people.size());
+        for (int i = 0; i < people.size(); i++) {
+            if (errors.get(i).isEmpty()) {
+                Person person = convertToPerson(people.get(i));
+                person.setId(people.get(i).getId());
+                valid.add(person);
+            }
+        }
+        Set<Integer> updated = peopleService.updateAll(valid);
+        
+        BatchResultDTO result = new BatchResultDTO(people.size());
+        for (int i = 0; i < people.size(); i++) {
+            Integer id = people.get(i).getId();
+            if (!errors.get(i).isEmpty()) {
+                result.add(id, BatchResultDTO.Status.REJECTED, errors.get(i));
+            } else if (updated.contains(id)) {
+                result.add(id, BatchResultDTO.Status.UPDATED, Collections.emptyList());
+            } else {
+                result.add(id, BatchResultDTO.Status.NOT_FOUND, Collections.emptyList());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Пакетное удаление по списку id
+     *
+     * @param ids
+     * @return результат по каждому id (DELETED или NOT_FOUND)
      */
-    @ExceptionHandler
-    private ResponseEntity<PersonErrorResponse> handleException(PersonNotFoundException exception) {
-        PersonErrorResponse response = new PersonErrorResponse(
-                "Person with this id was not found",
-                System.currentTimeMillis()
-        );
-//        В http ответе тело ответа (response) и статус в заголовке
-        return new ResponseEntity<>(response, HttpStatus.NOT_FOUND); //NOT_FOUND - 404 статус
+    @DeleteMapping("/batch")
+    public BatchResultDTO deleteBatch(@RequestBody List<Integer> ids) {
+        checkBatchSize(ids.size());
+        Set<Integer> deleted = peopleService.deleteAll(ids);
+        
+        BatchResultDTO result = new BatchResultDTO(ids.size());
+        for (Integer id : ids) {
+            result.add(id, deleted.contains(id) ? BatchResultDTO.Status.DELETED : BatchResultDTO.Status.NOT_FOUND,
+                    Collections.emptyList());
+        }
+        return result;
     }
     
     /**
-     * Метод ловит исключение из @PostMapping public ResponseEntity<HttpStatus> create
-     * и возвращает объект в виде json
+     * Импорт людей из CSV (заголовок name,age,email). Тело читается потоком, без загрузки
+     * всего файла в память, корректные строки сохраняются пачками (см PersonImporter).
+     * Строки с ошибками не сохраняются и перечислены в ответе с номерами строк файла.
+     *
+     * @param body
+     * @return сколько импортировано и какие строки отклонены
      */
-    @ExceptionHandler
-    private ResponseEntity<PersonErrorResponse> handleException(PersonNotCreatedException exception) {
-        PersonErrorResponse response = new PersonErrorResponse(
-                exception.getMessage(),
-                System.currentTimeMillis()
-        );
-//        В http ответе тело ответа (response) и статус в заголовке
-        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    @PostMapping(value = "/import", consumes = TEXT_CSV_VALUE)
+    public ImportResultDTO importCsv(Reader body) throws IOException {
+        return personImporter.importPeople(body, PersonImportReader.Format.CSV);
+    }
+    
+    /**
+     * То же самое для NDJSON: один объект PersonDTO на строку
+     */
+    @PostMapping(value = "/import", consumes = APPLICATION_NDJSON_VALUE)
+    public ImportResultDTO importNdjson(Reader body) throws IOException {
+        return personImporter.importPeople(body, PersonImportReader.Format.NDJSON);
+    }
+    
+    private void checkBatchSize(int size) {
+        if (size > maxBatchSize) {
+            throw new PersonNotCreatedException("Batch should contain at most " + maxBatchSize + " items");
+        }
     }
     
     /**
      * Принимает DTO и возвращает модель
      *
-     * Импортируем библиотеку modelmapper для "маппинга" между DTO и моделью
-     * вместо того, чтобы делать вручную.
-     * Создаём Bean в конфиг файле и внедряем с помощью Spring
+     * Маппинг написан вручную в PersonMapper (без рефлексии ModelMapper). Отдельным таймером
+     * не замеряется: это десяток присваиваний, запись в Timer стоила бы дороже самого маппинга.
+     * Метод, в котором доп данные назначаются на самом сервере - прописан в сервисе (enrichPerson)
      * @param personDTO
      * @return
      */
     private Person convertToPerson(PersonDTO personDTO) {
-        //        Person person = new Person();
-//        person.setName(personDTO.getName());
-//        person.setAge(personDTO.getAge());
-//        person.setEmail(personDTO.getEmail());
-
-//        Метод, в котором доп данные назначаются на самом сервере - прописываем в сервисе
-//        enrichPerson(person);
+        return personMapper.toPerson(personDTO);
+    }
     
-        Person person = modelMapper.map(personDTO, Person.class);
-        return person;
+    /**
+     * Пишет всех людей в поток ответа по одному.
+     * StreamingResponseBody выполняется в отдельном потоке уже после выхода
+     * из метода контроллера, поэтому транзакцию для курсора открывает сервис.
+     * FLUSH_AFTER_WRITE_VALUE выключен, чтобы не делать flush на каждую строку -
+     * JsonGenerator сам сбрасывает буфер по мере заполнения.
+     * Маппинг здесь не замеряется: таймер на каждую строку стоил бы дороже самого маппинга,
+     * время всей выгрузки видно в http.server.requests.
+     *
+     * @param out
+     * @param asArray true - JSON-массив, false - NDJSON
+     * @throws IOException
+     */
+    private void writePeople(OutputStream out, boolean asArray) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(PersonDTO.class)
+                                          .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            if (asArray) {
+                generator.writeStartArray();
+            } else {
+                generator.setRootValueSeparator(null);
+            }
+            peopleService.forEachPerson(person -> {
+                try {
+                    writer.writeValue(generator, personMapper.toPersonDTO(person));
+                    if (!asArray) {
+                        generator.writeRaw('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (asArray) {
+                generator.writeEndArray();
+            }
+        }
     }
     
     /**
-     * Принимает модель и возвращает DTO
-     * @param person
-     * @return
+     * Ошибки валидации для PersonNotCreatedException: по FieldErrorDTO (поле и сообщение) на каждую,
+     * в ответе 400 они придут списком PersonErrorResponse.errors
+     */
+    private static List<FieldErrorDTO> fieldErrors(BindingResult bindingResult) {
+        List<FieldError> fieldErrors = bindingResult.getFieldErrors();
+        List<FieldErrorDTO> errors = new ArrayList<>(fieldErrors.size());
+        fieldErrors.forEach(fieldError -> errors.add(new FieldErrorDTO(fieldError.getField(),
+                fieldError.getDefaultMessage())));
+        return errors;
+    }
+    
+    /**
+     * Ответ со страницей: ETag страницы и, если страница полная,
+     * ссылка на следующую в заголовке Link (rel="next")
+     *
+     * @param lastId id последнего человека на полной странице (null - страница последняя)
      */
-    private PersonDTO convertToPersonDTO(Person person) {
-        PersonDTO personDTO = modelMapper.map(person, PersonDTO.class);
-        return personDTO;
+    private static ResponseEntity.BodyBuilder pageResponse(HttpStatus status, String eTag, Integer lastId, int pageSize) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status).eTag(eTag);
+        if (lastId != null) {
+            response.header(HttpHeaders.LINK,
+                    "</people?after=" + lastId + "&limit=" + pageSize + ">; rel=\"next\"");
+        }
+        return response;
+    }
+    
+    /**
+     * updatedAt в миллисекундах для Last-Modified (-1, если у старой строки его нет).
+     * Заголовок передаёт время с точностью до секунды, поэтому миллисекунды отбрасываем
+     */
+    private static long lastModified(Person person) {
+        if (person.getUpdatedAt() == null) {
+            return -1;
+        }
+        return person.getUpdatedAt().atZone(ZoneId.systemDefault()).toEpochSecond() * 1000;
     }
     
     
@@ -0,0 +1,169 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ru.alexsem.springcourse.restapp.dto.FieldErrorDTO;
+import ru.alexsem.springcourse.restapp.util.ChangesExpiredException;
+import ru.alexsem.springcourse.restapp.util.ErrorBody;
+import ru.alexsem.springcourse.restapp.util.IngestQueueFullException;
+import ru.alexsem.springcourse.restapp.util.PeopleMetrics;
+import ru.alexsem.springcourse.restapp.util.PersonErrorResponse;
+import ru.alexsem.springcourse.restapp.util.PersonModifiedException;
+import ru.alexsem.springcourse.restapp.util.PersonNotCreatedException;
+import ru.alexsem.springcourse.restapp.util.PersonNotFoundException;
+import ru.alexsem.springcourse.restapp.util.PersonValidator;
+import ru.alexsem.springcourse.restapp.util.StatsUnavailableException;
+import ru.alexsem.springcourse.restapp.util.SuggestionsUnavailableException;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Обработка исключений всех контроллеров People API (и servlet, и reactive) в одном месте.
+ *
+ * Ответы с постоянным сообщением (404, 412, 410, 429, 503) отдаются готовыми байтами
+ * из ErrorBody. Через Jackson идут только ответы 400, в которых сообщение своё
+ * или есть ошибки по полям (PersonErrorResponse.errors).
+ */
+@RestControllerAdvice
+public class PeopleExceptionHandler {
+    
+    static final ErrorBody PERSON_NOT_FOUND = ErrorBody.of("Person with this id was not found");
+    static final ErrorBody PERSON_MODIFIED = ErrorBody.of("Person was modified by another request");
+    static final ErrorBody CHANGES_EXPIRED =
+            ErrorBody.of("Changes after this seq have expired, reload people and start from since=0");
+    static final ErrorBody INGEST_QUEUE_FULL = ErrorBody.of("Too many people are being created, try again later");
+    static final ErrorBody OVERLOADED = ErrorBody.of("Service is overloaded, try again later");
+    static final ErrorBody SUGGESTIONS_UNAVAILABLE = ErrorBody.of("Suggestions are not available yet, try again later");
+    static final ErrorBody STATS_UNAVAILABLE = ErrorBody.of("Stats are not available yet, try again later");
+    
+    private final PeopleMetrics peopleMetrics;
+    
+    @Autowired
+    public PeopleExceptionHandler(PeopleMetrics peopleMetrics) {
+        this.peopleMetrics = peopleMetrics;
+    }
+    
+    /**
+     * Метод ловит исключение из PeopleService (метод findOne())
+     */
+    @ExceptionHandler
+    public ResponseEntity<byte[]> handleException(PersonNotFoundException exception) {
+        peopleMetrics.personNotFound();
+        return response(HttpStatus.NOT_FOUND, PERSON_NOT_FOUND);
+    }
+    
+    /**
+     * Невалидные данные: ошибки по полям - в errors, остальные (размер пакета, ошибка сохранения) - в message
+     */
+    @ExceptionHandler
+    public ResponseEntity<PersonErrorResponse> handleException(PersonNotCreatedException exception) {
+        peopleMetrics.personNotCreated();
+        PersonErrorResponse response = new PersonErrorResponse(
+                exception.getMessage(),
+                System.currentTimeMillis(),
+                exception.getErrors()
+        );
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+    
+    /**
+     * Email занят, а PersonValidator этого не увидел: EmailIndex другого экземпляра приложения
+     * не знает о людях, созданных здесь, или два запроса с одним email пришли одновременно.
+     * Вставку отклонило ограничение UNIQUE в БД - отвечаем тем же 400, что и валидация.
+     * Остальные нарушения целостности - ошибка сервера, их не обрабатываем
+     */
+    @ExceptionHandler
+    public ResponseEntity<PersonErrorResponse> handleException(DataIntegrityViolationException exception) {
+        if (!isUniqueEmailViolation(exception)) {
+            throw exception;
+        }
+        return handleException(new PersonNotCreatedException(
+                List.of(new FieldErrorDTO("email", PersonValidator.EMAIL_TAKEN))));
+    }
+    
+    /**
+     * Версия из If-Match устарела: человека уже изменили другим запросом.
+     * Клиент должен заново получить его (GET) и повторить изменение
+     */
+    @ExceptionHandler
+    public ResponseEntity<byte[]> handleException(PersonModifiedException exception) {
+        peopleMetrics.personModified();
+        return response(HttpStatus.PRECONDITION_FAILED, PERSON_MODIFIED);
+    }
+    
+    /**
+     * События после since уже удалены по сроку хранения (PeopleChangesController)
+     */
+    @ExceptionHandler
+    public ResponseEntity<byte[]> handleException(ChangesExpiredException exception) {
+        return response(HttpStatus.GONE, CHANGES_EXPIRED);
+    }
+    
+    /**
+     * Не удалось получить соединение с БД: пул или ограничитель ConcurrencyLimitedDataSource
+     * переполнены. Отвечаем 503, чтобы клиент повторил запрос позже
+     */
+    @ExceptionHandler
+    public ResponseEntity<byte[]> handleException(CannotCreateTransactionException exception) {
+        return retryLater(HttpStatus.SERVICE_UNAVAILABLE, OVERLOADED);
+    }
+    
+    /**
+     * Очередь асинхронного создания заполнена (см PersonIngestQueue): 429, клиент повторит позже
+     */
+    @ExceptionHandler
+    public ResponseEntity<byte[]> handleException(IngestQueueFullException exception) {
+        return retryLater(HttpStatus.TOO_MANY_REQUESTS, INGEST_QUEUE_FULL);
+    }
+    
+    /**
+     * Индекс подсказок ещё загружается (см PersonSuggestIndex): 503, клиент повторит позже
+     */
+    @ExceptionHandler
+    public ResponseEntity<byte[]> handleException(SuggestionsUnavailableException exception) {
+        return retryLater(HttpStatus.SERVICE_UNAVAILABLE, SUGGESTIONS_UNAVAILABLE);
+    }
+    
+    /**
+     * Статистика ещё считается после старта (см PeopleStats): 503, клиент повторит позже
+     */
+    @ExceptionHandler
+    public ResponseEntity<byte[]> handleException(StatsUnavailableException exception) {
+        return retryLater(HttpStatus.SERVICE_UNAVAILABLE, STATS_UNAVAILABLE);
+    }
+    
+    /**
+     * SQLSTATE 23505 (unique_violation) одинаковый в PostgreSQL и H2, а имя ограничения
+     * или индекса в тексте ошибки содержит колонку email (person_email_key в PostgreSQL)
+     */
+    private static boolean isUniqueEmailViolation(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && "23505".equals(((SQLException) cause).getSQLState())) {
+                return cause.getMessage() != null && cause.getMessage().toLowerCase(Locale.ROOT).contains("email");
+            }
+        }
+        return false;
+    }
+    
+    private static ResponseEntity<byte[]> response(HttpStatus status, ErrorBody body) {
+        return ResponseEntity.status(status)
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .body(body.render(System.currentTimeMillis()));
+    }
+    
+    private static ResponseEntity<byte[]> retryLater(HttpStatus status, ErrorBody body) {
+        return ResponseEntity.status(status)
+                             .header(HttpHeaders.RETRY_AFTER, "1")
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .body(body.render(System.currentTimeMillis()));
+    }
+}
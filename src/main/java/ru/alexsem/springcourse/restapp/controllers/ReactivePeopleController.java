@@ -0,0 +1,116 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonPatchDTO;
+import ru.alexsem.springcourse.restapp.services.ReactivePeopleService;
+import ru.alexsem.springcourse.restapp.util.PersonMapper;
+import ru.alexsem.springcourse.restapp.util.PersonNotCreatedException;
+import ru.alexsem.springcourse.restapp.util.ReactivePersonValidator;
+
+import java.util.List;
+
+/**
+ * Неблокирующий вариант PeopleController на WebFlux (профиль reactive).
+ *
+ * Пути, тела запросов/ответов и ошибки те же, что у PeopleController,
+ * поэтому клиентов можно переключать между двумя вариантами без изменений.
+ * Методы возвращают Mono/Flux - WebFlux подписывается на них сам,
+ * поток сервера во время ожидания БД не занят.
+ *
+ * Пакетных операций (/people/batch) в этом варианте нет.
+ */
+@RestController
+@RequestMapping("/people")
+@Profile("reactive")
+public class ReactivePeopleController {
+    
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    
+    private final ReactivePeopleService peopleService;
+    private final PersonMapper personMapper;
+    private final ReactivePersonValidator personValidator;
+    
+    @Autowired
+    public ReactivePeopleController(ReactivePeopleService peopleService, PersonMapper personMapper,
+                                    ReactivePersonValidator personValidator) {
+        this.peopleService = peopleService;
+        this.personMapper = personMapper;
+        this.personValidator = personValidator;
+    }
+    
+    /**
+     * Страница людей (keyset-пагинация по id). Страница ограничена MAX_PAGE_SIZE, поэтому
+     * её можно собрать целиком: так же, как в PeopleController, в заголовке Link
+     * передаётся ссылка на следующую страницу, если текущая полная.
+     * Для потоковой выдачи всей таблицы - /people/export.
+     */
+    @GetMapping()
+    public Mono<ResponseEntity<List<PersonDTO>>> getPeople(@RequestParam(value = "after", defaultValue = "0") int after,
+                                                           @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return peopleService.findPage(after, pageSize)
+                            .collectList()
+                            .map(page -> {
+                                ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                                if (page.size() == pageSize) {
+                                    int lastId = page.get(page.size() - 1).getId();
+                                    response.header(HttpHeaders.LINK,
+                                            "</people?after=" + lastId + "&limit=" + pageSize + ">; rel=\"next\"");
+                                }
+                                return response.body(personMapper.toPersonDTOList(page));
+                            });
+    }
+    
+    /**
+     * Выгрузка всей таблицы потоком: NDJSON (application/x-ndjson) или JSON-массив.
+     * Backpressure: следующая порция строк читается из курсора, только когда
+     * предыдущая записана в сокет, поэтому медленный клиент не раздувает память.
+     */
+    @GetMapping(value = "/export", produces = {PeopleController.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<PersonDTO> exportPeople() {
+        return peopleService.findAll()
+                            .map(personMapper::toPersonDTO);
+    }
+    
+    @GetMapping("/{id}")
+    public Mono<PersonDTO> getPerson(@PathVariable("id") int id) {
+        return peopleService.findOne(id)
+                            .map(personMapper::toPersonDTO);
+    }
+    
+    @PostMapping
+    public Mono<ResponseEntity<HttpStatus>> create(@RequestBody PersonDTO personDTO) {
+        return personValidator.validate(personDTO)
+                              .flatMap(errors -> errors.isEmpty()
+                                                 ? peopleService.save(personMapper.toPerson(personDTO))
+                                                 : Mono.error(new PersonNotCreatedException(errors)))
+                              .thenReturn(ResponseEntity.ok(HttpStatus.OK));
+    }
+    
+    @PatchMapping("/{id}")
+    public Mono<ResponseEntity<HttpStatus>> update(@PathVariable("id") int id,
+                                                   @RequestBody PersonPatchDTO personPatchDTO) {
+        return personValidator.validateUpdate(id, personPatchDTO)
+                              .flatMap(errors -> errors.isEmpty()
+                                                 ? peopleService.update(id, personPatchDTO.getName(),
+                                                                        personPatchDTO.getAge(), personPatchDTO.getEmail())
+                                                 : Mono.error(new PersonNotCreatedException(errors)))
+                              .thenReturn(ResponseEntity.ok(HttpStatus.OK));
+    }
+    
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<HttpStatus>> delete(@PathVariable("id") int id) {
+        return peopleService.delete(id)
+                            .thenReturn(ResponseEntity.ok(HttpStatus.OK));
+    }
+}
@@ -0,0 +1,59 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ответ на пакетные операции /people/batch.
+ * Для каждого элемента запроса (в том же порядке) - его результат.
+ */
+public class BatchResultDTO {
+    
+    public enum Status {
+        CREATED, UPDATED, DELETED, REJECTED, NOT_FOUND
+    }
+    
+    private final List<Item> items;
+    
+    public BatchResultDTO(int size) {
+        this.items = new ArrayList<>(size);
+    }
+    
+    public List<Item> getItems() {
+        return items;
+    }
+    
+    public void add(Integer id, Status status, List<String> errors) {
+        items.add(new Item(items.size(), id, status, errors));
+    }
+    
+    public static class Item {
+        private final int index;
+        private final Integer id;
+        private final Status status;
+        private final List<String> errors;
+        
+        public Item(int index, Integer id, Status status, List<String> errors) {
+            this.index = index;
+            this.id = id;
+            this.status = status;
+            this.errors = errors;
+        }
+        
+        public int getIndex() {
+            return index;
+        }
+        
+        public Integer getId() {
+            return id;
+        }
+        
+        public Status getStatus() {
+            return status;
+        }
+        
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+/**
+ * Ошибка валидации одного поля в ответе 400 (PersonErrorResponse.errors)
+ */
+public class FieldErrorDTO {
+    
+    private final String field;
+    private final String message;
+    
+    public FieldErrorDTO(String field, String message) {
+        this.field = field;
+        this.message = message;
+    }
+    
+    public String getField() {
+        return field;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ответ на POST /people/import: сколько людей импортировано и отклонено,
+ * и отклонённые строки файла с ошибками (не больше maxRejectedRows, дальше только счётчик)
+ */
+public class ImportResultDTO {
+    
+    private final int maxRejectedRows;
+    private final List<RejectedRow> rejectedRows = new ArrayList<>();
+    private long imported;
+    private long rejected;
+    
+    public ImportResultDTO(int maxRejectedRows) {
+        this.maxRejectedRows = maxRejectedRows;
+    }
+    
+    public long getImported() {
+        return imported;
+    }
+    
+    public long getRejected() {
+        return rejected;
+    }
+    
+    /**
+     * Отклонённые строки по возрастанию номера
+     */
+    public List<RejectedRow> getRejectedRows() {
+        rejectedRows.sort(Comparator.comparingLong(RejectedRow::getLine));
+        return rejectedRows;
+    }
+    
+    /**
+     * true - отклонённых строк больше, чем вошло в rejectedRows
+     */
+    public boolean isTruncated() {
+        return rejected > rejectedRows.size();
+    }
+    
+    public void addImported(int count) {
+        imported += count;
+    }
+    
+    public void reject(long line, List<FieldErrorDTO> errors) {
+        rejected++;
+        if (rejectedRows.size() < maxRejectedRows) {
+            rejectedRows.add(new RejectedRow(line, errors));
+        }
+    }
+    
+    public static class RejectedRow {
+        private final long line;
+        private final List<FieldErrorDTO> errors;
+    
+        public RejectedRow(long line, List<FieldErrorDTO> errors) {
+            this.line = line;
+            this.errors = errors;
+        }
+    
+        public long getLine() {
+            return line;
+        }
+    
+        /**
+         * Ошибки по полям, как в ответе 400 на POST /people. Ошибка всей записи
+         * (не разобрана, не то число полей) - с field = null
+         */
+        public List<FieldErrorDTO> getErrors() {
+            return errors;
+        }
+    }
+}
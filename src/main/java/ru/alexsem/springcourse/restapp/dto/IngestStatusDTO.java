@@ -0,0 +1,38 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import ru.alexsem.springcourse.restapp.services.PersonIngestQueue;
+
+/**
+ * Статус асинхронного создания человека (POST /people с Prefer: respond-async).
+ * personId - когда человек сохранён (CREATED), error - если сохранить не удалось (FAILED)
+ */
+public class IngestStatusDTO {
+    
+    private final String id;
+    private final PersonIngestQueue.Ticket.Status status;
+    private final Integer personId;
+    private final String error;
+    
+    public IngestStatusDTO(PersonIngestQueue.Ticket ticket) {
+        this.id = ticket.getId();
+        this.status = ticket.getStatus();
+        this.personId = ticket.getPersonId();
+        this.error = ticket.getError();
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public PersonIngestQueue.Ticket.Status getStatus() {
+        return status;
+    }
+    
+    public Integer getPersonId() {
+        return personId;
+    }
+    
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import ru.alexsem.springcourse.restapp.services.PeopleStats;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ответ GET /people/stats. Корзины возраста подписаны диапазоном ("0-9", "10-19", ..., "90+"),
+ * дни без созданных людей тоже есть в createdPerDay (с нулём).
+ * reconciledAt - когда счётчики последний раз сверялись с БД
+ */
+public class PeopleStatsDTO {
+    
+    private final long total;
+    private final Map<String, Long> ages = new LinkedHashMap<>();
+    private final Map<String, Long> domains;
+    private final Map<LocalDate, Long> createdPerDay;
+    private final LocalDateTime reconciledAt;
+    
+    public PeopleStatsDTO(PeopleStats.Snapshot snapshot) {
+        this.total = snapshot.getTotal();
+        long[] counts = snapshot.getAges();
+        for (int i = 0; i < counts.length; i++) {
+            int from = i * PeopleStats.AGE_BUCKET_WIDTH;
+            String label = i == counts.length - 1
+                           ? from + "+" : from + "-" + (from + PeopleStats.AGE_BUCKET_WIDTH - 1);
+            ages.put(label, counts[i]);
+        }
+        this.domains = snapshot.getDomains();
+        this.createdPerDay = snapshot.getCreatedPerDay();
+        this.reconciledAt = snapshot.getReconciledAt();
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    public Map<String, Long> getAges() {
+        return ages;
+    }
+    
+    public Map<String, Long> getDomains() {
+        return domains;
+    }
+    
+    public Map<LocalDate, Long> getCreatedPerDay() {
+        return createdPerDay;
+    }
+    
+    public LocalDateTime getReconciledAt() {
+        return reconciledAt;
+    }
+}
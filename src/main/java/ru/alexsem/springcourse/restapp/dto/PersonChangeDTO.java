@@ -0,0 +1,67 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import ru.alexsem.springcourse.restapp.models.PersonChange;
+
+import java.time.LocalDateTime;
+
+/**
+ * Событие изменения человека для GET /people/changes.
+ * person - состояние после изменения, для DELETED его нет (null)
+ */
+public class PersonChangeDTO {
+    
+    private long seq;
+    private PersonChange.Type type;
+    private int id;
+    private Integer version;
+    private PersonDTO person;
+    private LocalDateTime changedAt;
+    
+    public long getSeq() {
+        return seq;
+    }
+    
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+    
+    public PersonChange.Type getType() {
+        return type;
+    }
+    
+    public void setType(PersonChange.Type type) {
+        this.type = type;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    public void setId(int id) {
+        this.id = id;
+    }
+    
+    public Integer getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+    
+    public PersonDTO getPerson() {
+        return person;
+    }
+    
+    public void setPerson(PersonDTO person) {
+        this.person = person;
+    }
+    
+    public LocalDateTime getChangedAt() {
+        return changedAt;
+    }
+    
+    public void setChangedAt(LocalDateTime changedAt) {
+        this.changedAt = changedAt;
+    }
+}
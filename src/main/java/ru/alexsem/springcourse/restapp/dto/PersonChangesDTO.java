@@ -0,0 +1,27 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import java.util.List;
+
+/**
+ * Ответ GET /people/changes.
+ * last - seq, с которого продолжать (параметр since следующего запроса).
+ * Если событий не было, равен since запроса
+ */
+public class PersonChangesDTO {
+    
+    private final List<PersonChangeDTO> changes;
+    private final long last;
+    
+    public PersonChangesDTO(List<PersonChangeDTO> changes, long last) {
+        this.changes = changes;
+        this.last = last;
+    }
+    
+    public List<PersonChangeDTO> getChanges() {
+        return changes;
+    }
+    
+    public long getLast() {
+        return last;
+    }
+}
@@ -30,6 +30,7 @@ public class PersonDTO {
     
     @Email
     @NotEmpty(message = "Name should not be empty")
+    @Size(max = 100, message = "Email should be at most 100 characters")
     private String email;
     
     public String getName() {
@@ -0,0 +1,47 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Size;
+
+/**
+ * Тело PATCH /people/{id}.
+ * Все поля необязательные: null означает "не менять", в БД обновляются
+ * только переданные колонки. Если поле передано, к нему применяются
+ * те же правила, что и в PersonDTO.
+ */
+public class PersonPatchDTO {
+    @Size(min = 2, max = 100, message = "Name should be between 2 and 100 characters")
+    private String name;
+    
+    @Min(value = 0, message = "Age should be grater than 0")
+    private Integer age;
+    
+    @Email
+    @Size(min = 1, max = 100, message = "Email should be between 1 and 100 characters")
+    private String email;
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public Integer getAge() {
+        return age;
+    }
+    
+    public void setAge(Integer age) {
+        this.age = age;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public void setEmail(String email) {
+        this.email = email;
+    }
+}
@@ -0,0 +1,127 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Pattern;
+import java.time.LocalDateTime;
+
+/**
+ * Параметры GET /people/search (из строки запроса).
+ * Все фильтры необязательные и объединяются через AND.
+ * cursor - значение из ссылки rel="next" предыдущей страницы
+ */
+public class PersonSearchDTO {
+    
+    /**
+     * Начало имени (с учётом регистра)
+     */
+    private String namePrefix;
+    
+    @Min(value = 0, message = "Age should be grater than 0")
+    private Integer minAge;
+    
+    @Min(value = 0, message = "Age should be grater than 0")
+    private Integer maxAge;
+    
+    private String emailDomain;
+    
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime createdFrom;
+    
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime createdTo;
+    
+    @Pattern(regexp = "id|name|age|createdAt", message = "Sort should be one of id, name, age, createdAt")
+    private String sort = "id";
+    
+    @Pattern(regexp = "asc|desc", message = "Direction should be asc or desc")
+    private String direction = "asc";
+    
+    private String cursor;
+    
+    @Min(value = 1, message = "Limit should be between 1 and 1000")
+    @Max(value = 1000, message = "Limit should be between 1 and 1000")
+    private int limit = 100;
+    
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+    
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+    
+    public Integer getMinAge() {
+        return minAge;
+    }
+    
+    public void setMinAge(Integer minAge) {
+        this.minAge = minAge;
+    }
+    
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+    
+    public void setMaxAge(Integer maxAge) {
+        this.maxAge = maxAge;
+    }
+    
+    public String getEmailDomain() {
+        return emailDomain;
+    }
+    
+    public void setEmailDomain(String emailDomain) {
+        this.emailDomain = emailDomain;
+    }
+    
+    public LocalDateTime getCreatedFrom() {
+        return createdFrom;
+    }
+    
+    public void setCreatedFrom(LocalDateTime createdFrom) {
+        this.createdFrom = createdFrom;
+    }
+    
+    public LocalDateTime getCreatedTo() {
+        return createdTo;
+    }
+    
+    public void setCreatedTo(LocalDateTime createdTo) {
+        this.createdTo = createdTo;
+    }
+    
+    public String getSort() {
+        return sort;
+    }
+    
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+    
+    public String getDirection() {
+        return direction;
+    }
+    
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+    
+    public String getCursor() {
+        return cursor;
+    }
+    
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import ru.alexsem.springcourse.restapp.services.PersonSuggestIndex;
+
+/**
+ * Подсказка GET /people/suggest: только то, что нужно показать в выпадающем списке
+ */
+public class PersonSuggestionDTO {
+    
+    private final int id;
+    private final String name;
+    private final String email;
+    
+    public PersonSuggestionDTO(PersonSuggestIndex.Suggestion suggestion) {
+        this.id = suggestion.getId();
+        this.name = suggestion.getName();
+        this.email = suggestion.getEmail();
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+}
@@ -0,0 +1,21 @@
+package ru.alexsem.springcourse.restapp.dto;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Элемент пакетного обновления PATCH /people/batch.
+ * В отличие от одиночного PATCH /people/{id}, id передаётся в теле
+ * вместе с остальными полями PersonDTO.
+ */
+public class PersonUpdateDTO extends PersonDTO {
+    @NotNull(message = "Id should not be empty")
+    private Integer id;
+    
+    public Integer getId() {
+        return id;
+    }
+    
+    public void setId(Integer id) {
+        this.id = id;
+    }
+}
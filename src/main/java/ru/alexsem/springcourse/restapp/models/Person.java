@@ -11,6 +11,7 @@ import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Size;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Locale;
 
 /**
  * Аннотацией @Entity помечаем класс, который связан с бд. Hibernate воспринимает этот класс
@@ -37,13 +38,33 @@ import java.time.LocalDateTime;
  */
 
 @Entity
-@Table(name = "Person")
+// Индексы для GET /people/search: ключ сортировки + id, чтобы keyset-пагинация
+// шла по индексу без сортировки. В PostgreSQL их создаёт миграция V6__person_search_indexes.sql
+@Table(name = "Person", indexes = {
+        @Index(name = "person_name_id_idx", columnList = "name, id"),
+        @Index(name = "person_age_id_idx", columnList = "age, id"),
+        @Index(name = "person_email_domain_id_idx", columnList = "email_domain, id"),
+        @Index(name = "person_created_at_id_idx", columnList = "created_at, id")
+})
 //@ToString
 //@NoArgsConstructor
 public class Person {
+    
+    /**
+     * Шаг person_id_seq. Его же использует ReactivePeopleRepository,
+     * чтобы id, выданные JPA и R2DBC, не пересекались
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+    
+    /**
+     * IDENTITY не даёт Hibernate объединять INSERT в batch (id нужен сразу после каждой вставки),
+     * поэтому id берём из последовательности пачками по 50 (pooled-оптимизатор).
+     * INCREMENT у person_id_seq в БД должен совпадать с allocationSize.
+     */
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "person_id_seq")
+    @SequenceGenerator(name = "person_id_seq", sequenceName = "person_id_seq", allocationSize = ID_ALLOCATION_SIZE)
     private int id;
     
     @NotEmpty(message = "Name should not be empty")
@@ -56,11 +77,18 @@ public class Person {
     @Min(value = 0, message = "Age should be grater than 0")
     private int age;
     
-    @Column(name = "email")
+    @Column(name = "email", unique = true)
     @Email(message = "Email should be valid")
     @NotEmpty(message = "Name should not be empty")
     private String email;
     
+    /**
+     * Домен email в нижнем регистре - для поиска по домену по индексу.
+     * Назначается в setEmail, от клиента не приходит
+     */
+    @Column(name = "email_domain")
+    private String emailDomain;
+    
     /**
      * три поля ниже берутся не от клиента, а назначаются сервером
      */
@@ -71,6 +99,15 @@ public class Person {
     @Column(name = "created_who")
     private String createdWho;
     
+    /**
+     * Версия строки для оптимистической блокировки: Hibernate увеличивает её при каждом
+     * изменении сущности и добавляет "where version = ?" в UPDATE.
+     * Из неё же строится ETag в PeopleController (см ETags)
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private int version;
+    
     
     // Конструктор по умолчанию нужен для Spring
     public Person() {
@@ -106,6 +143,22 @@ public class Person {
     
     public void setEmail(String email) {
         this.email = email;
+        this.emailDomain = emailDomainOf(email);
+    }
+    
+    public String getEmailDomain() {
+        return emailDomain;
+    }
+    
+    /**
+     * Часть email после последнего @ в нижнем регистре (null, если @ нет)
+     */
+    public static String emailDomainOf(String email) {
+        if (email == null) {
+            return null;
+        }
+        int at = email.lastIndexOf('@');
+        return at < 0 ? null : email.substring(at + 1).toLowerCase(Locale.ROOT);
     }
     
     public LocalDateTime getCreatedAt() {
@@ -132,6 +185,14 @@ public class Person {
         this.createdWho = createdWho;
     }
     
+    public int getVersion() {
+        return version;
+    }
+    
+    public void setVersion(int version) {
+        this.version = version;
+    }
+    
     @Override
     public String toString() {
         return "Person{" +
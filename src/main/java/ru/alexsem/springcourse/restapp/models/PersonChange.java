@@ -0,0 +1,97 @@
+package ru.alexsem.springcourse.restapp.models;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Событие изменения человека в outbox-таблице person_change.
+ *
+ * Строка добавляется в той же транзакции, что и само изменение (см PersonChangeLog),
+ * поэтому событие есть тогда и только тогда, когда изменение закоммичено.
+ * Для CREATED и UPDATED в событии снимок человека после изменения,
+ * для DELETED - только id.
+ *
+ * seq - номер события, по нему потребители читают изменения по порядку (GET /people/changes).
+ * Строки только добавляются (native INSERT ... SELECT) и удаляются по сроку хранения,
+ * через JPA их не меняют.
+ */
+@Entity
+@Immutable
+@Table(name = "person_change", indexes = @Index(name = "person_change_changed_at_idx", columnList = "changed_at"))
+public class PersonChange {
+    
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+    
+    @Id
+    @Column(name = "seq")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long seq;
+    
+    @Column(name = "person_id", nullable = false)
+    private int personId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 10)
+    private Type type;
+    
+    @Column(name = "version")
+    private Integer version;
+    
+    @Column(name = "name", length = 100)
+    private String name;
+    
+    @Column(name = "age")
+    private Integer age;
+    
+    @Column(name = "email", length = 100)
+    private String email;
+    
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+    
+    public PersonChange() {
+    }
+    
+    public PersonChange(long seq, int personId, Type type, LocalDateTime changedAt) {
+        this.seq = seq;
+        this.personId = personId;
+        this.type = type;
+        this.changedAt = changedAt;
+    }
+    
+    public long getSeq() {
+        return seq;
+    }
+    
+    public int getPersonId() {
+        return personId;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public Integer getVersion() {
+        return version;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Integer getAge() {
+        return age;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public LocalDateTime getChangedAt() {
+        return changedAt;
+    }
+}
@@ -1,11 +1,22 @@
 package ru.alexsem.springcourse.restapp.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.alexsem.springcourse.restapp.models.Person;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  *
@@ -25,9 +36,110 @@ import java.util.Optional;
  *
  */
 @Repository
-public interface PeopleRepository extends JpaRepository<Person, Integer> {
+public interface PeopleRepository extends JpaRepository<Person, Integer>, PeopleRepositoryCustom {
 
 //    Может возвращать и List<Person> тоже (см документацию)
 //    После By пишем имя поля
     Optional<Person> findByEmail(String email);
+    
+    /**
+     * Для проверки уникальности email не нужна вся сущность:
+     * exists-запрос выбирает только id с limit 1.
+     *
+     * Проверки уникальности email (этот и два следующих метода) - в транзакции на запись,
+     * то есть всегда в основной БД, а не readOnly на реплике (ReplicaRoutingDataSource):
+     * отстающая реплика пропустила бы только что занятый email
+     */
+    @Transactional
+    boolean existsByEmail(String email);
+    
+    /**
+     * То же самое при обновлении: собственный email человека не считается занятым
+     */
+    @Transactional
+    boolean existsByEmailAndIdNot(String email, int id);
+    
+    /**
+     * Пары (email, id) для пакетной проверки уникальности - один запрос на пачку email
+     * вместо findByEmail на каждого человека
+     */
+    @Transactional
+    @Query("select p.email, p.id from Person p where p.email in :emails")
+    List<Object[]> findIdsByEmails(Collection<String> emails);
+    
+    /**
+     * Какие из переданных id есть в БД (для пакетного удаления)
+     */
+    @Query("select p.id from Person p where p.id in :ids")
+    List<Integer> findExistingIds(Collection<Integer> ids);
+    
+    /**
+     * В отличие от deleteById не загружает сущность перед удалением.
+     * Количество удалённых строк показывает, был ли такой человек
+     */
+    @Modifying
+    @Query("delete from Person p where p.id = :id")
+    int deleteOneById(int id);
+    
+    /**
+     * Удаление только если версия строки не изменилась (If-Match).
+     * 0 строк - человека нет или его уже изменили
+     */
+    @Modifying
+    @Query("delete from Person p where p.id = :id and p.version = :version")
+    int deleteOneByIdAndVersion(int id, int version);
+    
+    /**
+     * Только версия - для ответа 304 Not Modified без загрузки всей сущности
+     */
+    @Query("select p.version from Person p where p.id = :id")
+    Optional<Integer> findVersionById(int id);
+    
+    /**
+     * Пары (id, version) той же страницы, что и findPageAfter - по ним строится ETag страницы
+     */
+    @Query("select p.id, p.version from Person p where p.id > :after order by p.id")
+    List<Object[]> findPageVersionsAfter(int after, Pageable pageable);
+    
+    /**
+     * Все email для заполнения EmailIndex при старте
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select p.email from Person p where p.email is not null")
+    Stream<String> streamAllEmails();
+    
+    /**
+     * Тройки (id, name, email) по возрастанию id для заполнения PersonSuggestIndex при старте
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select p.id, p.name, p.email from Person p order by p.id")
+    Stream<Object[]> streamAllSuggestFields();
+    
+    /**
+     * Четвёрки (id, age, emailDomain, createdAt) для пересчёта PeopleStats
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select p.id, p.age, p.emailDomain, p.createdAt from Person p")
+    Stream<Object[]> streamAllStatsFields();
+    
+    /**
+     * Keyset-пагинация по первичному ключу: вместо OFFSET берём строки
+     * с id больше последнего отданного клиенту. Размер страницы задаётся
+     * через Pageable (используется только limit, сортировка уже в запросе).
+     */
+    @Query("select p from Person p where p.id > :after order by p.id")
+    List<Person> findPageAfter(int after, Pageable pageable);
+    
+    /**
+     * Потоковое чтение всей таблицы через JDBC-курсор.
+     * Работает только внутри транзакции, а Stream обязательно закрывать.
+     * fetchSize задаёт, сколько строк драйвер держит в памяти за раз
+     * (для PostgreSQL курсор включается только при выключенном autocommit).
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("select p from Person p order by p.id")
+    Stream<Person> streamAll();
 }
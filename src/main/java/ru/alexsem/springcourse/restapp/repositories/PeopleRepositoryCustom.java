@@ -0,0 +1,39 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Запросы, которые неудобно описать через @Query.
+ * Spring Data подмешивает реализацию (PeopleRepositoryCustomImpl) в PeopleRepository.
+ */
+public interface PeopleRepositoryCustom {
+    
+    /**
+     * Одним UPDATE меняет только переданные (не null) поля и updated_at, увеличивает version
+     *
+     * @param expectedVersion null - обновлять без проверки версии
+     * @return количество изменённых строк (0 - человека с таким id нет или версия не совпала)
+     */
+    int updatePartially(int id, Integer expectedVersion, String name, Integer age, String email,
+                        LocalDateTime updatedAt);
+    
+    /**
+     * Страница результатов поиска: фильтры, сортировка (ключ, id) и keyset-курсор из search
+     */
+    List<Person> search(PersonSearch search);
+    
+    /**
+     * Массовая вставка новых людей (POST /people/import) мимо persistence context:
+     * id выдаются блоками из person_id_seq, строки загружаются во временную таблицу person_import
+     * и переносятся в person одним INSERT ... SELECT. Человек, чей email уже есть в person, не вставляется.
+     * Вызывается в транзакции: временная таблица очищается при коммите.
+     *
+     * @param people новые люди со всеми полями, кроме id (id назначается здесь); email в списке не повторяются
+     * @return id людей, которые не вставлены, потому что email уже занят
+     */
+    Set<Integer> importPeople(List<Person> people);
+}
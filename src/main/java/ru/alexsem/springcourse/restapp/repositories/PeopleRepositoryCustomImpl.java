@@ -0,0 +1,342 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.hibernate.Session;
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Название класса должно быть PeopleRepositoryCustom + Impl,
+ * тогда Spring Data найдёт его сам
+ */
+public class PeopleRepositoryCustomImpl implements PeopleRepositoryCustom {
+    
+    private static final String IMPORT_COLUMNS =
+            "id, name, age, email, email_domain, created_at, updated_at, created_who";
+    
+    /**
+     * Временная таблица видна только своему соединению и живёт, пока соединение в пуле,
+     * строки удаляются при коммите. TRANSACTIONAL нужен H2: без него CREATE TABLE
+     * коммитит открытую транзакцию
+     */
+    private static final String IMPORT_TABLE_COLUMNS = "(id INT, name VARCHAR(100), age INT, email VARCHAR(100), "
+            + "email_domain VARCHAR(100), created_at TIMESTAMP, updated_at TIMESTAMP, created_who VARCHAR)";
+    private static final String CREATE_IMPORT_TABLE_POSTGRES =
+            "CREATE TEMP TABLE IF NOT EXISTS person_import " + IMPORT_TABLE_COLUMNS + " ON COMMIT DELETE ROWS";
+    private static final String CREATE_IMPORT_TABLE = "CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS person_import "
+            + IMPORT_TABLE_COLUMNS + " ON COMMIT DELETE ROWS TRANSACTIONAL";
+    
+    /**
+     * Перенос в person одним запросом. В PostgreSQL ON CONFLICT DO NOTHING пропускает и строки,
+     * чей email одновременно занимает другая транзакция (NOT EXISTS их ещё не видит).
+     *
+     * В секционированной схеме (db/partitioning) уникального индекса по email у person нет,
+     * его заменяет триггер на person_email, и ON CONFLICT такой конфликт не видит: триггер
+     * бросает unique_violation на весь запрос. Поэтому запрос идёт под savepoint-ом
+     * и при unique_violation повторяется: вставка ждёт завершения чужой транзакции,
+     * так что к повтору её строка уже закоммичена и NOT EXISTS её отсечёт
+     */
+    private static final String MERGE_IMPORT = "INSERT INTO person (" + IMPORT_COLUMNS + ", version) "
+            + "SELECT " + IMPORT_COLUMNS + ", 0 FROM person_import s "
+            + "WHERE NOT EXISTS (SELECT 1 FROM person p WHERE p.email = s.email)";
+    private static final String REJECTED_IMPORT = "SELECT s.id FROM person_import s "
+            + "WHERE NOT EXISTS (SELECT 1 FROM person p WHERE p.id = s.id)";
+    
+    private static final int IMPORT_JDBC_BATCH_SIZE = 1000;
+    private static final int MERGE_ATTEMPTS = 3;
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final DateTimeFormatter COPY_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    /**
+     * Значения передаются параметрами, а не литералами: иначе Hibernate подставляет
+     * числа прямо в SQL, и на каждое новое значение строится новый план запроса.
+     * Набор колонок ограничен (не больше 16 вариантов), поэтому кэш планов не раздувается.
+     *
+     * Bulk-UPDATE проходит мимо @Version, поэтому версию увеличиваем сами.
+     */
+    @Override
+    public int updatePartially(int id, Integer expectedVersion, String name, Integer age, String email,
+                               LocalDateTime updatedAt) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Person> update = cb.createCriteriaUpdate(Person.class);
+        Root<Person> person = update.from(Person.class);
+        
+        ParameterExpression<String> nameParam = cb.parameter(String.class, "name");
+        ParameterExpression<Integer> ageParam = cb.parameter(Integer.class, "age");
+        ParameterExpression<String> emailParam = cb.parameter(String.class, "email");
+        ParameterExpression<String> emailDomainParam = cb.parameter(String.class, "emailDomain");
+        ParameterExpression<LocalDateTime> updatedAtParam = cb.parameter(LocalDateTime.class, "updatedAt");
+        ParameterExpression<Integer> idParam = cb.parameter(Integer.class, "id");
+        ParameterExpression<Integer> versionParam = cb.parameter(Integer.class, "version");
+        
+        if (name != null) {
+            update.set(person.<String>get("name"), nameParam);
+        }
+        if (age != null) {
+            update.set(person.<Integer>get("age"), ageParam);
+        }
+        if (email != null) {
+            update.set(person.<String>get("email"), emailParam);
+            update.set(person.<String>get("emailDomain"), emailDomainParam);
+        }
+        update.set(person.<LocalDateTime>get("updatedAt"), updatedAtParam);
+        update.set(person.<Integer>get("version"), cb.sum(person.<Integer>get("version"), 1));
+        if (expectedVersion != null) {
+            update.where(cb.equal(person.get("id"), idParam), cb.equal(person.get("version"), versionParam));
+        } else {
+            update.where(cb.equal(person.get("id"), idParam));
+        }
+        
+        Query query = entityManager.createQuery(update)
+                                   .setParameter(updatedAtParam, updatedAt)
+                                   .setParameter(idParam, id);
+        if (expectedVersion != null) {
+            query.setParameter(versionParam, expectedVersion);
+        }
+        if (name != null) {
+            query.setParameter(nameParam, name);
+        }
+        if (age != null) {
+            query.setParameter(ageParam, age);
+        }
+        if (email != null) {
+            query.setParameter(emailParam, email);
+            query.setParameter(emailDomainParam, Person.emailDomainOf(email));
+        }
+        return query.executeUpdate();
+    }
+    
+    /**
+     * Условие "после курсора" записано как key >= :value AND (key > :value OR id > :id):
+     * первая часть задаёт начало диапазона в индексе (key, id), вторая отсекает
+     * уже отданные строки с тем же значением ключа. Для убывающей сортировки - наоборот.
+     * ORDER BY совпадает с порядком индекса, поэтому БД читает только limit строк.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Person> search(PersonSearch search) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Person> query = cb.createQuery(Person.class);
+        Root<Person> person = query.from(Person.class);
+        Path<Integer> id = person.get("id");
+        boolean desc = search.isDescending();
+        
+        List<Predicate> where = new ArrayList<>();
+        if (search.getFilter() != null) {
+            Predicate filter = search.getFilter().toPredicate(person, query, cb);
+            if (filter != null) {
+                where.add(filter);
+            }
+        }
+        
+        PersonSearch.SortField sort = search.getSort();
+        if (sort == PersonSearch.SortField.ID) {
+            if (search.getAfterId() != null) {
+                where.add(desc ? cb.lessThan(id, search.getAfterId()) : cb.greaterThan(id, search.getAfterId()));
+            }
+            query.orderBy(desc ? cb.desc(id) : cb.asc(id));
+        } else {
+            Path<Comparable<Object>> key = person.get(sort.getAttribute());
+            if (sort == PersonSearch.SortField.CREATED_AT) {
+//                у старых строк created_at нет, с null курсор не построить - они не ищутся (см PersonSearch)
+                where.add(cb.isNotNull(key));
+            }
+            if (search.getAfterId() != null && search.getAfterValue() == null) {
+//                курсор со строки без created_at: такие строки в выдачу не входят, дальше ничего нет
+                where.add(cb.disjunction());
+            } else if (search.getAfterId() != null) {
+                where.add(after(cb, key, (Comparable<Object>) search.getAfterValue(), id, search.getAfterId(), desc));
+            }
+            query.orderBy(desc ? cb.desc(key) : cb.asc(key), desc ? cb.desc(id) : cb.asc(id));
+        }
+        
+        query.select(person).where(where.toArray(new Predicate[0]));
+        return entityManager.createQuery(query)
+                            .setMaxResults(search.getLimit())
+                            .getResultList();
+    }
+    
+    /**
+     * В PostgreSQL строки загружаются через COPY FROM STDIN: один поток CSV вместо
+     * INSERT на каждую строку, без разбора SQL и без обмена пакетами на каждый batch.
+     * В остальных БД (H2 в тестах) и без драйвера PostgreSQL в classpath - JDBC batch.
+     */
+    @Override
+    public Set<Integer> importPeople(List<Person> people) {
+        if (people.isEmpty()) {
+            return new HashSet<>();
+        }
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            boolean postgres = PostgresCopy.isAvailable(connection);
+            assignIds(connection, people);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(postgres ? CREATE_IMPORT_TABLE_POSTGRES : CREATE_IMPORT_TABLE);
+            }
+            if (postgres) {
+                copyToImportTable(connection, people);
+            } else {
+                insertIntoImportTable(connection, people);
+            }
+            mergeImportTable(connection, postgres ? MERGE_IMPORT + " ON CONFLICT DO NOTHING" : MERGE_IMPORT);
+            Set<Integer> rejected = new HashSet<>();
+            try (Statement statement = connection.createStatement()) {
+                try (ResultSet resultSet = statement.executeQuery(REJECTED_IMPORT)) {
+                    while (resultSet.next()) {
+                        rejected.add(resultSet.getInt(1));
+                    }
+                }
+            }
+            return rejected;
+        });
+    }
+    
+    private static void mergeImportTable(Connection connection, String sql) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            Savepoint savepoint = connection.setSavepoint();
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(sql);
+                connection.releaseSavepoint(savepoint);
+                return;
+            } catch (SQLException e) {
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState()) || attempt == MERGE_ATTEMPTS) {
+                    throw e;
+                }
+                connection.rollback(savepoint);
+            }
+        }
+    }
+    
+    /**
+     * Id блоками, как у pooled-оптимизатора Hibernate (и ReactivePeopleRepository):
+     * каждый nextval - верхняя граница блока из Person.ID_ALLOCATION_SIZE id.
+     * Все нужные блоки берутся одним запросом
+     */
+    private static void assignIds(Connection connection, List<Person> people) throws SQLException {
+        int assigned = 0;
+        try (PreparedStatement statement =
+                     connection.prepareStatement("SELECT nextval('person_id_seq') FROM generate_series(1, ?)")) {
+            while (assigned < people.size()) {
+                statement.setInt(1, (people.size() - assigned + Person.ID_ALLOCATION_SIZE - 1)
+                        / Person.ID_ALLOCATION_SIZE);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next() && assigned < people.size()) {
+                        long hi = resultSet.getLong(1);
+//                        Самое первое значение последовательности (1) - блок из одного id
+                        for (long id = Math.max(1, hi - Person.ID_ALLOCATION_SIZE + 1);
+                             id <= hi && assigned < people.size(); id++) {
+                            people.get(assigned++).setId((int) id);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Строки пишутся в COPY по мере формирования, весь CSV в памяти не собирается
+     */
+    private static void copyToImportTable(Connection connection, List<Person> people) throws SQLException {
+        try (Writer writer = PostgresCopy.copyIn(connection,
+                "COPY person_import (" + IMPORT_COLUMNS + ") FROM STDIN (FORMAT csv)")) {
+            for (Person person : people) {
+                writeCopyRow(writer, person);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Строка COPY ... (FORMAT csv) в порядке IMPORT_COLUMNS
+     */
+    static void writeCopyRow(Writer writer, Person person) throws IOException {
+        writer.write(Integer.toString(person.getId()));
+        writer.write(',');
+        writeCsv(writer, person.getName());
+        writer.write(',');
+        writer.write(Integer.toString(person.getAge()));
+        writer.write(',');
+        writeCsv(writer, person.getEmail());
+        writer.write(',');
+        writeCsv(writer, person.getEmailDomain());
+        writer.write(',');
+        writer.write(person.getCreatedAt().format(COPY_TIMESTAMP));
+        writer.write(',');
+        writer.write(person.getUpdatedAt().format(COPY_TIMESTAMP));
+        writer.write(',');
+        writeCsv(writer, person.getCreatedWho());
+        writer.write('\n');
+    }
+    
+    /**
+     * Строка в кавычках (кавычки внутри удваиваются), null - пустое поле без кавычек
+     */
+    private static void writeCsv(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+    
+    private static void insertIntoImportTable(Connection connection, List<Person> people) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO person_import (" + IMPORT_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < people.size(); i++) {
+                Person person = people.get(i);
+                statement.setInt(1, person.getId());
+                statement.setString(2, person.getName());
+                statement.setInt(3, person.getAge());
+                statement.setString(4, person.getEmail());
+                statement.setString(5, person.getEmailDomain());
+                statement.setTimestamp(6, Timestamp.valueOf(person.getCreatedAt()));
+                statement.setTimestamp(7, Timestamp.valueOf(person.getUpdatedAt()));
+                statement.setString(8, person.getCreatedWho());
+                statement.addBatch();
+                if ((i + 1) % IMPORT_JDBC_BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+    
+    private static Predicate after(CriteriaBuilder cb, Path<Comparable<Object>> key, Comparable<Object> value,
+                                   Path<Integer> id, int afterId, boolean desc) {
+        if (desc) {
+            return cb.and(cb.lessThanOrEqualTo(key, value),
+                    cb.or(cb.lessThan(key, value), cb.lessThan(id, afterId)));
+        }
+        return cb.and(cb.greaterThanOrEqualTo(key, value),
+                cb.or(cb.greaterThan(key, value), cb.greaterThan(id, afterId)));
+    }
+}
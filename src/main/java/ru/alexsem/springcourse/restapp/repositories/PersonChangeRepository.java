@@ -0,0 +1,72 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.alexsem.springcourse.restapp.models.PersonChange;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Outbox-таблица person_change (см PersonChange).
+ *
+ * События добавляются native-запросами: снимок человека копируется INSERT ... SELECT
+ * прямо в БД, без загрузки сущностей в приложение, и сразу для всей пачки id.
+ * seq назначает сама БД (IDENTITY).
+ */
+@Repository
+public interface PersonChangeRepository extends JpaRepository<PersonChange, Long>, PersonChangeRepositoryCustom {
+    
+    /**
+     * Событие с текущим состоянием каждого из людей (CREATED или UPDATED).
+     * flushAutomatically - новые и изменённые сущности должны попасть в БД до INSERT ... SELECT
+     *
+     * @return сколько событий добавлено (людей, которых уже нет, пропускаем)
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = "INSERT INTO person_change (person_id, type, version, name, age, email, changed_at)"
+            + " SELECT id, :type, version, name, age, email, :changedAt FROM person WHERE id IN (:ids) ORDER BY id")
+    int appendSnapshots(String type, Collection<Integer> ids, LocalDateTime changedAt);
+    
+    /**
+     * Событие DELETED для уже удалённого человека
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = "INSERT INTO person_change (person_id, type, changed_at)"
+            + " VALUES (:id, 'DELETED', :changedAt)")
+    int appendDeletion(int id, LocalDateTime changedAt);
+    
+    @Query("select c from PersonChange c where c.seq > :since order by c.seq")
+    List<PersonChange> findAfter(long since, Pageable pageable);
+    
+    /**
+     * Самое старое из хранящихся событий (null - событий нет)
+     */
+    @Query("select min(c.seq) from PersonChange c")
+    Long findFirstSeq();
+    
+    /**
+     * Самое новое событие (null - событий нет)
+     */
+    @Query("select max(c.seq) from PersonChange c")
+    Long findLastSeq();
+    
+    /**
+     * Последнее событие старше before (null - таких нет)
+     */
+    @Query("select max(c.seq) from PersonChange c where c.changedAt < :before")
+    Long findLastSeqBefore(LocalDateTime before);
+    
+    /**
+     * Удаляет не больше limit самых старых событий с seq меньше upTo.
+     * Удаление частями, чтобы не держать одну длинную транзакцию на миллионы строк
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = "DELETE FROM person_change WHERE seq IN"
+            + " (SELECT seq FROM person_change WHERE seq < :upTo ORDER BY seq LIMIT :limit)")
+    int deleteOldest(long upTo, int limit);
+}
@@ -0,0 +1,17 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Запросы к person_change, которые неудобно описать через @Query.
+ * Spring Data подмешивает реализацию (PersonChangeRepositoryCustomImpl) в PersonChangeRepository.
+ */
+public interface PersonChangeRepositoryCustom {
+    
+    /**
+     * События DELETED для уже удалённых людей, одним JDBC batch
+     * (строк в person нет, поэтому INSERT ... SELECT не подходит)
+     */
+    void appendDeletions(Collection<Integer> ids, LocalDateTime changedAt);
+}
@@ -0,0 +1,49 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Название класса должно быть PersonChangeRepositoryCustom + Impl,
+ * тогда Spring Data найдёт его сам
+ */
+public class PersonChangeRepositoryCustomImpl implements PersonChangeRepositoryCustom {
+    
+    private static final int JDBC_BATCH_SIZE = 1000;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    /**
+     * seq по возрастанию id, как у INSERT ... SELECT ... ORDER BY id в остальных событиях.
+     * В PostgreSQL batch склеивается в многострочные INSERT (reWriteBatchedInserts)
+     */
+    @Override
+    public void appendDeletions(Collection<Integer> ids, LocalDateTime changedAt) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Timestamp timestamp = Timestamp.valueOf(changedAt);
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO person_change (person_id, type, changed_at) VALUES (?, 'DELETED', ?)")) {
+                int count = 0;
+                for (int id : ids.stream().sorted().toArray(Integer[]::new)) {
+                    statement.setInt(1, id);
+                    statement.setTimestamp(2, timestamp);
+                    statement.addBatch();
+                    if (++count % JDBC_BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+}
@@ -0,0 +1,158 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.springframework.data.jpa.domain.Specification;
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Запрос поиска людей: фильтры (Specification), сортировка и keyset-курсор.
+ *
+ * Сортировка всегда дополняется id, поэтому порядок строк однозначный, а следующая
+ * страница начинается строго после последней строки предыдущей: (ключ, id) > (ключ, id) курсора.
+ * Курсор - base64url строки "sort,direction,id,значение ключа"; он действует только
+ * с той же сортировкой, с которой был получен.
+ *
+ * При sort=createdAt люди без created_at (строки до появления колонки) в выдачу не попадают:
+ * NULL не сравнивается ни с одним значением, и keyset-условие не может их упорядочить.
+ * Отдельное условие created_at IS NOT NULL делает это явным, а не случайным.
+ */
+public class PersonSearch {
+    
+    public enum SortField {
+        ID("id"), NAME("name"), AGE("age"), CREATED_AT("createdAt");
+    
+        private final String attribute;
+    
+        SortField(String attribute) {
+            this.attribute = attribute;
+        }
+    
+        /**
+         * Имя поля в Person - оно же значение параметра sort
+         */
+        public String getAttribute() {
+            return attribute;
+        }
+    
+        public static SortField of(String attribute) {
+            for (SortField field : values()) {
+                if (field.attribute.equals(attribute)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unknown sort field " + attribute);
+        }
+    }
+    
+    private final Specification<Person> filter;
+    private final SortField sort;
+    private final boolean descending;
+    private final int limit;
+    
+    private Object afterValue;
+    private Integer afterId;
+    
+    public PersonSearch(Specification<Person> filter, SortField sort, boolean descending, int limit) {
+        this.filter = filter;
+        this.sort = sort;
+        this.descending = descending;
+        this.limit = limit;
+    }
+    
+    public Specification<Person> getFilter() {
+        return filter;
+    }
+    
+    public SortField getSort() {
+        return sort;
+    }
+    
+    public boolean isDescending() {
+        return descending;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    /**
+     * Значение ключа сортировки последней строки предыдущей страницы (для sort=id не используется).
+     * null при sort=createdAt - строка без created_at: такие строки не ищутся, после неё ничего нет
+     */
+    public Object getAfterValue() {
+        return afterValue;
+    }
+    
+    /**
+     * id последней строки предыдущей страницы (null - первая страница)
+     */
+    public Integer getAfterId() {
+        return afterId;
+    }
+    
+    /**
+     * Курсор для страницы, следующей за person
+     */
+    public String cursorAfter(Person person) {
+        String value;
+        switch (sort) {
+            case NAME:
+                value = person.getName();
+                break;
+            case AGE:
+                value = Integer.toString(person.getAge());
+                break;
+            case CREATED_AT:
+//                пустое значение - NULL, см setCursor
+                value = person.getCreatedAt() == null ? "" : person.getCreatedAt().toString();
+                break;
+            default:
+                value = "";
+        }
+        String cursor = sort.getAttribute() + "," + direction() + "," + person.getId() + "," + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Продолжить поиск после строки из курсора
+     *
+     * @throws IllegalArgumentException курсор повреждён или получен с другой сортировкой
+     */
+    public void setCursor(String cursor) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",", 4);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (parts.length != 4 || !parts[0].equals(sort.getAttribute()) || !parts[1].equals(direction())) {
+            throw new IllegalArgumentException("Cursor does not match sort");
+        }
+        try {
+            afterId = Integer.parseInt(parts[2]);
+            switch (sort) {
+                case NAME:
+                    afterValue = parts[3];
+                    break;
+                case AGE:
+                    afterValue = Integer.parseInt(parts[3]);
+                    break;
+                case CREATED_AT:
+                    afterValue = parts[3].isEmpty() ? null : LocalDateTime.parse(parts[3]);
+                    break;
+                default:
+                    afterValue = null;
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+    
+    private String direction() {
+        return descending ? "desc" : "asc";
+    }
+}
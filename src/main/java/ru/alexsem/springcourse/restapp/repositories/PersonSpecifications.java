@@ -0,0 +1,79 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.springframework.data.jpa.domain.Specification;
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * Фильтры поиска людей в виде Specification (Criteria API).
+ * Если значение фильтра не передано, метод возвращает null,
+ * и Specification.where(...).and(...) его просто пропускает.
+ *
+ * Каждому фильтру соответствует индекс из Person (@Table(indexes)).
+ */
+public final class PersonSpecifications {
+    
+    private PersonSpecifications() {
+    }
+    
+    /**
+     * name LIKE 'prefix%': по индексу (name, id) ищется диапазон.
+     * % и _ в самом префиксе экранируются, чтобы не стать шаблоном
+     */
+    public static Specification<Person> nameStartsWith(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return null;
+        }
+        String pattern = prefix.replace("\\", "\\\\")
+                               .replace("%", "\\%")
+                               .replace("_", "\\_") + "%";
+        return (person, query, cb) -> cb.like(person.get("name"), pattern, '\\');
+    }
+    
+    public static Specification<Person> ageBetween(Integer min, Integer max) {
+        if (min == null && max == null) {
+            return null;
+        }
+        return (person, query, cb) -> {
+            if (min == null) {
+                return cb.lessThanOrEqualTo(person.get("age"), max);
+            }
+            if (max == null) {
+                return cb.greaterThanOrEqualTo(person.get("age"), min);
+            }
+            return cb.between(person.get("age"), min, max);
+        };
+    }
+    
+    /**
+     * Домен сравнивается с колонкой email_domain, которая хранится в нижнем регистре
+     */
+    public static Specification<Person> emailDomain(String domain) {
+        if (domain == null || domain.isEmpty()) {
+            return null;
+        }
+        String normalized = domain.toLowerCase(Locale.ROOT);
+        return (person, query, cb) -> cb.equal(person.get("emailDomain"), normalized);
+    }
+    
+    /**
+     * created_at в полуинтервале [from, to)
+     */
+    public static Specification<Person> createdBetween(LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return null;
+        }
+        return (person, query, cb) -> {
+            if (from == null) {
+                return cb.lessThan(person.get("createdAt"), to);
+            }
+            if (to == null) {
+                return cb.greaterThanOrEqualTo(person.get("createdAt"), from);
+            }
+            return cb.and(cb.greaterThanOrEqualTo(person.get("createdAt"), from),
+                    cb.lessThan(person.get("createdAt"), to));
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.springframework.util.ClassUtils;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * COPY ... FROM STDIN через API драйвера PostgreSQL (PGCopyOutputStream).
+ *
+ * Драйвер подключён только в runtime, поэтому его классы ищутся по имени (ClassUtils):
+ * без драйвера в classpath (или с другой БД) COPY просто недоступен,
+ * и PeopleRepositoryCustomImpl пишет JDBC batch-ем.
+ */
+final class PostgresCopy {
+    
+    private static final String PG_CONNECTION = "org.postgresql.PGConnection";
+    private static final String PG_COPY_OUTPUT_STREAM = "org.postgresql.copy.PGCopyOutputStream";
+    
+    private static final Class<?> CONNECTION_CLASS;
+    private static final Constructor<?> STREAM_CONSTRUCTOR;
+    
+    static {
+        ClassLoader classLoader = PostgresCopy.class.getClassLoader();
+        if (ClassUtils.isPresent(PG_COPY_OUTPUT_STREAM, classLoader)) {
+            CONNECTION_CLASS = ClassUtils.resolveClassName(PG_CONNECTION, classLoader);
+            STREAM_CONSTRUCTOR = ClassUtils.getConstructorIfAvailable(
+                    ClassUtils.resolveClassName(PG_COPY_OUTPUT_STREAM, classLoader), CONNECTION_CLASS, String.class);
+        } else {
+            CONNECTION_CLASS = null;
+            STREAM_CONSTRUCTOR = null;
+        }
+    }
+    
+    private PostgresCopy() {
+    }
+    
+    /**
+     * @return true - соединение с PostgreSQL и драйвер в classpath
+     */
+    static boolean isAvailable(Connection connection) throws SQLException {
+        return STREAM_CONSTRUCTOR != null && connection.isWrapperFor(CONNECTION_CLASS);
+    }
+    
+    /**
+     * Начать COPY. Строки в формате команды пишутся в Writer по мере формирования,
+     * close() завершает COPY
+     *
+     * @param connection соединение, для которого isAvailable
+     * @param sql        COPY ... FROM STDIN
+     */
+    static Writer copyIn(Connection connection, String sql) throws SQLException {
+        OutputStream out;
+        try {
+            out = (OutputStream) STREAM_CONSTRUCTOR.newInstance(connection.unwrap(CONNECTION_CLASS), sql);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException("Could not start COPY", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not start COPY", e);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+}
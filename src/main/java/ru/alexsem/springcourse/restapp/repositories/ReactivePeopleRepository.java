@@ -0,0 +1,204 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import java.time.LocalDateTime;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Реактивный аналог PeopleRepository (профиль reactive) поверх R2DBC DatabaseClient.
+ *
+ * Запросы написаны вручную: Person - JPA-сущность, и отдельный набор аннотаций
+ * Spring Data R2DBC для неё не нужен. Строки маппятся в тот же класс Person.
+ */
+@Repository
+@Profile("reactive")
+public class ReactivePeopleRepository {
+    
+    private static final String COLUMNS = "id, name, age, email, email_domain, created_at, updated_at, created_who, version";
+    
+    /**
+     * По сколько строк драйвер забирает из курсора при выгрузке всей таблицы.
+     * Следующая порция запрашивается, только когда подписчик готов её принять (backpressure)
+     */
+    private static final int FETCH_SIZE = 1000;
+    
+    private final DatabaseClient databaseClient;
+    
+    /**
+     * Текущий блок id из person_id_seq, как у pooled-оптимизатора Hibernate:
+     * nextval возвращает верхнюю границу блока из Person.ID_ALLOCATION_SIZE id
+     */
+    private final AtomicReference<IdBlock> idBlock = new AtomicReference<>(new IdBlock(0, 0));
+    
+    @Autowired
+    public ReactivePeopleRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+    
+    public Flux<Person> findPageAfter(int after, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM person WHERE id > :after ORDER BY id LIMIT :limit")
+                             .bind("after", after)
+                             .bind("limit", limit)
+                             .map((row, metadata) -> toPerson(row))
+                             .all();
+    }
+    
+    public Flux<Person> findAll() {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM person ORDER BY id")
+                             .filter(statement -> statement.fetchSize(FETCH_SIZE))
+                             .map((row, metadata) -> toPerson(row))
+                             .all();
+    }
+    
+    public Mono<Person> findById(int id) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM person WHERE id = :id")
+                             .bind("id", id)
+                             .map((row, metadata) -> toPerson(row))
+                             .one();
+    }
+    
+    public Mono<Boolean> existsByEmail(String email) {
+        return databaseClient.sql("SELECT 1 FROM person WHERE email = :email LIMIT 1")
+                             .bind("email", email)
+                             .map((row, metadata) -> true)
+                             .first()
+                             .defaultIfEmpty(false);
+    }
+    
+    public Mono<Boolean> existsByEmailAndIdNot(String email, int id) {
+        return databaseClient.sql("SELECT 1 FROM person WHERE email = :email AND id <> :id LIMIT 1")
+                             .bind("email", email)
+                             .bind("id", id)
+                             .map((row, metadata) -> true)
+                             .first()
+                             .defaultIfEmpty(false);
+    }
+    
+    /**
+     * Вставляет человека и проставляет ему id
+     */
+    public Mono<Person> insert(Person person) {
+        return nextId().flatMap(id -> {
+            person.setId(id);
+            return databaseClient.sql("INSERT INTO person (" + COLUMNS + ") " +
+                                      "VALUES (:id, :name, :age, :email, :emailDomain, :createdAt, :updatedAt, :createdWho, 0)")
+                                 .bind("id", id)
+                                 .bind("name", person.getName())
+                                 .bind("age", person.getAge())
+                                 .bind("email", person.getEmail())
+                                 .bind("emailDomain", person.getEmailDomain())
+                                 .bind("createdAt", person.getCreatedAt())
+                                 .bind("updatedAt", person.getUpdatedAt())
+                                 .bind("createdWho", person.getCreatedWho())
+                                 .fetch()
+                                 .rowsUpdated()
+                                 .thenReturn(person);
+        });
+    }
+    
+    /**
+     * Частичное обновление одним UPDATE, как PeopleRepositoryCustom.updatePartially
+     * (версия строки тоже увеличивается)
+     *
+     * @return число изменённых строк (0 - человека с таким id нет)
+     */
+    public Mono<Integer> updatePartially(int id, String name, Integer age, String email, LocalDateTime updatedAt) {
+        StringJoiner set = new StringJoiner(", ");
+        if (name != null) {
+            set.add("name = :name");
+        }
+        if (age != null) {
+            set.add("age = :age");
+        }
+        if (email != null) {
+            set.add("email = :email");
+            set.add("email_domain = :emailDomain");
+        }
+        set.add("updated_at = :updatedAt");
+        set.add("version = version + 1");
+    
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("UPDATE person SET " + set + " WHERE id = :id")
+                                                               .bind("updatedAt", updatedAt)
+                                                               .bind("id", id);
+        if (name != null) {
+            spec = spec.bind("name", name);
+        }
+        if (age != null) {
+            spec = spec.bind("age", age);
+        }
+        if (email != null) {
+            spec = spec.bind("email", email)
+                       .bind("emailDomain", Person.emailDomainOf(email));
+        }
+        return spec.fetch().rowsUpdated();
+    }
+    
+    public Mono<Integer> deleteById(int id) {
+        return databaseClient.sql("DELETE FROM person WHERE id = :id")
+                             .bind("id", id)
+                             .fetch()
+                             .rowsUpdated();
+    }
+    
+    private Mono<Integer> nextId() {
+        return Mono.defer(() -> {
+            int id = idBlock.get().next();
+            if (id > 0) {
+                return Mono.just(id);
+            }
+            return databaseClient.sql("SELECT nextval('person_id_seq')")
+                                 .map((row, metadata) -> row.get(0, Long.class))
+                                 .one()
+                                 .map(hi -> {
+//                                     Самое первое значение последовательности (1) - блок из одного id
+                                     int lo = (int) Math.max(1, hi - Person.ID_ALLOCATION_SIZE + 1);
+                                     IdBlock block = new IdBlock(lo, hi.intValue());
+                                     int first = block.next();
+                                     idBlock.set(block);
+                                     return first;
+                                 });
+        });
+    }
+    
+    private static Person toPerson(Row row) {
+        Person person = new Person();
+        person.setId(row.get("id", Integer.class));
+        person.setName(row.get("name", String.class));
+        Integer age = row.get("age", Integer.class);
+        person.setAge(age == null ? 0 : age);
+        person.setEmail(row.get("email", String.class));
+        person.setCreatedAt(row.get("created_at", LocalDateTime.class));
+        person.setUpdatedAt(row.get("updated_at", LocalDateTime.class));
+        person.setCreatedWho(row.get("created_who", String.class));
+        person.setVersion(row.get("version", Integer.class));
+        return person;
+    }
+    
+    /**
+     * Блок id [next, hi]. next() возвращает -1, когда блок закончился
+     */
+    private static class IdBlock {
+        private final AtomicInteger next;
+        private final int hi;
+    
+        IdBlock(int lo, int hi) {
+            this.next = new AtomicInteger(lo);
+            this.hi = hi;
+        }
+    
+        int next() {
+            int id = next.getAndIncrement();
+            return id > 0 && id <= hi ? id : -1;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Фильтр Блума по email всех людей в БД.
+ *
+ * Используется в PersonValidator для проверки уникальности email:
+ * если mightContain вернул false, такого email точно нет и в БД можно не ходить.
+ * Если true - email возможно занят, и тогда проверяем уже запросом existsByEmail.
+ *
+ * Удалять из фильтра Блума нельзя, поэтому при удалении человека или смене email
+ * старое значение остаётся в фильтре - это даёт только лишний запрос в БД, а не ошибку.
+ *
+ * Фильтр заполняется в фоне после старта приложения. Пока загрузка не закончилась,
+ * mightContain всегда возвращает true (то есть всегда проверяем по БД).
+ *
+ * Фильтр - только оптимизация в пределах одного экземпляра: он знает email из БД на момент
+ * загрузки и те, что записал сам этот экземпляр. Человека, созданного другим экземпляром
+ * после загрузки, здесь нет, и проверка в БД пропускается. Такую вставку отклоняет UNIQUE
+ * на email, а PeopleExceptionHandler отвечает тем же 400 "email занят", что и валидация.
+ * Если экземпляров много и повторы email частые, индекс лучше выключить
+ * (people.email-index.enabled=false) - тогда каждая проверка идёт в БД.
+ */
+@Component
+@Profile("!reactive")
+public class EmailIndex {
+    
+    private static final Logger logger = LoggerFactory.getLogger(EmailIndex.class);
+    
+    private final PeopleRepository peopleRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final int numHashFunctions;
+    private final long numBits;
+    private final AtomicLongArray bits;
+    private final AtomicLong insertions = new AtomicLong();
+    
+    private volatile boolean ready;
+    
+    @Autowired
+    public EmailIndex(PeopleRepository peopleRepository,
+                      PlatformTransactionManager transactionManager,
+                      @Value("${people.email-index.enabled:true}") boolean enabled,
+                      @Value("${people.email-index.expected-insertions:1000000}") long expectedInsertions,
+                      @Value("${people.email-index.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.peopleRepository = peopleRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+        
+//        Стандартные формулы: m = -n*ln(p)/(ln2)^2, k = m/n*ln2
+        long bitCount = (long) (-this.expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.max(64, (bitCount + 63) / 64 * 64);
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / this.expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray(enabled ? (int) (numBits / 64) : 0);
+    }
+    
+    /**
+     * Загружаем все email из БД в фоновом потоке, чтобы не задерживать старт
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::load, "email-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    private void load() {
+        try {
+            long start = System.currentTimeMillis();
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<String> emails = peopleRepository.streamAllEmails()) {
+                    emails.forEach(this::add);
+                }
+            });
+            ready = true;
+            logger.info("Email index loaded: {} emails in {} ms", insertions.get(),
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+//            Индекс просто остаётся выключенным - все проверки идут в БД
+            logger.error("Failed to load email index", e);
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * Вызывается из PeopleService при сохранении и изменении email
+     *
+     * @param email
+     */
+    public void add(String email) {
+        if (!enabled || email == null) {
+            return;
+        }
+        long hash = hash(normalize(email));
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashFunctions; i++) {
+            long bit = bitIndex(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+        if (insertions.incrementAndGet() == expectedInsertions + 1) {
+            logger.warn("Email index exceeded {} expected insertions, false positive rate will grow. " +
+                        "Increase people.email-index.expected-insertions", expectedInsertions);
+        }
+    }
+    
+    /**
+     * @param email
+     * @return false - email точно нет в БД, true - возможно есть (нужна проверка запросом)
+     */
+    public boolean mightContain(String email) {
+        if (!enabled || !ready) {
+            return true;
+        }
+        long hash = hash(normalize(email));
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashFunctions; i++) {
+            long bit = bitIndex(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private long bitIndex(int combinedHash) {
+        return (combinedHash & Integer.MAX_VALUE) % numBits;
+    }
+    
+    /**
+     * Уникальный индекс в БД регистрозависимый, но здесь сравниваем без учёта регистра:
+     * это только увеличивает число "возможных" совпадений, которые потом проверяются в БД
+     */
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * 64-битный FNV-1a с финальным перемешиванием (из MurmurHash3),
+     * младшие и старшие 32 бита используются как два независимых хэша
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
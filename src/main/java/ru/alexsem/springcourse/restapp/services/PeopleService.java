@@ -1,16 +1,38 @@
 package ru.alexsem.springcourse.restapp.services;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.alexsem.springcourse.restapp.models.Person;
 import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+import ru.alexsem.springcourse.restapp.repositories.PersonSearch;
+import ru.alexsem.springcourse.restapp.util.PersonModifiedException;
 import ru.alexsem.springcourse.restapp.util.PersonNotFoundException;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service (Business Layer)
@@ -26,64 +48,369 @@ import java.util.Optional;
  */
 
 @Service
+@Profile("!reactive")
 //Берёт на себя работу с транзакциями:
 @Transactional(readOnly = true)
 public class PeopleService {
     
+    public static final String PEOPLE_CACHE = "people";
+    /**
+     * Готовый JSON людей (см PersonJsonCache). Чистится вместе с PEOPLE_CACHE
+     */
+    public static final String PEOPLE_JSON_CACHE = "people-json";
+    
     private final PeopleRepository peopleRepository;
+    private final EmailIndex emailIndex;
+    private final PersonSuggestIndex suggestIndex;
+    private final PeopleStats peopleStats;
+    private final CacheManager cacheManager;
+    private final PersonChangeLog changeLog;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    /**
+     * Сколько сущностей держим в persistence context в пакетных операциях,
+     * после чего делаем flush (уходит JDBC batch) и clear
+     */
+    @Value("${people.batch.chunk-size:500}")
+    private int chunkSize;
     
     @Autowired
-    public PeopleService(PeopleRepository peopleRepository) {
+    public PeopleService(PeopleRepository peopleRepository, EmailIndex emailIndex, PersonSuggestIndex suggestIndex,
+                         PeopleStats peopleStats, CacheManager cacheManager, PersonChangeLog changeLog) {
         this.peopleRepository = peopleRepository;
+        this.emailIndex = emailIndex;
+        this.suggestIndex = suggestIndex;
+        this.peopleStats = peopleStats;
+        this.cacheManager = cacheManager;
+        this.changeLog = changeLog;
     }
     
     public List<Person> findAll() {
         return peopleRepository.findAll();
     }
     
+    /**
+     * Страница людей с id больше after, упорядоченная по id
+     *
+     * @param after последний id предыдущей страницы (0 - с начала)
+     * @param limit размер страницы
+     * @return
+     */
+    public List<Person> findPage(int after, int limit) {
+        return peopleRepository.findPageAfter(after, PageRequest.ofSize(limit));
+    }
+    
+    /**
+     * Поиск по фильтрам с keyset-пагинацией (см PersonSearch)
+     */
+    public List<Person> search(PersonSearch search) {
+        return peopleRepository.search(search);
+    }
+    
+    /**
+     * Пары (id, version) той же страницы, что и findPage, без загрузки сущностей
+     */
+    public List<Object[]> findPageVersions(int after, int limit) {
+        return peopleRepository.findPageVersionsAfter(after, PageRequest.ofSize(limit));
+    }
+    
+    /**
+     * Проходит по всей таблице через курсор и отдаёт каждого человека в action.
+     * После обработки сущность отсоединяется от persistence context,
+     * иначе Hibernate держал бы в памяти все прочитанные строки.
+     *
+     * @param action
+     */
+    public void forEachPerson(Consumer<Person> action) {
+        try (Stream<Person> people = peopleRepository.streamAll()) {
+            people.forEach(person -> {
+                action.accept(person);
+                entityManager.detach(person);
+            });
+        }
+    }
+    
     /**
      * В репозитории мы указали, что Id имеет тип Integer,
      * поэтому можем использовать метод findById(id)
      *
+     * Результат кэшируется по id (кэш people, настраивается в application.properties).
+     * sync = true - при промахе загрузку из БД делает только один поток,
+     * а если во время загрузки id вытеснили, загруженное значение в кэш не кладётся
+     * (см CoalescingCaffeineCache).
+     * Отсутствующий id не кэшируется - бросается исключение.
+     *
      * @param id
      * @return
      */
+    @Cacheable(cacheNames = PEOPLE_CACHE, key = "#id", sync = true)
     public Person findOne(int id) {
         Optional<Person> foundPerson = peopleRepository.findById(id);
         return foundPerson.orElseThrow(PersonNotFoundException::new);
     }
     
+    /**
+     * Текущая версия человека для условного GET (If-None-Match).
+     * Если человек уже в кэше people, версия берётся оттуда без обращения к БД,
+     * иначе выбирается одна колонка version - сущность не загружается и в кэш не кладётся.
+     *
+     * @param id
+     * @return
+     */
+    public int findVersion(int id) {
+        Cache cache = cacheManager.getCache(PEOPLE_CACHE);
+        Person cached = cache == null ? null : cache.get(id, Person.class);
+        if (cached != null) {
+            return cached.getVersion();
+        }
+        return peopleRepository.findVersionById(id).orElseThrow(PersonNotFoundException::new);
+    }
+    
     /**
      * В репозитории есть соглашение, что для добавления
      * и обновления (update) сущности используется один и тот же метод save(person) -
      * см SpringHibernateApp и ProjectBoot
+     *
+     * Событие CREATED (см PersonChangeLog) пишется в той же транзакции
      */
     @Transactional
+    @CacheEvict(cacheNames = {PEOPLE_CACHE, PEOPLE_JSON_CACHE}, key = "#person.id")
     public void save(Person person) {
         enrichPerson(person);
         peopleRepository.save(person);
+        changeLog.created(List.of(person.getId()));
+        emailIndex.add(person.getEmail());
+        List<Person> saved = List.of(person);
+        afterCommit(() -> {
+            suggestIndex.putAll(saved);
+            peopleStats.putAll(saved);
+        });
+    }
+    
+    /**
+     * Частичное обновление одним UPDATE: меняются только переданные (не null) поля.
+     * createdAt и createdWho не трогаем. Отдельная проверка существования не нужна -
+     * если UPDATE не изменил ни одной строки, человека с таким id нет.
+     * С expectedVersion проверка версии входит в тот же UPDATE, и только если он
+     * ничего не изменил, отдельным запросом выясняем, 404 это или 412.
+     *
+     * @param id
+     * @param expectedVersion версия из If-Match (null - без проверки)
+     * @param name  null - не менять
+     * @param age   null - не менять
+     * @param email null - не менять
+     */
+    @Transactional
+    @CacheEvict(cacheNames = {PEOPLE_CACHE, PEOPLE_JSON_CACHE}, key = "#id")
+    public void update(int id, Integer expectedVersion, String name, Integer age, String email) {
+        int updated = peopleRepository.updatePartially(id, expectedVersion, name, age, email, LocalDateTime.now());
+        if (updated == 0) {
+            throw notChanged(id, expectedVersion);
+        }
+        changeLog.updated(List.of(id));
+        emailIndex.add(email);
+        afterCommit(() -> {
+            suggestIndex.update(id, name, email);
+            peopleStats.update(id, age, email);
+        });
     }
     
+    /**
+     * Удаление одним DELETE, без предварительных existsById и загрузки сущности
+     *
+     * @param id
+     * @param expectedVersion версия из If-Match (null - без проверки)
+     */
     @Transactional
-    public void update(int id, Person updatedPerson) {
-        boolean exists = peopleRepository.existsById(id);
-        if (!exists) {
-            throw new PersonNotFoundException();
+    @CacheEvict(cacheNames = {PEOPLE_CACHE, PEOPLE_JSON_CACHE}, key = "#id")
+    public void delete(int id, Integer expectedVersion) {
+        int deleted = expectedVersion == null
+                      ? peopleRepository.deleteOneById(id)
+                      : peopleRepository.deleteOneByIdAndVersion(id, expectedVersion);
+        if (deleted == 0) {
+            throw notChanged(id, expectedVersion);
         }
-//        Person person = peopleRepository.findById(id).orElseThrow(PersonNotFoundException::new);
-        updatedPerson.setId(id);
-        enrichPerson(updatedPerson);
-//        Обновит значения у существующего человека (по id найдёт его):
-        peopleRepository.save(updatedPerson);
+        changeLog.deleted(id);
+        afterCommit(() -> {
+            suggestIndex.removeAll(List.of(id));
+            peopleStats.removeAll(List.of(id));
+        });
     }
     
+    /**
+     * Пакетное создание. Id выдаются последовательностью заранее (allocationSize),
+     * поэтому Hibernate отправляет INSERT пачками по hibernate.jdbc.batch_size.
+     * После сохранения у каждого Person проставлен id.
+     * События CREATED пишутся в конце, одним INSERT ... SELECT на каждую тысячу людей.
+     *
+     * @param people
+     */
     @Transactional
-    public void delete(int id) {
-        boolean exists = peopleRepository.existsById(id);
-        if (!exists) {
-            throw new PersonNotFoundException();
+    public void saveAll(List<Person> people) {
+        for (int from = 0; from < people.size(); from += chunkSize) {
+            List<Person> chunk = people.subList(from, Math.min(from + chunkSize, people.size()));
+            for (Person person : chunk) {
+                enrichPerson(person);
+                entityManager.persist(person);
+            }
+            flushAndClear();
         }
-        peopleRepository.deleteById(id);
+        List<Integer> ids = new ArrayList<>(people.size());
+        people.forEach(person -> ids.add(person.getId()));
+        changeLog.created(ids);
+        people.forEach(person -> emailIndex.add(person.getEmail()));
+        afterCommit(() -> {
+            suggestIndex.putAll(people);
+            peopleStats.putAll(people);
+        });
+    }
+    
+    /**
+     * Импорт пачки новых людей (POST /people/import) одной транзакцией. В отличие от saveAll
+     * сущности не проходят через persistence context: строки грузятся во временную таблицу
+     * и переносятся в person одним запросом (см PeopleRepositoryCustom.importPeople).
+     * Занятость email проверяет сама вставка, отдельных запросов на проверку нет.
+     *
+     * @param people новые люди без повторов email внутри списка; вставленным назначается id
+     * @return id тех, кого не вставили: email уже занят
+     */
+    @Transactional
+    public Set<Integer> importPeople(List<Person> people) {
+        people.forEach(this::enrichPerson);
+        Set<Integer> rejected = peopleRepository.importPeople(people);
+        List<Person> imported = new ArrayList<>(people.size() - rejected.size());
+        List<Integer> ids = new ArrayList<>(people.size() - rejected.size());
+        for (Person person : people) {
+            if (!rejected.contains(person.getId())) {
+                imported.add(person);
+                ids.add(person.getId());
+                emailIndex.add(person.getEmail());
+            }
+        }
+        changeLog.created(ids);
+        afterCommit(() -> {
+            suggestIndex.putAll(imported);
+            peopleStats.putAll(imported);
+        });
+        return rejected;
+    }
+    
+    /**
+     * Пакетное обновление: сущности загружаются одним запросом на пачку id,
+     * изменения уходят UPDATE-ами в JDBC batch. createdAt и createdWho не меняются.
+     *
+     * @param updatedPeople люди с заполненным id
+     * @return id, которые нашлись и были обновлены
+     */
+    @Transactional
+    public Set<Integer> updateAll(List<Person> updatedPeople) {
+        Set<Integer> updated = new HashSet<>();
+        List<Person> updatedEntities = new ArrayList<>(updatedPeople.size());
+        for (int from = 0; from < updatedPeople.size(); from += chunkSize) {
+            List<Person> chunk = updatedPeople.subList(from, Math.min(from + chunkSize, updatedPeople.size()));
+            Map<Integer, Person> existing = peopleRepository.findAllById(
+                    chunk.stream().map(Person::getId).collect(Collectors.toList()))
+                    .stream()
+                    .collect(Collectors.toMap(Person::getId, Function.identity()));
+            LocalDateTime now = LocalDateTime.now();
+            for (Person updatedPerson : chunk) {
+                Person person = existing.get(updatedPerson.getId());
+                if (person == null) {
+                    continue;
+                }
+                person.setName(updatedPerson.getName());
+                person.setAge(updatedPerson.getAge());
+                person.setEmail(updatedPerson.getEmail());
+                person.setUpdatedAt(now);
+                updated.add(person.getId());
+                updatedEntities.add(person);
+                emailIndex.add(person.getEmail());
+            }
+            flushAndClear();
+        }
+        changeLog.updated(updated);
+        evictAfterCommit(updated);
+        afterCommit(() -> {
+            suggestIndex.putAll(updatedEntities);
+            peopleStats.putAll(updatedEntities);
+        });
+        return updated;
+    }
+    
+    /**
+     * Пакетное удаление: один DELETE ... WHERE id IN (...) на пачку
+     *
+     * @param ids
+     * @return id, которые были в БД и удалены
+     */
+    @Transactional
+    public Set<Integer> deleteAll(Collection<Integer> ids) {
+        List<Integer> all = new ArrayList<>(new HashSet<>(ids));
+        Set<Integer> deleted = new HashSet<>();
+        for (int from = 0; from < all.size(); from += chunkSize) {
+            List<Integer> existing = peopleRepository.findExistingIds(
+                    all.subList(from, Math.min(from + chunkSize, all.size())));
+            if (!existing.isEmpty()) {
+                peopleRepository.deleteAllByIdInBatch(existing);
+                deleted.addAll(existing);
+            }
+        }
+        changeLog.deleted(deleted);
+        evictAfterCommit(deleted);
+        afterCommit(() -> {
+            suggestIndex.removeAll(deleted);
+            peopleStats.removeAll(deleted);
+        });
+        return deleted;
+    }
+    
+    /**
+     * UPDATE/DELETE не затронул ни одной строки: либо человека нет,
+     * либо его версия уже не та, что прислал клиент
+     */
+    private RuntimeException notChanged(int id, Integer expectedVersion) {
+        if (expectedVersion != null && peopleRepository.existsById(id)) {
+            return new PersonModifiedException();
+        }
+        return new PersonNotFoundException();
+    }
+    
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+    
+    /**
+     * Для пакетных операций кэш чистим вручную, но тоже только после коммита -
+     * так же, как @CacheEvict у одиночных методов
+     */
+    private void evictAfterCommit(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Cache> caches = new ArrayList<>(2);
+        for (String name : new String[]{PEOPLE_CACHE, PEOPLE_JSON_CACHE}) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                caches.add(cache);
+            }
+        }
+        afterCommit(() -> caches.forEach(cache -> ids.forEach(cache::evict)));
+    }
+    
+    /**
+     * Кэш, PersonSuggestIndex и PeopleStats обновляем только после коммита:
+     * изменения откаченной транзакции не должны туда попасть
+     */
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
     
     /**
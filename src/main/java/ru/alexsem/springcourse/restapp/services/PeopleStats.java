@@ -0,0 +1,474 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Статистика для GET /people/stats: сколько всего людей, гистограмма возрастов,
+ * сколько людей в каждом домене email и сколько создано по дням (created_at).
+ *
+ * Счётчики - LongAdder: запись из многих потоков не спорит за одну ячейку,
+ * а чтение - сумма нескольких ячеек, без запроса в БД и без обхода людей.
+ *
+ * Чтобы при изменении и удалении вычесть старые значения, не читая их из БД
+ * (PATCH и DELETE остаются одним запросом), для каждого id хранится одно long:
+ * возраст, день создания и номер домена (pack). Значения лежат в страницах AtomicLongArray
+ * по id - около 8 байт на человека. getAndSet сразу отдаёт старое значение,
+ * поэтому применение изменения идемпотентно: повтор даёт тот же результат.
+ *
+ * Изменения приходят из PeopleService после коммита. Раз в reconcile-interval
+ * (и при старте) все счётчики строятся заново по БД: это исправляет расхождения
+ * от изменений в обход PeopleService (другие инстансы, SQL руками). Изменения,
+ * пришедшие во время пересчёта, запоминаются и применяются к новым счётчикам.
+ * Пока первый пересчёт не закончился, isReady() возвращает false.
+ */
+@Component
+@Profile("!reactive")
+public class PeopleStats implements DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PeopleStats.class);
+    
+    /**
+     * Корзины возраста по 10 лет, последняя - AGE_BUCKET_WIDTH * (AGE_BUCKETS - 1) и старше
+     */
+    public static final int AGE_BUCKET_WIDTH = 10;
+    public static final int AGE_BUCKETS = 10;
+    
+    private final PeopleRepository peopleRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration reconcileInterval;
+    private final ScheduledExecutorService executor;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Aggregates current = new Aggregates();
+    private ConcurrentLinkedQueue<Change> replay;
+    private volatile LocalDateTime reconciledAt;
+    
+    @Autowired
+    public PeopleStats(PeopleRepository peopleRepository,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${people.stats.enabled:true}") boolean enabled,
+                       @Value("${people.stats.reconcile-interval:10m}") Duration reconcileInterval) {
+        this.peopleRepository = peopleRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.reconcileInterval = reconcileInterval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "people-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::reconcile, 0, reconcileInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+    
+    public boolean isReady() {
+        return reconciledAt != null;
+    }
+    
+    /**
+     * Новые или полностью изменённые люди (PeopleService.save, saveAll, updateAll)
+     */
+    public void putAll(Collection<Person> people) {
+        if (!enabled) {
+            return;
+        }
+        for (Person person : people) {
+            apply(new Change(Change.Type.PUT, person.getId(), person.getAge(), person.getEmailDomain(),
+                    person.getCreatedAt()));
+        }
+    }
+    
+    /**
+     * Частичное изменение (PeopleService.update)
+     *
+     * @param id
+     * @param age   null - не менялся
+     * @param email null - не менялся
+     */
+    public void update(int id, Integer age, String email) {
+        if (!enabled || (age == null && email == null)) {
+            return;
+        }
+        apply(new Change(Change.Type.UPDATE, id, age, email == null ? null : Person.emailDomainOf(email), null));
+    }
+    
+    /**
+     * Удалённые люди (PeopleService.delete, deleteAll)
+     */
+    public void removeAll(Collection<Integer> ids) {
+        if (!enabled) {
+            return;
+        }
+        for (int id : ids) {
+            apply(new Change(Change.Type.DELETE, id, null, null, null));
+        }
+    }
+    
+    /**
+     * Текущие значения счётчиков
+     *
+     * @param days      за сколько последних дней вернуть число созданных
+     * @param topDomains сколько самых больших доменов вернуть
+     */
+    public Snapshot snapshot(int days, int topDomains) {
+        Aggregates aggregates = current;
+    
+        long[] ages = new long[AGE_BUCKETS];
+        for (int i = 0; i < AGE_BUCKETS; i++) {
+            ages[i] = aggregates.ages[i].sum();
+        }
+    
+        List<Map.Entry<String, Long>> domains = new ArrayList<>(aggregates.domains.size());
+        for (Domain domain : aggregates.domains.values()) {
+            long count = domain.count.sum();
+            if (count > 0) {
+                domains.add(Map.entry(domain.name, count));
+            }
+        }
+        domains.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                             .thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> topDomainCounts = new LinkedHashMap<>();
+        domains.stream().limit(topDomains).forEach(entry -> topDomainCounts.put(entry.getKey(), entry.getValue()));
+    
+        Map<LocalDate, Long> createdPerDay = new LinkedHashMap<>();
+        LocalDate today = LocalDate.now();
+        for (LocalDate day = today.minusDays(days - 1L); !day.isAfter(today); day = day.plusDays(1)) {
+            LongAdder count = aggregates.days.get(day.toEpochDay());
+            createdPerDay.put(day, count == null ? 0 : count.sum());
+        }
+    
+        return new Snapshot(aggregates.total.sum(), ages, topDomainCounts, createdPerDay, reconciledAt);
+    }
+    
+    private void apply(Change change) {
+        lock.readLock().lock();
+        try {
+            current.apply(change);
+            if (replay != null) {
+                replay.add(change);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Пересчёт всех счётчиков по БД. Чтение идёт без блокировки, под write lock -
+     * только подмена счётчиков и применение изменений, пришедших за время чтения
+     */
+    private void reconcile() {
+        long start = System.currentTimeMillis();
+        ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+        lock.writeLock().lock();
+        try {
+            replay = changes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            Aggregates fresh = new Aggregates();
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Object[]> rows = peopleRepository.streamAllStatsFields()) {
+                    rows.forEach(row -> fresh.apply(new Change(Change.Type.PUT, (Integer) row[0], (Integer) row[1],
+                            (String) row[2], (LocalDateTime) row[3])));
+                }
+            });
+            long drift = current.total.sum() - fresh.total.sum();
+            lock.writeLock().lock();
+            try {
+                changes.forEach(fresh::apply);
+                current = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            boolean first = reconciledAt == null;
+            reconciledAt = LocalDateTime.now();
+            if (first) {
+                logger.info("People stats loaded: {} people in {} ms", fresh.total.sum(),
+                        System.currentTimeMillis() - start);
+            } else if (drift != 0) {
+                logger.info("People stats reconciled in {} ms, total was off by {}", System.currentTimeMillis() - start,
+                        drift);
+            }
+        } catch (RuntimeException e) {
+//            Остаются прежние счётчики, следующая попытка - через reconcile-interval
+            logger.error("Failed to reconcile people stats", e);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                replay = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * Возраст (8 бит), день создания + 1 (24 бита, 0 - неизвестен), номер домена
+     * (31 бит, 0 - без домена) и старший бит "человек есть" в одном long
+     */
+    static long pack(int age, long createdDay, int domain) {
+        return Long.MIN_VALUE | (long) domain << 32 | (createdDay & 0xFFFFFF) << 8 | Math.max(0, Math.min(age, 255));
+    }
+    
+    static int age(long packed) {
+        return (int) (packed & 0xFF);
+    }
+    
+    static long createdDay(long packed) {
+        return (packed >>> 8) & 0xFFFFFF;
+    }
+    
+    static int domain(long packed) {
+        return (int) ((packed >>> 32) & Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Один набор счётчиков. При пересчёте строится новый и подменяет текущий целиком
+     */
+    static final class Aggregates {
+        private static final int PAGE_BITS = 16;
+        private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    
+        private final LongAdder total = new LongAdder();
+        private final LongAdder[] ages = new LongAdder[AGE_BUCKETS];
+        private final ConcurrentHashMap<String, Domain> domains = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, LongAdder> days = new ConcurrentHashMap<>();
+        private volatile Domain[] domainsByIndex = new Domain[16];
+        private int domainCount;
+        private volatile AtomicLongArray[] pages = new AtomicLongArray[16];
+    
+        Aggregates() {
+            for (int i = 0; i < AGE_BUCKETS; i++) {
+                ages[i] = new LongAdder();
+            }
+        }
+    
+        void apply(Change change) {
+            if (change.id <= 0) {
+                return;
+            }
+            AtomicLongArray page = page(change.id);
+            int index = change.id & (PAGE_SIZE - 1);
+            if (change.type == Change.Type.DELETE) {
+                account(page.getAndSet(index, 0), -1);
+                return;
+            }
+            if (change.type == Change.Type.PUT) {
+                long createdDay = change.createdAt == null ? 0 : change.createdAt.toLocalDate().toEpochDay() + 1;
+                long packed = pack(change.age == null ? 0 : change.age, createdDay, domainIndex(change.domain));
+                account(page.getAndSet(index, packed), -1);
+                account(packed, 1);
+                return;
+            }
+//            частичное изменение: остальные поля берём из прежнего значения
+            long old;
+            long updated;
+            do {
+                old = page.get(index);
+                if (old == 0) {
+//                    человека ещё нет в счётчиках - его учтёт ближайший пересчёт
+                    return;
+                }
+                updated = pack(change.age != null ? change.age : age(old), createdDay(old),
+                        change.domain != null ? domainIndex(change.domain) : domain(old));
+            } while (!page.compareAndSet(index, old, updated));
+            account(old, -1);
+            account(updated, 1);
+        }
+    
+        private void account(long packed, int sign) {
+            if (packed == 0) {
+                return;
+            }
+            total.add(sign);
+            ages[Math.min(age(packed) / AGE_BUCKET_WIDTH, AGE_BUCKETS - 1)].add(sign);
+            int domain = domain(packed);
+            if (domain > 0) {
+                domainsByIndex[domain].count.add(sign);
+            }
+            long day = createdDay(packed);
+            if (day > 0) {
+                days.computeIfAbsent(day - 1, key -> new LongAdder()).add(sign);
+            }
+        }
+    
+        private int domainIndex(String name) {
+            if (name == null || name.isEmpty()) {
+                return 0;
+            }
+            Domain domain = domains.get(name);
+            return domain != null ? domain.index : registerDomain(name);
+        }
+    
+        private synchronized int registerDomain(String name) {
+            Domain domain = domains.get(name);
+            if (domain != null) {
+                return domain.index;
+            }
+            int index = ++domainCount;
+            Domain[] byIndex = domainsByIndex;
+            if (index == byIndex.length) {
+                byIndex = Arrays.copyOf(byIndex, byIndex.length * 2);
+            }
+            domain = new Domain(name, index);
+            byIndex[index] = domain;
+//            сначала массив по номеру, потом имя: номер из map всегда уже есть в массиве
+            domainsByIndex = byIndex;
+            domains.put(name, domain);
+            return index;
+        }
+    
+        private AtomicLongArray page(int id) {
+            int number = id >>> PAGE_BITS;
+            AtomicLongArray[] current = pages;
+            if (number < current.length && current[number] != null) {
+                return current[number];
+            }
+            return addPage(number);
+        }
+    
+        private synchronized AtomicLongArray addPage(int number) {
+            AtomicLongArray[] current = pages;
+            if (number >= current.length) {
+                current = Arrays.copyOf(current, Math.max(number + 1, current.length * 2));
+            }
+            if (current[number] == null) {
+                current[number] = new AtomicLongArray(PAGE_SIZE);
+            }
+            pages = current;
+            return current[number];
+        }
+    }
+    
+    private static final class Domain {
+        private final String name;
+        private final int index;
+        private final LongAdder count = new LongAdder();
+    
+        Domain(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+    }
+    
+    /**
+     * Изменение одного человека
+     */
+    static final class Change {
+    
+        enum Type {
+            /**
+             * Полное состояние: создание, пакетное обновление, строка из БД при пересчёте
+             */
+            PUT,
+            /**
+             * Частичное изменение: null в age или domain - поле не менялось
+             */
+            UPDATE,
+            DELETE
+        }
+    
+        private final Type type;
+        private final int id;
+        private final Integer age;
+        private final String domain;
+        private final LocalDateTime createdAt;
+    
+        Change(Type type, int id, Integer age, String domain, LocalDateTime createdAt) {
+            this.type = type;
+            this.id = id;
+            this.age = age;
+            this.domain = domain;
+            this.createdAt = createdAt;
+        }
+    }
+    
+    /**
+     * Значения счётчиков на момент чтения
+     */
+    public static final class Snapshot {
+        private final long total;
+        private final long[] ages;
+        private final Map<String, Long> domains;
+        private final Map<LocalDate, Long> createdPerDay;
+        private final LocalDateTime reconciledAt;
+    
+        Snapshot(long total, long[] ages, Map<String, Long> domains, Map<LocalDate, Long> createdPerDay,
+                 LocalDateTime reconciledAt) {
+            this.total = total;
+            this.ages = ages;
+            this.domains = domains;
+            this.createdPerDay = createdPerDay;
+            this.reconciledAt = reconciledAt;
+        }
+    
+        public long getTotal() {
+            return total;
+        }
+    
+        /**
+         * Число людей в каждой корзине возраста (см AGE_BUCKET_WIDTH)
+         */
+        public long[] getAges() {
+            return ages;
+        }
+    
+        public Map<String, Long> getDomains() {
+            return domains;
+        }
+    
+        public Map<LocalDate, Long> getCreatedPerDay() {
+            return createdPerDay;
+        }
+    
+        public LocalDateTime getReconciledAt() {
+            return reconciledAt;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.alexsem.springcourse.restapp.models.PersonChange;
+import ru.alexsem.springcourse.restapp.util.ChangesExpiredException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Доставка событий из PersonChangeLog ожидающим клиентам (long-poll и SSE в PeopleChangesController).
+ *
+ * Клиенты не ходят в БД сами: один поток раз в poll-interval читает новые события
+ * после head (последнего прочитанного seq) и раздаёт их всем, кто ждёт именно с head -
+ * сколько бы клиентов ни ждало, это один запрос в БД. Отставшие клиенты (since меньше head)
+ * дочитываются отдельными запросами.
+ *
+ * После коммита изменения в этом же приложении (событие PersonChangeLog.Appended)
+ * чтение выполняется сразу, не дожидаясь интервала. Изменения, сделанные другими
+ * инстансами, приходят с задержкой до poll-interval.
+ *
+ * Этот же поток раз в retention-interval удаляет устаревшие события (PersonChangeLog.deleteExpired).
+ */
+@Component
+@Profile("!reactive")
+public class PersonChangeFeed implements DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PersonChangeFeed.class);
+    
+    /**
+     * Сколько событий читаем за один раз для клиентов, ждущих с head
+     */
+    private static final int READ_SIZE = 1000;
+    
+    private final PersonChangeLog changeLog;
+    private final Duration pollInterval;
+    private final Duration retentionInterval;
+    
+    private final ScheduledExecutorService executor;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean pollRequested = new AtomicBoolean();
+    
+    private volatile long head;
+    
+    @Autowired
+    public PersonChangeFeed(PersonChangeLog changeLog,
+                            @Value("${people.changes.poll-interval:500ms}") Duration pollInterval,
+                            @Value("${people.changes.retention-interval:1h}") Duration retentionInterval) {
+        this.changeLog = changeLog;
+        this.pollInterval = pollInterval;
+        this.retentionInterval = retentionInterval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "person-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(() -> head = changeLog.lastSeq());
+        executor.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::deleteExpired, retentionInterval.toMillis(),
+                retentionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Ждать события после since. Первая порция приходит в ближайшем чтении
+     * (оно запрашивается сразу), дальше - по мере появления новых событий
+     *
+     * @param since seq последнего полученного клиентом события
+     * @param limit не больше стольких событий за одну доставку
+     * @param subscriber
+     * @return подписка для unsubscribe
+     */
+    public Subscription subscribe(long since, int limit, Subscriber subscriber) {
+        Subscription subscription = new Subscription(since, limit, subscriber);
+        subscriptions.add(subscription);
+//        событие могло закоммититься между чтением в контроллере и подпиской
+        requestPoll();
+        return subscription;
+    }
+    
+    public void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription);
+    }
+    
+    /**
+     * Изменение закоммичено - читаем сразу. Несколько коммитов подряд дают одно чтение
+     */
+    @TransactionalEventListener
+    public void onAppended(PersonChangeLog.Appended event) {
+        requestPoll();
+    }
+    
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+    
+    private void requestPoll() {
+        if (pollRequested.compareAndSet(false, true)) {
+            executor.execute(this::poll);
+        }
+    }
+    
+    private void poll() {
+        pollRequested.set(false);
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        try {
+            long from = head;
+            List<PersonChange> fresh = changeLog.read(from, READ_SIZE);
+            if (!fresh.isEmpty()) {
+                head = fresh.get(fresh.size() - 1).getSeq();
+            }
+            for (Subscription subscription : subscriptions) {
+                if (subscription.since == from) {
+                    deliver(subscription, fresh.size() > subscription.limit
+                                          ? fresh.subList(0, subscription.limit) : fresh);
+                } else {
+                    catchUp(subscription);
+                }
+            }
+        } catch (ChangesExpiredException e) {
+//            бросает только чтение с head, которое отстало на весь срок хранения - начинаем с конца
+            head = changeLog.lastSeq();
+        } catch (RuntimeException e) {
+//            следующее чтение через poll-interval, поток не должен завершиться
+            logger.error("Failed to read person changes", e);
+        }
+    }
+    
+    private void deliver(Subscription subscription, List<PersonChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        subscription.since = changes.get(changes.size() - 1).getSeq();
+        if (!subscription.subscriber.deliver(changes)) {
+            subscriptions.remove(subscription);
+        }
+    }
+    
+    /**
+     * Отдельное чтение для клиента, который ждёт не с head. Если его события
+     * уже удалены по сроку хранения, ошибку получает только он
+     */
+    private void catchUp(Subscription subscription) {
+        List<PersonChange> changes;
+        try {
+            changes = changeLog.read(subscription.since, subscription.limit);
+        } catch (ChangesExpiredException e) {
+            subscriptions.remove(subscription);
+            subscription.subscriber.expired(e);
+            return;
+        }
+        deliver(subscription, changes);
+    }
+    
+    private void deleteExpired() {
+        try {
+            changeLog.deleteExpired();
+        } catch (RuntimeException e) {
+            logger.error("Failed to delete expired person changes", e);
+        }
+    }
+    
+    /**
+     * Получатель событий. Методы вызываются из потока person-change-feed
+     */
+    public interface Subscriber {
+    
+        /**
+         * @param changes события по порядку, не пустой список
+         * @return false - больше не присылать (подписка удаляется)
+         */
+        boolean deliver(List<PersonChange> changes);
+    
+        /**
+         * События после since клиента уже удалены по сроку хранения. Подписка удаляется
+         */
+        void expired(ChangesExpiredException exception);
+    }
+    
+    public static final class Subscription {
+    
+        private final int limit;
+        private final Subscriber subscriber;
+        private volatile long since;
+    
+        private Subscription(long since, int limit, Subscriber subscriber) {
+            this.since = since;
+            this.limit = limit;
+            this.subscriber = subscriber;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.restapp.models.PersonChange;
+import ru.alexsem.springcourse.restapp.repositories.PersonChangeRepository;
+import ru.alexsem.springcourse.restapp.util.ChangesExpiredException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Outbox изменений людей (таблица person_change).
+ *
+ * Запись: PeopleService вызывает created/updated/deleted в своей транзакции,
+ * так что событие коммитится (или откатывается) вместе с изменением.
+ *
+ * Чтение по порядку seq. seq выдаёт БД при вставке, а коммиты идут в другом порядке,
+ * поэтому за последним видимым событием может быть "дырка" - событие ещё не закоммиченной
+ * транзакции. Отдаём события только без пропусков; пропуск перестаём ждать, когда событие
+ * после него старше gap-timeout (транзакция откатилась). Поэтому события пишутся
+ * в конце транзакции - от вставки до коммита должно проходить меньше gap-timeout.
+ *
+ * Чтение (read, lastSeq) всегда из основной БД, поэтому транзакции не readOnly:
+ * readOnly ушла бы на реплику (ReplicaRoutingDataSource), а PersonChangeFeed читает
+ * сразу после коммита - реплика обычно ещё не получила событие, и оно доходило бы
+ * до подписчиков только на следующем опросе.
+ *
+ * Срок хранения - retention. Самое новое из устаревших событий остаётся как граница:
+ * если потребитель отстал дальше неё, часть событий уже удалена и он получает 410
+ * (ChangesExpiredException) - нужно заново скачать GET /people.
+ */
+@Service
+@Profile("!reactive")
+public class PersonChangeLog {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PersonChangeLog.class);
+    
+    /**
+     * Не больше стольких id в одном IN (...) и стольких строк в одном DELETE
+     */
+    private static final int CHUNK_SIZE = 1000;
+    
+    private final PersonChangeRepository personChangeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration gapTimeout;
+    private final Duration retention;
+    
+    @Autowired
+    public PersonChangeLog(PersonChangeRepository personChangeRepository, ApplicationEventPublisher eventPublisher,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${people.changes.gap-timeout:5s}") Duration gapTimeout,
+                           @Value("${people.changes.retention:7d}") Duration retention) {
+        this.personChangeRepository = personChangeRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.gapTimeout = gapTimeout;
+        this.retention = retention;
+    }
+    
+    /**
+     * События CREATED с текущим состоянием людей
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void created(Collection<Integer> ids) {
+        appendSnapshots(PersonChange.Type.CREATED, ids);
+    }
+    
+    /**
+     * События UPDATED с состоянием людей после изменения
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void updated(Collection<Integer> ids) {
+        appendSnapshots(PersonChange.Type.UPDATED, ids);
+    }
+    
+    /**
+     * Событие DELETED для человека, которого только что удалили
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleted(int id) {
+        personChangeRepository.appendDeletion(id, LocalDateTime.now());
+        eventPublisher.publishEvent(new Appended());
+    }
+    
+    /**
+     * События DELETED для людей, которых только что удалили (пакетное удаление).
+     * Вызывается после удаления всех пачек: вставка событий в начале долгой транзакции
+     * оставила бы дырку в seq дольше gap-timeout, и события были бы пропущены
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleted(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        personChangeRepository.appendDeletions(ids, LocalDateTime.now());
+        eventPublisher.publishEvent(new Appended());
+    }
+    
+    /**
+     * События после since по порядку, без пропусков
+     *
+     * @param since seq последнего полученного события (0 - с самого старого из хранящихся)
+     * @param limit
+     * @throws ChangesExpiredException события после since уже удалены по сроку хранения
+     */
+    @Transactional
+    public List<PersonChange> read(long since, int limit) {
+        List<PersonChange> changes = personChangeRepository.findAfter(since, PageRequest.ofSize(limit));
+        if (since > 0 && !changes.isEmpty() && changes.get(0).getSeq() > since + 1) {
+            Long first = personChangeRepository.findFirstSeq();
+            if (first != null && first > since + 1) {
+                throw new ChangesExpiredException();
+            }
+        }
+        return contiguous(changes, since, LocalDateTime.now().minus(gapTimeout));
+    }
+    
+    /**
+     * seq самого нового события (0 - событий нет)
+     */
+    @Transactional
+    public long lastSeq() {
+        Long last = personChangeRepository.findLastSeq();
+        return last == null ? 0 : last;
+    }
+    
+    /**
+     * Удаляет события старше retention, кроме самого нового из них (границы).
+     * Каждая порция удаляется в своей транзакции
+     *
+     * @return сколько событий удалено
+     */
+    public int deleteExpired() {
+        Long boundary = personChangeRepository.findLastSeqBefore(LocalDateTime.now().minus(retention));
+        if (boundary == null) {
+            return 0;
+        }
+        int total = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> personChangeRepository.deleteOldest(boundary, CHUNK_SIZE));
+            total += deleted;
+        } while (deleted == CHUNK_SIZE);
+        if (total > 0) {
+            logger.info("Deleted {} person changes older than {}", total, retention);
+        }
+        return total;
+    }
+    
+    /**
+     * Начало списка changes, идущее подряд после since. Пропуск перед событием,
+     * записанным раньше gapDeadline, считается окончательным (транзакция откатилась)
+     */
+    static List<PersonChange> contiguous(List<PersonChange> changes, long since, LocalDateTime gapDeadline) {
+        long expected = since + 1;
+        int end = 0;
+        for (PersonChange change : changes) {
+            if (change.getSeq() != expected && !change.getChangedAt().isBefore(gapDeadline)) {
+                break;
+            }
+            expected = change.getSeq() + 1;
+            end++;
+        }
+        return changes.subList(0, end);
+    }
+    
+    private void appendSnapshots(PersonChange.Type type, Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (List<Integer> chunk : chunks(ids)) {
+            personChangeRepository.appendSnapshots(type.name(), chunk, now);
+        }
+        eventPublisher.publishEvent(new Appended());
+    }
+    
+    private static List<List<Integer>> chunks(Collection<Integer> ids) {
+        List<Integer> all = new ArrayList<>(ids);
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += CHUNK_SIZE) {
+            chunks.add(all.subList(from, Math.min(from + CHUNK_SIZE, all.size())));
+        }
+        return chunks;
+    }
+    
+    /**
+     * В транзакции добавлены события. PersonChangeFeed получает его после коммита
+     */
+    public static final class Appended {
+    }
+}
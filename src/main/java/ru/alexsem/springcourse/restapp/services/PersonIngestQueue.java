@@ -0,0 +1,291 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.util.IngestQueueFullException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронное создание людей с групповым коммитом (POST /people с Prefer: respond-async).
+ *
+ * Запрос только валидируется и кладёт человека в очередь, а поток Tomcat и соединение с БД
+ * не ждут транзакции. Один поток-писатель забирает из очереди до batch-size людей,
+ * подождав не дольше max-delay, и сохраняет их одной транзакцией (PeopleService.saveAll) -
+ * один коммит на пачку вместо коммита на каждого человека.
+ *
+ * Очередь неблокирующая (ConcurrentLinkedQueue), размер ограничен capacity счётчиком мест:
+ * если мест нет, запрос сразу получает 429 (IngestQueueFullException), а не ждёт.
+ *
+ * Подтверждение (ack):
+ * - queued - 202 сразу после постановки в очередь. Быстрее всего, но люди из очереди
+ * теряются, если процесс упадёт до коммита;
+ * - committed - 201 (Location - сам человек) только после коммита пачки. Запрос ждёт без потока
+ * (DeferredResult), ответ означает, что человек уже в БД.
+ *
+ * Результат (статус заявки) хранится status-ttl (не больше status-max-size заявок)
+ * и доступен по GET /people/ingest/{id}.
+ * Если пачка не сохранилась (например, тот же email пришёл дважды в одном окне),
+ * её люди сохраняются по одному, и ошибку получает только тот, кто её вызвал.
+ */
+@Service
+@Profile("!reactive")
+public class PersonIngestQueue implements DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PersonIngestQueue.class);
+    
+    public enum Ack {
+        QUEUED, COMMITTED
+    }
+    
+    private final PeopleService peopleService;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final Ack ack;
+    
+    private final ConcurrentLinkedQueue<Ticket> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Cache<String, Ticket> tickets;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean writerIdle;
+    
+    private final Counter rejectedCounter;
+    private final DistributionSummary batchSummary;
+    
+    @Autowired
+    public PersonIngestQueue(PeopleService peopleService, MeterRegistry registry,
+                             @Value("${people.ingest.enabled:false}") boolean enabled,
+                             @Value("${people.ingest.capacity:10000}") int capacity,
+                             @Value("${people.ingest.batch-size:500}") int batchSize,
+                             @Value("${people.ingest.max-delay:10ms}") Duration maxDelay,
+                             @Value("${people.ingest.ack:queued}") String ack,
+                             @Value("${people.ingest.status-ttl:10m}") Duration statusTtl,
+                             @Value("${people.ingest.status-max-size:1000000}") long statusMaxSize) {
+        this.peopleService = peopleService;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.ack = Ack.valueOf(ack.toUpperCase());
+        this.tickets = Caffeine.newBuilder()
+                              .expireAfterWrite(statusTtl)
+                              .maximumSize(statusMaxSize)
+                              .build();
+        this.writer = new Thread(this::write, "person-ingest-writer");
+        this.writer.setDaemon(true);
+    
+        Gauge.builder("people.ingest.queue", size, AtomicInteger::get)
+             .description("People waiting in the ingest queue")
+             .register(registry);
+        this.rejectedCounter = Counter.builder("people.ingest.rejected")
+                                      .description("Creates rejected with 429 because the ingest queue was full")
+                                      .register(registry);
+        this.batchSummary = DistributionSummary.builder("people.ingest.batch")
+                                               .description("People saved by one group commit")
+                                               .register(registry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            writer.start();
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public Ack getAck() {
+        return ack;
+    }
+    
+    /**
+     * Ставит уже провалидированного человека в очередь
+     *
+     * @param person
+     * @return заявка, её id отдаётся клиенту
+     * @throws IngestQueueFullException очередь заполнена
+     */
+    public Ticket submit(Person person) {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                rejectedCounter.increment();
+                throw new IngestQueueFullException();
+            }
+        } while (!size.compareAndSet(current, current + 1));
+    
+        Ticket ticket = new Ticket(UUID.randomUUID().toString(), person);
+        tickets.put(ticket.getId(), ticket);
+        queue.offer(ticket);
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+        return ticket;
+    }
+    
+    /**
+     * @param id
+     * @return null - заявки нет или её статус уже удалён (status-ttl)
+     */
+    public Ticket find(String id) {
+        return tickets.getIfPresent(id);
+    }
+    
+    /**
+     * Остановка: писатель дописывает то, что уже в очереди
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+    
+    private void write() {
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            drain(batch);
+            if (batch.isEmpty()) {
+                writerIdle = true;
+//                повторная проверка после writerIdle: иначе можно уснуть, пропустив unpark из submit
+                if (queue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                writerIdle = false;
+                continue;
+            }
+//            окно группового коммита: даём набраться пачке
+            if (batch.size() < batchSize && running) {
+                LockSupport.parkNanos(this, maxDelayNanos);
+                drain(batch);
+            }
+            save(batch);
+            batch.clear();
+        }
+    }
+    
+    private void drain(List<Ticket> batch) {
+        Ticket ticket;
+        while (batch.size() < batchSize && (ticket = queue.poll()) != null) {
+            batch.add(ticket);
+            size.decrementAndGet();
+        }
+    }
+    
+    private void save(List<Ticket> batch) {
+        List<Person> people = new ArrayList<>(batch.size());
+        batch.forEach(ticket -> people.add(ticket.person));
+        try {
+            peopleService.saveAll(people);
+            batchSummary.record(batch.size());
+            batch.forEach(Ticket::created);
+        } catch (RuntimeException e) {
+            logger.warn("Group commit of {} people failed, saving them one by one", batch.size(), e);
+            batch.forEach(this::saveOne);
+        }
+    }
+    
+    private void saveOne(Ticket ticket) {
+//        saveAll уже мог проставить id до отката транзакции
+        ticket.person.setId(0);
+        try {
+            peopleService.save(ticket.person);
+            batchSummary.record(1);
+            ticket.created();
+        } catch (DataIntegrityViolationException e) {
+            ticket.failed("Email is already taken");
+        } catch (RuntimeException e) {
+            logger.error("Failed to save person from ingest queue", e);
+            ticket.failed("Person was not saved");
+        }
+    }
+    
+    /**
+     * Заявка на создание человека
+     */
+    public static final class Ticket {
+    
+        public enum Status {
+            PENDING, CREATED, FAILED
+        }
+    
+        private final String id;
+//        после завершения не нужен - в статусе хранится только id
+        private volatile Person person;
+        private final CompletableFuture<Ticket> done = new CompletableFuture<>();
+        private volatile Status status = Status.PENDING;
+        private volatile Integer personId;
+        private volatile String error;
+    
+        private Ticket(String id, Person person) {
+            this.id = id;
+            this.person = person;
+        }
+    
+        public String getId() {
+            return id;
+        }
+    
+        public Status getStatus() {
+            return status;
+        }
+    
+        public Integer getPersonId() {
+            return personId;
+        }
+    
+        public String getError() {
+            return error;
+        }
+    
+        /**
+         * Завершается после коммита (CREATED) или ошибки (FAILED)
+         */
+        public CompletableFuture<Ticket> getDone() {
+            return done;
+        }
+    
+        private void created() {
+            personId = person.getId();
+            person = null;
+            status = Status.CREATED;
+            done.complete(this);
+        }
+    
+        private void failed(String error) {
+            this.error = error;
+            person = null;
+            status = Status.FAILED;
+            done.complete(this);
+        }
+    }
+}
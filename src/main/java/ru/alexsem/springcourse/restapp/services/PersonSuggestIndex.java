@@ -0,0 +1,391 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Индекс подсказок для GET /people/suggest: поиск людей по началу любого слова
+ * имени или по началу email без запроса в БД.
+ *
+ * Индекс состоит из двух неизменяемых SuggestSegment:
+ * - base - все люди на момент загрузки (или последнего слияния);
+ * - delta - люди, созданные или изменённые после этого.
+ * hidden - отсортированные id из base, которые уже неактуальны (удалены или есть в delta).
+ * Читатели берут текущее состояние (volatile) и ищут без блокировок.
+ *
+ * Изменения из PeopleService приходят после коммита и применяются одним потоком-писателем
+ * пачками: delta пересобирается целиком (она небольшая), а когда в ней набирается
+ * merge-threshold людей, base и delta сливаются в новый base. Подсказки отстают
+ * от БД на время применения пачки - обычно миллисекунды.
+ *
+ * base строится при старте в фоне, как EmailIndex: имена и email читаются курсором БД
+ * прямо в массивы сегмента, без загрузки сущностей. Пока загрузка не закончилась,
+ * isReady() возвращает false.
+ *
+ * Ранжирование: точное совпадение имени или email, затем начало имени, начало другого
+ * слова имени, начало email; при равенстве короче имя, потом по алфавиту.
+ * Для коротких запросов просматривается не больше scan-limit токенов каждого сегмента.
+ */
+@Component
+@Profile("!reactive")
+public class PersonSuggestIndex implements DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PersonSuggestIndex.class);
+    
+    private final PeopleRepository peopleRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    private final boolean enabled;
+    private final int scanLimit;
+    private final int mergeThreshold;
+    
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean applyScheduled = new AtomicBoolean();
+    private final ExecutorService writer;
+    
+    private volatile State state = new State(SuggestSegment.EMPTY, SuggestSegment.EMPTY, new int[0]);
+    private volatile boolean ready;
+    
+    @Autowired
+    public PersonSuggestIndex(PeopleRepository peopleRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${people.suggest.enabled:true}") boolean enabled,
+                              @Value("${people.suggest.scan-limit:1000}") int scanLimit,
+                              @Value("${people.suggest.merge-threshold:50000}") int mergeThreshold) {
+        this.peopleRepository = peopleRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.scanLimit = Math.max(1, Math.min(scanLimit, 1_000_000));
+        this.mergeThreshold = Math.max(1, mergeThreshold);
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "person-suggest-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Загрузка идёт в потоке-писателе: изменения, пришедшие во время загрузки,
+     * ждут в очереди и применяются уже поверх загруженного base
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (enabled) {
+            writer.execute(this::load);
+        }
+    }
+    
+    @Override
+    public void destroy() throws InterruptedException {
+        writer.shutdownNow();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * @param query начало имени (любого его слова) или email, регистр не важен
+     * @param limit сколько подсказок вернуть не больше
+     * @return лучшие совпадения, пустой список для пустого запроса
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        String trimmed = query == null ? "" : query.trim();
+        if (trimmed.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        char[] lowerCase = trimmed.toCharArray();
+        for (int i = 0; i < lowerCase.length; i++) {
+            lowerCase[i] = Character.toLowerCase(lowerCase[i]);
+        }
+        State current = state;
+        SuggestMatches matches = new SuggestMatches(64);
+        current.base.search(lowerCase, current.hidden, scanLimit, matches);
+        current.delta.search(lowerCase, new int[0], scanLimit, matches);
+        return matches.top(limit);
+    }
+    
+    /**
+     * @return сколько людей в индексе
+     */
+    public int size() {
+        State current = state;
+        return current.base.size() - current.hidden.length + current.delta.size();
+    }
+    
+    /**
+     * Новые или полностью изменённые люди (PeopleService.save, saveAll, updateAll)
+     */
+    public void putAll(Collection<Person> people) {
+        if (!enabled || people.isEmpty()) {
+            return;
+        }
+        for (Person person : people) {
+            changes.offer(new Change(person.getId(), person.getName(), person.getEmail(), false));
+        }
+        scheduleApply();
+    }
+    
+    /**
+     * Частичное изменение (PeopleService.update)
+     *
+     * @param id
+     * @param name  null - не менялось
+     * @param email null - не менялся
+     */
+    public void update(int id, String name, String email) {
+        if (!enabled || (name == null && email == null)) {
+            return;
+        }
+        changes.offer(new Change(id, name, email, false));
+        scheduleApply();
+    }
+    
+    /**
+     * Удалённые люди (PeopleService.delete, deleteAll)
+     */
+    public void removeAll(Collection<Integer> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        for (int id : ids) {
+            changes.offer(new Change(id, null, null, true));
+        }
+        scheduleApply();
+    }
+    
+    private void scheduleApply() {
+        if (applyScheduled.compareAndSet(false, true)) {
+            writer.execute(this::apply);
+        }
+    }
+    
+    private void load() {
+        try {
+            long start = System.currentTimeMillis();
+            SuggestSegment.Builder builder = new SuggestSegment.Builder(1024);
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Object[]> rows = peopleRepository.streamAllSuggestFields()) {
+                    rows.forEach(row -> builder.add((Integer) row[0], (String) row[1], (String) row[2]));
+                }
+            });
+            SuggestSegment base = builder.build();
+            State current = state;
+//            delta могла набраться до загрузки - эти люди в base устарели
+            int[] hidden = new int[current.delta.size()];
+            int count = 0;
+            for (int person = 0; person < current.delta.size(); person++) {
+                if (base.indexOf(current.delta.id(person)) >= 0) {
+                    hidden[count++] = current.delta.id(person);
+                }
+            }
+            state = new State(base, current.delta, Arrays.copyOf(hidden, count));
+            ready = true;
+            logger.info("Suggest index loaded: {} people, {} tokens in {} ms", base.size(), base.tokenCount(),
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+//            Индекс остаётся не готов - GET /people/suggest отвечает 503
+            logger.error("Failed to load suggest index", e);
+        }
+    }
+    
+    /**
+     * Применяет все накопившиеся изменения одной пересборкой delta
+     */
+    private void apply() {
+        applyScheduled.set(false);
+        List<Change> batch = new ArrayList<>();
+        Change change;
+        while ((change = changes.poll()) != null) {
+            batch.add(change);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            state = merge(state, batch);
+        } catch (RuntimeException e) {
+            logger.error("Failed to apply {} changes to suggest index", batch.size(), e);
+        }
+    }
+    
+    private State merge(State current, List<Change> batch) {
+//        сортировка устойчивая: изменения одного id остаются в порядке коммитов
+        batch.sort(Comparator.comparingInt(change -> change.id));
+    
+        int[] touched = new int[batch.size()];
+        int touchedCount = 0;
+        SuggestSegment.Builder delta = new SuggestSegment.Builder(current.delta.size() + batch.size());
+        int person = 0;
+        int i = 0;
+        while (i < batch.size()) {
+            int id = batch.get(i).id;
+            while (person < current.delta.size() && current.delta.id(person) < id) {
+                delta.add(current.delta, person++);
+            }
+    
+//            текущие имя и email - из delta или base, поверх них изменения по порядку
+            String name = null;
+            String email = null;
+            boolean exists = false;
+            if (person < current.delta.size() && current.delta.id(person) == id) {
+                name = current.delta.name(person);
+                email = current.delta.email(person);
+                exists = true;
+                person++;
+            } else {
+                int index = current.base.indexOf(id);
+                if (index >= 0 && Arrays.binarySearch(current.hidden, id) < 0) {
+                    name = current.base.name(index);
+                    email = current.base.email(index);
+                    exists = true;
+                }
+            }
+            for (; i < batch.size() && batch.get(i).id == id; i++) {
+                Change next = batch.get(i);
+                if (next.deleted) {
+                    exists = false;
+                } else if (exists || (next.name != null && next.email != null)) {
+                    name = next.name != null ? next.name : name;
+                    email = next.email != null ? next.email : email;
+                    exists = true;
+                }
+            }
+    
+            if (exists) {
+                delta.add(id, name, email);
+            }
+            if (current.base.indexOf(id) >= 0) {
+                touched[touchedCount++] = id;
+            }
+        }
+        while (person < current.delta.size()) {
+            delta.add(current.delta, person++);
+        }
+    
+        int[] hidden = union(current.hidden, Arrays.copyOf(touched, touchedCount));
+        if (delta.size() + hidden.length < mergeThreshold) {
+            return new State(current.base, delta.build(), hidden);
+        }
+        return compact(current.base, hidden, delta.build());
+    }
+    
+    /**
+     * Слияние base и delta в новый base: оба упорядочены по id, поэтому один проход
+     */
+    private State compact(SuggestSegment base, int[] hidden, SuggestSegment delta) {
+        long start = System.currentTimeMillis();
+        SuggestSegment.Builder builder = new SuggestSegment.Builder(base.size() - hidden.length + delta.size());
+        int d = 0;
+        for (int b = 0; b < base.size(); b++) {
+            int id = base.id(b);
+            while (d < delta.size() && delta.id(d) < id) {
+                builder.add(delta, d++);
+            }
+            if (Arrays.binarySearch(hidden, id) < 0) {
+                builder.add(base, b);
+            }
+        }
+        while (d < delta.size()) {
+            builder.add(delta, d++);
+        }
+        SuggestSegment merged = builder.build();
+        logger.info("Suggest index compacted: {} people in {} ms", merged.size(), System.currentTimeMillis() - start);
+        return new State(merged, SuggestSegment.EMPTY, new int[0]);
+    }
+    
+    private static int[] union(int[] sorted, int[] values) {
+        if (values.length == 0) {
+            return sorted;
+        }
+        int[] result = Arrays.copyOf(sorted, sorted.length + values.length);
+        System.arraycopy(values, 0, result, sorted.length, values.length);
+        Arrays.sort(result);
+        int size = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (size == 0 || result[size - 1] != result[i]) {
+                result[size++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+    
+    private static final class State {
+        private final SuggestSegment base;
+        private final SuggestSegment delta;
+        private final int[] hidden;
+    
+        State(SuggestSegment base, SuggestSegment delta, int[] hidden) {
+            this.base = base;
+            this.delta = delta;
+            this.hidden = hidden;
+        }
+    }
+    
+    private static final class Change {
+        private final int id;
+        private final String name;
+        private final String email;
+        private final boolean deleted;
+    
+        Change(int id, String name, String email, boolean deleted) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+            this.deleted = deleted;
+        }
+    }
+    
+    /**
+     * Одна подсказка
+     */
+    public static final class Suggestion {
+        private final int id;
+        private final String name;
+        private final String email;
+    
+        public Suggestion(int id, String name, String email) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+        }
+    
+        public int getId() {
+            return id;
+        }
+    
+        public String getName() {
+            return name;
+        }
+    
+        public String getEmail() {
+            return email;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.ReactivePeopleRepository;
+import ru.alexsem.springcourse.restapp.util.PersonNotFoundException;
+
+import java.time.LocalDateTime;
+
+/**
+ * Реактивный аналог PeopleService (профиль reactive).
+ *
+ * Методы ничего не блокируют: возвращают Mono/Flux, а запрос в БД выполняется,
+ * когда на результат подписывается WebFlux. Каждая операция - один SQL-запрос,
+ * поэтому отдельные транзакции не нужны.
+ */
+@Service
+@Profile("reactive")
+public class ReactivePeopleService {
+    
+    private final ReactivePeopleRepository peopleRepository;
+    
+    @Autowired
+    public ReactivePeopleService(ReactivePeopleRepository peopleRepository) {
+        this.peopleRepository = peopleRepository;
+    }
+    
+    /**
+     * Страница людей с id больше after, упорядоченная по id
+     */
+    public Flux<Person> findPage(int after, int limit) {
+        return peopleRepository.findPageAfter(after, limit);
+    }
+    
+    /**
+     * Вся таблица потоком: строки читаются из курсора порциями
+     * по мере того, как клиент успевает их принимать
+     */
+    public Flux<Person> findAll() {
+        return peopleRepository.findAll();
+    }
+    
+    public Mono<Person> findOne(int id) {
+        return peopleRepository.findById(id)
+                               .switchIfEmpty(Mono.error(PersonNotFoundException::new));
+    }
+    
+    public Mono<Person> save(Person person) {
+        enrichPerson(person);
+        return peopleRepository.insert(person);
+    }
+    
+    /**
+     * Частичное обновление одним UPDATE: меняются только переданные (не null) поля
+     */
+    public Mono<Void> update(int id, String name, Integer age, String email) {
+        return peopleRepository.updatePartially(id, name, age, email, LocalDateTime.now())
+                               .flatMap(this::checkFound);
+    }
+    
+    public Mono<Void> delete(int id) {
+        return peopleRepository.deleteById(id)
+                               .flatMap(this::checkFound);
+    }
+    
+    private Mono<Void> checkFound(int rows) {
+        return rows == 0 ? Mono.error(new PersonNotFoundException()) : Mono.empty();
+    }
+    
+    /**
+     * Доп данные назначаются на самом сервере - так же, как в PeopleService
+     */
+    private void enrichPerson(Person person) {
+        person.setCreatedAt(LocalDateTime.now());
+        person.setUpdatedAt(LocalDateTime.now());
+        person.setCreatedWho("Admin");
+    }
+}
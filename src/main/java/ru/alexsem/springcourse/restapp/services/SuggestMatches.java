@@ -0,0 +1,75 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Кандидаты одного запроса подсказок и выбор top-K из них (см PersonSuggestIndex).
+ *
+ * Каждый кандидат - одно long: категория совпадения (SuggestSegment.EXACT...),
+ * длина имени и порядковый номер. Сортировка таких чисел упорядочивает кандидатов
+ * по категории, потом короткие имена раньше длинных, потом в порядке просмотра
+ * (внутри сегмента это алфавитный порядок токенов) - без компаратора и объектов.
+ */
+final class SuggestMatches {
+    
+    private static final int ORDER_BITS = 24;
+    private static final int LENGTH_BITS = 16;
+    
+    private long[] keys;
+    private SuggestSegment[] segments;
+    private int[] people;
+    private int count;
+    
+    SuggestMatches(int expected) {
+        this.keys = new long[expected];
+        this.segments = new SuggestSegment[expected];
+        this.people = new int[expected];
+    }
+    
+    void add(SuggestSegment segment, int person, int category) {
+        if (count == keys.length) {
+            int capacity = Math.max(16, count * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            segments = Arrays.copyOf(segments, capacity);
+            people = Arrays.copyOf(people, capacity);
+        }
+        long length = Math.min(segment.nameLength(person), (1 << LENGTH_BITS) - 1);
+        keys[count] = (long) category << (LENGTH_BITS + ORDER_BITS) | length << ORDER_BITS | count;
+        segments[count] = segment;
+        people[count] = person;
+        count++;
+    }
+    
+    /**
+     * Лучшие limit разных людей. Один человек может совпасть несколькими токенами
+     * (имя и email) - остаётся лучшее совпадение
+     */
+    List<PersonSuggestIndex.Suggestion> top(int limit) {
+        Arrays.sort(keys, 0, count);
+        List<PersonSuggestIndex.Suggestion> result = new ArrayList<>(Math.min(limit, count));
+        int[] taken = new int[limit];
+        for (int i = 0; i < count && result.size() < limit; i++) {
+            int match = (int) (keys[i] & ((1 << ORDER_BITS) - 1));
+            SuggestSegment segment = segments[match];
+            int id = segment.id(people[match]);
+            if (contains(taken, result.size(), id)) {
+                continue;
+            }
+            taken[result.size()] = id;
+            result.add(new PersonSuggestIndex.Suggestion(id, segment.name(people[match]),
+                    segment.email(people[match])));
+        }
+        return result;
+    }
+    
+    private static boolean contains(int[] values, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,348 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемая часть индекса подсказок (см PersonSuggestIndex): отсортированный
+ * массив "токенов" - суффиксов имени и email, начинающихся с начала слова.
+ * Для "Анна Петрова" и "anna@mail.ru" токены: "анна петрова", "петрова", "anna@mail.ru".
+ * Поиск по префиксу - бинарный поиск первого подходящего токена и просмотр вперёд,
+ * пока токены начинаются с запроса.
+ *
+ * Всё хранится в примитивных массивах, без объекта на человека или на токен:
+ * - ids - id людей по возрастанию;
+ * - text - имена и email всех людей подряд в одном char[], offsets - границы полей
+ * (имя i-го человека - [offsets[2i], offsets[2i+1]), email - [offsets[2i+1], offsets[2i+2]));
+ * - tokens - позиции начала токенов в text, отсортированные по тексту без учёта регистра,
+ * owners - номер человека для каждого токена.
+ * Токен продолжается до конца своего поля, поэтому отдельно его длина не хранится.
+ * Выходит около 120 байт на человека (имя и email по 15-25 символов) против нескольких сотен
+ * для объектов, строк и списков Integer.
+ */
+final class SuggestSegment {
+    
+    static final SuggestSegment EMPTY = new Builder(0).build();
+    
+    /**
+     * Категории совпадения, меньше - выше в подсказках
+     */
+    static final int EXACT = 0;
+    static final int NAME_PREFIX = 1;
+    static final int NAME_WORD = 2;
+    static final int EMAIL_PREFIX = 3;
+    
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    
+    private final int[] ids;
+    private final int[] offsets;
+    private final char[] text;
+    private final int[] tokens;
+    private final int[] owners;
+    
+    private SuggestSegment(int[] ids, int[] offsets, char[] text, int[] tokens, int[] owners) {
+        this.ids = ids;
+        this.offsets = offsets;
+        this.text = text;
+        this.tokens = tokens;
+        this.owners = owners;
+    }
+    
+    int size() {
+        return ids.length;
+    }
+    
+    int tokenCount() {
+        return tokens.length;
+    }
+    
+    /**
+     * @param id
+     * @return номер человека в сегменте или отрицательное число, если его нет
+     */
+    int indexOf(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+    
+    int id(int person) {
+        return ids[person];
+    }
+    
+    String name(int person) {
+        return new String(text, offsets[2 * person], offsets[2 * person + 1] - offsets[2 * person]);
+    }
+    
+    String email(int person) {
+        return new String(text, offsets[2 * person + 1], offsets[2 * person + 2] - offsets[2 * person + 1]);
+    }
+    
+    int nameLength(int person) {
+        return offsets[2 * person + 1] - offsets[2 * person];
+    }
+    
+    /**
+     * Передаёт в matches людей, у которых есть токен, начинающийся с query
+     *
+     * @param query     запрос в нижнем регистре
+     * @param hidden    отсортированные id, которые пропускаем (удалены или изменены после сборки сегмента)
+     * @param scanLimit сколько токенов просматривать не больше - для запроса из одной буквы
+     *                  подходят сотни тысяч, а нужны только первые
+     * @param matches
+     */
+    void search(char[] query, int[] hidden, int scanLimit, SuggestMatches matches) {
+        int from = lowerBound(query);
+        int end = (int) Math.min(tokens.length, (long) from + scanLimit);
+        for (int i = from; i < end; i++) {
+            int position = tokens[i];
+            int owner = owners[i];
+            int fieldEnd = fieldEnd(owner, position);
+            if (compare(position, fieldEnd, query) != 0) {
+                break;
+            }
+            if (hidden.length > 0 && Arrays.binarySearch(hidden, ids[owner]) >= 0) {
+                continue;
+            }
+            matches.add(this, owner, category(owner, position, fieldEnd, query.length));
+        }
+    }
+    
+    private int category(int owner, int position, int fieldEnd, int queryLength) {
+        boolean whole = position == offsets[2 * owner] || position == offsets[2 * owner + 1];
+        if (whole && fieldEnd - position == queryLength) {
+            return EXACT;
+        }
+        if (position >= offsets[2 * owner + 1]) {
+            return EMAIL_PREFIX;
+        }
+        return whole ? NAME_PREFIX : NAME_WORD;
+    }
+    
+    /**
+     * Первый токен, который не меньше query
+     */
+    private int lowerBound(char[] query) {
+        int low = 0;
+        int high = tokens.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int position = tokens[middle];
+            if (compare(position, fieldEnd(owners[middle], position), query) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * @return 0 - токен начинается с query, иначе знак сравнения токена с query
+     */
+    private int compare(int position, int fieldEnd, char[] query) {
+        int length = Math.min(fieldEnd - position, query.length);
+        for (int i = 0; i < length; i++) {
+            int diff = Character.toLowerCase(text[position + i]) - query[i];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return fieldEnd - position < query.length ? -1 : 0;
+    }
+    
+    private int fieldEnd(int owner, int position) {
+        return position < offsets[2 * owner + 1] ? offsets[2 * owner + 1] : offsets[2 * owner + 2];
+    }
+    
+    /**
+     * Собирает сегмент. Люди добавляются строго по возрастанию id
+     * (так их отдаёт БД и так их обходит слияние сегментов)
+     */
+    static final class Builder {
+        private int[] ids;
+        private int[] offsets;
+        private char[] text;
+        private int size;
+        private int length;
+    
+        Builder(int expectedSize) {
+            this.ids = new int[Math.max(16, expectedSize)];
+            this.offsets = new int[2 * ids.length + 1];
+            this.text = new char[32 * ids.length];
+        }
+    
+        int size() {
+            return size;
+        }
+    
+        void add(int id, String name, String email) {
+            startPerson(id);
+            append(name == null ? "" : name);
+            offsets[2 * size + 1] = length;
+            append(email == null ? "" : email);
+            offsets[2 * ++size] = length;
+        }
+    
+        /**
+         * Копирует человека из другого сегмента без промежуточных строк
+         */
+        void add(SuggestSegment segment, int person) {
+            startPerson(segment.ids[person]);
+            int from = segment.offsets[2 * person];
+            int to = segment.offsets[2 * person + 2];
+            ensureText(to - from);
+            System.arraycopy(segment.text, from, text, length, to - from);
+            offsets[2 * size + 1] = length + segment.offsets[2 * person + 1] - from;
+            length += to - from;
+            offsets[2 * ++size] = length;
+        }
+    
+        SuggestSegment build() {
+            int[] finalOffsets = Arrays.copyOf(offsets, 2 * size + 1);
+            char[] finalText = Arrays.copyOf(text, length);
+    
+            int count = 0;
+            for (int person = 0; person < size; person++) {
+                count += countTokens(finalText, finalOffsets, person);
+            }
+            int[] tokens = new int[count];
+            int[] owners = new int[count];
+            int next = 0;
+            for (int person = 0; person < size; person++) {
+                int nameStart = finalOffsets[2 * person];
+                int nameEnd = finalOffsets[2 * person + 1];
+                for (int i = nameStart; i < nameEnd; i++) {
+                    if (isWordStart(finalText, nameStart, i)) {
+                        tokens[next] = i;
+                        owners[next++] = person;
+                    }
+                }
+                if (finalOffsets[2 * person + 2] > nameEnd) {
+                    tokens[next] = nameEnd;
+                    owners[next++] = person;
+                }
+            }
+            SuggestSegment segment = new SuggestSegment(Arrays.copyOf(ids, size), finalOffsets, finalText,
+                    tokens, owners);
+            segment.sort(0, count - 1, 0);
+            return segment;
+        }
+    
+        private void startPerson(int id) {
+            if (size > 0 && id <= ids[size - 1]) {
+                throw new IllegalArgumentException("People must be added in ascending id order");
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                offsets = Arrays.copyOf(offsets, 2 * ids.length + 1);
+            }
+            ids[size] = id;
+            offsets[2 * size] = length;
+        }
+    
+        private void append(String value) {
+            ensureText(value.length());
+            value.getChars(0, value.length(), text, length);
+            length += value.length();
+        }
+    
+        private void ensureText(int extra) {
+            if (length + extra > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, length + extra));
+            }
+        }
+    
+        private static int countTokens(char[] text, int[] offsets, int person) {
+            int count = 0;
+            for (int i = offsets[2 * person]; i < offsets[2 * person + 1]; i++) {
+                if (isWordStart(text, offsets[2 * person], i)) {
+                    count++;
+                }
+            }
+            return offsets[2 * person + 2] > offsets[2 * person + 1] ? count + 1 : count;
+        }
+    
+        private static boolean isWordStart(char[] text, int fieldStart, int i) {
+            return Character.isLetterOrDigit(text[i]) && (i == fieldStart || !Character.isLetterOrDigit(text[i - 1]));
+        }
+    }
+    
+    /**
+     * Сортировка токенов - трёхчастная поразрядная быстрая сортировка (Bentley, Sedgewick):
+     * общий префикс токенов сравнивается один раз, а не в каждом сравнении
+     */
+    private void sort(int low, int high, int depth) {
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            swap(low, medianOfThree(low, (low + high) >>> 1, high, depth));
+            int pivot = charAt(low, depth);
+            int lt = low;
+            int gt = high;
+            int i = low + 1;
+            while (i <= gt) {
+                int c = charAt(i, depth);
+                if (c < pivot) {
+                    swap(lt++, i++);
+                } else if (c > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+//            рекурсия в меньшие части, цикл - по самой большой, чтобы не переполнить стек
+            if (pivot >= 0) {
+                sort(lt, gt, depth + 1);
+            }
+            if (lt - low < high - gt) {
+                sort(low, lt - 1, depth);
+                low = gt + 1;
+            } else {
+                sort(gt + 1, high, depth);
+                high = lt - 1;
+            }
+        }
+        insertionSort(low, high, depth);
+    }
+    
+    private void insertionSort(int low, int high, int depth) {
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compareTokens(j, j - 1, depth) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+    
+    private int compareTokens(int a, int b, int depth) {
+        for (int d = depth; ; d++) {
+            int ca = charAt(a, d);
+            int cb = charAt(b, d);
+            if (ca != cb || ca < 0) {
+                return ca - cb;
+            }
+        }
+    }
+    
+    private int medianOfThree(int a, int b, int c, int depth) {
+        int ca = charAt(a, depth);
+        int cb = charAt(b, depth);
+        int cc = charAt(c, depth);
+        if (ca < cb) {
+            return cb < cc ? b : (ca < cc ? c : a);
+        }
+        return ca < cc ? a : (cb < cc ? c : b);
+    }
+    
+    /**
+     * Символ токена в нижнем регистре, -1 - токен закончился
+     */
+    private int charAt(int token, int depth) {
+        int position = tokens[token] + depth;
+        return position < fieldEnd(owners[token], tokens[token]) ? Character.toLowerCase(text[position]) : -1;
+    }
+    
+    private void swap(int a, int b) {
+        int token = tokens[a];
+        tokens[a] = tokens[b];
+        tokens[b] = token;
+        int owner = owners[a];
+        owners[a] = owners[b];
+        owners[b] = owner;
+    }
+}
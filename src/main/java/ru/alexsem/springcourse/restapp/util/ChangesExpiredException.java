@@ -0,0 +1,9 @@
+package ru.alexsem.springcourse.restapp.util;
+
+/**
+ * Часть событий после запрошенного seq уже удалена по сроку хранения (см PersonChangeLog),
+ * клиенту нужно заново загрузить людей целиком
+ */
+public class ChangesExpiredException extends StacklessException {
+
+}
@@ -0,0 +1,105 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import java.util.List;
+
+/**
+ * ETag-и для People API.
+ *
+ * ETag человека - его version (строгий, меняется при каждом изменении строки).
+ * ETag страницы - хэш пар (id, version) всех людей на ней: он меняется, если кого-то
+ * на странице изменили, удалили или добавили. Считается одинаково и по сущностям,
+ * и по проекции (id, version) из БД, поэтому для ответа 304 сущности загружать не нужно.
+ * ETag страницы слабый (W/): страница нужна только для If-None-Match, а Tomcat не сжимает
+ * ответы со строгим ETag (сжатое тело уже не совпадает с ним побайтно).
+ */
+public final class ETags {
+    
+    /**
+     * Версия, которая не совпадёт ни с одной строкой (If-Match с чужим или слабым ETag)
+     */
+    public static final int NO_VERSION = -1;
+    
+    private ETags() {
+    }
+    
+    public static String of(Person person) {
+        return of(person.getVersion());
+    }
+    
+    public static String of(int version) {
+        return "\"" + version + "\"";
+    }
+    
+    public static String ofPage(List<Person> page) {
+        long hash = page.size();
+        for (Person person : page) {
+            hash = mix(hash, person.getId(), person.getVersion());
+        }
+        return page(hash);
+    }
+    
+    /**
+     * @param idsAndVersions строки (id, version), как из PeopleRepository.findPageVersionsAfter
+     */
+    public static String ofPageVersions(List<Object[]> idsAndVersions) {
+        long hash = idsAndVersions.size();
+        for (Object[] row : idsAndVersions) {
+            hash = mix(hash, (Integer) row[0], (Integer) row[1]);
+        }
+        return page(hash);
+    }
+    
+    /**
+     * Проверка If-None-Match: слабое сравнение (W/ не учитывается), "*" совпадает с любым ETag
+     *
+     * @param ifNoneMatch ETag-и из заголовка (HttpHeaders.getIfNoneMatch())
+     * @return true - у клиента актуальная версия, можно ответить 304
+     */
+    public static boolean matches(List<String> ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch) {
+            if (tag.equals("*") || stripWeak(tag).equals(stripWeak(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Версия из If-Match. Сравнение строгое, поэтому слабые ETag не подходят.
+     * Обычно клиент присылает один ETag, полученный в GET; из списка берётся первый подходящий.
+     *
+     * @param ifMatch ETag-и из заголовка (HttpHeaders.getIfMatch())
+     * @return null - проверять версию не нужно (заголовка нет или "*"),
+     * NO_VERSION - в заголовке нет ни одного ETag человека
+     */
+    public static Integer expectedVersion(List<String> ifMatch) {
+        if (ifMatch.isEmpty() || ifMatch.contains("*")) {
+            return null;
+        }
+        for (String tag : ifMatch) {
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                try {
+                    return Integer.parseInt(tag.substring(1, tag.length() - 1));
+                } catch (NumberFormatException ignored) {
+//                    не наш ETag - смотрим следующий
+                }
+            }
+        }
+        return NO_VERSION;
+    }
+    
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+    
+    private static long mix(long hash, int id, int version) {
+        hash = hash * 0x9E3779B97F4A7C15L + id;
+        return hash * 0x9E3779B97F4A7C15L + version;
+    }
+    
+    private static String page(long hash) {
+        return "W/\"p" + Long.toHexString(hash) + "\"";
+    }
+}
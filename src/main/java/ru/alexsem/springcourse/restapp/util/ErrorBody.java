@@ -0,0 +1,48 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Готовое тело ответа с постоянным сообщением, в том же формате, что PersonErrorResponse:
+ * {"message":"...","timestamp":...}
+ *
+ * Всё до timestamp сериализуется один раз при создании, на каждый ответ дописываются
+ * только цифры времени - без объекта PersonErrorResponse и без прохода Jackson.
+ */
+public final class ErrorBody {
+    
+    private final String message;
+    private final byte[] prefix;
+    
+    private ErrorBody(String message, byte[] prefix) {
+        this.message = message;
+        this.prefix = prefix;
+    }
+    
+    public static ErrorBody of(String message) {
+        String json = "{\"message\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(message))
+                      + "\",\"timestamp\":";
+        return new ErrorBody(message, json.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    /**
+     * @param timestamp System.currentTimeMillis()
+     * @return JSON в UTF-8, новый массив на каждый вызов
+     */
+    public byte[] render(long timestamp) {
+        String digits = Long.toString(timestamp);
+        byte[] body = Arrays.copyOf(prefix, prefix.length + digits.length() + 1);
+        for (int i = 0; i < digits.length(); i++) {
+            body[prefix.length + i] = (byte) digits.charAt(i);
+        }
+        body[body.length - 1] = '}';
+        return body;
+    }
+}
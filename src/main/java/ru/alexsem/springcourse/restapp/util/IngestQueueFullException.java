@@ -0,0 +1,9 @@
+package ru.alexsem.springcourse.restapp.util;
+
+/**
+ * Очередь асинхронного создания людей заполнена (см PersonIngestQueue),
+ * клиент должен повторить запрос позже
+ */
+public class IngestQueueFullException extends StacklessException {
+
+}
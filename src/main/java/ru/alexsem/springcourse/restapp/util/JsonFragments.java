@@ -0,0 +1,59 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Тело ответа из уже готовых UTF-8 байт JSON (см PersonJsonCache).
+ *
+ * Один документ или массив из фрагментов: JsonFragmentsHttpMessageConverter
+ * пишет байты фрагментов в поток ответа как есть, добавляя только скобки и запятые,
+ * без промежуточного буфера и повторного кодирования.
+ */
+public final class JsonFragments {
+    
+    private final List<byte[]> fragments;
+    private final boolean array;
+    
+    private JsonFragments(List<byte[]> fragments, boolean array) {
+        this.fragments = fragments;
+        this.array = array;
+    }
+    
+    /**
+     * Один JSON-документ
+     */
+    public static JsonFragments of(byte[] json) {
+        return new JsonFragments(Collections.singletonList(json), false);
+    }
+    
+    /**
+     * JSON-массив, элементы которого - готовые JSON-документы
+     */
+    public static JsonFragments array(List<byte[]> elements) {
+        return new JsonFragments(elements, true);
+    }
+    
+    public List<byte[]> getFragments() {
+        return fragments;
+    }
+    
+    public boolean isArray() {
+        return array;
+    }
+    
+    /**
+     * Размер тела в байтах - для Content-Length
+     */
+    public long length() {
+        long length = 0;
+        for (byte[] fragment : fragments) {
+            length += fragment.length;
+        }
+        if (array) {
+//            скобки и запятые между элементами
+            length += 2 + Math.max(0, fragments.size() - 1);
+        }
+        return length;
+    }
+}
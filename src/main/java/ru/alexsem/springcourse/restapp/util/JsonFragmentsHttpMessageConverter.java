@@ -0,0 +1,74 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пишет JsonFragments в ответ: байты из PersonJsonCache копируются в поток сервлета
+ * без Jackson. Время записи идёт в ту же метрику, что и у TimedJsonHttpMessageConverter
+ * (people.stage, stage=serialization), чтобы два пути можно было сравнить.
+ *
+ * Только для ответов: читать JsonFragments из запроса нельзя.
+ */
+public class JsonFragmentsHttpMessageConverter extends AbstractHttpMessageConverter<JsonFragments> {
+    
+    private final Timer timer;
+    
+    public JsonFragmentsHttpMessageConverter(Timer timer) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.timer = timer;
+    }
+    
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return JsonFragments.class == clazz;
+    }
+    
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+    
+    @Override
+    protected JsonFragments readInternal(Class<? extends JsonFragments> clazz, HttpInputMessage inputMessage)
+            throws HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("JsonFragments can only be written", inputMessage);
+    }
+    
+    @Override
+    protected Long getContentLength(JsonFragments body, MediaType contentType) {
+        return body.length();
+    }
+    
+    @Override
+    protected void writeInternal(JsonFragments body, HttpOutputMessage outputMessage) throws IOException {
+        long start = System.nanoTime();
+        try {
+            OutputStream out = outputMessage.getBody();
+            List<byte[]> fragments = body.getFragments();
+            if (body.isArray()) {
+                out.write('[');
+            }
+            for (int i = 0; i < fragments.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(fragments.get(i));
+            }
+            if (body.isArray()) {
+                out.write(']');
+            }
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Метрики People API, которые не даёт Spring Boot "из коробки".
+ *
+ * people.stage - время отдельных этапов обработки запроса (тег stage):
+ * validation, serialization (запись ответа конвертером), encode (JSON человека
+ * при промахе PersonJsonCache - отдельно, иначе эта запись посчиталась бы в serialization
+ * второй раз внутри записи ответа). Маппинг DTO (PersonMapper) не замеряется: он занимает
+ * десятки наносекунд, меньше, чем запись в Timer. Время обращений к репозиторию Boot пишет сам
+ * в spring.data.repository.invocations, время всего запроса - в http.server.requests.
+ *
+ * people.errors - число исключений PersonNotFoundException / PersonNotCreatedException /
+ * PersonModifiedException (тег exception).
+ *
+ * Все таймеры и счётчики регистрируются один раз в конструкторе, чтобы на каждом запросе
+ * не искать метр в реестре по имени и тегам.
+ */
+@Component
+public class PeopleMetrics {
+    
+    private final Timer validationTimer;
+    private final Timer serializationTimer;
+    private final Timer encodeTimer;
+    
+    private final Counter notFoundCounter;
+    private final Counter notCreatedCounter;
+    private final Counter modifiedCounter;
+    
+    @Autowired
+    public PeopleMetrics(MeterRegistry registry) {
+        this.validationTimer = stageTimer(registry, "validation");
+        this.serializationTimer = stageTimer(registry, "serialization");
+        this.encodeTimer = stageTimer(registry, "encode");
+        this.notFoundCounter = errorCounter(registry, PersonNotFoundException.class);
+        this.notCreatedCounter = errorCounter(registry, PersonNotCreatedException.class);
+        this.modifiedCounter = errorCounter(registry, PersonModifiedException.class);
+    }
+    
+    public Timer validation() {
+        return validationTimer;
+    }
+    
+    public Timer serialization() {
+        return serializationTimer;
+    }
+    
+    public Timer encode() {
+        return encodeTimer;
+    }
+    
+    public void personNotFound() {
+        notFoundCounter.increment();
+    }
+    
+    public void personNotCreated() {
+        notCreatedCounter.increment();
+    }
+    
+    public void personModified() {
+        modifiedCounter.increment();
+    }
+    
+    private static Timer stageTimer(MeterRegistry registry, String stage) {
+        return Timer.builder("people.stage")
+                    .description("Time spent in a stage of People API request processing")
+                    .tag("stage", stage)
+                    .register(registry);
+    }
+    
+    private static Counter errorCounter(MeterRegistry registry, Class<? extends RuntimeException> exception) {
+        return Counter.builder("people.errors")
+                      .description("Exceptions thrown while processing People API requests")
+                      .tag("exception", exception.getSimpleName())
+                      .register(registry);
+    }
+}
@@ -1,17 +1,31 @@
 package ru.alexsem.springcourse.restapp.util;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import ru.alexsem.springcourse.restapp.dto.FieldErrorDTO;
+
+import java.util.List;
+
 /**
- * В классе описаны поля, которые будут отправляться в случае ошибки
+ * В классе описаны поля, которые будут отправляться в случае ошибки.
+ * errors - ошибки валидации по полям, в JSON есть только у ответов 400 на невалидные данные
  */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PersonErrorResponse {
 private String message;
 private long timestamp;
+private List<FieldErrorDTO> errors;
     
     public PersonErrorResponse(String message, long timestamp) {
         this.message = message;
         this.timestamp = timestamp;
     }
     
+    public PersonErrorResponse(String message, long timestamp, List<FieldErrorDTO> errors) {
+        this.message = message;
+        this.timestamp = timestamp;
+        this.errors = errors;
+    }
+    
     public String getMessage() {
         return message;
     }
@@ -27,4 +41,12 @@ private long timestamp;
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+    
+    public List<FieldErrorDTO> getErrors() {
+        return errors;
+    }
+    
+    public void setErrors(List<FieldErrorDTO> errors) {
+        this.errors = errors;
+    }
 }
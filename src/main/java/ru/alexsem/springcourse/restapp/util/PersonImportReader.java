@@ -0,0 +1,265 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import ru.alexsem.springcourse.restapp.dto.FieldErrorDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Потоковое чтение файла импорта (POST /people/import) по одной строке:
+ * в памяти только текущая запись, поэтому размер файла не ограничен.
+ *
+ * CSV (RFC 4180): первая строка - заголовок с колонками name, age, email в любом порядке
+ * (лишние колонки пропускаются), поля в кавычках могут содержать запятые, кавычки ("")
+ * и переводы строк. NDJSON: один JSON-объект PersonDTO на строку.
+ *
+ * Строка, которую не удалось разобрать, не прерывает импорт: она возвращается с ошибками.
+ * Номер строки - номер строки файла, с которой начинается запись (с 1, заголовок CSV тоже считается).
+ */
+public class PersonImportReader {
+    
+    public enum Format {
+        CSV, NDJSON
+    }
+    
+    /**
+     * Поле (CSV) или строка (NDJSON) длиннее - ошибка записи, лишнее не держим в памяти
+     */
+    static final int MAX_RECORD_LENGTH = 10_000;
+    
+    private static final List<String> COLUMNS = List.of("name", "age", "email");
+    
+    private final Reader reader;
+    private final Format format;
+    private final ObjectReader jsonReader;
+    
+//    свой буфер вместо BufferedReader: его read() синхронизирован, а читаем по одному символу
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    
+    private long line = 1;
+    private int[] columns;
+    private int width;
+    private String recordError;
+    
+    /**
+     * @param reader     тело запроса (буферизовать не нужно)
+     * @param format
+     * @param jsonReader ObjectReader для PersonDTO (NDJSON)
+     */
+    public PersonImportReader(Reader reader, Format format, ObjectReader jsonReader) {
+        this.reader = reader;
+        this.format = format;
+        this.jsonReader = jsonReader;
+    }
+    
+    /**
+     * Следующая запись файла, пустые строки пропускаются
+     *
+     * @return null - файл закончился
+     * @throws PersonNotCreatedException в CSV нет заголовка с нужными колонками
+     */
+    public Row next() throws IOException {
+        if (format == Format.CSV && columns == null) {
+            readHeader();
+        }
+        while (true) {
+            long start = line;
+            List<String> record = format == Format.CSV ? readCsvRecord() : readNdjsonLine();
+            if (record == null) {
+                return null;
+            }
+            if (recordError != null) {
+                return new Row(start, null, List.of(new FieldErrorDTO(null, recordError)));
+            }
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            return format == Format.CSV ? csvRow(start, record) : jsonRow(start, record.get(0));
+        }
+    }
+    
+    private void readHeader() throws IOException {
+        List<String> header = readCsvRecord();
+        if (header == null || recordError != null) {
+            throw new PersonNotCreatedException("CSV should start with a header: " + String.join(",", COLUMNS));
+        }
+        columns = new int[COLUMNS.size()];
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            columns[i] = -1;
+        }
+        for (int i = 0; i < header.size(); i++) {
+//            BOM в начале файла от Excel
+            String name = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+            int column = COLUMNS.indexOf(name);
+            if (column >= 0) {
+                columns[column] = i;
+            }
+        }
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            if (columns[i] < 0) {
+                throw new PersonNotCreatedException("CSV header should contain column " + COLUMNS.get(i));
+            }
+        }
+        width = header.size();
+    }
+    
+    private Row csvRow(long start, List<String> record) {
+        if (record.size() != width) {
+            return new Row(start, null,
+                    List.of(new FieldErrorDTO(null, "Expected " + width + " fields, got " + record.size())));
+        }
+        PersonDTO personDTO = new PersonDTO();
+        personDTO.setName(record.get(columns[0]));
+        personDTO.setEmail(record.get(columns[2]));
+        try {
+            personDTO.setAge(Integer.parseInt(record.get(columns[1]).trim()));
+        } catch (NumberFormatException e) {
+            return new Row(start, null, List.of(new FieldErrorDTO("age", "Age should be a number")));
+        }
+        return new Row(start, personDTO, Collections.emptyList());
+    }
+    
+    private Row jsonRow(long start, String json) {
+        try {
+            return new Row(start, jsonReader.readValue(json), Collections.emptyList());
+        } catch (JsonMappingException e) {
+            if (!e.getPath().isEmpty() && e.getPath().get(0).getFieldName() != null) {
+                return new Row(start, null,
+                        List.of(new FieldErrorDTO(e.getPath().get(0).getFieldName(), "Invalid value")));
+            }
+            return new Row(start, null, List.of(new FieldErrorDTO(null, "Malformed JSON")));
+        } catch (JsonProcessingException e) {
+            return new Row(start, null, List.of(new FieldErrorDTO(null, "Malformed JSON")));
+        }
+    }
+    
+    /**
+     * Поля одной записи CSV. Перевод строки внутри кавычек - часть поля, \r перед \n отбрасывается
+     *
+     * @return null - файл закончился
+     */
+    private List<String> readCsvRecord() throws IOException {
+        recordError = null;
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>(width);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    recordError = "Unclosed quote";
+                    fields.add(field.toString());
+                    return fields;
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                if (c == '\n') {
+                    line++;
+                }
+                append(field, c);
+            } else if (c == -1 || c == '\n') {
+                if (c == '\n') {
+                    line++;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c != '\r') {
+                append(field, c);
+            }
+            c = read();
+        }
+    }
+    
+    /**
+     * @return одна строка файла (список из одного элемента), null - файл закончился
+     */
+    private List<String> readNdjsonLine() throws IOException {
+        recordError = null;
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        while (c != -1 && c != '\n') {
+            append(text, c);
+            c = read();
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return List.of(text.toString());
+    }
+    
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+    
+    private void append(StringBuilder text, int c) {
+        if (text.length() < MAX_RECORD_LENGTH) {
+            text.append((char) c);
+        } else {
+            recordError = "Record is longer than " + MAX_RECORD_LENGTH + " characters";
+        }
+    }
+    
+    /**
+     * Запись файла: либо personDTO, либо ошибки разбора
+     */
+    public static class Row {
+        private final long line;
+        private final PersonDTO personDTO;
+        private final List<FieldErrorDTO> errors;
+    
+        Row(long line, PersonDTO personDTO, List<FieldErrorDTO> errors) {
+            this.line = line;
+            this.personDTO = personDTO;
+            this.errors = errors;
+        }
+    
+        public long getLine() {
+            return line;
+        }
+    
+        /**
+         * null, если запись не разобрана (см errors)
+         */
+        public PersonDTO getPersonDTO() {
+            return personDTO;
+        }
+    
+        public List<FieldErrorDTO> getErrors() {
+            return errors;
+        }
+    }
+}
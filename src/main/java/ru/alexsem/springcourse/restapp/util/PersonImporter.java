@@ -0,0 +1,107 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.alexsem.springcourse.restapp.dto.FieldErrorDTO;
+import ru.alexsem.springcourse.restapp.dto.ImportResultDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Импорт людей из файла (POST /people/import). Файл читается потоком (PersonImportReader),
+ * каждая запись проверяется теми же правилами, что и POST /people (PersonValidator.validateFields),
+ * корректные копятся в пачку по chunk-size и сохраняются PeopleService.importPeople -
+ * каждая пачка своей транзакцией. В памяти одновременно не больше одной пачки.
+ *
+ * Email проверяется на уникальность не заранее, а самой вставкой пачки. Повтор email внутри
+ * пачки отклоняется здесь же, а повтор из уже сохранённой пачки - как занятый email.
+ * Если пачка не сохранилась (ошибка БД), предыдущие пачки остаются в БД.
+ */
+@Component
+@Profile("!reactive")
+public class PersonImporter {
+    
+    private final PeopleService peopleService;
+    private final PersonValidator personValidator;
+    private final PersonMapper personMapper;
+    private final ObjectReader jsonReader;
+    
+    @Value("${people.import.chunk-size:20000}")
+    private int chunkSize;
+    
+    @Value("${people.import.max-rejected-rows:1000}")
+    private int maxRejectedRows;
+    
+    @Autowired
+    public PersonImporter(PeopleService peopleService, PersonValidator personValidator, PersonMapper personMapper,
+                          ObjectMapper objectMapper) {
+        this.peopleService = peopleService;
+        this.personValidator = personValidator;
+        this.personMapper = personMapper;
+        this.jsonReader = objectMapper.readerFor(PersonDTO.class);
+    }
+    
+    /**
+     * @param body   тело запроса
+     * @param format CSV или NDJSON
+     * @return сколько импортировано и отклонённые строки с ошибками
+     * @throws PersonNotCreatedException в CSV нет заголовка с нужными колонками
+     */
+    public ImportResultDTO importPeople(Reader body, PersonImportReader.Format format) throws IOException {
+        PersonImportReader reader = new PersonImportReader(body, format, jsonReader);
+        ImportResultDTO result = new ImportResultDTO(maxRejectedRows);
+        List<Person> chunk = new ArrayList<>();
+        List<Long> lines = new ArrayList<>();
+        Set<String> emails = new HashSet<>();
+        PersonImportReader.Row row;
+        while ((row = reader.next()) != null) {
+            if (!row.getErrors().isEmpty()) {
+                result.reject(row.getLine(), row.getErrors());
+                continue;
+            }
+            List<FieldErrorDTO> errors = personValidator.validateFields(row.getPersonDTO());
+            if (errors.isEmpty() && !emails.add(row.getPersonDTO().getEmail())) {
+                errors.add(new FieldErrorDTO("email", "Duplicate email in import"));
+            }
+            if (!errors.isEmpty()) {
+                result.reject(row.getLine(), errors);
+                continue;
+            }
+            chunk.add(personMapper.toPerson(row.getPersonDTO()));
+            lines.add(row.getLine());
+            if (chunk.size() == chunkSize) {
+                save(chunk, lines, result);
+                emails.clear();
+            }
+        }
+        save(chunk, lines, result);
+        return result;
+    }
+    
+    private void save(List<Person> chunk, List<Long> lines, ImportResultDTO result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<Integer> taken = peopleService.importPeople(chunk);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (taken.contains(chunk.get(i).getId())) {
+                result.reject(lines.get(i), List.of(new FieldErrorDTO("email", PersonValidator.EMAIL_TAKEN)));
+            }
+        }
+        result.addImported(chunk.size() - taken.size());
+        chunk.clear();
+        lines.clear();
+    }
+}
@@ -0,0 +1,99 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Готовый JSON (UTF-8 байты) PersonDTO для каждого человека, кэш people-json.
+ *
+ * Для горячих GET /people/{id} и GET /people Jackson не вызывается: байты из кэша
+ * пишутся в ответ как есть (JsonFragments), страница собирается из фрагментов.
+ * Размер кэша ограничен так же, как у people (spring.cache.caffeine.spec).
+ *
+ * PeopleService удаляет записи при изменении человека. Кроме того, вместе с байтами
+ * хранится version: если в кэш успел попасть JSON старой версии, он не совпадёт
+ * с версией сущности и будет построен заново.
+ */
+@Component
+public class PersonJsonCache {
+    
+    private final Cache cache;
+    private final ObjectWriter writer;
+    private final PersonMapper personMapper;
+    private final PeopleMetrics peopleMetrics;
+    
+    @Autowired
+    public PersonJsonCache(CacheManager cacheManager, ObjectMapper objectMapper, PersonMapper personMapper,
+                           PeopleMetrics peopleMetrics) {
+//        null, если people-json нет в spring.cache.cache-names - тогда просто не кэшируем
+        this.cache = cacheManager.getCache(PeopleService.PEOPLE_JSON_CACHE);
+        this.writer = objectMapper.writerFor(PersonDTO.class);
+        this.personMapper = personMapper;
+        this.peopleMetrics = peopleMetrics;
+    }
+    
+    /**
+     * JSON одного человека. При промахе запись JSON замеряется в people.stage{stage=encode}:
+     * serialization - это запись ответа (JsonFragmentsHttpMessageConverter), и промах внутри неё
+     * посчитался бы там дважды
+     *
+     * @param person
+     * @return байты, которые нельзя изменять - они лежат в кэше
+     */
+    public byte[] json(Person person) {
+        CachedJson cached = cache == null ? null : cache.get(person.getId(), CachedJson.class);
+        if (cached != null && cached.version == person.getVersion()) {
+            return cached.json;
+        }
+        PersonDTO personDTO = personMapper.toPersonDTO(person);
+        byte[] json = peopleMetrics.encode().record(() -> write(personDTO));
+        if (cache != null) {
+            cache.put(person.getId(), new CachedJson(person.getVersion(), json));
+        }
+        return json;
+    }
+    
+    /**
+     * JSON каждого человека страницы, в том же порядке
+     */
+    public List<byte[]> json(List<Person> people) {
+        List<byte[]> fragments = new ArrayList<>(people.size());
+        for (Person person : people) {
+            fragments.add(json(person));
+        }
+        return fragments;
+    }
+    
+    private byte[] write(PersonDTO personDTO) {
+        try {
+            return writer.writeValueAsBytes(personDTO);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Байты JSON и версия человека, из которой они получены
+     */
+    private static final class CachedJson {
+        private final int version;
+        private final byte[] json;
+    
+        CachedJson(int version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+import ru.alexsem.springcourse.restapp.dto.PersonChangeDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonChangesDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonSearchDTO;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.models.PersonChange;
+import ru.alexsem.springcourse.restapp.repositories.PersonSearch;
+import ru.alexsem.springcourse.restapp.repositories.PersonSpecifications;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Маппинг между моделью Person и PersonDTO вручную, вместо ModelMapper.
+ *
+ * ModelMapper на каждый вызов ищет TypeMap и заполняет поля через рефлексию.
+ * Здесь обычные вызовы геттеров/сеттеров, которые JIT легко инлайнит.
+ * Если в PersonDTO появится новое поле, его нужно добавить и сюда.
+ */
+@Component
+public class PersonMapper {
+    
+    /**
+     * Принимает DTO и возвращает модель.
+     * Поля, которые назначаются сервером (createdAt и тд), заполняются в PeopleService
+     *
+     * @param personDTO
+     * @return
+     */
+    public Person toPerson(PersonDTO personDTO) {
+        Person person = new Person();
+        person.setName(personDTO.getName());
+        person.setAge(personDTO.getAge());
+        person.setEmail(personDTO.getEmail());
+        return person;
+    }
+    
+    /**
+     * Принимает модель и возвращает DTO
+     *
+     * @param person
+     * @return
+     */
+    public PersonDTO toPersonDTO(Person person) {
+        PersonDTO personDTO = new PersonDTO();
+        personDTO.setName(person.getName());
+        personDTO.setAge(person.getAge());
+        personDTO.setEmail(person.getEmail());
+        return personDTO;
+    }
+    
+    /**
+     * Список сразу создаётся нужного размера, без промежуточного Stream
+     *
+     * @param people
+     * @return
+     */
+    public List<PersonDTO> toPersonDTOList(List<Person> people) {
+        List<PersonDTO> result = new ArrayList<>(people.size());
+        for (Person person : people) {
+            result.add(toPersonDTO(person));
+        }
+        return result;
+    }
+    
+    /**
+     * Событие из outbox в DTO. Снимок человека есть у всех событий, кроме DELETED
+     *
+     * @param change
+     * @return
+     */
+    public PersonChangeDTO toPersonChangeDTO(PersonChange change) {
+        PersonChangeDTO changeDTO = new PersonChangeDTO();
+        changeDTO.setSeq(change.getSeq());
+        changeDTO.setType(change.getType());
+        changeDTO.setId(change.getPersonId());
+        changeDTO.setVersion(change.getVersion());
+        changeDTO.setChangedAt(change.getChangedAt());
+        if (change.getType() != PersonChange.Type.DELETED) {
+            PersonDTO personDTO = new PersonDTO();
+            personDTO.setName(change.getName());
+            personDTO.setAge(change.getAge() == null ? 0 : change.getAge());
+            personDTO.setEmail(change.getEmail());
+            changeDTO.setPerson(personDTO);
+        }
+        return changeDTO;
+    }
+    
+    /**
+     * Порция событий для GET /people/changes
+     *
+     * @param changes
+     * @param since since запроса - last, если событий нет
+     * @return
+     */
+    public PersonChangesDTO toPersonChangesDTO(List<PersonChange> changes, long since) {
+        List<PersonChangeDTO> result = new ArrayList<>(changes.size());
+        for (PersonChange change : changes) {
+            result.add(toPersonChangeDTO(change));
+        }
+        return new PersonChangesDTO(result, changes.isEmpty() ? since : changes.get(changes.size() - 1).getSeq());
+    }
+    
+    /**
+     * Параметры поиска в запрос к репозиторию: фильтры собираются в одну Specification
+     *
+     * @param searchDTO
+     * @return
+     * @throws IllegalArgumentException если курсор повреждён или не подходит к сортировке
+     */
+    public PersonSearch toPersonSearch(PersonSearchDTO searchDTO) {
+        Specification<Person> filter = Specification
+                .where(PersonSpecifications.nameStartsWith(searchDTO.getNamePrefix()))
+                .and(PersonSpecifications.ageBetween(searchDTO.getMinAge(), searchDTO.getMaxAge()))
+                .and(PersonSpecifications.emailDomain(searchDTO.getEmailDomain()))
+                .and(PersonSpecifications.createdBetween(searchDTO.getCreatedFrom(), searchDTO.getCreatedTo()));
+        PersonSearch search = new PersonSearch(filter, PersonSearch.SortField.of(searchDTO.getSort()),
+                "desc".equals(searchDTO.getDirection()), searchDTO.getLimit());
+        if (searchDTO.getCursor() != null) {
+            search.setCursor(searchDTO.getCursor());
+        }
+        return search;
+    }
+}
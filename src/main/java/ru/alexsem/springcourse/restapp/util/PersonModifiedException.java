@@ -0,0 +1,9 @@
+package ru.alexsem.springcourse.restapp.util;
+
+/**
+ * Выбрасывается, если версия человека в БД не совпала с версией из If-Match:
+ * его уже изменил или удалил другой запрос (защита от потерянных обновлений)
+ */
+public class PersonModifiedException extends StacklessException {
+    
+}
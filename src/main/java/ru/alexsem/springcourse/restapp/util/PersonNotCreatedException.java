@@ -1,8 +1,33 @@
 package ru.alexsem.springcourse.restapp.util;
 
-public class PersonNotCreatedException extends RuntimeException  {
+import ru.alexsem.springcourse.restapp.dto.FieldErrorDTO;
+
+import java.util.List;
+
+public class PersonNotCreatedException extends StacklessException {
+    
+    public static final String VALIDATION_FAILED = "Validation failed";
+    
+    private final List<FieldErrorDTO> errors;
+    
 //    Будем выводить сообщение об исключении
     public PersonNotCreatedException(String message) {
         super(message);
+        this.errors = null;
+    }
+    
+    /**
+     * Ошибки валидации по полям: сообщение общее, подробности - в errors ответа
+     */
+    public PersonNotCreatedException(List<FieldErrorDTO> errors) {
+        super(VALIDATION_FAILED);
+        this.errors = errors;
+    }
+    
+    /**
+     * @return null - ошибка не относится к отдельным полям
+     */
+    public List<FieldErrorDTO> getErrors() {
+        return errors;
     }
 }
@@ -3,6 +3,6 @@ package ru.alexsem.springcourse.restapp.util;
 /**
  * Если человек не найден в БД, выбрасывается исключение
  */
-public class PersonNotFoundException extends RuntimeException{
+public class PersonNotFoundException extends StacklessException {
 
 }
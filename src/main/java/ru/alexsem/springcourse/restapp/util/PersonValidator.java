@@ -1,31 +1,57 @@
 package ru.alexsem.springcourse.restapp.util;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.Errors;
 import org.springframework.validation.Validator;
+import ru.alexsem.springcourse.restapp.dto.FieldErrorDTO;
 import ru.alexsem.springcourse.restapp.dto.PersonDTO;
-import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.dto.PersonPatchDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonUpdateDTO;
 import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
-import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.services.EmailIndex;
+
+import javax.validation.ConstraintViolation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Используем валидатор в контроллере в методе create.
  *
- * Нужно подумать, куда внедрить Modelmapper,
- * чтобы исключить дублирование
+ * Проверяем сразу PersonDTO, без промежуточного Person.
+ *
+ * Для проверки уникальности email сначала спрашиваем EmailIndex (фильтр Блума),
+ * в БД идём только если email возможно уже занят. Сам валидатор транзакцию не открывает:
+ * если фильтр ответил "нет", соединение с БД не берётся вовсе. Запросы же при попадании
+ * в фильтр идут в основную БД (см PeopleRepository.existsByEmail).
+ *
+ * Правила и тексты ошибок общие с ReactivePersonValidator (профиль reactive).
  */
 
 @Component
+@Profile("!reactive")
 public class PersonValidator implements Validator {
+    
+    public static final String EMAIL_TAKEN = "This email is already taken";
+    public static final String NAME_NOT_CAPITALIZED = "Name should start with a capital letter";
+    
+    private static final int EMAIL_QUERY_CHUNK = 1000;
+    
     private final PeopleRepository peopleRepository;
-    private final ModelMapper modelMapper;
+    private final EmailIndex emailIndex;
+    private final javax.validation.Validator beanValidator;
     
     @Autowired
-    public PersonValidator(PeopleRepository peopleRepository, ModelMapper modelMapper) {
+    public PersonValidator(PeopleRepository peopleRepository, EmailIndex emailIndex,
+                           javax.validation.Validator beanValidator) {
         this.peopleRepository = peopleRepository;
-        this.modelMapper = modelMapper;
+        this.emailIndex = emailIndex;
+        this.beanValidator = beanValidator;
     }
     
     
@@ -42,18 +68,123 @@ public class PersonValidator implements Validator {
     
     @Override
     public void validate(Object target, Errors errors) {
-//        Первая проверка: Посмотреть, есть ли человек с таким же email в БД
         PersonDTO personDTO = (PersonDTO) target;
-        Person person = modelMapper.map(personDTO, Person.class);
-        if (peopleRepository.findByEmail(person.getEmail()).isPresent()) {
-            errors.rejectValue("email", "", "This email is already taken");
+        validate(personDTO.getName(), personDTO.getEmail(), null, errors);
+    }
+    
+    /**
+     * Валидация частичного обновления: проверяются только переданные поля,
+     * email самого человека с этим id не считается занятым
+     *
+     * @param id
+     * @param personPatchDTO
+     * @param errors
+     */
+    public void validateUpdate(int id, PersonPatchDTO personPatchDTO, Errors errors) {
+        validate(personPatchDTO.getName(), personPatchDTO.getEmail(), id, errors);
+    }
+    
+    private void validate(String name, String email, Integer id, Errors errors) {
+//        Первая проверка: Посмотреть, есть ли человек с таким же email в БД
+        if (isEmailTaken(email, id)) {
+            errors.rejectValue("email", "", EMAIL_TAKEN);
         }
 //        Вторая проверка: Проверяем, что у человека имя начинается с заглавной буквы
-//        Если не с заглавной, то добвляем ошибку
-        if (!Character.isUpperCase(person.getName()
-                                         .codePointAt(0))) {
+//        Если не с заглавной, то добвляем ошибку (пустое имя уже отклонено @NotEmpty)
+        if (isNotCapitalized(name)) {
             errors.rejectValue(
-                    "name", "", "Name should start with a capital letter");
+                    "name", "", NAME_NOT_CAPITALIZED);
+        }
+    }
+    
+    /**
+     * Валидация пакета (/people/batch): аннотации PersonDTO, правило заглавной буквы
+     * и уникальность email. Уникальность проверяется одним запросом на пачку email,
+     * а не findByEmail на каждого. Повтор email внутри самого пакета тоже ошибка.
+     *
+     * @param people PersonDTO или PersonUpdateDTO (для обновления email самого человека не считается занятым)
+     * @return ошибки для каждого элемента в том же порядке (пустой список - ошибок нет)
+     */
+    public List<List<String>> validateBatch(List<? extends PersonDTO> people) {
+        List<List<String>> result = new ArrayList<>(people.size());
+        Set<String> candidates = new HashSet<>();
+        for (PersonDTO personDTO : people) {
+            List<String> errors = new ArrayList<>();
+            for (FieldErrorDTO error : validateFields(personDTO)) {
+                errors.add(error.getField() + " - " + error.getMessage());
+            }
+            String email = personDTO.getEmail();
+            if (email != null && emailIndex.mightContain(email)) {
+                candidates.add(email);
+            }
+            result.add(errors);
+        }
+        
+        Map<String, Integer> owners = findEmailOwners(candidates);
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < people.size(); i++) {
+            PersonDTO personDTO = people.get(i);
+            String email = personDTO.getEmail();
+            if (email == null) {
+                continue;
+            }
+            Integer owner = owners.get(email);
+            Integer id = personDTO instanceof PersonUpdateDTO ? ((PersonUpdateDTO) personDTO).getId() : null;
+            if (owner != null && !owner.equals(id)) {
+                result.get(i).add("email - " + EMAIL_TAKEN);
+            } else if (!seen.add(email)) {
+                result.get(i).add("email - Duplicate email in batch");
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Проверки одного человека без обращения к БД: аннотации PersonDTO и правило заглавной буквы.
+     * Уникальность email проверяет вызывающий код - пачкой (validateBatch, PersonImporter)
+     *
+     * @param personDTO
+     * @return ошибки по полям (пустой список - ошибок нет)
+     */
+    public List<FieldErrorDTO> validateFields(PersonDTO personDTO) {
+        List<FieldErrorDTO> errors = new ArrayList<>();
+        for (ConstraintViolation<PersonDTO> violation : beanValidator.validate(personDTO)) {
+            errors.add(new FieldErrorDTO(violation.getPropertyPath().toString(), violation.getMessage()));
+        }
+        if (isNotCapitalized(personDTO.getName())) {
+            errors.add(new FieldErrorDTO("name", NAME_NOT_CAPITALIZED));
+        }
+        return errors;
+    }
+    
+    /**
+     * Имя должно начинаться с заглавной буквы (пустое имя отклоняется аннотациями PersonDTO)
+     *
+     * @param name
+     * @return true, если правило нарушено
+     */
+    public static boolean isNotCapitalized(String name) {
+        return name != null && !name.isEmpty() && !Character.isUpperCase(name.codePointAt(0));
+    }
+    
+    private Map<String, Integer> findEmailOwners(Set<String> emails) {
+        Map<String, Integer> owners = new HashMap<>();
+        List<String> all = new ArrayList<>(emails);
+        for (int from = 0; from < all.size(); from += EMAIL_QUERY_CHUNK) {
+            for (Object[] row : peopleRepository.findIdsByEmails(
+                    all.subList(from, Math.min(from + EMAIL_QUERY_CHUNK, all.size())))) {
+                owners.put((String) row[0], (Integer) row[1]);
+            }
+        }
+        return owners;
+    }
+    
+    private boolean isEmailTaken(String email, Integer id) {
+        if (email == null || !emailIndex.mightContain(email)) {
+            return false;
         }
+        return id == null
+               ? peopleRepository.existsByEmail(email)
+               : peopleRepository.existsByEmailAndIdNot(email, id);
     }
-}
\ No newline at end of file
+}
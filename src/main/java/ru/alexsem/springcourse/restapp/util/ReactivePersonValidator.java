@@ -0,0 +1,77 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import ru.alexsem.springcourse.restapp.dto.FieldErrorDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.dto.PersonPatchDTO;
+import ru.alexsem.springcourse.restapp.repositories.ReactivePeopleRepository;
+
+import javax.validation.ConstraintViolation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Валидатор для ReactivePeopleController (профиль reactive).
+ *
+ * Те же проверки, что у @Valid + PersonValidator: аннотации DTO, имя с заглавной буквы
+ * и уникальность email. Проверка email в БД неблокирующая и делается только тогда,
+ * когда сам email прошёл проверку аннотациями.
+ * Ошибки возвращаются по полям (FieldErrorDTO), как у PersonNotCreatedException в servlet-варианте.
+ */
+@Component
+@Profile("reactive")
+public class ReactivePersonValidator {
+    
+    private final ReactivePeopleRepository peopleRepository;
+    private final javax.validation.Validator beanValidator;
+    
+    @Autowired
+    public ReactivePersonValidator(ReactivePeopleRepository peopleRepository,
+                                   javax.validation.Validator beanValidator) {
+        this.peopleRepository = peopleRepository;
+        this.beanValidator = beanValidator;
+    }
+    
+    public Mono<List<FieldErrorDTO>> validate(PersonDTO personDTO) {
+        List<FieldErrorDTO> errors = validateFields(beanValidator.validate(personDTO), personDTO.getName());
+        return checkEmail(personDTO.getEmail(), null, errors);
+    }
+    
+    /**
+     * Частичное обновление: проверяются только переданные поля,
+     * email самого человека с этим id не считается занятым
+     */
+    public Mono<List<FieldErrorDTO>> validateUpdate(int id, PersonPatchDTO personPatchDTO) {
+        List<FieldErrorDTO> errors = validateFields(beanValidator.validate(personPatchDTO), personPatchDTO.getName());
+        return checkEmail(personPatchDTO.getEmail(), id, errors);
+    }
+    
+    private <T> List<FieldErrorDTO> validateFields(Iterable<ConstraintViolation<T>> violations, String name) {
+        List<FieldErrorDTO> errors = new ArrayList<>();
+        for (ConstraintViolation<T> violation : violations) {
+            errors.add(new FieldErrorDTO(violation.getPropertyPath().toString(), violation.getMessage()));
+        }
+        if (PersonValidator.isNotCapitalized(name)) {
+            errors.add(new FieldErrorDTO("name", PersonValidator.NAME_NOT_CAPITALIZED));
+        }
+        return errors;
+    }
+    
+    private Mono<List<FieldErrorDTO>> checkEmail(String email, Integer id, List<FieldErrorDTO> errors) {
+        if (email == null || errors.stream().anyMatch(error -> error.getField().equals("email"))) {
+            return Mono.just(errors);
+        }
+        Mono<Boolean> taken = id == null
+                              ? peopleRepository.existsByEmail(email)
+                              : peopleRepository.existsByEmailAndIdNot(email, id);
+        return taken.map(isTaken -> {
+            if (isTaken) {
+                errors.add(new FieldErrorDTO("email", PersonValidator.EMAIL_TAKEN));
+            }
+            return errors;
+        });
+    }
+}
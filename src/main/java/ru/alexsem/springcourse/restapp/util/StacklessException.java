@@ -0,0 +1,21 @@
+package ru.alexsem.springcourse.restapp.util;
+
+/**
+ * Базовый класс исключений People API, которые превращаются в ответ 4xx.
+ *
+ * Такие исключения - обычный результат запроса (нет человека с таким id, не прошла валидация),
+ * а не ошибка в коде, поэтому стек вызовов в них не нужен. Заполнение стека (fillInStackTrace)
+ * проходит по всем кадрам - под Tomcat, фильтрами и прокси Spring их больше сотни, и это
+ * самая дорогая часть 404 на каждый запрос со случайным id. Здесь стек не заполняется
+ * и suppressed-исключения не собираются.
+ */
+public abstract class StacklessException extends RuntimeException {
+    
+    protected StacklessException() {
+        super(null, null, false, false);
+    }
+    
+    protected StacklessException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,9 @@
+package ru.alexsem.springcourse.restapp.util;
+
+/**
+ * Статистика (см PeopleStats) ещё не посчитана после старта или выключена,
+ * клиент должен повторить запрос позже
+ */
+public class StatsUnavailableException extends StacklessException {
+
+}
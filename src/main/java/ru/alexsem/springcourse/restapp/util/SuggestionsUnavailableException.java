@@ -0,0 +1,9 @@
+package ru.alexsem.springcourse.restapp.util;
+
+/**
+ * Индекс подсказок (см PersonSuggestIndex) ещё загружается или выключен,
+ * клиент должен повторить запрос позже
+ */
+public class SuggestionsUnavailableException extends StacklessException {
+
+}
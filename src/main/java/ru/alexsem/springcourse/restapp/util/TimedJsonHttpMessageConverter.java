@@ -0,0 +1,39 @@
+package ru.alexsem.springcourse.restapp.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обычный Jackson-конвертер, который дополнительно замеряет время сериализации
+ * ответа в JSON (people.stage, stage=serialization).
+ *
+ * Бин этого типа заменяет конвертер, который Spring Boot создаёт по умолчанию,
+ * поэтому настройки ObjectMapper (spring.jackson.*) продолжают работать.
+ */
+public class TimedJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    
+    private final Timer timer;
+    
+    public TimedJsonHttpMessageConverter(ObjectMapper objectMapper, Timer timer) {
+        super(objectMapper);
+        this.timer = timer;
+    }
+    
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        long start = System.nanoTime();
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,4 @@
+ALTER TABLE person
+    ADD COLUMN created_at  TIMESTAMP,
+    ADD COLUMN updated_at  TIMESTAMP,
+    ADD COLUMN created_who VARCHAR;
@@ -0,0 +1,2 @@
+-- Hibernate берёт id пачками по 50 (allocationSize в Person), шаг последовательности должен совпадать
+ALTER SEQUENCE person_id_seq INCREMENT BY 50;
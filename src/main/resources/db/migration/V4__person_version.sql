@@ -0,0 +1,3 @@
+-- Версия строки для @Version в Person и ETag в API
+ALTER TABLE person
+    ADD COLUMN version INT NOT NULL DEFAULT 0;
@@ -0,0 +1,5 @@
+-- Поиск GET /people/search. Домен email хранится отдельной колонкой (её заполняет приложение)
+ALTER TABLE person
+    ADD COLUMN email_domain VARCHAR(100);
+UPDATE person
+SET email_domain = lower(substring(email from '@([^@]*)$'));
@@ -0,0 +1,13 @@
+-- Индексы строятся CONCURRENTLY: таблица не блокируется на запись, пока идёт построение.
+-- CONCURRENTLY нельзя выполнять в транзакции, Flyway видит это и выполняет миграцию без неё,
+-- поэтому в этом файле не должно быть других (транзакционных) команд.
+-- Если построение прервалось, в БД остаётся индекс в состоянии INVALID: его надо удалить
+-- (DROP INDEX CONCURRENTLY ...) и выполнить миграцию снова (flyway repair, затем migrate).
+
+-- Ключ сортировки + id: фильтр и keyset-пагинация идут по индексу без сортировки
+CREATE INDEX CONCURRENTLY IF NOT EXISTS person_name_id_idx ON person (name, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS person_age_id_idx ON person (age, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS person_email_domain_id_idx ON person (email_domain, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS person_created_at_id_idx ON person (created_at, id);
+-- LIKE 'Tom%' может использовать обычный индекс только при collation "C"
+CREATE INDEX CONCURRENTLY IF NOT EXISTS person_name_pattern_idx ON person (name varchar_pattern_ops);
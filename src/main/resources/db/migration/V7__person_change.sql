@@ -0,0 +1,17 @@
+-- Outbox изменений людей (PersonChange): строка добавляется в транзакции изменения,
+-- потребители читают по seq через GET /people/changes.
+-- Внешнего ключа на person нет: событие DELETED должно пережить удаление человека
+CREATE TABLE person_change
+(
+    seq        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    person_id  INT          NOT NULL,
+    type       VARCHAR(10)  NOT NULL,
+    version    INT,
+    name       VARCHAR(100),
+    age        INT,
+    email      VARCHAR(100),
+    changed_at TIMESTAMP    NOT NULL
+);
+
+-- Поиск границы срока хранения (PersonChangeLog.deleteExpired)
+CREATE INDEX person_change_changed_at_idx ON person_change (changed_at);
@@ -0,0 +1,121 @@
+-- Необязательная схема для больших установок: person секционирована по месяцам created_at.
+-- Включается так: spring.flyway.locations=classpath:db/migration,classpath:db/partitioning
+-- (и лучше сразу на новой БД: на уже заполненной таблице миграция копирует все строки,
+-- это долго и требует остановки приложения; если другие миграции уже выполнены, нужен ещё
+-- spring.flyway.out-of-order=true).
+--
+-- Что меняется по сравнению с обычной таблицей:
+-- * первичный ключ (id, created_at) - в PostgreSQL ключ секционирования обязан входить
+--   во все уникальные ограничения, поэтому created_at становится NOT NULL;
+-- * уникальность email тоже нельзя проверить индексом секционированной таблицы,
+--   её проверяет таблица person_email, которую заполняет триггер;
+-- * id выдаёт обычная последовательность person_id_seq (IDENTITY на секционированной
+--   таблице до PostgreSQL 17 не поддерживается), шаг 50 как и раньше;
+-- * поиск по id смотрит индексы всех секций, а по диапазону created_at - только нужные.
+--
+-- Секции создаются заранее функцией person_create_partitions. Её нужно вызывать по
+-- расписанию (pg_cron или cron + psql), например раз в месяц:
+--     SELECT person_create_partitions(localtimestamp, localtimestamp + INTERVAL '3 months');
+-- Строки за пределами созданных секций попадают в person_default.
+
+ALTER TABLE person RENAME TO person_unpartitioned;
+
+-- Последовательность IDENTITY удаляется вместе с ней, поэтому сначала запоминаем её значение
+DO
+$$
+    DECLARE
+        last_id BIGINT;
+    BEGIN
+        SELECT last_value INTO last_id FROM person_id_seq;
+        ALTER TABLE person_unpartitioned ALTER COLUMN id DROP IDENTITY;
+        CREATE SEQUENCE person_id_seq INCREMENT BY 50;
+        PERFORM setval('person_id_seq', last_id);
+    END
+$$;
+
+-- Колонки берутся из старой таблицы как есть, ограничения и индексы создаются ниже
+CREATE TABLE person
+(
+    LIKE person_unpartitioned INCLUDING DEFAULTS
+) PARTITION BY RANGE (created_at);
+
+ALTER TABLE person
+    ALTER COLUMN id SET DEFAULT nextval('person_id_seq');
+ALTER SEQUENCE person_id_seq OWNED BY person.id;
+
+CREATE TABLE person_default PARTITION OF person DEFAULT;
+
+CREATE FUNCTION person_create_partitions(from_time TIMESTAMP, to_time TIMESTAMP) RETURNS VOID AS
+$$
+DECLARE
+    month_start TIMESTAMP := date_trunc('month', from_time);
+BEGIN
+    WHILE month_start < to_time
+        LOOP
+            EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF person FOR VALUES FROM (%L) TO (%L)',
+                           'person_' || to_char(month_start, 'YYYY_MM'), month_start,
+                           month_start + INTERVAL '1 month');
+            month_start := month_start + INTERVAL '1 month';
+        END LOOP;
+END
+$$ LANGUAGE plpgsql;
+
+-- Строки без created_at (созданные до появления колонки) попадают в person_default
+UPDATE person_unpartitioned
+SET created_at = coalesce(updated_at, TIMESTAMP '1970-01-01')
+WHERE created_at IS NULL;
+
+SELECT person_create_partitions(coalesce(min(created_at) FILTER (WHERE created_at > TIMESTAMP '1970-01-01'),
+                                         localtimestamp),
+                                localtimestamp + INTERVAL '3 months')
+FROM person_unpartitioned;
+
+INSERT INTO person
+SELECT *
+FROM person_unpartitioned;
+
+CREATE TABLE person_email
+(
+    email     VARCHAR(100) PRIMARY KEY,
+    person_id INT NOT NULL
+);
+
+INSERT INTO person_email (email, person_id)
+SELECT email, id
+FROM person_unpartitioned
+WHERE email IS NOT NULL;
+
+-- Имена индексов и ограничений заняты старой таблицей, поэтому сначала удаляем её
+DROP TABLE person_unpartitioned;
+
+-- Индексы строятся после загрузки данных: так быстрее, чем обновлять их на каждой вставке
+ALTER TABLE person
+    ADD PRIMARY KEY (id, created_at);
+CREATE INDEX person_email_idx ON person (email);
+CREATE INDEX person_name_id_idx ON person (name, id);
+CREATE INDEX person_age_id_idx ON person (age, id);
+CREATE INDEX person_email_domain_id_idx ON person (email_domain, id);
+CREATE INDEX person_created_at_id_idx ON person (created_at, id);
+CREATE INDEX person_name_pattern_idx ON person (name varchar_pattern_ops);
+
+-- Повторный email даёт ту же ошибку unique_violation, что и ограничение UNIQUE на обычной таблице
+CREATE FUNCTION person_email_sync() RETURNS TRIGGER AS
+$$
+BEGIN
+    IF TG_OP <> 'INSERT' AND OLD.email IS NOT NULL
+        AND (TG_OP = 'DELETE' OR NEW.email IS DISTINCT FROM OLD.email) THEN
+        DELETE FROM person_email WHERE email = OLD.email;
+    END IF;
+    IF TG_OP <> 'DELETE' AND NEW.email IS NOT NULL
+        AND (TG_OP = 'INSERT' OR NEW.email IS DISTINCT FROM OLD.email) THEN
+        INSERT INTO person_email (email, person_id) VALUES (NEW.email, NEW.id);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER person_email_sync
+    AFTER INSERT OR UPDATE OF email OR DELETE
+    ON person
+    FOR EACH ROW
+EXECUTE FUNCTION person_email_sync();
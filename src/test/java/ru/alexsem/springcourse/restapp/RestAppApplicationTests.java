@@ -2,8 +2,10 @@ package ru.alexsem.springcourse.restapp;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 
 @SpringBootTest
+@ActiveProfiles("test")
 class RestAppApplicationTests {
     
     @Test
@@ -0,0 +1,74 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Загрузка значения для @Cacheable(sync = true) в CoalescingCaffeineCache
+ */
+class CoalescingCaffeineCacheTest {
+    
+    private final CoalescingCaffeineCache cache =
+            new CoalescingCaffeineCache("people", Caffeine.newBuilder().build(), true);
+    
+    @Test
+    void concurrentLoadsOfSameKeyAreCoalesced() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get(1, () -> {
+            loads.incrementAndGet();
+            loaderStarted.countDown();
+            release.await();
+            return "Tom";
+        }));
+        assertTrue(loaderStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> cache.get(1, () -> {
+            loads.incrementAndGet();
+            return "Bob";
+        }));
+        release.countDown();
+        
+        assertEquals("Tom", first.get(5, TimeUnit.SECONDS));
+        assertEquals("Tom", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals("Tom", cache.get(1).get());
+    }
+    
+    @Test
+    void valueLoadedDuringEvictionIsNotCached() {
+        String value = cache.get(1, () -> {
+            cache.evict(1);
+            return "Tom";
+        });
+        
+        assertEquals("Tom", value);
+        assertNull(cache.get(1));
+    }
+    
+    @Test
+    void evictionBetweenLoadAndPublishIsNotLost() {
+//        evict из коммита пишущего запроса приходит, когда загрузка уже закончилась, но значение ещё не в кэше
+        CoalescingCaffeineCache racing = new CoalescingCaffeineCache("people", Caffeine.newBuilder().build(), true) {
+            @Override
+            void publish(Object key, CompletableFuture<Object> future, Object value) {
+                evict(key);
+                super.publish(key, future, value);
+            }
+        };
+        
+        assertEquals("Tom", racing.get(1, () -> "Tom"));
+        assertNull(racing.get(1));
+        assertEquals("Bob", racing.get(1, () -> "Bob"));
+    }
+}
@@ -0,0 +1,48 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Профиль fast-startup: ленивые бины, отложенная сборка JPA и урезанная автоконфигурация
+ * не ломают основной путь GET /people/{id}
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"test", "fast-startup"})
+class FastStartupProfileTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+    
+    @Test
+    void servesPersonWithLazyContext() throws Exception {
+        assertTrue(beanFactory.getBeanDefinition("peopleController").isLazyInit());
+    
+        Person person = new Person();
+        person.setName("Lazy");
+        person.setAge(30);
+        person.setEmail("lazy" + System.nanoTime() + "@mail.ru");
+        peopleService.save(person);
+    
+        mockMvc.perform(get("/people/{id}", person.getId()))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.name").value("Lazy"));
+    }
+}
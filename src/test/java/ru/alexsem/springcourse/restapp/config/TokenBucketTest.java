@@ -0,0 +1,81 @@
+package ru.alexsem.springcourse.restapp.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TokenBucket и AimdConcurrencyLimiter на заданных вручную значениях времени
+ */
+class TokenBucketTest {
+    
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    
+    @Test
+    void burstIsAllowedThenRefilledAtRate() {
+//        отрицательное начало - nanoTime может быть любым
+        long now = -5 * SECOND;
+        TokenBucket bucket = new TokenBucket(10, 3, now);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(1, now));
+        }
+        long wait = bucket.tryAcquire(1, now);
+        assertEquals(SECOND / 10, wait);
+        
+        assertTrue(bucket.tryAcquire(1, now + wait - 1) > 0);
+        assertEquals(0, bucket.tryAcquire(1, now + wait));
+        
+//        после долгой паузы ведро снова полное, но не больше burst
+        long later = now + 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(1, later));
+        }
+        assertTrue(bucket.tryAcquire(1, later) > 0);
+    }
+    
+    @Test
+    void refundReturnsTokenButNotAboveBurst() {
+        long now = 0;
+        TokenBucket bucket = new TokenBucket(1, 2, now);
+        assertEquals(0, bucket.tryAcquire(1, now));
+        assertEquals(0, bucket.tryAcquire(1, now));
+        assertTrue(bucket.tryAcquire(1, now) > 0);
+        
+        bucket.refund(1, now);
+        assertEquals(0, bucket.tryAcquire(1, now));
+        
+//        у полного ведра возвращать нечего
+        long later = now + 60 * SECOND;
+        bucket.refund(1, later);
+        bucket.refund(1, later);
+        assertEquals(0, bucket.tryAcquire(1, later));
+        assertEquals(0, bucket.tryAcquire(1, later));
+        assertTrue(bucket.tryAcquire(1, later) > 0);
+    }
+    
+    @Test
+    void limitBacksOffOnSlowResponsesAndGrowsBack() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 2, 10, SECOND);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertTrue(!limiter.tryAcquire());
+        
+        for (int i = 0; i < 10; i++) {
+            limiter.release(2 * SECOND, false);
+        }
+        assertEquals(3, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+        
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.tryAcquire();
+            limiter.release(SECOND / 100, false);
+            limiter.release(SECOND / 100, false);
+        }
+        assertTrue(limiter.getLimit() > 3);
+    }
+}
@@ -0,0 +1,152 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.util.PersonValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Пакетные операции /people/batch: результат по каждому элементу, отклонённые элементы
+ * не мешают остальным, размер пакета ограничен people.batch.max-size
+ */
+@SpringBootTest(properties = "people.batch.max-size=1005")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerBatchTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PeopleRepository peopleRepository;
+    
+    private String suffix;
+    
+    @BeforeEach
+    void setUp() {
+        suffix = System.nanoTime() + "@batch.ru";
+    }
+    
+    @Test
+    void createReportsEachItemAndSavesOnlyValidOnes() throws Exception {
+        peopleService.save(person("Taken", "taken" + suffix));
+        
+        String body = "["
+                + item("Tom", "tom" + suffix) + ","
+                + item("bob", "bob" + suffix) + ","
+                + item("Ann", "taken" + suffix) + ","
+                + item("Kate", "kate" + suffix) + ","
+                + item("Katie", "kate" + suffix) + "]";
+        mockMvc.perform(post("/people/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.items", hasSize(5)))
+               .andExpect(jsonPath("$.items[0].status").value("CREATED"))
+               .andExpect(jsonPath("$.items[0].id").isNumber())
+               .andExpect(jsonPath("$.items[1].status").value("REJECTED"))
+               .andExpect(jsonPath("$.items[1].errors", hasItem("name - " + PersonValidator.NAME_NOT_CAPITALIZED)))
+               .andExpect(jsonPath("$.items[2].status").value("REJECTED"))
+               .andExpect(jsonPath("$.items[2].errors", hasItem("email - " + PersonValidator.EMAIL_TAKEN)))
+               .andExpect(jsonPath("$.items[3].status").value("CREATED"))
+               .andExpect(jsonPath("$.items[4].status").value("REJECTED"))
+               .andExpect(jsonPath("$.items[4].errors", hasItem("email - Duplicate email in batch")));
+        
+        assertTrue(peopleRepository.findByEmail("tom" + suffix).isPresent());
+        assertEquals("Kate", peopleRepository.findByEmail("kate" + suffix).orElseThrow().getName());
+        assertFalse(peopleRepository.findByEmail("bob" + suffix).isPresent());
+    }
+    
+    @Test
+    void emailsAreCheckedInChunksAcrossLargeBatch() throws Exception {
+//        занятый email в конце пакета - во втором запросе email IN (...) по 1000
+        peopleService.save(person("Taken", "taken" + suffix));
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 1004; i++) {
+            items.add(item("Person", "p" + i + suffix));
+        }
+        items.add(item("Last", "taken" + suffix));
+        mockMvc.perform(post("/people/batch").contentType(MediaType.APPLICATION_JSON)
+                                             .content("[" + String.join(",", items) + "]"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.items[1003].status").value("CREATED"))
+               .andExpect(jsonPath("$.items[1004].status").value("REJECTED"))
+               .andExpect(jsonPath("$.items[1004].errors", hasItem("email - " + PersonValidator.EMAIL_TAKEN)));
+    }
+    
+    @Test
+    void oversizedBatchIsRejected() throws Exception {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 1006; i++) {
+            items.add(item("Person", "big" + i + suffix));
+        }
+        mockMvc.perform(post("/people/batch").contentType(MediaType.APPLICATION_JSON)
+                                             .content("[" + String.join(",", items) + "]"))
+               .andExpect(status().isBadRequest())
+               .andExpect(jsonPath("$.message").value("Batch should contain at most 1005 items"));
+        assertFalse(peopleRepository.findByEmail("big0" + suffix).isPresent());
+    }
+    
+    @Test
+    void updateAndDeleteReportNotFoundAndEvictCache() throws Exception {
+        Person tom = person("Tom", "tom" + suffix);
+        peopleService.save(tom);
+        int id = tom.getId();
+//        человек попадает в кэш
+        mockMvc.perform(get("/people/" + id))
+               .andExpect(jsonPath("$.name").value("Tom"));
+        
+        String update = "[{\"id\": " + id + ", \"name\": \"Thomas\", \"age\": 30, \"email\": \"tom" + suffix + "\"},"
+                + "{\"id\": -1, \"name\": \"Nobody\", \"age\": 30, \"email\": \"nobody" + suffix + "\"},"
+                + "{\"id\": " + id + ", \"name\": \"lower\", \"age\": 30, \"email\": \"tom" + suffix + "\"}]";
+        mockMvc.perform(patch("/people/batch").contentType(MediaType.APPLICATION_JSON).content(update))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.items[0].status").value("UPDATED"))
+               .andExpect(jsonPath("$.items[1].status").value("NOT_FOUND"))
+               .andExpect(jsonPath("$.items[2].status").value("REJECTED"));
+//        после коммита кэш очищен - видно новое имя
+        mockMvc.perform(get("/people/" + id))
+               .andExpect(jsonPath("$.name").value("Thomas"));
+        
+        mockMvc.perform(delete("/people/batch").contentType(MediaType.APPLICATION_JSON).content("[" + id + ", -1]"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.items[0].status").value("DELETED"))
+               .andExpect(jsonPath("$.items[1].status").value("NOT_FOUND"));
+        mockMvc.perform(get("/people/" + id))
+               .andExpect(status().isNotFound());
+    }
+    
+    private static String item(String name, String email) {
+        return "{\"name\": \"" + name + "\", \"age\": 25, \"email\": \"" + email + "\"}";
+    }
+    
+    private static Person person(String name, String email) {
+        Person person = new Person();
+        person.setName(name);
+        person.setAge(25);
+        person.setEmail(email);
+        return person;
+    }
+}
@@ -0,0 +1,175 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.services.PersonChangeLog;
+
+import java.time.LocalDateTime;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Поток изменений GET /people/changes: события пишутся в транзакции изменения
+ * и читаются по порядку seq
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerChangesTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PersonChangeLog changeLog;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    private long since;
+    
+    @BeforeEach
+    void setUp() {
+        since = changeLog.lastSeq();
+    }
+    
+    @Test
+    void writesAreReadInOrder() throws Exception {
+        Person person = create("Tom");
+        mockMvc.perform(patch("/people/{id}", person.getId())
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"age\":30}"))
+               .andExpect(status().isOk());
+        mockMvc.perform(delete("/people/{id}", person.getId()))
+               .andExpect(status().isOk());
+        
+        mockMvc.perform(changes(since))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.changes", hasSize(3)))
+               .andExpect(jsonPath("$.changes[0].type").value("CREATED"))
+               .andExpect(jsonPath("$.changes[0].id").value(person.getId()))
+               .andExpect(jsonPath("$.changes[0].person.age").value(25))
+               .andExpect(jsonPath("$.changes[1].type").value("UPDATED"))
+               .andExpect(jsonPath("$.changes[1].person.age").value(30))
+               .andExpect(jsonPath("$.changes[1].person.name").value("Tom"))
+               .andExpect(jsonPath("$.changes[2].type").value("DELETED"))
+               .andExpect(jsonPath("$.changes[2].person").value(nullValue()))
+               .andExpect(jsonPath("$.last").value(since + 3));
+    }
+    
+    @Test
+    void batchDeleteWritesDeletedEventsAfterAllChunks() throws Exception {
+        Person first = create("Kate");
+        Person second = create("Mike");
+        long afterCreate = since + 2;
+        
+        mockMvc.perform(delete("/people/batch")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("[" + second.getId() + "," + first.getId() + "," + Integer.MAX_VALUE + "]"))
+               .andExpect(status().isOk());
+        
+        mockMvc.perform(changes(afterCreate))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.changes", hasSize(2)))
+               .andExpect(jsonPath("$.changes[0].type").value("DELETED"))
+               .andExpect(jsonPath("$.changes[0].id").value(first.getId()))
+               .andExpect(jsonPath("$.changes[1].id").value(second.getId()))
+               .andExpect(jsonPath("$.last").value(afterCreate + 2));
+    }
+    
+    @Test
+    void longPollCompletesWhenChangeIsCommitted() throws Exception {
+        MvcResult waiting = mockMvc.perform(get("/people/changes").param("since", Long.toString(since))
+                                                                   .param("wait", "10"))
+                                   .andExpect(request().asyncStarted())
+                                   .andReturn();
+        
+        Person person = create("Bob");
+        
+        mockMvc.perform(asyncDispatch(waiting))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.changes", hasSize(1)))
+               .andExpect(jsonPath("$.changes[0].type").value("CREATED"))
+               .andExpect(jsonPath("$.changes[0].id").value(person.getId()))
+               .andExpect(jsonPath("$.last").value(since + 1));
+    }
+    
+    @Test
+    void streamSendsEventsWithSeqAsId() throws Exception {
+        Person person = create("Ann");
+        
+        MvcResult stream = mockMvc.perform(get("/people/changes").param("since", Long.toString(since))
+                                                                  .accept(MediaType.TEXT_EVENT_STREAM))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        
+        String expected = "id:" + (since + 1) + "\nevent:CREATED\ndata:{\"seq\":" + (since + 1);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!stream.getResponse().getContentAsString().contains("\"id\":" + person.getId())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        String content = stream.getResponse().getContentAsString();
+//        закрываем соединение, иначе подписка осталась бы до sse-timeout
+        stream.getRequest().getAsyncContext().complete();
+        assertTrue(content.contains(expected), content);
+        assertTrue(content.contains("\"id\":" + person.getId()), content);
+    }
+    
+    @Test
+    void expiredChangesAreGone() throws Exception {
+        LocalDateTime old = LocalDateTime.now().minusDays(30);
+        for (int i = 0; i < 3; i++) {
+            jdbcTemplate.update("INSERT INTO person_change (person_id, type, changed_at) VALUES (?, 'DELETED', ?)",
+                    i + 1, old);
+        }
+        changeLog.deleteExpired();
+        
+//        осталась только граница since + 3
+        mockMvc.perform(get("/people/changes").param("since", Long.toString(since + 1)).param("wait", "0"))
+               .andExpect(status().isGone());
+        mockMvc.perform(changes(since + 2))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.changes", hasSize(1)))
+               .andExpect(jsonPath("$.last").value(since + 3));
+    }
+    
+    /**
+     * Ответ без ожидания: DeferredResult уже заполнен, но MockMvc всё равно нужен asyncDispatch
+     */
+    private RequestBuilder changes(long since) throws Exception {
+        return asyncDispatch(mockMvc.perform(get("/people/changes").param("since", Long.toString(since))
+                                                                    .param("wait", "0"))
+                                    .andExpect(request().asyncStarted())
+                                    .andReturn());
+    }
+    
+    private Person create(String name) {
+        Person person = new Person();
+        person.setName(name);
+        person.setAge(25);
+        person.setEmail(name.toLowerCase() + System.nanoTime() + "@mail.ru");
+        peopleService.save(person);
+        return person;
+    }
+}
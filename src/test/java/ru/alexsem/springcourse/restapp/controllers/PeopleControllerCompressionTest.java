@@ -0,0 +1,113 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сжатие делает Tomcat, поэтому тест идёт через настоящий сервер, а не MockMvc
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class PeopleControllerCompressionTest {
+    
+    private static final int PEOPLE = 30;
+    
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String prefix;
+    private int personId;
+    
+    @BeforeEach
+    void setUp() {
+        prefix = "Gzip" + System.nanoTime();
+        for (int i = 0; i < PEOPLE; i++) {
+            Person person = new Person();
+            person.setName(prefix + i);
+            person.setAge(30);
+            person.setEmail(prefix.toLowerCase() + i + "@mail.ru");
+            peopleService.save(person);
+            personId = person.getId();
+        }
+    }
+    
+    @Test
+    void largeListIsCompressed() throws Exception {
+        HttpResponse<byte[]> response = get("/people/search?limit=" + PEOPLE + "&namePrefix=" + prefix);
+        
+        assertEquals(200, response.statusCode());
+        assertEquals(Optional.of("gzip"), response.headers().firstValue("Content-Encoding"));
+        assertTrue(vary(response).contains("accept-encoding"));
+        JsonNode page = objectMapper.readTree(new GZIPInputStream(new ByteArrayInputStream(response.body())));
+        assertEquals(PEOPLE, page.size());
+    }
+    
+    @Test
+    void singlePersonIsNotCompressed() throws Exception {
+        HttpResponse<byte[]> response = get("/people/" + personId);
+        
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+        assertEquals(prefix + (PEOPLE - 1), objectMapper.readTree(response.body()).get("name").asText());
+    }
+    
+    @Test
+    void exportVariesByAccept() throws Exception {
+        HttpResponse<byte[]> ndjson = get("/people/export", "application/x-ndjson");
+        HttpResponse<byte[]> array = get("/people/export", "application/json");
+        
+        assertEquals(200, ndjson.statusCode());
+        assertEquals(200, array.statusCode());
+        assertTrue(vary(ndjson).contains("accept"));
+        assertTrue(vary(array).contains("accept"));
+        assertTrue(ndjson.headers().firstValue("Content-Type").orElseThrow().startsWith("application/x-ndjson"));
+        assertTrue(array.headers().firstValue("Content-Type").orElseThrow().startsWith("application/json"));
+    }
+    
+    private HttpResponse<byte[]> get(String path) throws IOException, InterruptedException {
+        return get(path, "application/json");
+    }
+    
+    private HttpResponse<byte[]> get(String path, String accept) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                                         .header("Accept", accept)
+                                         .header("Accept-Encoding", "gzip")
+                                         .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+    
+    private static List<String> vary(HttpResponse<?> response) {
+        return response.headers().allValues("Vary").stream()
+                       .flatMap(value -> Arrays.stream(value.split(",")))
+                       .map(value -> value.trim().toLowerCase())
+                       .collect(Collectors.toList());
+    }
+}
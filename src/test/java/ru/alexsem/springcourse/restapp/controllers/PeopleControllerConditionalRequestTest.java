@@ -0,0 +1,129 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Условные запросы: ETag / If-None-Match (304) и If-Match (412)
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerConditionalRequestTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PeopleRepository peopleRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    private Statistics statistics;
+    private Person person;
+    
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        person = new Person();
+        person.setName("Tom");
+        person.setAge(25);
+        person.setEmail("tom" + System.nanoTime() + "@mail.ru");
+        peopleService.save(person);
+    }
+    
+    @Test
+    void getWithCurrentETagReturnsNotModifiedWithoutLoadingPerson() throws Exception {
+        String eTag = mockMvc.perform(get("/people/{id}", person.getId()))
+                             .andExpect(status().isOk())
+                             .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                             .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        
+        statistics.clear();
+        mockMvc.perform(get("/people/{id}", person.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+               .andExpect(status().isNotModified())
+               .andExpect(header().string(HttpHeaders.ETAG, eTag))
+               .andExpect(content().string(""));
+        assertEquals(0, statistics.getEntityLoadCount());
+        
+        mockMvc.perform(patch("/people/{id}", person.getId())
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"age\":30}"))
+               .andExpect(status().isOk());
+        String newETag = mockMvc.perform(get("/people/{id}", person.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                                .andExpect(status().isOk())
+                                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(eTag, newETag);
+    }
+    
+    @Test
+    void staleIfMatchIsRejected() throws Exception {
+        String eTag = mockMvc.perform(get("/people/{id}", person.getId()))
+                             .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        
+        mockMvc.perform(patch("/people/{id}", person.getId())
+                       .header(HttpHeaders.IF_MATCH, eTag)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"age\":30}"))
+               .andExpect(status().isOk());
+        
+//        второй клиент с тем же (уже устаревшим) ETag
+        mockMvc.perform(patch("/people/{id}", person.getId())
+                       .header(HttpHeaders.IF_MATCH, eTag)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"age\":40}"))
+               .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(delete("/people/{id}", person.getId()).header(HttpHeaders.IF_MATCH, eTag))
+               .andExpect(status().isPreconditionFailed());
+        assertEquals(30, peopleRepository.findById(person.getId()).orElseThrow().getAge());
+        
+        mockMvc.perform(delete("/people/{id}", Integer.MAX_VALUE).header(HttpHeaders.IF_MATCH, eTag))
+               .andExpect(status().isNotFound());
+    }
+    
+    @Test
+    void pageETagChangesWhenPersonOnPageChanges() throws Exception {
+        int after = person.getId() - 1;
+        String eTag = mockMvc.perform(get("/people").param("after", "" + after).param("limit", "1"))
+                             .andExpect(status().isOk())
+                             .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        
+        statistics.clear();
+        mockMvc.perform(get("/people").param("after", "" + after).param("limit", "1")
+                                      .header(HttpHeaders.IF_NONE_MATCH, eTag))
+               .andExpect(status().isNotModified())
+               .andExpect(header().exists(HttpHeaders.LINK));
+        assertEquals(0, statistics.getEntityLoadCount());
+        
+        peopleService.update(person.getId(), null, "Bob", null, null);
+        String newETag = mockMvc.perform(get("/people").param("after", "" + after).param("limit", "1")
+                                                       .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                                .andExpect(status().isOk())
+                                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(eTag, newETag);
+    }
+}
@@ -0,0 +1,99 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+import ru.alexsem.springcourse.restapp.services.EmailIndex;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.util.PersonValidator;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Уникальность email при включённом EmailIndex: свой email при PATCH не считается занятым,
+ * а email, о котором индекс не знает (человека создал другой экземпляр), отклоняет
+ * ограничение UNIQUE в БД - ответ тот же 400, а не 500
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerEmailUniquenessTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PeopleRepository peopleRepository;
+    @Autowired
+    private EmailIndex emailIndex;
+    
+    private String suffix;
+    
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!emailIndex.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        suffix = System.nanoTime() + "@mail.ru";
+    }
+    
+    @Test
+    void patchKeepsOwnEmailButCannotTakeAnothers() throws Exception {
+        Person tom = person("Tom", "tom" + suffix);
+        peopleService.save(tom);
+        peopleService.save(person("Bob", "bob" + suffix));
+        
+        mockMvc.perform(patch("/people/" + tom.getId()).contentType(MediaType.APPLICATION_JSON)
+                                                        .content("{\"age\": 30, \"email\": \"tom" + suffix + "\"}"))
+               .andExpect(status().isOk());
+        mockMvc.perform(patch("/people/" + tom.getId()).contentType(MediaType.APPLICATION_JSON)
+                                                        .content("{\"email\": \"bob" + suffix + "\"}"))
+               .andExpect(status().isBadRequest())
+               .andExpect(jsonPath("$.errors[0].field").value("email"))
+               .andExpect(jsonPath("$.errors[0].message").value(PersonValidator.EMAIL_TAKEN));
+    }
+    
+    @Test
+    void emailUnknownToIndexIsRejectedByDatabaseWithBadRequest() throws Exception {
+//        email, которого нет в индексе (ложные "возможно есть" пропускаем)
+        String email = "ann" + suffix;
+        for (int i = 0; emailIndex.mightContain(email); i++) {
+            email = "ann" + i + suffix;
+        }
+//        сохраняем мимо PeopleService - как будто человека создал другой экземпляр
+        Person other = person("Ann", email);
+        other.setCreatedAt(LocalDateTime.now());
+        other.setUpdatedAt(LocalDateTime.now());
+        peopleRepository.save(other);
+        assertFalse(emailIndex.mightContain(email));
+        
+        mockMvc.perform(post("/people").contentType(MediaType.APPLICATION_JSON)
+                                       .content("{\"name\": \"Ann\", \"age\": 20, \"email\": \"" + email + "\"}"))
+               .andExpect(status().isBadRequest())
+               .andExpect(jsonPath("$.errors[0].field").value("email"))
+               .andExpect(jsonPath("$.errors[0].message").value(PersonValidator.EMAIL_TAKEN));
+    }
+    
+    private static Person person(String name, String email) {
+        Person person = new Person();
+        person.setName(name);
+        person.setAge(25);
+        person.setEmail(email);
+        return person;
+    }
+}
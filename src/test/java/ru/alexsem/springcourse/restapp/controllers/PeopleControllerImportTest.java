@@ -0,0 +1,125 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.util.PersonValidator;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * POST /people/import. Пачка маленькая, чтобы файл из нескольких строк сохранялся в несколько транзакций.
+ * В тестах H2: строки грузятся во временную таблицу JDBC batch-ем, COPY работает только с PostgreSQL
+ */
+@SpringBootTest(properties = "people.import.chunk-size=3")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerImportTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PeopleRepository peopleRepository;
+    
+    /**
+     * Уникальный домен, чтобы email не пересекались с другими тестами
+     */
+    private String domain;
+    
+    @BeforeEach
+    void setUp() {
+        domain = "import" + System.nanoTime() + ".ru";
+    }
+    
+    @Test
+    void importsValidCsvRowsAndReportsRejectedOnes() throws Exception {
+        Person taken = new Person();
+        taken.setName("Taken");
+        taken.setAge(40);
+        taken.setEmail("taken@" + domain);
+        peopleService.saveAll(List.of(taken));
+    
+        String csv = "email,name,age\n"
+                + "tom@" + domain + ",Tom,25\n"
+                + "bob@" + domain + ",bob,30\n"
+                + "not-an-email,Ann,20\n"
+                + "\"kate@" + domain + "\",\"Kate, \"\"K\"\"\",33\r\n"
+                + "\n"
+                + "tom@" + domain + ",Tommy,26\n"
+                + "taken@" + domain + ",Other,50\n"
+                + "mike@" + domain + ",Mike,abc\n"
+                + "jane@" + domain + ",Jane\n"
+                + "\"multi\n@" + domain + "\",\"Line\nBreak\",1\n"
+                + "tom@" + domain + ",Thomas,27\n";
+    
+        mockMvc.perform(post("/people/import").contentType("text/csv").content(csv))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.imported").value(2))
+               .andExpect(jsonPath("$.rejected").value(8))
+               .andExpect(jsonPath("$.truncated").value(false))
+               .andExpect(jsonPath("$.rejectedRows[*].line").value(contains(3, 4, 7, 8, 9, 10, 11, 14)))
+               .andExpect(jsonPath("$.rejectedRows[0].errors[0].field").value("name"))
+               .andExpect(jsonPath("$.rejectedRows[0].errors[0].message").value(PersonValidator.NAME_NOT_CAPITALIZED))
+               .andExpect(jsonPath("$.rejectedRows[1].errors[*].field", hasItem("email")))
+               .andExpect(jsonPath("$.rejectedRows[2].errors[0].field").value("email"))
+               .andExpect(jsonPath("$.rejectedRows[2].errors[0].message").value("Duplicate email in import"))
+               .andExpect(jsonPath("$.rejectedRows[3].errors[0].message").value(PersonValidator.EMAIL_TAKEN))
+               .andExpect(jsonPath("$.rejectedRows[4].errors[0].field").value("age"))
+               .andExpect(jsonPath("$.rejectedRows[4].errors[0].message").value("Age should be a number"))
+               .andExpect(jsonPath("$.rejectedRows[5].errors[0].field").isEmpty())
+               .andExpect(jsonPath("$.rejectedRows[5].errors[0].message").value("Expected 3 fields, got 2"))
+//               tom из следующей пачки: первый tom уже сохранён
+               .andExpect(jsonPath("$.rejectedRows[7].errors[*].message", hasItem(PersonValidator.EMAIL_TAKEN)));
+    
+        Person tom = peopleRepository.findByEmail("tom@" + domain).orElseThrow();
+        assertEquals("Tom", tom.getName());
+        assertEquals(25, tom.getAge());
+        assertEquals(domain, tom.getEmailDomain());
+        assertEquals("Kate, \"K\"", peopleRepository.findByEmail("kate@" + domain).orElseThrow().getName());
+    
+        mockMvc.perform(post("/people/import").contentType("text/csv").content("name,email\nTom,x@" + domain + "\n"))
+               .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void importsNdjson() throws Exception {
+        String ndjson = "{\"name\":\"Nick\",\"age\":41,\"email\":\"nick@" + domain + "\"}\n"
+                + "{\"name\":\"Olga\",\"age\":\"old\",\"email\":\"olga@" + domain + "\"}\n"
+                + "{\"name\":\n"
+                + "{\"name\":\"Pete\",\"age\":-1,\"email\":\"pete@" + domain + "\"}\n"
+                + "{\"name\":\"Rita\",\"age\":22,\"email\":\"rita@" + domain + "\"}";
+    
+        mockMvc.perform(post("/people/import").contentType(PeopleController.APPLICATION_NDJSON_VALUE).content(ndjson))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.imported").value(2))
+               .andExpect(jsonPath("$.rejectedRows[*].line").value(contains(2, 3, 4)))
+               .andExpect(jsonPath("$.rejectedRows[0].errors[0].field").value("age"))
+               .andExpect(jsonPath("$.rejectedRows[0].errors[0].message").value("Invalid value"))
+               .andExpect(jsonPath("$.rejectedRows[1].errors[0].message").value("Malformed JSON"));
+    
+        Person nick = peopleRepository.findByEmail("nick@" + domain).orElseThrow();
+        Person rita = peopleRepository.findByEmail("rita@" + domain).orElseThrow();
+        assertTrue(nick.getId() > 0 && rita.getId() > 0 && nick.getId() != rita.getId());
+        mockMvc.perform(post("/people").contentType("application/json")
+                                       .content("{\"name\":\"Sam\",\"age\":30,\"email\":\"sam@" + domain + "\"}"))
+               .andExpect(status().isOk());
+        assertTrue(peopleRepository.findByEmail("sam@" + domain).isPresent());
+    }
+}
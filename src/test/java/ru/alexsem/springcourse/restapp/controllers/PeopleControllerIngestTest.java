@@ -0,0 +1,109 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * POST /people с Prefer: respond-async: 202 и статус заявки, пока писатель не сохранит пачку
+ */
+@SpringBootTest(properties = "people.ingest.enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerIngestTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Test
+    void acceptedPersonIsCreatedByWriter() throws Exception {
+        String email = "ingest" + System.nanoTime() + "@mail.ru";
+        MvcResult accepted = mockMvc.perform(asyncDispatch(
+                mockMvc.perform(post("/people")
+                               .header("Prefer", "respond-async")
+                               .contentType(MediaType.APPLICATION_JSON)
+                               .content("{\"name\":\"Tom\",\"age\":30,\"email\":\"" + email + "\"}"))
+                       .andExpect(request().asyncStarted())
+                       .andReturn()))
+                                    .andExpect(status().isAccepted())
+                                    .andExpect(header().string(HttpHeaders.LOCATION, startsWith("/people/ingest/")))
+                                    .andReturn();
+        String location = accepted.getResponse().getHeader(HttpHeaders.LOCATION);
+        
+        String status = "PENDING";
+        String body = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while ("PENDING".equals(status) && System.currentTimeMillis() < deadline) {
+            body = mockMvc.perform(get(location))
+                          .andExpect(status().isOk())
+                          .andReturn().getResponse().getContentAsString();
+            status = JsonPath.read(body, "$.status");
+        }
+        
+        mockMvc.perform(get(location))
+               .andExpect(jsonPath("$.status").value("CREATED"));
+        int personId = JsonPath.read(body, "$.personId");
+        mockMvc.perform(get("/people/{id}", personId))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.email").value(email));
+    }
+    
+    @Test
+    void respondAsyncIsFoundInPreferenceList() throws Exception {
+        mockMvc.perform(asyncDispatch(
+                       mockMvc.perform(post("/people")
+                                      .header("Prefer", "return=minimal; foo=bar, Respond-Async, wait=5")
+                                      .contentType(MediaType.APPLICATION_JSON)
+                                      .content("{\"name\":\"Tom\",\"age\":30,\"email\":\"list"
+                                               + System.nanoTime() + "@mail.ru\"}"))
+                              .andExpect(request().asyncStarted())
+                              .andReturn()))
+               .andExpect(status().isAccepted())
+               .andExpect(header().string(HttpHeaders.LOCATION, startsWith("/people/ingest/")));
+    }
+    
+    @Test
+    void otherPreferencesCreateSynchronously() throws Exception {
+        mockMvc.perform(asyncDispatch(
+                       mockMvc.perform(post("/people")
+                                      .header("Prefer", "wait=5")
+                                      .contentType(MediaType.APPLICATION_JSON)
+                                      .content("{\"name\":\"Tom\",\"age\":30,\"email\":\"sync"
+                                               + System.nanoTime() + "@mail.ru\"}"))
+                              .andExpect(request().asyncStarted())
+                              .andReturn()))
+               .andExpect(status().isOk())
+               .andExpect(header().doesNotExist(HttpHeaders.LOCATION));
+    }
+    
+    @Test
+    void invalidPersonIsRejectedBeforeQueue() throws Exception {
+        mockMvc.perform(post("/people")
+                       .header("Prefer", "respond-async")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"name\":\"T\",\"age\":30,\"email\":\"not-an-email\"}"))
+               .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void unknownIngestRequestIsNotFound() throws Exception {
+        mockMvc.perform(get("/people/ingest/{id}", "unknown"))
+               .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,90 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.util.PersonMapper;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Ответы из PersonJsonCache совпадают с тем, что отдал бы Jackson,
+ * и обновляются после изменения человека
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerJsonCacheTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PersonMapper personMapper;
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    private Person person;
+    
+    @BeforeEach
+    void setUp() {
+        person = new Person();
+        person.setName("Tom");
+        person.setAge(25);
+        person.setEmail("tom" + System.nanoTime() + "@mail.ru");
+        peopleService.save(person);
+    }
+    
+    @Test
+    void cachedJsonIsSameAsJacksonAndIsRefreshedAfterUpdate() throws Exception {
+        String expected = objectMapper.writeValueAsString(personMapper.toPersonDTO(person));
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/people/{id}", person.getId()))
+                   .andExpect(status().isOk())
+                   .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                   .andExpect(content().string(expected));
+        }
+        
+        mockMvc.perform(patch("/people/{id}", person.getId())
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"age\":30}"))
+               .andExpect(status().isOk());
+        mockMvc.perform(get("/people/{id}", person.getId()))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.age").value(30));
+    }
+    
+    @Test
+    void pageIsAssembledIntoJsonArray() throws Exception {
+        Person second = new Person();
+        second.setName("Bob");
+        second.setAge(51);
+        second.setEmail("bob" + System.nanoTime() + "@mail.ru");
+        peopleService.save(second);
+        
+        String body = mockMvc.perform(get("/people").param("after", "" + (person.getId() - 1)).param("limit", "2"))
+                             .andExpect(status().isOk())
+                             .andReturn().getResponse().getContentAsString();
+        List<PersonDTO> page = List.of(objectMapper.readValue(body, PersonDTO[].class));
+        assertEquals(2, page.size());
+        assertEquals(person.getEmail(), page.get(0).getEmail());
+        assertEquals(second.getEmail(), page.get(1).getEmail());
+    }
+}
@@ -0,0 +1,95 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * LoadSheddingFilter: 429 по ведру токенов клиента и 503 по пределу одновременных запросов
+ */
+@SpringBootTest(properties = {
+        "people.rate-limit.enabled=true",
+        "people.load-shedding.enabled=true",
+        "people.rate-limit.client-header=X-Client",
+        "people.rate-limit.list.rate=0.1",
+        "people.rate-limit.list.burst=2",
+        "people.rate-limit.read.rate=0.1",
+        "people.rate-limit.read.burst=1",
+        "people.rate-limit.suggest.rate=0.1",
+        "people.rate-limit.suggest.burst=2",
+        "people.rate-limit.export.rate=0.1",
+        "people.rate-limit.export.burst=2",
+        "people.load-shedding.export.max-concurrency=1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerLoadSheddingTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Test
+    void clientOverRateLimitGetsTooManyRequests() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/people").header("X-Client", "greedy"))
+                   .andExpect(status().isOk());
+        }
+        mockMvc.perform(get("/people").header("X-Client", "greedy"))
+               .andExpect(status().isTooManyRequests())
+               .andExpect(header().exists(HttpHeaders.RETRY_AFTER))
+               .andExpect(jsonPath("$.message").exists());
+        
+//        у другого клиента и у другой группы эндпоинтов свои вёдра
+        mockMvc.perform(get("/people").header("X-Client", "polite"))
+               .andExpect(status().isOk());
+        mockMvc.perform(get("/people/search").header("X-Client", "greedy"))
+               .andExpect(status().isOk());
+    }
+    
+    @Test
+    void suggestAndReadHaveSeparateBuckets() throws Exception {
+//        подсказки тратят своё ведро, а не ведро GET /people/{id}
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/people/suggest").param("q", "To").header("X-Client", "typist"))
+                   .andExpect(status().is(not(429)));
+        }
+        mockMvc.perform(get("/people/suggest").param("q", "Tom").header("X-Client", "typist"))
+               .andExpect(status().isTooManyRequests());
+        mockMvc.perform(get("/people/1").header("X-Client", "typist"))
+               .andExpect(status().is(not(429)));
+        mockMvc.perform(get("/people/1").header("X-Client", "typist"))
+               .andExpect(status().isTooManyRequests());
+    }
+    
+    @Test
+    void requestsOverConcurrencyLimitAreShed() throws Exception {
+        MvcResult first = mockMvc.perform(get("/people/export").header("X-Client", "exporter"))
+                                 .andExpect(request().asyncStarted())
+                                 .andReturn();
+        mockMvc.perform(get("/people/export").header("X-Client", "exporter"))
+               .andExpect(status().isServiceUnavailable())
+               .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        
+//        место освобождается, когда выгрузка закончилась
+        mockMvc.perform(asyncDispatch(first))
+               .andExpect(status().isOk());
+//        отклонённый 503 запрос не потратил токен: второй токен ведра ещё есть, 429 не будет
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/people/export").header("X-Client", "exporter"))
+                                             .andExpect(request().asyncStarted())
+                                             .andReturn()))
+               .andExpect(status().isOk());
+    }
+}
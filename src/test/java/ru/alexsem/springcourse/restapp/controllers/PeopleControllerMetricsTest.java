@@ -0,0 +1,96 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверяем, что запросы к /people пишут метрики этапов обработки и счётчики ошибок
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerMetricsTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private PeopleRepository peopleRepository;
+    
+    @Test
+    void requestsAreTimedByStage() throws Exception {
+        long validations = stageCount("validation");
+        long serializations = stageCount("serialization");
+        
+        mockMvc.perform(post("/people")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"name\":\"Tom\",\"age\":25,\"email\":\"tom" + System.nanoTime() + "@mail.ru\"}"))
+               .andExpect(status().isOk());
+        mockMvc.perform(get("/people"))
+               .andExpect(status().isOk());
+        
+        assertEquals(validations + 1, stageCount("validation"));
+        assertTrue(stageCount("serialization") >= serializations + 2);
+    }
+    
+    @Test
+    void cacheMissIsTimedAsEncodeNotSerialization() throws Exception {
+        String email = "enc" + System.nanoTime() + "@mail.ru";
+        mockMvc.perform(post("/people")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"name\":\"Tom\",\"age\":25,\"email\":\"" + email + "\"}"))
+               .andExpect(status().isOk());
+        int id = peopleRepository.findByEmail(email).orElseThrow().getId();
+        long serializations = stageCount("serialization");
+        long encodes = stageCount("encode");
+        
+//        промах PersonJsonCache: JSON строится (encode) и пишется в ответ (serialization) - по разу
+        mockMvc.perform(get("/people/{id}", id))
+               .andExpect(status().isOk());
+        assertEquals(serializations + 1, stageCount("serialization"));
+        assertEquals(encodes + 1, stageCount("encode"));
+        
+        mockMvc.perform(get("/people/{id}", id))
+               .andExpect(status().isOk());
+        assertEquals(serializations + 2, stageCount("serialization"));
+        assertEquals(encodes + 1, stageCount("encode"));
+    }
+    
+    @Test
+    void exceptionsAreCounted() throws Exception {
+        double notFound = errorCount("PersonNotFoundException");
+        double notCreated = errorCount("PersonNotCreatedException");
+        
+        mockMvc.perform(get("/people/{id}", Integer.MAX_VALUE))
+               .andExpect(status().isNotFound());
+        mockMvc.perform(post("/people")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"name\":\"tom\",\"age\":-1,\"email\":\"not an email\"}"))
+               .andExpect(status().isBadRequest());
+        
+        assertEquals(notFound + 1, errorCount("PersonNotFoundException"));
+        assertEquals(notCreated + 1, errorCount("PersonNotCreatedException"));
+    }
+    
+    private long stageCount(String stage) {
+        return meterRegistry.get("people.stage").tag("stage", stage).timer().count();
+    }
+    
+    private double errorCount(String exception) {
+        return meterRegistry.get("people.errors").tag("exception", exception).counter().count();
+    }
+}
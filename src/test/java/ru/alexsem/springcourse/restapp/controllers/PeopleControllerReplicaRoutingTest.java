@@ -0,0 +1,159 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.config.ReadYourWritesFilter;
+import ru.alexsem.springcourse.restapp.config.ReplicaRoutingDataSource;
+import ru.alexsem.springcourse.restapp.services.EmailIndex;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Чтение с реплики: основная БД и реплика - две отдельные H2, данные между ними не копируются.
+ * Поэтому по результату чтения видно, из какой БД оно выполнено
+ */
+@SpringBootTest(properties = {
+        "people.replicas.urls=" + PeopleControllerReplicaRoutingTest.REPLICA_URL,
+        "people.replicas.lag-query=SELECT ms FROM replica_lag",
+        "people.replicas.max-lag=5s",
+        "people.replicas.check-interval=1h"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerReplicaRoutingTest {
+    
+    static final String REPLICA_URL =
+            "jdbc:h2:mem:replica_db;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private EmailIndex emailIndex;
+    
+    private String domain;
+    
+    @BeforeAll
+    static void createReplicaSchema() throws SQLException {
+        replica("CREATE TABLE IF NOT EXISTS person (id INT PRIMARY KEY, name VARCHAR(100) NOT NULL, age INT,"
+                + " email VARCHAR(100) UNIQUE, email_domain VARCHAR(100), created_at TIMESTAMP, updated_at TIMESTAMP,"
+                + " created_who VARCHAR(255), version INT NOT NULL DEFAULT 0)");
+        replica("CREATE TABLE IF NOT EXISTS replica_lag (ms BIGINT)");
+        replica("DELETE FROM replica_lag");
+        replica("INSERT INTO replica_lag VALUES (0)");
+    }
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        domain = "r" + System.nanoTime() + ".ru";
+        lag(0);
+    }
+    
+    @Test
+    void readsGoToReplicaAndWriterReadsFromPrimary() throws Exception {
+        replica("INSERT INTO person (id, name, age, email, email_domain, created_at) VALUES ("
+                + (int) (System.nanoTime() % 1000000 + 2000000000) + ", 'Only', 30, 'only@" + domain + "', '"
+                + domain + "', CURRENT_TIMESTAMP)");
+        Cookie lastWrite = create("Tom", "tom@" + domain);
+        assertNotNull(lastWrite);
+    
+        mockMvc.perform(get("/people/search").param("emailDomain", domain))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$", hasSize(1)))
+               .andExpect(jsonPath("$[0].name").value("Only"));
+    
+        mockMvc.perform(get("/people/search").param("emailDomain", domain).cookie(lastWrite))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$", hasSize(1)))
+               .andExpect(jsonPath("$[0].name").value("Tom"));
+    }
+    
+    @Test
+    void laggingReplicaIsSkipped() throws Exception {
+        create("Bob", "bob@" + domain);
+    
+        lag(60_000);
+        mockMvc.perform(get("/people/search").param("emailDomain", domain))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$", hasSize(1)))
+               .andExpect(jsonPath("$[0].name").value("Bob"));
+    
+        lag(0);
+        mockMvc.perform(get("/people/search").param("emailDomain", domain))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$", hasSize(0)));
+    }
+    
+    @Test
+    void takenEmailIsCheckedOnPrimary() throws Exception {
+//        на реплике человека нет - занятый email видит только основная БД
+        create("Kate", "kate@" + domain);
+        
+        mockMvc.perform(post("/people")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"name\":\"Kate\",\"age\":30,\"email\":\"kate@" + domain + "\"}"))
+               .andExpect(status().isBadRequest())
+               .andExpect(jsonPath("$.errors[0].field").value("email"));
+    }
+    
+    @Test
+    void emailMissingFromIndexIsCheckedWithoutConnection() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!emailIndex.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        String email;
+        do {
+            email = "new" + System.nanoTime() + "@" + domain;
+        } while (emailIndex.mightContain(email));
+        ReplicaRoutingDataSource routing = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        long connections = routing.getPrimaryConnections() + routing.getReplicaConnections();
+        
+//        новый email и ошибка в имени: ни проверки в БД, ни сохранения
+        mockMvc.perform(post("/people")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"name\":\"kate\",\"age\":30,\"email\":\"" + email + "\"}"))
+               .andExpect(status().isBadRequest());
+        assertEquals(connections, routing.getPrimaryConnections() + routing.getReplicaConnections());
+    }
+    
+    private Cookie create(String name, String email) throws Exception {
+        return mockMvc.perform(post("/people")
+                              .contentType(MediaType.APPLICATION_JSON)
+                              .content("{\"name\":\"" + name + "\",\"age\":30,\"email\":\"" + email + "\"}"))
+                      .andExpect(status().isOk())
+                      .andReturn().getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+    }
+    
+    private void lag(long millis) throws SQLException {
+        replica("UPDATE replica_lag SET ms = " + millis);
+        dataSource.unwrap(ReplicaRoutingDataSource.class).checkReplicas();
+    }
+    
+    private static void replica(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
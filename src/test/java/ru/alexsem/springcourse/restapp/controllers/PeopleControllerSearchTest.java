@@ -0,0 +1,161 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PersonSearch;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * GET /people/search: фильтры, сортировка и переход по страницам через Link rel="next"
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerSearchTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    /**
+     * Уникальный префикс имени и домен, чтобы не видеть людей из других тестов
+     */
+    private String prefix;
+    private String domain;
+    
+    @BeforeEach
+    void setUp() {
+        prefix = "Srch" + System.nanoTime();
+        domain = "s" + System.nanoTime() + ".ru";
+        int[] ages = {40, 20, 30, 20, 50};
+        for (int i = 0; i < ages.length; i++) {
+            Person person = new Person();
+            person.setName(prefix + (char) ('e' - i));
+            person.setAge(ages[i]);
+            person.setEmail("p" + i + "@" + domain);
+            peopleService.save(person);
+        }
+    }
+    
+    @Test
+    void sortedSearchIsPagedWithCursor() throws Exception {
+        List<PersonDTO> found = new ArrayList<>();
+        String uri = "/people/search?namePrefix=" + prefix + "&sort=age&direction=desc&limit=2";
+        int pages = 0;
+        while (uri != null) {
+            MockHttpServletResponse response = mockMvc.perform(get(uri))
+                                                      .andExpect(status().isOk())
+                                                      .andReturn().getResponse();
+            found.addAll(List.of(objectMapper.readValue(response.getContentAsString(), PersonDTO[].class)));
+            uri = nextLink(response.getHeader(HttpHeaders.LINK));
+            pages++;
+        }
+        
+        assertEquals(List.of(50, 40, 30, 20, 20),
+                found.stream().map(PersonDTO::getAge).collect(Collectors.toList()));
+        assertEquals(3, pages);
+    }
+    
+    @Test
+    void filtersAreCombined() throws Exception {
+        mockMvc.perform(get("/people/search")
+                       .param("emailDomain", domain.toUpperCase())
+                       .param("minAge", "20")
+                       .param("maxAge", "30")
+                       .param("sort", "name"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.length()").value(3))
+               .andExpect(jsonPath("$[0].name").value(prefix + "b"))
+               .andExpect(jsonPath("$[2].name").value(prefix + "d"));
+    }
+    
+    @Test
+    void invalidParametersAreRejected() throws Exception {
+        mockMvc.perform(get("/people/search").param("sort", "email"))
+               .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/people/search").param("sort", "age").param("cursor", "bm9wZQ"))
+               .andExpect(status().isBadRequest())
+               .andExpect(jsonPath("$.message").value("Validation failed"))
+               .andExpect(jsonPath("$.errors[0].field").value("cursor"))
+               .andExpect(jsonPath("$.errors[0].message").value("Cursor does not match sort"));
+        
+        String link = mockMvc.perform(get("/people/search").param("namePrefix", prefix).param("limit", "1"))
+                             .andReturn().getResponse().getHeader(HttpHeaders.LINK);
+        String cursor = nextLink(link).replaceAll(".*cursor=", "");
+        mockMvc.perform(get("/people/search").param("sort", "name").param("cursor", cursor))
+               .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void rowsWithoutCreatedAtAreSkippedBySortByCreatedAt() throws Exception {
+        Person old = new Person();
+        old.setName(prefix + "z");
+        old.setAge(60);
+        old.setEmail("old@" + domain);
+        peopleService.save(old);
+        jdbcTemplate.update("update Person set created_at = null where id = ?", old.getId());
+        
+        List<PersonDTO> found = new ArrayList<>();
+        String uri = "/people/search?namePrefix=" + prefix + "&sort=createdAt&limit=2";
+        while (uri != null) {
+            MockHttpServletResponse response = mockMvc.perform(get(uri))
+                                                      .andExpect(status().isOk())
+                                                      .andReturn().getResponse();
+            found.addAll(List.of(objectMapper.readValue(response.getContentAsString(), PersonDTO[].class)));
+            uri = nextLink(response.getHeader(HttpHeaders.LINK));
+        }
+        assertEquals(List.of(40, 20, 30, 20, 50),
+                found.stream().map(PersonDTO::getAge).collect(Collectors.toList()));
+        
+//        курсор со строки без created_at строится и означает конец выдачи
+        old.setCreatedAt(null);
+        PersonSearch search = new PersonSearch(null, PersonSearch.SortField.CREATED_AT, false, 10);
+        String cursor = search.cursorAfter(old);
+        mockMvc.perform(get("/people/search").param("sort", "createdAt").param("cursor", cursor))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.length()").value(0));
+    }
+    
+    @Test
+    void lastPageHasNoNextLink() throws Exception {
+        String link = mockMvc.perform(get("/people/search").param("namePrefix", prefix).param("limit", "10"))
+                             .andExpect(status().isOk())
+                             .andReturn().getResponse().getHeader(HttpHeaders.LINK);
+        assertNull(link);
+    }
+    
+    private static String nextLink(String link) {
+        if (link == null) {
+            return null;
+        }
+        assertTrue(link.endsWith(">; rel=\"next\""));
+        return link.substring(1, link.indexOf('>'));
+    }
+}
@@ -0,0 +1,97 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.repositories.PeopleRepository;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверяем, сколько SQL-запросов уходит в БД на один HTTP-запрос
+ * PATCH и DELETE: один UPDATE / DELETE и один INSERT события в person_change.
+ * Если человека нет, событие не пишется
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerStatementCountTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PeopleRepository peopleRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    private Statistics statistics;
+    private Person person;
+    
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        person = new Person();
+        person.setName("Tom");
+        person.setAge(25);
+        person.setEmail("tom" + System.nanoTime() + "@mail.ru");
+        peopleService.save(person);
+        statistics.clear();
+    }
+    
+    @Test
+    void patchIssuesSingleUpdateAndKeepsCreationFields() throws Exception {
+        LocalDateTime createdAt = person.getCreatedAt();
+        
+        mockMvc.perform(patch("/people/{id}", person.getId())
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"age\":30}"))
+               .andExpect(status().isOk());
+        
+        assertEquals(2, statistics.getPrepareStatementCount());
+        Person updated = peopleRepository.findById(person.getId()).orElseThrow();
+        assertEquals(30, updated.getAge());
+        assertEquals("Tom", updated.getName());
+        assertNotNull(updated.getCreatedWho());
+        assertEquals(createdAt.withNano(0), updated.getCreatedAt().withNano(0));
+    }
+    
+    @Test
+    void patchOfMissingPersonIssuesSingleUpdate() throws Exception {
+        mockMvc.perform(patch("/people/{id}", Integer.MAX_VALUE)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"age\":30}"))
+               .andExpect(status().isNotFound());
+        
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+    
+    @Test
+    void deleteIssuesSingleDelete() throws Exception {
+        mockMvc.perform(delete("/people/{id}", person.getId()))
+               .andExpect(status().isOk());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        
+        statistics.clear();
+        mockMvc.perform(delete("/people/{id}", person.getId()))
+               .andExpect(status().isNotFound());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,105 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.services.PeopleStats;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * GET /people/stats: счётчики меняются вместе с людьми, без пересчёта по БД
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerStatsTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PeopleStats peopleStats;
+    
+    /**
+     * Уникальный домен, чтобы не видеть людей из других тестов
+     */
+    private String domain;
+    
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!peopleStats.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        domain = "stats" + System.nanoTime() + ".ru";
+    }
+    
+    @Test
+    void countsFollowCreateUpdateAndDelete() throws Exception {
+        String before = stats();
+        Person tom = person("Tom", 25, "tom@" + domain);
+        Person bob = person("Bob", 37, "bob@" + domain);
+        peopleService.saveAll(List.of(tom, bob));
+        
+        String after = stats();
+        assertEquals(2, total(after) - total(before));
+        assertEquals(1, age(after, "20-29") - age(before, "20-29"));
+        assertEquals(1, age(after, "30-39") - age(before, "30-39"));
+        assertEquals(2, domainCount(after));
+        assertEquals(2, created(after) - created(before));
+        
+        peopleService.update(tom.getId(), null, null, 31, null);
+        String updated = stats();
+        assertEquals(0, age(updated, "20-29") - age(before, "20-29"));
+        assertEquals(2, age(updated, "30-39") - age(before, "30-39"));
+        
+        peopleService.delete(bob.getId(), null);
+        String deleted = stats();
+        assertEquals(1, total(deleted) - total(before));
+        assertEquals(1, domainCount(deleted));
+    }
+    
+    private String stats() throws Exception {
+        return mockMvc.perform(get("/people/stats").param("domains", "1000").param("days", "1"))
+                      .andExpect(status().isOk())
+                      .andReturn().getResponse().getContentAsString();
+    }
+    
+    private static long total(String body) {
+        return ((Number) JsonPath.read(body, "$.total")).longValue();
+    }
+    
+    private static long age(String body, String bucket) {
+        return ((Number) JsonPath.read(body, "$.ages['" + bucket + "']")).longValue();
+    }
+    
+    private long domainCount(String body) {
+        return ((Number) JsonPath.read(body, "$.domains['" + domain + "']")).longValue();
+    }
+    
+    private static long created(String body) {
+        return ((Number) JsonPath.read(body, "$.createdPerDay['" + LocalDate.now() + "']")).longValue();
+    }
+    
+    private static Person person(String name, int age, String email) {
+        Person person = new Person();
+        person.setName(name);
+        person.setAge(age);
+        person.setEmail(email);
+        return person;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.services.PersonSuggestIndex;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * GET /people/suggest: индекс подхватывает создание, изменение и удаление после коммита
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerSuggestTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PersonSuggestIndex personSuggestIndex;
+    
+    /**
+     * Уникальное слово в имени, чтобы не видеть людей из других тестов
+     */
+    private String word;
+    
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!personSuggestIndex.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        word = "Zq" + Long.toString(System.nanoTime(), 36);
+    }
+    
+    @Test
+    void suggestsByNameWordAndEmailAfterCreate() throws Exception {
+        Person anna = person("Anna " + word, word.toLowerCase() + "@mail.ru");
+        Person bob = person("Bob " + word + "son", "bob" + word.toLowerCase() + "@mail.ru");
+        peopleService.saveAll(List.of(anna, bob));
+        
+        assertEquals(List.of(anna.getId(), bob.getId()), awaitIds(word.toUpperCase(), 2));
+        assertEquals(List.of(bob.getId()), awaitIds("bob" + word, 1));
+    }
+    
+    @Test
+    void followsUpdateAndDelete() throws Exception {
+        Person person = person("Tom " + word, word.toLowerCase() + "@mail.ru");
+        peopleService.save(person);
+        assertEquals(List.of(person.getId()), awaitIds(word, 1));
+        
+        String renamed = word + "x";
+        peopleService.update(person.getId(), null, "Tom " + renamed, null, null);
+        assertEquals(List.of(person.getId()), awaitIds(renamed, 1));
+//        email не менялся - по нему человек всё ещё находится
+        assertEquals(List.of(person.getId()), awaitIds(word.toLowerCase() + "@", 1));
+        
+        peopleService.delete(person.getId(), null);
+        assertEquals(List.of(), awaitIds(word, 0));
+    }
+    
+    @Test
+    void limitIsApplied() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            peopleService.save(person(word + " " + i, word.toLowerCase() + i + "@mail.ru"));
+        }
+        awaitIds(word, 3);
+        String body = mockMvc.perform(get("/people/suggest").param("q", word).param("limit", "2"))
+                             .andExpect(status().isOk())
+                             .andReturn().getResponse().getContentAsString();
+        List<Integer> ids = JsonPath.read(body, "$[*].id");
+        assertEquals(2, ids.size());
+    }
+    
+    /**
+     * Индекс обновляется в своём потоке после коммита - ждём нужного числа подсказок
+     */
+    private List<Integer> awaitIds(String query, int expected) throws Exception {
+        List<Integer> ids = List.of();
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            String body = mockMvc.perform(get("/people/suggest").param("q", query))
+                                 .andExpect(status().isOk())
+                                 .andReturn().getResponse().getContentAsString();
+            ids = JsonPath.read(body, "$[*].id");
+            if (ids.size() == expected) {
+                return ids;
+            }
+            Thread.sleep(10);
+        } while (System.currentTimeMillis() < deadline);
+        assertTrue(false, "Expected " + expected + " suggestions for " + query + ", got " + ids);
+        return ids;
+    }
+    
+    private static Person person(String name, String email) {
+        Person person = new Person();
+        person.setName(name);
+        person.setAge(30);
+        person.setEmail(email);
+        return person;
+    }
+}
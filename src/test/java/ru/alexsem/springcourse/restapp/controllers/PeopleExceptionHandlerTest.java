@@ -0,0 +1,58 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.alexsem.springcourse.restapp.util.ErrorBody;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Ответы PeopleExceptionHandler: готовое тело для 404 и ошибки валидации по полям
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleExceptionHandlerTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Test
+    void notFoundHasPrecomputedBody() throws Exception {
+        mockMvc.perform(get("/people/{id}", Integer.MAX_VALUE))
+               .andExpect(status().isNotFound())
+               .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+               .andExpect(jsonPath("$.message").value("Person with this id was not found"))
+               .andExpect(jsonPath("$.timestamp").isNumber())
+               .andExpect(jsonPath("$.errors").doesNotExist());
+    }
+    
+    @Test
+    void validationErrorsAreReportedPerField() throws Exception {
+        mockMvc.perform(post("/people")
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"name\":\"tom\",\"age\":-1,\"email\":\"not an email\"}"))
+               .andExpect(status().isBadRequest())
+               .andExpect(jsonPath("$.message").value("Validation failed"))
+               .andExpect(jsonPath("$.errors[*].field").value(containsInAnyOrder("name", "age", "email")));
+    }
+    
+    @Test
+    void errorBodyEscapesMessage() {
+        byte[] body = ErrorBody.of("Say \"hi\"").render(42);
+        assertEquals("{\"message\":\"Say \\\"hi\\\"\",\"timestamp\":42}", new String(body, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,120 @@
+package ru.alexsem.springcourse.restapp.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import ru.alexsem.springcourse.restapp.dto.PersonDTO;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Профиль reactive: WebFlux + R2DBC поверх H2. Проверяем, что ответы и ошибки
+ * такие же, как у PeopleController
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive_db;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password=",
+        "spring.sql.init.schema-locations=classpath:schema-reactive.sql"})
+@ActiveProfiles({"test", "reactive"})
+class ReactivePeopleControllerTest {
+    
+    @Autowired
+    private WebTestClient webTestClient;
+    
+    @Autowired
+    private DatabaseClient databaseClient;
+    
+    @Test
+    void createReadUpdateDelete() {
+        String email = "tom" + System.nanoTime() + "@mail.ru";
+        create("{\"name\":\"Tom\",\"age\":25,\"email\":\"" + email + "\"}")
+                .expectStatus().isOk();
+        
+        List<PersonDTO> people = webTestClient.get().uri("/people?limit=1000")
+                                              .exchange()
+                                              .expectStatus().isOk()
+                                              .expectBodyList(PersonDTO.class)
+                                              .returnResult().getResponseBody();
+        assertNotNull(people);
+        assertEquals(1, people.stream().filter(person -> email.equals(person.getEmail())).count());
+        
+        webTestClient.get().uri("/people/export")
+                     .accept(MediaType.parseMediaType(PeopleController.APPLICATION_NDJSON_VALUE))
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().contentTypeCompatibleWith(PeopleController.APPLICATION_NDJSON_VALUE);
+    
+//        id в PersonDTO не отдаётся, поэтому берём его из базы
+        int id = databaseClient.sql("SELECT id FROM person WHERE email = :email")
+                               .bind("email", email)
+                               .map((row, metadata) -> row.get(0, Integer.class))
+                               .one()
+                               .block();
+    
+        webTestClient.patch().uri("/people/{id}", id)
+                     .contentType(MediaType.APPLICATION_JSON)
+                     .bodyValue("{\"age\":30}")
+                     .exchange()
+                     .expectStatus().isOk();
+        webTestClient.get().uri("/people/{id}", id)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody()
+                     .jsonPath("$.age").isEqualTo(30)
+                     .jsonPath("$.name").isEqualTo("Tom");
+        
+        webTestClient.delete().uri("/people/{id}", id)
+                     .exchange()
+                     .expectStatus().isOk();
+        webTestClient.get().uri("/people/{id}", id)
+                     .exchange()
+                     .expectStatus().isNotFound()
+                     .expectBody()
+                     .jsonPath("$.message").isEqualTo("Person with this id was not found");
+    }
+    
+    @Test
+    void validationErrorsMatchServletVariant() {
+        String email = "bob" + System.nanoTime() + "@mail.ru";
+        create("{\"name\":\"Bob\",\"age\":51,\"email\":\"" + email + "\"}")
+                .expectStatus().isOk();
+        
+        create("{\"name\":\"bob\",\"age\":51,\"email\":\"" + email + "\"}")
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Validation failed")
+                .jsonPath("$.errors[0].field").isEqualTo("name")
+                .jsonPath("$.errors[0].message").isEqualTo("Name should start with a capital letter")
+                .jsonPath("$.errors[1].field").isEqualTo("email")
+                .jsonPath("$.errors[1].message").isEqualTo("This email is already taken");
+    }
+    
+    @Test
+    void pageHasLinkToNextPage() {
+        for (int i = 0; i < 2; i++) {
+            create("{\"name\":\"Nik\",\"age\":35,\"email\":\"nik" + System.nanoTime() + "@mail.ru\"}")
+                    .expectStatus().isOk();
+        }
+        webTestClient.get().uri("/people?limit=1")
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().value(HttpHeaders.LINK, link -> assertTrue(link.endsWith("; rel=\"next\"")));
+    }
+    
+    private WebTestClient.ResponseSpec create(String json) {
+        return webTestClient.post().uri("/people")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(json)
+                            .exchange();
+    }
+}
@@ -0,0 +1,127 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.alexsem.springcourse.restapp.dto.PersonSearchDTO;
+import ru.alexsem.springcourse.restapp.services.PeopleService;
+import ru.alexsem.springcourse.restapp.util.PersonMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * План запроса поиска: SQL, который Hibernate на самом деле отправляет в БД,
+ * проверяется через EXPLAIN в H2 - каждый фильтр должен идти по своему индексу.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                             + "ru.alexsem.springcourse.restapp.repositories.PersonSearchQueryPlanTest$LastSelect")
+@ActiveProfiles("test")
+class PersonSearchQueryPlanTest {
+    
+    private static final int ROWS = 5000;
+    private static final int LIMIT = 10;
+    
+    @Autowired
+    private PeopleService peopleService;
+    @Autowired
+    private PersonMapper personMapper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @BeforeAll
+    static void seed(@Autowired JdbcTemplate jdbcTemplate) {
+//        id далеко от значений последовательности, чтобы не мешать другим тестам
+        jdbcTemplate.update("INSERT INTO person (id, name, age, email, email_domain, created_at, updated_at, created_who, version) " +
+                            "SELECT 1000000 + \"X\", 'Person' || \"X\", MOD(\"X\", 100), " +
+                            "'person' || \"X\" || '@d' || MOD(\"X\", 50) || '.ru', 'd' || MOD(\"X\", 50) || '.ru', " +
+                            "DATEADD(MINUTE, -\"X\", CURRENT_TIMESTAMP), CURRENT_TIMESTAMP, 'Admin', 0 " +
+                            "FROM SYSTEM_RANGE(1, ?)", ROWS);
+        jdbcTemplate.execute("ANALYZE");
+    }
+    
+    @Test
+    void namePrefixUsesNameIndex() throws Exception {
+        PersonSearchDTO search = search("name");
+        search.setNamePrefix("Person12");
+        assertPlanUses(search, "person_name_id_idx", "Person12%", "\\");
+    }
+    
+    @Test
+    void ageRangeUsesAgeIndex() throws Exception {
+        PersonSearchDTO search = search("age");
+        search.setMinAge(20);
+        search.setMaxAge(21);
+        assertPlanUses(search, "person_age_id_idx", 20, 21);
+    }
+    
+    @Test
+    void emailDomainUsesDomainIndex() throws Exception {
+        PersonSearchDTO search = search("id");
+        search.setEmailDomain("D7.ru");
+        assertPlanUses(search, "person_email_domain_id_idx", "d7.ru");
+    }
+    
+    @Test
+    void createdRangeUsesCreatedAtIndex() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        PersonSearchDTO search = search("createdAt");
+        search.setCreatedFrom(now.minusHours(2));
+        search.setCreatedTo(now.minusHours(1));
+        assertPlanUses(search, "person_created_at_id_idx", now.minusHours(2), now.minusHours(1));
+    }
+    
+    private static PersonSearchDTO search(String sort) {
+        PersonSearchDTO search = new PersonSearchDTO();
+        search.setSort(sort);
+        search.setLimit(LIMIT);
+        return search;
+    }
+    
+    /**
+     * Выполняет поиск, берёт его SQL и выполняет EXPLAIN с теми же параметрами
+     * (значения фильтров по порядку, включая символ экранирования LIKE; последний параметр - limit)
+     */
+    private void assertPlanUses(PersonSearchDTO searchDTO, String index, Object... values) throws Exception {
+        LastSelect.sql = null;
+        peopleService.search(personMapper.toPersonSearch(searchDTO));
+        String sql = LastSelect.sql;
+        
+        String plan = jdbcTemplate.execute((java.sql.Connection connection) -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+                int parameters = explain.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    explain.setObject(i, i <= values.length ? values[i - 1] : LIMIT);
+                }
+                try (ResultSet resultSet = explain.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getString(1);
+                }
+            }
+        });
+        assertTrue(plan.contains(index), () -> "Expected " + index + " in plan:\n" + plan);
+    }
+    
+    /**
+     * Запоминает последний SELECT к person, который отправил Hibernate
+     */
+    public static class LastSelect implements StatementInspector {
+        static volatile String sql;
+        
+        @Override
+        public String inspect(String sql) {
+            if (sql.toLowerCase().startsWith("select") && sql.toLowerCase().contains("from person")) {
+                LastSelect.sql = sql;
+            }
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.junit.jupiter.api.Test;
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Строки, которые импорт пишет в COPY person_import ... FROM STDIN (FORMAT csv).
+ * Сам COPY есть только в PostgreSQL, см PostgresImportTest
+ */
+class PostgresCopyRowTest {
+    
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123456000);
+    private static final LocalDateTime UPDATED = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+    
+    @Test
+    void plainValuesAreQuotedAndTimestampsKeepMicroseconds() throws IOException {
+        assertEquals("7,\"Ivan\",30,\"ivan@mail.ru\",\"mail.ru\",2024-01-02 03:04:05.123456,"
+                     + "2024-01-02 03:04:05.000000,\"Admin\"\n", row(person("Ivan", "Admin")));
+    }
+    
+    @Test
+    void quotesCommasAndNewlinesStayInsideOneField() throws IOException {
+        assertEquals("7,\"Ivan \"\"The, Great\"\"\nSecond\",30,\"ivan@mail.ru\",\"mail.ru\","
+                     + "2024-01-02 03:04:05.123456,2024-01-02 03:04:05.000000,\"a,\"\"b\"\"\"\n",
+                row(person("Ivan \"The, Great\"\nSecond", "a,\"b\"")));
+    }
+    
+    @Test
+    void nullIsUnquotedEmptyFieldAndEmptyStringIsQuoted() throws IOException {
+//        в FORMAT csv пустое поле без кавычек - NULL, "" - пустая строка
+        assertEquals("7,\"Ivan\",30,\"ivan@mail.ru\",\"mail.ru\",2024-01-02 03:04:05.123456,"
+                     + "2024-01-02 03:04:05.000000,\n", row(person("Ivan", null)));
+        assertEquals("7,\"Ivan\",30,\"ivan@mail.ru\",\"mail.ru\",2024-01-02 03:04:05.123456,"
+                     + "2024-01-02 03:04:05.000000,\"\"\n", row(person("Ivan", "")));
+    }
+    
+    private static String row(Person person) throws IOException {
+        StringWriter writer = new StringWriter();
+        PeopleRepositoryCustomImpl.writeCopyRow(writer, person);
+        return writer.toString();
+    }
+    
+    private static Person person(String name, String createdWho) {
+        Person person = new Person();
+        person.setId(7);
+        person.setName(name);
+        person.setAge(30);
+        person.setEmail("ivan@mail.ru");
+        person.setCreatedAt(CREATED);
+        person.setUpdatedAt(UPDATED);
+        person.setCreatedWho(createdWho);
+        return person;
+    }
+}
@@ -0,0 +1,195 @@
+package ru.alexsem.springcourse.restapp.repositories;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.restapp.config.ConcurrencyLimitedDataSource;
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Импорт в настоящем PostgreSQL: COPY FROM STDIN во временную таблицу и перенос в person.
+ * Запускается только с адресом отдельной БД, схему в ней создаёт Flyway:
+ *
+ * mvn test -Dtest=PostgresImportTest -Dpeople.test.postgres-url=jdbc:postgresql://localhost:5432/rest_app_test
+ *
+ * (пользователь и пароль - people.test.postgres-username / people.test.postgres-password, по умолчанию
+ * postgres). Секционированная схема: ещё -Dspring.flyway.locations=classpath:db/migration,classpath:db/partitioning
+ */
+@SpringBootTest(properties = {"spring.flyway.enabled=true", "spring.jpa.hibernate.ddl-auto=validate"})
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "people.test.postgres-url", matches = ".+")
+class PostgresImportTest {
+    
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", PostgresImportTest::url);
+        registry.add("spring.datasource.username", PostgresImportTest::username);
+        registry.add("spring.datasource.password", PostgresImportTest::password);
+//        та же БД в роли реплики: бин DataSource - LazyConnectionDataSourceProxy над ReplicaRoutingDataSource
+        registry.add("people.replicas.urls", PostgresImportTest::url);
+    }
+    
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PeopleRepository peopleRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    private String prefix;
+    
+    @BeforeEach
+    void setUp() {
+        prefix = "copy" + System.nanoTime();
+    }
+    
+    @Test
+    void copyIsAvailableThroughDataSourceWrappers() throws Exception {
+        assertTrue(dataSource instanceof LazyConnectionDataSourceProxy);
+//        ConcurrencyLimitedDataSource включается только на Java 21 (people.threads.virtual), оборачиваем сами
+        DataSource limited = new ConcurrencyLimitedDataSource(dataSource, 1, 0, Duration.ofSeconds(1));
+        try (Connection connection = limited.getConnection()) {
+            assertTrue(PostgresCopy.isAvailable(connection));
+        }
+    }
+    
+    @Test
+    void importCopiesValuesAsIs() {
+        List<Person> people = List.of(person("Ivan \"The, Great\"\nSecond", prefix + "1@mail.ru", null),
+                person("Пётр\\Первый", prefix + "2@mail.ru", ""),
+                person("Anna", prefix + "3@mail.ru", "a,\"b\""));
+    
+        assertTrue(importPeople(people).isEmpty());
+    
+        for (Person person : people) {
+            Map<String, Object> row = jdbcTemplate.queryForMap(
+                    "SELECT name, email, email_domain, created_at, created_who FROM person WHERE id = ?", person.getId());
+            assertEquals(person.getName(), row.get("name"));
+            assertEquals(person.getEmail(), row.get("email"));
+            assertEquals("mail.ru", row.get("email_domain"));
+            assertEquals(person.getCreatedAt(), ((Timestamp) row.get("created_at")).toLocalDateTime());
+            assertEquals(person.getCreatedWho(), row.get("created_who"));
+        }
+        assertNull(jdbcTemplate.queryForObject("SELECT created_who FROM person WHERE id = ?", String.class,
+                people.get(0).getId()));
+    }
+    
+    @Test
+    void takenEmailIsRejected() {
+        Person taken = person("Taken", prefix + "taken@mail.ru", "Admin");
+        importPeople(List.of(taken));
+    
+        Person duplicate = person("Duplicate", taken.getEmail(), "Admin");
+        Person fresh = person("Fresh", prefix + "fresh@mail.ru", "Admin");
+        Set<Integer> rejected = importPeople(List.of(duplicate, fresh));
+    
+        assertEquals(Set.of(duplicate.getId()), rejected);
+        assertEquals(1, count(taken.getEmail()));
+        assertEquals(1, count(fresh.getEmail()));
+    }
+    
+    /**
+     * Email занимает транзакция, которая коммитится, пока идёт импорт. В обычной схеме строку
+     * пропускает ON CONFLICT, в секционированной - повтор переноса после unique_violation триггера
+     */
+    @Test
+    void emailTakenByConcurrentTransactionIsRejected() throws Exception {
+        String email = prefix + "race@mail.ru";
+        try (Connection other = DriverManager.getConnection(url(), username(), password())) {
+            other.setAutoCommit(false);
+            try (PreparedStatement insert = other.prepareStatement(
+                    "INSERT INTO person (id, name, age, email, email_domain, created_at, updated_at, created_who, "
+                    + "version) VALUES (nextval('person_id_seq'), 'Other', 30, ?, 'mail.ru', localtimestamp, "
+                    + "localtimestamp, 'Admin', 0)")) {
+                insert.setString(1, email);
+                insert.executeUpdate();
+            }
+    
+            Person duplicate = person("Duplicate", email, "Admin");
+            Person fresh = person("Fresh", prefix + "fresh@mail.ru", "Admin");
+            CompletableFuture<Set<Integer>> imported =
+                    CompletableFuture.supplyAsync(() -> importPeople(List.of(duplicate, fresh)));
+    
+            awaitLockWait();
+            assertFalse(imported.isDone());
+            other.commit();
+    
+            assertEquals(Set.of(duplicate.getId()), imported.get(10, TimeUnit.SECONDS));
+            assertEquals(1, count(email));
+            assertEquals(1, count(fresh.getEmail()));
+        }
+    }
+    
+    private Set<Integer> importPeople(List<Person> people) {
+        return transactionTemplate.execute(status -> peopleRepository.importPeople(new ArrayList<>(people)));
+    }
+    
+    private int count(String email) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM person WHERE email = ?", Integer.class, email);
+    }
+    
+    /**
+     * Импорт дошёл до вставки и ждёт чужую транзакцию на индексе email
+     */
+    private void awaitLockWait() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity "
+                                           + "WHERE datname = current_database() AND wait_event_type = 'Lock'",
+                Integer.class) == 0) {
+            assertTrue(System.nanoTime() < deadline, "import did not reach the conflicting insert");
+            Thread.sleep(20);
+        }
+    }
+    
+    private static Person person(String name, String email, String createdWho) {
+        Person person = new Person();
+        person.setName(name);
+        person.setAge(30);
+        person.setEmail(email);
+        person.setCreatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123456000));
+        person.setUpdatedAt(LocalDateTime.now().withNano(0));
+        person.setCreatedWho(createdWho);
+        return person;
+    }
+    
+    private static String url() {
+        return System.getProperty("people.test.postgres-url");
+    }
+    
+    private static String username() {
+        return System.getProperty("people.test.postgres-username", "postgres");
+    }
+    
+    private static String password() {
+        return System.getProperty("people.test.postgres-password", "postgres");
+    }
+}
@@ -0,0 +1,61 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * EmailIndex: ложных "точно нет" не бывает, а пока индекс не загружен или выключен,
+ * любой email считается возможно занятым (проверка идёт в БД)
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class EmailIndexTest {
+    
+    @Autowired
+    private EmailIndex emailIndex;
+    
+    @Test
+    void addedEmailsAreNeverReportedAbsent() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!emailIndex.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(emailIndex.isReady());
+        
+        String prefix = "index" + System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            emailIndex.add(prefix + i + "@mail.ru");
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(emailIndex.mightContain(prefix + i + "@mail.ru"));
+//            регистр и пробелы не важны
+            assertTrue(emailIndex.mightContain(" " + prefix.toUpperCase() + i + "@MAIL.RU"));
+        }
+        
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (emailIndex.mightContain("absent" + prefix + i + "@mail.ru")) {
+                falsePositives++;
+            }
+        }
+//        настроено 1%, при заполнении меньше ожидаемого - заметно меньше
+        assertTrue(falsePositives < 500, "false positives: " + falsePositives);
+    }
+    
+    @Test
+    void notLoadedOrDisabledIndexSendsEveryCheckToDatabase() {
+//        warmUp не вызывался - индекс не загружен
+        EmailIndex notLoaded = new EmailIndex(null, null, true, 1000, 0.01);
+        assertFalse(notLoaded.isReady());
+        assertTrue(notLoaded.mightContain("nobody@mail.ru"));
+        
+        EmailIndex disabled = new EmailIndex(null, null, false, 1000, 0.01);
+        disabled.add("somebody@mail.ru");
+        assertTrue(disabled.mightContain("nobody@mail.ru"));
+    }
+}
@@ -0,0 +1,79 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.junit.jupiter.api.Test;
+import ru.alexsem.springcourse.restapp.models.Person;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Счётчики PeopleStats без БД: изменения применяются напрямую, пересчёт не запускается
+ */
+class PeopleStatsTest {
+    
+    private final PeopleStats stats = new PeopleStats(null, null, true, Duration.ofMinutes(10));
+    
+    @Test
+    void partialUpdateMovesPersonBetweenBuckets() {
+        stats.putAll(List.of(person(1, 25, "tom@mail.ru")));
+        stats.putAll(List.of(person(2, 95, "bob@mail.ru")));
+        
+        PeopleStats.Snapshot snapshot = stats.snapshot(2, 10);
+        assertEquals(2, snapshot.getTotal());
+        assertArrayEquals(new long[]{0, 0, 1, 0, 0, 0, 0, 0, 0, 1}, snapshot.getAges());
+        assertEquals(Map.of("mail.ru", 2L), snapshot.getDomains());
+        assertEquals(2, snapshot.getCreatedPerDay().get(LocalDate.now()));
+        assertEquals(0, snapshot.getCreatedPerDay().get(LocalDate.now().minusDays(1)));
+        
+//        возраст и домен меняются, день создания остаётся прежним
+        stats.update(1, 41, "tom@yandex.ru");
+        stats.update(2, null, "bob@yandex.ru");
+        snapshot = stats.snapshot(1, 10);
+        assertEquals(2, snapshot.getTotal());
+        assertArrayEquals(new long[]{0, 0, 0, 0, 1, 0, 0, 0, 0, 1}, snapshot.getAges());
+        assertEquals(Map.of("yandex.ru", 2L), snapshot.getDomains());
+        assertEquals(2, snapshot.getCreatedPerDay().get(LocalDate.now()));
+    }
+    
+    @Test
+    void repeatedChangesAreCountedOnce() {
+        Person person = person(7, 30, "ann@mail.ru");
+        stats.putAll(List.of(person));
+        stats.putAll(List.of(person));
+        assertEquals(1, stats.snapshot(1, 10).getTotal());
+        
+//        неизвестного id частичное изменение не трогает - его учтёт пересчёт
+        stats.update(8, 50, null);
+        assertEquals(1, stats.snapshot(1, 10).getTotal());
+        
+        stats.removeAll(List.of(7));
+        stats.removeAll(List.of(7));
+        PeopleStats.Snapshot snapshot = stats.snapshot(1, 10);
+        assertEquals(0, snapshot.getTotal());
+        assertEquals(Map.of(), snapshot.getDomains());
+        assertEquals(0, snapshot.getCreatedPerDay().get(LocalDate.now()));
+    }
+    
+    @Test
+    void topDomainsAreOrderedByCount() {
+        stats.putAll(List.of(person(1, 20, "a@b.ru"), person(2, 20, "a@c.ru"), person(3, 20, "b@c.ru"),
+                person(100_000, 20, "a@d.ru"), person(100_001, 20, "b@d.ru"), person(100_002, 20, "c@d.ru")));
+        
+        assertEquals(List.of("d.ru", "c.ru"), List.copyOf(stats.snapshot(1, 2).getDomains().keySet()));
+    }
+    
+    private static Person person(int id, int age, String email) {
+        Person person = new Person();
+        person.setId(id);
+        person.setAge(age);
+        person.setEmail(email);
+        person.setCreatedAt(LocalDateTime.now());
+        return person;
+    }
+}
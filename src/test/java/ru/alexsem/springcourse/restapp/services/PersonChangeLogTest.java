@@ -0,0 +1,54 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.junit.jupiter.api.Test;
+import ru.alexsem.springcourse.restapp.models.PersonChange;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Пропуски в seq: событие ещё не закоммиченной транзакции ждём до gap-timeout,
+ * после этого считаем, что транзакция откатилась
+ */
+class PersonChangeLogTest {
+    
+    private final LocalDateTime deadline = LocalDateTime.now().minusSeconds(5);
+    
+    @Test
+    void changesWithoutGapsAreReturned() {
+        List<PersonChange> changes = List.of(change(11, recent()), change(12, recent()), change(13, recent()));
+        
+        assertEquals(3, PersonChangeLog.contiguous(changes, 10, deadline).size());
+    }
+    
+    @Test
+    void recentGapStopsReading() {
+        List<PersonChange> changes = List.of(change(11, recent()), change(13, recent()), change(14, recent()));
+        
+        List<PersonChange> result = PersonChangeLog.contiguous(changes, 10, deadline);
+        
+        assertEquals(1, result.size());
+        assertEquals(11, result.get(0).getSeq());
+    }
+    
+    @Test
+    void gapBeforeOldChangeIsSkipped() {
+        LocalDateTime old = deadline.minusSeconds(1);
+        List<PersonChange> changes = List.of(change(12, old), change(13, recent()), change(15, recent()));
+        
+        List<PersonChange> result = PersonChangeLog.contiguous(changes, 10, deadline);
+        
+        assertEquals(2, result.size());
+        assertEquals(13, result.get(1).getSeq());
+    }
+    
+    private LocalDateTime recent() {
+        return deadline.plusSeconds(1);
+    }
+    
+    private static PersonChange change(long seq, LocalDateTime changedAt) {
+        return new PersonChange(seq, 1, PersonChange.Type.UPDATED, changedAt);
+    }
+}
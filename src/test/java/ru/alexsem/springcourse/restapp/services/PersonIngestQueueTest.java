@@ -0,0 +1,117 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.alexsem.springcourse.restapp.models.Person;
+import ru.alexsem.springcourse.restapp.util.IngestQueueFullException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Очередь асинхронного создания без Spring: PeopleService подменён записью вызовов
+ */
+class PersonIngestQueueTest {
+    
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private PersonIngestQueue queue;
+    
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        queue.destroy();
+    }
+    
+    @Test
+    void peopleSubmittedWithinWindowAreSavedByOneCommit() throws Exception {
+        queue = queue(new RecordingPeopleService(), 10, Duration.ofMillis(200));
+        queue.start();
+        
+        List<PersonIngestQueue.Ticket> tickets = List.of(
+                queue.submit(person("a")), queue.submit(person("b")), queue.submit(person("c")));
+        for (PersonIngestQueue.Ticket ticket : tickets) {
+            ticket.getDone().get(5, TimeUnit.SECONDS);
+            assertEquals(PersonIngestQueue.Ticket.Status.CREATED, ticket.getStatus());
+        }
+        
+        assertEquals(List.of(3), batches);
+        assertEquals(tickets.get(1).getId(), queue.find(tickets.get(1).getId()).getId());
+        assertNull(queue.find("unknown"));
+    }
+    
+    @Test
+    void failedBatchIsRetriedOneByOne() throws Exception {
+        queue = queue(new RecordingPeopleService() {
+            @Override
+            public void saveAll(List<Person> people) {
+                throw new DataIntegrityViolationException("duplicate email");
+            }
+            
+            @Override
+            public void save(Person person) {
+                if (person.getEmail().startsWith("taken")) {
+                    throw new DataIntegrityViolationException("duplicate email");
+                }
+                super.save(person);
+            }
+        }, 10, Duration.ofMillis(200));
+        queue.start();
+        
+        PersonIngestQueue.Ticket ok = queue.submit(person("ok"));
+        PersonIngestQueue.Ticket taken = queue.submit(person("taken"));
+        
+        assertEquals(PersonIngestQueue.Ticket.Status.CREATED, ok.getDone().get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(PersonIngestQueue.Ticket.Status.FAILED, taken.getDone().get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals("Email is already taken", taken.getError());
+    }
+    
+    @Test
+    void fullQueueRejectsSubmit() {
+//        писатель не запущен, поэтому очередь не разбирается
+        queue = queue(new RecordingPeopleService(), 1, Duration.ofMillis(10));
+        
+        queue.submit(person("a"));
+        
+        assertThrows(IngestQueueFullException.class, () -> queue.submit(person("b")));
+    }
+    
+    private PersonIngestQueue queue(PeopleService peopleService, int capacity, Duration maxDelay) {
+        return new PersonIngestQueue(peopleService, new SimpleMeterRegistry(), true, capacity, 100, maxDelay,
+                "queued", Duration.ofMinutes(1), 1000);
+    }
+    
+    private static Person person(String name) {
+        Person person = new Person();
+        person.setName(name);
+        person.setEmail(name + "@mail.ru");
+        return person;
+    }
+    
+    private class RecordingPeopleService extends PeopleService {
+        
+        RecordingPeopleService() {
+            super(null, null, null, null, null, null);
+        }
+        
+        @Override
+        public void saveAll(List<Person> people) {
+            people.forEach(person -> person.setId(ids.incrementAndGet()));
+            batches.add(people.size());
+        }
+        
+        @Override
+        public void save(Person person) {
+            person.setId(ids.incrementAndGet());
+            batches.add(1);
+        }
+    }
+}
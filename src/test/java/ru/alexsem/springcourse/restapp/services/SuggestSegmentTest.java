@@ -0,0 +1,98 @@
+package ru.alexsem.springcourse.restapp.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Поиск по префиксу и ранжирование в SuggestSegment без Spring и БД
+ */
+class SuggestSegmentTest {
+    
+    @Test
+    void findsWordStartsOfNameAndEmailStartIgnoringCase() {
+        SuggestSegment segment = segment();
+        
+//        при равной категории короткое имя выше
+        assertEquals(List.of(2, 1), ids(segment, "анн", new int[0]));
+        assertEquals(List.of(3), ids(segment, "ПЁТР", new int[0]));
+        assertEquals(List.of(1), ids(segment, "петр", new int[0]));
+        assertEquals(List.of(4), ids(segment, "boris@", new int[0]));
+//        середина слова и домен email не считаются началом
+        assertEquals(List.of(), ids(segment, "нна", new int[0]));
+        assertEquals(List.of(), ids(segment, "mail.ru", new int[0]));
+    }
+    
+    @Test
+    void ranksExactThenNamePrefixThenOtherWordThenEmail() {
+        SuggestSegment.Builder builder = new SuggestSegment.Builder(4);
+        builder.add(10, "Ivan Annenkov", "ivan@mail.ru");
+        builder.add(11, "Annabelle", "bell@mail.ru");
+        builder.add(12, "Boris", "annboris@mail.ru");
+        builder.add(13, "Ann", "x@mail.ru");
+        builder.add(14, "Anna", "y@mail.ru");
+        SuggestSegment segment = builder.build();
+        
+        assertEquals(List.of(13, 14, 11, 10, 12), ids(segment, "ann", new int[0]));
+    }
+    
+    @Test
+    void skipsHiddenIdsAndDuplicateTokensOfOnePerson() {
+        SuggestSegment.Builder builder = new SuggestSegment.Builder(2);
+        builder.add(1, "Anna", "anna@mail.ru");
+        builder.add(2, "Anna Smith", "smith@mail.ru");
+        SuggestSegment segment = builder.build();
+        
+        assertEquals(List.of(1, 2), ids(segment, "anna", new int[0]));
+        assertEquals(List.of(2), ids(segment, "anna", new int[]{1}));
+    }
+    
+    @Test
+    void copiesPeopleBetweenSegmentsInIdOrder() {
+        SuggestSegment source = segment();
+        SuggestSegment.Builder builder = new SuggestSegment.Builder(0);
+        for (int person = 0; person < source.size(); person++) {
+            builder.add(source, person);
+        }
+        SuggestSegment copy = builder.build();
+        
+        assertEquals(source.tokenCount(), copy.tokenCount());
+        assertEquals("Пётр Иванов", copy.name(copy.indexOf(3)));
+        assertEquals("boris@mail.ru", copy.email(copy.indexOf(4)));
+        assertThrows(IllegalArgumentException.class, () -> builder.add(1, "Late", "late@mail.ru"));
+    }
+    
+    @Test
+    void sortsManyTokensWithCommonPrefixes() {
+        SuggestSegment.Builder builder = new SuggestSegment.Builder(0);
+        for (int id = 1; id <= 5000; id++) {
+            builder.add(id, "Person " + (5001 - id), "person" + id + "@mail.ru");
+        }
+        SuggestSegment segment = builder.build();
+        
+        List<Integer> found = ids(segment, "person 499", new int[0]);
+        assertEquals(List.of(4502, 11, 10), found.subList(0, 3));
+        assertTrue(found.stream().allMatch(id -> segment.name(segment.indexOf(id)).startsWith("Person 499")));
+    }
+    
+    private static SuggestSegment segment() {
+        SuggestSegment.Builder builder = new SuggestSegment.Builder(4);
+        builder.add(1, "Анна Петрова", "anna@mail.ru");
+        builder.add(2, "Анна-Мария", "maria@mail.ru");
+        builder.add(3, "Пётр Иванов", "petr@mail.ru");
+        builder.add(4, "Борис", "boris@mail.ru");
+        return builder.build();
+    }
+    
+    private static List<Integer> ids(SuggestSegment segment, String query, int[] hidden) {
+        SuggestMatches matches = new SuggestMatches(4);
+        char[] lowerCase = query.toLowerCase().toCharArray();
+        segment.search(lowerCase, hidden, 1000, matches);
+        return matches.top(10).stream().map(PersonSuggestIndex.Suggestion::getId).collect(Collectors.toList());
+    }
+}
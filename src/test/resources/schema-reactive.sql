@@ -0,0 +1,14 @@
+CREATE SEQUENCE IF NOT EXISTS person_id_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS person
+(
+    id          INT PRIMARY KEY,
+    name        VARCHAR(100) NOT NULL,
+    age         INT,
+    email       VARCHAR(100) UNIQUE,
+    email_domain VARCHAR(100),
+    created_at  TIMESTAMP,
+    updated_at  TIMESTAMP,
+    created_who VARCHAR(255),
+    version     INT NOT NULL DEFAULT 0
+);